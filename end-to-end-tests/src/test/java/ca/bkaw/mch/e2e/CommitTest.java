@@ -74,4 +74,29 @@ public class CommitTest {
             "Expected two commits on the same world to get the same world container hash."
         );
     }
+
+    @Test
+    void parallelCommitHasSameWorldContainerHash(@TempDir Path tempDir) throws IOException {
+        extractWorld("world1", tempDir.resolve("world"));
+        mchCli(tempDir, "init");
+        mchCli(tempDir, "world", "add", "local", tempDir.resolve("world").toAbsolutePath().toString());
+
+        mchCli(tempDir, "commit", "--threads", "4");
+        mchCli(tempDir, "commit", "--no-cache");
+
+        MchRepository repo = new MchRepository(tempDir.resolve("mch"));
+        Reference20<Commit> headCommitRef = repo.getHeadCommit();
+        assertNotNull(headCommitRef);
+        Commit headCommit = headCommitRef.resolve(repo);
+
+        Reference20<Commit> previousCommitRef = headCommit.getPreviousCommit();
+        assertNotNull(previousCommitRef);
+        Commit previousCommit = previousCommitRef.resolve(repo);
+
+        assertEquals(
+            headCommit.getWorldContainer().getSha1(),
+            previousCommit.getWorldContainer().getSha1(),
+            "Expected a parallel commit to get the same world container hash as a serial commit."
+        );
+    }
 }
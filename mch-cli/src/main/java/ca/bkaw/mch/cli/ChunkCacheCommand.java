@@ -0,0 +1,51 @@
+package ca.bkaw.mch.cli;
+
+import ca.bkaw.mch.region.RawChunkCache;
+import ca.bkaw.mch.repository.MchConfiguration;
+import ca.bkaw.mch.repository.MchRepository;
+import com.google.inject.Inject;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.ExitCode;
+import picocli.CommandLine.Option;
+
+import java.util.concurrent.Callable;
+
+@Command(name = "chunk-cache", description = "View or change the size of the cache of compressed chunks used to restore faster.")
+public class ChunkCacheCommand implements Callable<Integer> {
+    private static final long MEGABYTE = 1024 * 1024;
+
+    @Inject
+    MchRepository repository;
+
+    @Option(names = "--size", description = "The maximum size of the cache in megabytes, or 0 to disable the cache.")
+    Long size;
+
+    @Override
+    public Integer call() throws Exception {
+        MchConfiguration configuration = this.repository.getConfiguration();
+
+        if (this.size != null) {
+            try {
+                configuration.setRawChunkCacheSize(this.size * MEGABYTE);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return ExitCode.USAGE;
+            }
+            this.repository.saveConfiguration();
+            if (this.size == 0) {
+                System.out.println("Disabled the chunk cache. The " + RawChunkCache.FOLDER + " folder in the repository can be deleted.");
+            } else {
+                System.out.println("Updated the chunk cache size. Chunks are added to the cache when they are committed.");
+            }
+        }
+
+        RawChunkCache rawChunkCache = this.repository.getRawChunkCache();
+        if (rawChunkCache == null) {
+            System.out.println("Max size: disabled");
+            return ExitCode.OK;
+        }
+        System.out.println("Max size: " + rawChunkCache.getMaxSize() / MEGABYTE + " MB");
+        System.out.println("Used: " + rawChunkCache.getSize() / MEGABYTE + " MB");
+        return ExitCode.OK;
+    }
+}
@@ -24,10 +24,17 @@ public class CommitCommand implements Callable<Integer> {
     @Option(names = "--verbose", defaultValue = "false", description = "Print more information while processing the commit.")
     boolean verbose;
 
+    @Option(names = "--threads", defaultValue = "1", description = "The amount of region files and other files to process at the same time.")
+    int threads;
+
     @Override
     public Integer call() {
+        if (this.threads < 1) {
+            System.err.println("The amount of threads must be at least 1.");
+            return ExitCode.USAGE;
+        }
         try {
-            CommitOperation.run(this.repository, this.commitMessage, this.cache, this.verbose);
+            CommitOperation.run(this.repository, this.commitMessage, this.cache, this.verbose, this.threads);
             return ExitCode.OK;
         } catch (IOException e) {
             System.err.println("Failed to commit.");
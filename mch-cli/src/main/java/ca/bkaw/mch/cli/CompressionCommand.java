@@ -0,0 +1,48 @@
+package ca.bkaw.mch.cli;
+
+import ca.bkaw.mch.repository.CompressionSettings;
+import ca.bkaw.mch.repository.MchConfiguration;
+import ca.bkaw.mch.repository.MchRepository;
+import com.google.inject.Inject;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.ExitCode;
+import picocli.CommandLine.Option;
+
+import java.util.concurrent.Callable;
+
+@Command(name = "compression", description = "View or change the compression settings of the repository.")
+public class CompressionCommand implements Callable<Integer> {
+    @Inject
+    MchRepository repository;
+
+    @Option(names = "--level", description = "The zstd compression level. Low levels are faster, high levels give smaller files.")
+    Integer level;
+
+    @Option(names = "--workers", description = "The amount of files mch recompress compresses concurrently, or 0 to compress one at a time.")
+    Integer workers;
+
+    @Override
+    public Integer call() throws Exception {
+        MchConfiguration configuration = this.repository.getConfiguration();
+        CompressionSettings settings = configuration.getCompressionSettings();
+
+        if (this.level != null || this.workers != null) {
+            try {
+                settings = new CompressionSettings(
+                    this.level != null ? this.level : settings.level(),
+                    this.workers != null ? this.workers : settings.workers()
+                );
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return ExitCode.USAGE;
+            }
+            configuration.setCompressionSettings(settings);
+            this.repository.saveConfiguration();
+            System.out.println("Updated the compression settings. Run mch recompress to compress existing region files with the new settings.");
+        }
+
+        System.out.println("Level: " + settings.level());
+        System.out.println("Workers: " + settings.workers());
+        return ExitCode.OK;
+    }
+}
@@ -13,13 +13,18 @@ import java.nio.file.Path;
 @Command(name = "mch", subcommands = {
     CommitCommand.class,
     CatCommand.class,
+    ChunkCacheCommand.class,
+    CompressionCommand.class,
     FtpCommand.class,
     HubCommand.class,
     InitCommand.class,
     LogCommand.class,
+    RecompressCommand.class,
+    RepackCommand.class,
     ResearchCommand.class,
     RestoreCommand.class,
     SftpCommand.class,
+    TrainDictionaryCommand.class,
     WorldCommand.class,
 })
 public class MchCli {
@@ -0,0 +1,29 @@
+package ca.bkaw.mch.cli;
+
+import ca.bkaw.mch.operation.RecompressOperation;
+import ca.bkaw.mch.repository.MchRepository;
+import com.google.inject.Inject;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.ExitCode;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+@Command(name = "recompress", description = "Compress the stored region files again with the current compression settings.")
+public class RecompressCommand implements Callable<Integer> {
+    @Inject
+    MchRepository repository;
+
+    @Override
+    public Integer call() {
+        try {
+            int count = RecompressOperation.run(this.repository);
+            System.out.println("Recompressed " + count + " files");
+            return ExitCode.OK;
+        } catch (IOException e) {
+            System.err.println("Failed to recompress.");
+            e.printStackTrace();
+            return ExitCode.SOFTWARE;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package ca.bkaw.mch.cli;
+
+import ca.bkaw.mch.operation.RepackOperation;
+import ca.bkaw.mch.repository.MchRepository;
+import com.google.inject.Inject;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.ExitCode;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+@Command(name = "repack", description = "Move loose objects into pack files.")
+public class RepackCommand implements Callable<Integer> {
+    @Inject
+    MchRepository repository;
+
+    @Override
+    public Integer call() {
+        try {
+            Map<String, Integer> counts = RepackOperation.run(this.repository);
+            int total = 0;
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                if (entry.getValue() > 0) {
+                    System.out.println("Packed " + entry.getValue() + " " + entry.getKey() + " objects");
+                }
+                total += entry.getValue();
+            }
+            if (total == 0) {
+                System.out.println("No loose objects to pack");
+            }
+            return ExitCode.OK;
+        } catch (IOException e) {
+            System.err.println("Failed to repack.");
+            e.printStackTrace();
+            return ExitCode.SOFTWARE;
+        }
+    }
+}
@@ -6,14 +6,17 @@ import ca.bkaw.mch.cli.GuiceFactory.WorkingDir;
 import ca.bkaw.mch.object.ObjectNotFoundException;
 import ca.bkaw.mch.object.ObjectStorageTypes;
 import ca.bkaw.mch.object.Reference20;
-import ca.bkaw.mch.object.blob.Blob;
+import ca.bkaw.mch.object.chunkedblob.ChunkedBlob;
 import ca.bkaw.mch.object.commit.Commit;
 import ca.bkaw.mch.object.dimension.Dimension;
 import ca.bkaw.mch.object.tree.Tree;
 import ca.bkaw.mch.object.world.World;
 import ca.bkaw.mch.object.worldcontainer.WorldContainer;
 import ca.bkaw.mch.region.MchRegionFile;
+import ca.bkaw.mch.region.RawChunkCache;
+import ca.bkaw.mch.region.RegionFileType;
 import ca.bkaw.mch.region.RegionStorageVisitor;
+import ca.bkaw.mch.region.mc.ChunkCompression;
 import ca.bkaw.mch.region.mc.McRegionFileWriter;
 import ca.bkaw.mch.repository.MchConfiguration;
 import ca.bkaw.mch.repository.MchRepository;
@@ -22,11 +25,17 @@ import ca.bkaw.mch.util.Util;
 import com.google.inject.Inject;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.ExitCode;
+import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 
@@ -42,6 +51,9 @@ public class RestoreCommand implements Callable<Integer> {
     @Parameters(index = "0")
     String commitHash;
 
+    @Option(names = "--chunk-compression", defaultValue = "ZLIB", description = "The compression of chunks in the restored region files: ${COMPLETION-CANDIDATES}.")
+    ChunkCompression chunkCompression;
+
     @Override
     public Integer call() throws IOException {
         // Get the commit to restore to
@@ -58,6 +70,7 @@ public class RestoreCommand implements Callable<Integer> {
         Files.createDirectory(path);
 
         MchConfiguration configuration = this.repository.getConfiguration();
+        RawChunkCache rawChunkCache = this.repository.getRawChunkCache();
 
         WorldContainer worldContainer = commit.getWorldContainer().resolve(this.repository);
         for (Map.Entry<Sha1, Reference20<World>> entry : worldContainer.getWorlds().entrySet()) {
@@ -87,30 +100,57 @@ public class RestoreCommand implements Callable<Integer> {
                 this.restoreTree(miscellaneousFiles, dimensionPath);
 
                 // Restore region files
-                Path regionFolderPath = dimensionPath.resolve("region");
-                Files.createDirectories(regionFolderPath);
-                for (Dimension.RegionFileReference regionFileReference : dimension.getRegionFiles()) {
-
-                    String regionFileName = Util.formatRegionFileName(regionFileReference.getRegionX(), regionFileReference.getRegionZ(), ".mca");
-                    System.out.println("    " + regionFileName);
-
-                    Path mcRegionFilePath = regionFolderPath.resolve(regionFileName);
-                    try (McRegionFileWriter regionFile = new McRegionFileWriter(mcRegionFilePath)) {
-                        int[] chunkVersionNumbers = MchRegionFile.read(
-                            this.repository, trackedWorld, dimensionKey,
-                            regionFileReference.getRegionX(), regionFileReference.getRegionZ(),
-                            regionFileReference.getVersionNumber()
-                        );
-                        RegionStorageVisitor.visitReadOnly(
-                            this.repository, trackedWorld, dimensionKey,
-                            regionFileReference.getRegionX(), regionFileReference.getRegionZ(),
-                            chunk -> {
-                                int chunkVersionNumber = chunkVersionNumbers[chunk.getIndex()];
-                                if (chunkVersionNumber != 0) {
-                                    RegionFileChunk restoredChunk = chunk.restore(chunkVersionNumber);
-                                    regionFile.writeChunk(restoredChunk.nbt(), restoredChunk.lastModified());
-                                }
-                            });
+                for (RegionFileType regionFileType : RegionFileType.values()) {
+                    List<Dimension.RegionFileReference> regionFileReferences = dimension.getRegionFiles(regionFileType);
+                    if (regionFileReferences.isEmpty() && regionFileType != RegionFileType.REGION) {
+                        continue;
+                    }
+                    Path regionFolderPath = dimensionPath.resolve(regionFileType.getFolderName());
+                    Files.createDirectories(regionFolderPath);
+                    for (Dimension.RegionFileReference regionFileReference : regionFileReferences) {
+
+                        String regionFileName = Util.formatRegionFileName(regionFileReference.getRegionX(), regionFileReference.getRegionZ(), ".mca");
+                        System.out.println("    " + regionFileType.getFolderName() + "/" + regionFileName);
+
+                        Path mcRegionFilePath = regionFolderPath.resolve(regionFileName);
+                        try (McRegionFileWriter regionFile = new McRegionFileWriter(mcRegionFilePath, this.chunkCompression)) {
+                            int[] chunkVersionNumbers = MchRegionFile.read(
+                                this.repository, trackedWorld, dimensionKey, regionFileType,
+                                regionFileReference.getRegionX(), regionFileReference.getRegionZ(),
+                                regionFileReference.getVersionNumber()
+                            );
+                            RegionStorageVisitor.visitReadOnly(
+                                this.repository, trackedWorld, dimensionKey, regionFileType,
+                                regionFileReference.getRegionX(), regionFileReference.getRegionZ(),
+                                chunk -> {
+                                    int chunkVersionNumber = chunkVersionNumbers[chunk.getIndex()];
+                                    if (chunkVersionNumber != 0) {
+                                        RawChunkCache.CachedChunk cachedChunk = rawChunkCache != null
+                                            ? rawChunkCache.get(
+                                                trackedWorld, dimensionKey, regionFileType,
+                                                regionFileReference.getRegionX(), regionFileReference.getRegionZ(),
+                                                chunk.getIndex(), chunkVersionNumber
+                                            )
+                                            : null;
+                                        if (cachedChunk != null) {
+                                            // Write the chunk as it was committed without restoring the nbt
+                                            regionFile.writeRawChunk(
+                                                regionFileReference.getRegionX() * 32 + chunk.getChunkX(),
+                                                regionFileReference.getRegionZ() * 32 + chunk.getChunkZ(),
+                                                cachedChunk.rawChunk(), cachedChunk.lastModified()
+                                            );
+                                            return;
+                                        }
+                                        RegionFileChunk restoredChunk = chunk.restore(chunkVersionNumber);
+                                        // Entity and poi chunks do not store xPos and zPos
+                                        regionFile.writeChunk(
+                                            regionFileReference.getRegionX() * 32 + chunk.getChunkX(),
+                                            regionFileReference.getRegionZ() * 32 + chunk.getChunkZ(),
+                                            restoredChunk.nbt(), restoredChunk.lastModified()
+                                        );
+                                    }
+                                });
+                        }
                     }
                 }
             }
@@ -127,8 +167,20 @@ public class RestoreCommand implements Callable<Integer> {
             String fileName = entry.getKey();
             Path filePath = path.resolve(fileName);
 
-            Blob blob = entry.getValue().reference().resolve(this.repository);
-            Files.write(filePath, blob.getBytes());
+            try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ObjectStorageTypes.BLOB.transferTo(entry.getValue().reference(), this.repository, channel);
+            }
+        }
+
+        // Restore large files one chunk at a time
+        for (Map.Entry<String, Tree.ChunkedBlobReference> entry : tree.getChunkedFiles().entrySet()) {
+            String fileName = entry.getKey();
+            Path filePath = path.resolve(fileName);
+
+            ChunkedBlob chunkedBlob = entry.getValue().reference().resolve(this.repository);
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(filePath))) {
+                chunkedBlob.transferTo(this.repository, outputStream);
+            }
         }
 
         // Restore subtrees
@@ -0,0 +1,39 @@
+package ca.bkaw.mch.cli;
+
+import ca.bkaw.mch.operation.TrainDictionaryOperation;
+import ca.bkaw.mch.region.RegionStorageDictionaryTrainer;
+import ca.bkaw.mch.repository.MchRepository;
+import ca.bkaw.mch.repository.ZstdDictionaries;
+import com.google.inject.Inject;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.ExitCode;
+import picocli.CommandLine.Option;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+@Command(name = "train-dictionary", description = "Train a zstd dictionary to compress chunks with.")
+public class TrainDictionaryCommand implements Callable<Integer> {
+    @Inject
+    MchRepository repository;
+
+    @Option(names = "--size", defaultValue = "" + RegionStorageDictionaryTrainer.DEFAULT_DICTIONARY_SIZE, description = "The maximum size of the dictionary in bytes.")
+    int size;
+
+    @Override
+    public Integer call() {
+        try {
+            ZstdDictionaries.Dictionary dictionary = TrainDictionaryOperation.run(this.repository, this.size);
+            System.out.println("Trained dictionary " + Long.toUnsignedString(dictionary.getId()) + " (" + dictionary.getSize() + " bytes)");
+            System.out.println("Chunks that are committed from now on will be compressed with the dictionary.");
+            return ExitCode.OK;
+        } catch (IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return ExitCode.USAGE;
+        } catch (IOException e) {
+            System.err.println("Failed to train dictionary.");
+            e.printStackTrace();
+            return ExitCode.SOFTWARE;
+        }
+    }
+}
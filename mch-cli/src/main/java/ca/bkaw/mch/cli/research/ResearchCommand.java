@@ -25,9 +25,12 @@ import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.Set;
 
 @Command(name = "research")
 public class ResearchCommand {
+    private static final Set<String> INHABITED_TIME = Set.of("InhabitedTime");
+
     @Inject
     MchRepository repository;
 
@@ -72,7 +75,7 @@ public class ResearchCommand {
                         chunk -> {
                             int chunkVersionNumber = chunkVersionNumbers[chunk.getIndex()];
                             if (chunkVersionNumber != 0) {
-                                RegionFileChunk restoredChunk = chunk.restore(chunkVersionNumber);
+                                RegionFileChunk restoredChunk = chunk.restore(chunkVersionNumber, INHABITED_TIME);
                                 NbtTag nbtTag = restoredChunk.nbt().get("InhabitedTime");
                                 if (nbtTag == null) {
                                     output.println("null");
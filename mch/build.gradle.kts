@@ -10,6 +10,7 @@ repositories {
 dependencies {
     compileOnly("org.jetbrains:annotations:24.0.1")
     implementation("com.github.luben:zstd-jni:1.5.5-5")
+    implementation("org.lz4:lz4-java:1.8.0")
     implementation("org.json:json:20240303")
     implementation("commons-net:commons-net:3.9.0") // FTP
     implementation("com.hierynomus:sshj:0.38.0") // SFTP
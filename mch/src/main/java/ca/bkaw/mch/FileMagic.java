@@ -9,9 +9,14 @@ import java.io.IOException;
 public class FileMagic {
     public static final int CONFIGURATION = 0x6D6368_43; // mchC
     public static final int WORLD_CONTAINER = 0x6D6368_57; // mchW
+    public static final int RAW_CHUNK = 0x6D6368_61; // mcha
+    public static final int CHUNKED_BLOB = 0x6D6368_62; // mchb
     public static final int CHUNK_STORAGE = 0x6D6368_63; // mchc
     public static final int DIMENSION = 0x6D6368_64; // mchd
+    public static final int PACK_INDEX = 0x6D6368_69; // mchi
     public static final int COMMIT = 0x6D6368_6B; // mchk
+    public static final int REGION_TIMESTAMPS = 0x6D6368_6D; // mchm
+    public static final int PACK = 0x6D6368_70; // mchp
     public static final int REGION_STORAGE = 0x6D6368_72; // mchr
     public static final int TREE = 0x6D6368_74; // mcht
     public static final int REGION_FILE = 0x6D6368_76; // mchv
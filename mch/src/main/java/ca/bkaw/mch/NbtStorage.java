@@ -1,24 +1,38 @@
 package ca.bkaw.mch;
 
 import ca.bkaw.mch.nbt.NbtCompound;
+import ca.bkaw.mch.nbt.NbtReader;
 import ca.bkaw.mch.nbt.NbtTag;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A storage that stores nbt tags, usually different versions of the same tag.
  * <p>
  * Each nbt tag is associated with a version number unique to the storage.
+ * <p>
+ * The nbt tags are kept serialized and are only parsed when requested. Identical
+ * nbt tags are found by comparing a fingerprint of the serialized bytes, and then
+ * the bytes themselves.
  */
 public class NbtStorage {
-    private final Map<Integer, NbtCompound> data;
-    private final Map<NbtCompound, Integer> reverse;
+    private final Map<Integer, StoredNbt> data;
+    private final Map<Long, List<Integer>> versionNumbersByFingerprint;
+    private int nextVersionNumber;
 
     /**
      * Read a serialized {@link NbtStorage}.
@@ -31,12 +45,24 @@ public class NbtStorage {
         MchVersion.validate(mchVersion, 2);
         int size = dataInput.readInt();
         this.data = new LinkedHashMap<>(size);
-        this.reverse = new HashMap<>(size);
+        this.versionNumbersByFingerprint = new HashMap<>(size);
+        int maxVersionNumber = 0;
         for (int i = 0; i < size; i++) {
             int versionNumber = dataInput.readInt();
-            NbtCompound nbt = NbtTag.readCompound(dataInput);
-            this.set(versionNumber, nbt);
+            maxVersionNumber = Math.max(maxVersionNumber, versionNumber);
+            if (mchVersion > 16) {
+                long fingerprint = dataInput.readLong();
+                byte[] bytes = new byte[dataInput.readInt()];
+                dataInput.readFully(bytes);
+                this.set(versionNumber, new StoredNbt(bytes, fingerprint));
+            } else {
+                // Before mch version 17 the parsed nbt was stored.
+                NbtCompound nbt = NbtTag.readCompound(dataInput);
+                this.set(versionNumber, StoredNbt.of(nbt));
+            }
         }
+        // Before mch version 18 the next version number was not stored.
+        this.nextVersionNumber = mchVersion > 17 ? dataInput.readInt() : maxVersionNumber + 1;
     }
 
     /**
@@ -44,12 +70,13 @@ public class NbtStorage {
      */
     public NbtStorage() {
         this.data = new LinkedHashMap<>();
-        this.reverse = new HashMap<>();
+        this.versionNumbersByFingerprint = new HashMap<>();
+        this.nextVersionNumber = 1;
     }
 
-    private void set(int versionNumber, NbtCompound nbt) {
+    private void set(int versionNumber, StoredNbt nbt) {
         this.data.put(versionNumber, nbt);
-        this.reverse.put(nbt, versionNumber);
+        this.versionNumbersByFingerprint.computeIfAbsent(nbt.fingerprint(), k -> new ArrayList<>(1)).add(versionNumber);
     }
 
     /**
@@ -61,38 +88,71 @@ public class NbtStorage {
     public void write(DataOutput dataOutput) throws IOException {
         dataOutput.writeInt(MchVersion.VERSION_NUMBER);
         dataOutput.writeInt(this.data.size());
-        for (Map.Entry<Integer, NbtCompound> entry : this.data.entrySet()) {
+        for (Map.Entry<Integer, StoredNbt> entry : this.data.entrySet()) {
             int versionNumber = entry.getKey();
-            NbtCompound dataPartNbt = entry.getValue();
+            StoredNbt dataPartNbt = entry.getValue();
             dataOutput.writeInt(versionNumber);
-            NbtTag.writeTag(dataOutput, dataPartNbt);
+            dataOutput.writeLong(dataPartNbt.fingerprint());
+            dataOutput.writeInt(dataPartNbt.bytes().length);
+            dataOutput.write(dataPartNbt.bytes());
         }
+        dataOutput.writeInt(this.nextVersionNumber);
     }
 
     /**
      * Store an nbt tag in this storage.
      * <p>
      * If an identical nbt tag is already stored in this storage, the nbt tag will not
-     * be stored again and the existing version number will be returned.
+     * be stored again and the existing version number will be returned. In that case
+     * the nbt tag is compared to the stored bytes without being serialized.
+     * <p>
+     * Storing a {@link NbtCompound#freeze() frozen} nbt tag avoids computing its
+     * size and fingerprint more than once.
      *
      * @param nbt The nbt tag to store.
      * @return The version number the nbt tag was stored as.
      */
     public int store(@NotNull NbtCompound nbt) {
-        Integer existingVersionNumber = this.reverse.get(nbt);
-        if (existingVersionNumber != null) {
-            return existingVersionNumber;
-        }
-        int versionNumber = 1;
-        while (this.data.containsKey(versionNumber)) {
-            versionNumber++;
+        long fingerprint = nbt.fingerprint();
+        List<Integer> candidates = this.versionNumbersByFingerprint.get(fingerprint);
+        if (candidates != null) {
+            for (int candidate : candidates) {
+                if (matches(this.data.get(candidate).bytes(), nbt)) {
+                    return candidate;
+                }
+            }
         }
-        this.set(versionNumber, nbt);
+        int versionNumber = this.nextVersionNumber++;
+        this.set(versionNumber, StoredNbt.of(nbt, fingerprint));
         return versionNumber;
     }
 
+    /**
+     * Check whether the nbt tag serializes to the specified bytes.
+     *
+     * @param bytes The bytes.
+     * @param nbt The nbt tag.
+     * @return Whether the nbt is equal to the bytes.
+     */
+    private static boolean matches(byte[] bytes, NbtCompound nbt) {
+        // The id and empty name of the unnamed tag take three bytes.
+        if (bytes.length != nbt.byteSize() + 3) {
+            return false;
+        }
+        MatchingOutputStream output = new MatchingOutputStream(bytes);
+        try {
+            NbtTag.writeTag(new DataOutputStream(output), nbt);
+        } catch (IOException e) {
+            // Comparing does not throw
+            throw new UncheckedIOException(e);
+        }
+        return output.matches();
+    }
+
     /**
      * Get an nbt tag from the storage by the tag's version number.
+     * <p>
+     * The nbt tag is parsed on every call, so the returned tag may be modified.
      *
      * @param versionNumber The version number.
      * @return The tag.
@@ -100,15 +160,101 @@ public class NbtStorage {
      */
     @NotNull
     public NbtCompound get(int versionNumber) {
-        NbtCompound nbt = this.data.get(versionNumber);
+        StoredNbt nbt = this.data.get(versionNumber);
+        if (nbt == null) {
+            throw new RuntimeException("Unable to find nbt with version number " + versionNumber + " in the nbt storage.");
+        }
+        try {
+            return NbtReader.readCompound(nbt.bytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read nbt with version number " + versionNumber + " in the nbt storage.", e);
+        }
+    }
+
+    /**
+     * Get only the specified keys of an nbt tag from the storage by the tag's
+     * version number.
+     *
+     * @param versionNumber The version number.
+     * @param keys The keys to read.
+     * @return A compound with the keys that were present in the tag.
+     * @throws RuntimeException If the nbt tag could not be found.
+     * @see NbtReader#readCompound(byte[], Set)
+     */
+    @NotNull
+    public NbtCompound get(int versionNumber, Set<String> keys) {
+        StoredNbt nbt = this.data.get(versionNumber);
         if (nbt == null) {
             throw new RuntimeException("Unable to find nbt with version number " + versionNumber + " in the nbt storage.");
         }
-        return nbt;
+        try {
+            return NbtReader.readCompound(nbt.bytes(), keys);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read nbt with version number " + versionNumber + " in the nbt storage.", e);
+        }
     }
 
     @Override
     public String toString() {
-        return "NbtStorage" + this.data;
+        return "NbtStorage" + this.data.keySet();
+    }
+
+    /**
+     * A serialized nbt compound.
+     *
+     * @param bytes The nbt compound written as an unnamed nbt tag.
+     * @param fingerprint The hash of the bytes.
+     */
+    private record StoredNbt(byte[] bytes, long fingerprint) {
+        public static StoredNbt of(NbtCompound nbt) {
+            return of(nbt, nbt.fingerprint());
+        }
+
+        public static StoredNbt of(NbtCompound nbt, long fingerprint) {
+            ByteArrayOutputStream outBytes = new ByteArrayOutputStream(nbt.byteSize() + 3);
+            try {
+                NbtTag.writeTag(new DataOutputStream(outBytes), nbt);
+            } catch (IOException e) {
+                // Writing to a byte array does not throw
+                throw new UncheckedIOException(e);
+            }
+            return new StoredNbt(outBytes.toByteArray(), fingerprint);
+        }
+    }
+
+    /**
+     * An output stream that compares the written bytes to expected bytes.
+     */
+    private static class MatchingOutputStream extends OutputStream {
+        private final byte[] expected;
+        private int position;
+        private boolean mismatch;
+
+        private MatchingOutputStream(byte[] expected) {
+            this.expected = expected;
+        }
+
+        @Override
+        public void write(int b) {
+            if (this.mismatch || this.position >= this.expected.length || this.expected[this.position] != (byte) b) {
+                this.mismatch = true;
+                return;
+            }
+            this.position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (this.mismatch || len > this.expected.length - this.position
+                || !Arrays.equals(b, off, off + len, this.expected, this.position, this.position + len)) {
+                this.mismatch = true;
+                return;
+            }
+            this.position += len;
+        }
+
+        public boolean matches() {
+            return !this.mismatch && this.position == this.expected.length;
+        }
     }
 }
@@ -45,7 +45,12 @@ public class Sha1 {
         return new Sha1(bytes);
     }
 
-    private static MessageDigest getMessageDigest() {
+    /**
+     * Create a new {@link MessageDigest} for computing SHA-1 hashes.
+     *
+     * @return The message digest.
+     */
+    public static MessageDigest getMessageDigest() {
         try {
             return MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException e) {
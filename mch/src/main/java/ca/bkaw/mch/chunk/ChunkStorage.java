@@ -6,14 +6,16 @@ import ca.bkaw.mch.chunk.parts.ChunkDataPart;
 import ca.bkaw.mch.chunk.parts.ChunkDataPartStorage;
 import ca.bkaw.mch.chunk.parts.ChunkDataParts;
 import ca.bkaw.mch.nbt.NbtCompound;
-import ca.bkaw.mch.util.BiMap;
+import ca.bkaw.mch.util.IntBiMap;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Storage of different versions of a chunk.
@@ -21,60 +23,103 @@ import java.util.Map;
 public class ChunkStorage {
     public static final int MAGIC = FileMagic.CHUNK_STORAGE;
     
-    private final BiMap<Integer, MchChunk> chunkVersions;
-    private final Map<Byte, ChunkDataPartStorage> chunkPartStorage;
+    private final IntBiMap<MchChunk> chunkVersions;
+    /**
+     * The storages indexed by chunk data part id.
+     */
+    private final ChunkDataPartStorage[] chunkPartStorage;
+    private int nextVersionNumber;
 
     public ChunkStorage(DataInput dataInput) throws IOException {
         FileMagic.validate(dataInput, MAGIC);
         int mchVersion = dataInput.readInt();
         MchVersion.validate(mchVersion, 8);
         int chunkVersionsSize = dataInput.readInt();
-        this.chunkVersions = new BiMap<>(chunkVersionsSize);
+        this.chunkVersions = new IntBiMap<>(chunkVersionsSize);
+        int maxVersionNumber = 0;
         for (int i = 0; i < chunkVersionsSize; i++) {
             int chunkVersionNumber = dataInput.readInt();
             MchChunk mchChunk = new MchChunk(dataInput);
             this.chunkVersions.put(chunkVersionNumber, mchChunk);
+            maxVersionNumber = Math.max(maxVersionNumber, chunkVersionNumber);
         }
+        // Before mch version 18 the next version number was not stored.
+        this.nextVersionNumber = mchVersion > 17 ? dataInput.readInt() : maxVersionNumber + 1;
         int chunkPartStorageSize = dataInput.readInt();
-        this.chunkPartStorage = new HashMap<>(chunkPartStorageSize);
+        this.chunkPartStorage = new ChunkDataPartStorage[ChunkDataParts.getIdLimit()];
         for (int i = 0; i < chunkPartStorageSize; i++) {
             byte dataPartId = dataInput.readByte();
             ChunkDataPart dataPart = ChunkDataParts.byId(dataPartId);
-            ChunkDataPartStorage dataPartStorage = dataPart.readStorage(dataInput);
-            this.chunkPartStorage.put(dataPartId, dataPartStorage);
+            ChunkDataPartStorage dataPartStorage = dataPart.readStorage(dataInput, mchVersion);
+            this.chunkPartStorage[dataPartId] = dataPartStorage;
         }
     }
 
     public ChunkStorage() {
-        this.chunkVersions = new BiMap<>();
-        this.chunkPartStorage = new HashMap<>();
+        this.chunkVersions = new IntBiMap<>();
+        this.chunkPartStorage = new ChunkDataPartStorage[ChunkDataParts.getIdLimit()];
+        this.nextVersionNumber = 1;
     }
 
     public void write(DataOutput dataOutput) throws IOException {
         dataOutput.writeInt(MAGIC);
         dataOutput.writeInt(MchVersion.VERSION_NUMBER);
         dataOutput.writeInt(this.chunkVersions.size());
-        for (Map.Entry<Integer, MchChunk> entry : this.chunkVersions.entrySet()) {
-            dataOutput.writeInt(entry.getKey());
-            entry.getValue().write(dataOutput);
+        for (int i = 0; i < this.chunkVersions.size(); i++) {
+            dataOutput.writeInt(this.chunkVersions.keyAt(i));
+            this.chunkVersions.valueAt(i).write(dataOutput);
+        }
+        dataOutput.writeInt(this.nextVersionNumber);
+        int chunkPartStorageSize = 0;
+        for (ChunkDataPartStorage partStorage : this.chunkPartStorage) {
+            if (partStorage != null) {
+                chunkPartStorageSize++;
+            }
         }
-        dataOutput.writeInt(this.chunkPartStorage.size());
-        for (Map.Entry<Byte, ChunkDataPartStorage> entry : this.chunkPartStorage.entrySet()) {
-            dataOutput.writeByte(entry.getKey());
-            entry.getValue().write(dataOutput);
+        dataOutput.writeInt(chunkPartStorageSize);
+        for (int dataPartId = 0; dataPartId < this.chunkPartStorage.length; dataPartId++) {
+            ChunkDataPartStorage partStorage = this.chunkPartStorage[dataPartId];
+            if (partStorage != null) {
+                dataOutput.writeByte(dataPartId);
+                partStorage.write(dataOutput);
+            }
         }
     }
 
+    /**
+     * Store a version of a chunk.
+     * <p>
+     * The chunk nbt is split into its data parts, which are frozen when stored, so
+     * the chunk nbt must not be used afterwards.
+     *
+     * @param chunk The chunk nbt.
+     * @param lastModified The last modified time of the chunk, in epoch seconds.
+     * @return The chunk version number.
+     */
     public int store(NbtCompound chunk, int lastModified) {
+        return this.store(chunk, lastModified, ChunkDataParts.CHUNK_DATA_PARTS);
+    }
+
+    /**
+     * Store a version of a chunk, split into the specified data parts.
+     *
+     * @param chunk The chunk nbt.
+     * @param lastModified The last modified time of the chunk, in epoch seconds.
+     * @param chunkDataParts The data parts to split the chunk into. The
+     *                       {@link ChunkDataParts#REMAINING} part must be last.
+     * @return The chunk version number.
+     * @see #store(NbtCompound, int)
+     */
+    public int store(NbtCompound chunk, int lastModified, List<ChunkDataPart> chunkDataParts) {
         MchChunk mchChunk = new MchChunk(lastModified);
 
         // Split the chunk nbt into parts
-        for (ChunkDataPart chunkDataPart : ChunkDataParts.CHUNK_DATA_PARTS) {
+        for (ChunkDataPart chunkDataPart : chunkDataParts) {
             // Get the storage for this data part
-            ChunkDataPartStorage partStorage = this.chunkPartStorage.get(chunkDataPart.getId());
+            ChunkDataPartStorage partStorage = this.chunkPartStorage[chunkDataPart.getId()];
             if (partStorage == null) {
                 partStorage = chunkDataPart.createStorage();
-                this.chunkPartStorage.put(chunkDataPart.getId(), partStorage);
+                this.chunkPartStorage[chunkDataPart.getId()] = partStorage;
             }
 
             // Store the part
@@ -87,16 +132,12 @@ public class ChunkStorage {
         // Check if the newly created MchChunk instance is equal to an already existing
         // chunk in the storage. In that case we reuse the existing object instead of
         // storing it again and return the version number of the existing chunk.
-        Integer existingVersionNumber = this.chunkVersions.reverse().get(mchChunk);
-        if (existingVersionNumber != null) {
+        int existingVersionNumber = this.chunkVersions.getKey(mchChunk, 0);
+        if (existingVersionNumber != 0) {
             return existingVersionNumber;
         }
 
-        // Find an unoccupied version number.
-        int chunkVersionNumber = 1;
-        while (this.chunkVersions.containsKey(chunkVersionNumber)) {
-            chunkVersionNumber++;
-        }
+        int chunkVersionNumber = this.nextVersionNumber++;
 
         this.chunkVersions.put(chunkVersionNumber, mchChunk);
 
@@ -113,21 +154,40 @@ public class ChunkStorage {
     }
 
     public RegionFileChunk restore(int versionNumber) {
+        return this.restore(versionNumber, null);
+    }
+
+    /**
+     * Restore only the specified top-level keys of a chunk.
+     * <p>
+     * Data parts that do not hold any of the keys are not read.
+     *
+     * @param versionNumber The chunk version number.
+     * @param keys The keys to restore, or null to restore the full chunk.
+     * @return The chunk with only the keys that were present.
+     */
+    public RegionFileChunk restore(int versionNumber, @Nullable Set<String> keys) {
         MchChunk mchChunk = getChunk(versionNumber);
         // Merge the nbt that was split back into one compound
         NbtCompound chunkNbt = new NbtCompound();
-        for (Map.Entry<Byte, Integer> entry : mchChunk.nbtPartVersionNumbers.entrySet()) {
-            byte dataPartId = entry.getKey();
-            int dataPartVersionNumber = entry.getValue();
+        for (int dataPartId = 0; dataPartId < mchChunk.nbtPartVersionNumbers.length; dataPartId++) {
+            if (!mchChunk.hasNbtPart(dataPartId)) {
+                continue;
+            }
+            int dataPartVersionNumber = mchChunk.nbtPartVersionNumbers[dataPartId];
 
             // Get the data part storage
-            ChunkDataPartStorage partStorage = this.chunkPartStorage.get(dataPartId);
+            ChunkDataPartStorage partStorage = this.chunkPartStorage[dataPartId];
             if (partStorage == null) {
                 throw new RuntimeException("Chunk requested data part id " + dataPartId + " but no storage for that data part existed.");
             }
 
             // Restore this part of the chunk nbt
-            partStorage.restorePart(chunkNbt, dataPartVersionNumber);
+            if (keys == null) {
+                partStorage.restorePart(chunkNbt, dataPartVersionNumber);
+            } else {
+                partStorage.restorePart(chunkNbt, dataPartVersionNumber, keys);
+            }
         }
 
         return new RegionFileChunk(chunkNbt, mchChunk.lastModified);
@@ -137,40 +197,76 @@ public class ChunkStorage {
         return this.getChunk(versionNumber).lastModified;
     }
 
+    /**
+     * Get the version number that the next new version of the chunk will get.
+     *
+     * @return The next chunk version number.
+     */
+    public int getNextVersionNumber() {
+        return this.nextVersionNumber;
+    }
+
+    /**
+     * Check whether no versions of the chunk are stored.
+     *
+     * @return Whether the storage is empty.
+     */
+    public boolean isEmpty() {
+        return this.chunkVersions.isEmpty();
+    }
+
     /**
      * A specific version of a chunk.
      */
     private static class MchChunk {
-        private final Map<Byte, Integer> nbtPartVersionNumbers;
+        /**
+         * The version numbers indexed by chunk data part id. Only the ids in
+         * {@link #nbtParts} are present.
+         */
+        private final int[] nbtPartVersionNumbers;
+        /**
+         * A bit mask of the chunk data part ids present in this chunk.
+         */
+        private long nbtParts;
         private final int lastModified;
 
         public MchChunk(DataInput dataInput) throws IOException {
             this.lastModified = dataInput.readInt();
             int size = dataInput.readInt();
-            this.nbtPartVersionNumbers = new HashMap<>(size);
+            this.nbtPartVersionNumbers = new int[ChunkDataParts.getIdLimit()];
             for (int i = 0; i < size; i++) {
                 byte dataPartId = dataInput.readByte();
                 int versionNumber = dataInput.readInt();
-                this.nbtPartVersionNumbers.put(dataPartId, versionNumber);
+                if (dataPartId < 0 || dataPartId >= this.nbtPartVersionNumbers.length) {
+                    throw new IllegalArgumentException("Unknown chunk data part id: " + dataPartId);
+                }
+                this.setNbtPartVersionNumber(dataPartId, versionNumber);
             }
         }
 
         public MchChunk(int lastModified) {
             this.lastModified = lastModified;
-            this.nbtPartVersionNumbers = new HashMap<>();
+            this.nbtPartVersionNumbers = new int[ChunkDataParts.getIdLimit()];
         }
 
         public void write(DataOutput dataOutput) throws IOException {
             dataOutput.writeInt(this.lastModified);
-            dataOutput.writeInt(this.nbtPartVersionNumbers.size());
-            for (Map.Entry<Byte, Integer> entry : this.nbtPartVersionNumbers.entrySet()) {
-                dataOutput.writeByte(entry.getKey());
-                dataOutput.writeInt(entry.getValue());
+            dataOutput.writeInt(Long.bitCount(this.nbtParts));
+            for (int dataPartId = 0; dataPartId < this.nbtPartVersionNumbers.length; dataPartId++) {
+                if (this.hasNbtPart(dataPartId)) {
+                    dataOutput.writeByte(dataPartId);
+                    dataOutput.writeInt(this.nbtPartVersionNumbers[dataPartId]);
+                }
             }
         }
 
         public void setNbtPartVersionNumber(byte dataPartId, int versionNumber) {
-            this.nbtPartVersionNumbers.put(dataPartId, versionNumber);
+            this.nbtPartVersionNumbers[dataPartId] = versionNumber;
+            this.nbtParts |= 1L << dataPartId;
+        }
+
+        public boolean hasNbtPart(int dataPartId) {
+            return (this.nbtParts & (1L << dataPartId)) != 0;
         }
 
         @Override
@@ -181,19 +277,31 @@ public class ChunkStorage {
             MchChunk mchChunk = (MchChunk) o;
 
             if (this.lastModified != mchChunk.lastModified) return false;
-            return this.nbtPartVersionNumbers.equals(mchChunk.nbtPartVersionNumbers);
+            if (this.nbtParts != mchChunk.nbtParts) return false;
+            // Parts that are not present always have version number 0
+            return Arrays.equals(this.nbtPartVersionNumbers, mchChunk.nbtPartVersionNumbers);
         }
 
         @Override
         public int hashCode() {
-            int result = this.nbtPartVersionNumbers.hashCode();
+            int result = Arrays.hashCode(this.nbtPartVersionNumbers);
+            result = 31 * result + Long.hashCode(this.nbtParts);
             result = 31 * result + this.lastModified;
             return result;
         }
 
         @Override
         public String toString() {
-            return "MchChunk" + this.nbtPartVersionNumbers;
+            StringBuilder str = new StringBuilder("MchChunk{");
+            for (int dataPartId = 0; dataPartId < this.nbtPartVersionNumbers.length; dataPartId++) {
+                if (this.hasNbtPart(dataPartId)) {
+                    if (str.length() > "MchChunk{".length()) {
+                        str.append(", ");
+                    }
+                    str.append(dataPartId).append('=').append(this.nbtPartVersionNumbers[dataPartId]);
+                }
+            }
+            return str.append('}').toString();
         }
     }
 }
@@ -30,5 +30,13 @@ public abstract class ChunkDataPart {
 
     public abstract ChunkDataPartStorage createStorage();
 
-    public abstract ChunkDataPartStorage readStorage(DataInput dataInput) throws IOException;
+    /**
+     * Read a storage for this type of data part.
+     *
+     * @param dataInput The data input to read from.
+     * @param mchVersion The mch version of the chunk storage the storage is in.
+     * @return The storage.
+     * @throws IOException If an I/O error occurs.
+     */
+    public abstract ChunkDataPartStorage readStorage(DataInput dataInput, int mchVersion) throws IOException;
 }
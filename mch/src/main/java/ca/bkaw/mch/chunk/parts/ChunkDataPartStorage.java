@@ -1,9 +1,11 @@
 package ca.bkaw.mch.chunk.parts;
 
 import ca.bkaw.mch.nbt.NbtCompound;
+import ca.bkaw.mch.nbt.NbtTag;
 
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Set;
 
 /**
  * An object responsible for storing a particular part of an nbt compound.
@@ -26,6 +28,28 @@ public interface ChunkDataPartStorage {
      */
     void restorePart(NbtCompound chunk, int versionNumber);
 
+    /**
+     * Restore only the specified top-level keys of this data part and merge them
+     * into the chunk nbt.
+     * <p>
+     * Storages that can avoid reading the rest of the data part should override
+     * this method.
+     *
+     * @param chunk The chunk nbt.
+     * @param versionNumber The version number of this part to restore.
+     * @param keys The keys to restore.
+     */
+    default void restorePart(NbtCompound chunk, int versionNumber, Set<String> keys) {
+        NbtCompound part = new NbtCompound();
+        this.restorePart(part, versionNumber);
+        for (String key : keys) {
+            NbtTag tag = part.get(key);
+            if (tag != null) {
+                chunk.set(key, tag);
+            }
+        }
+    }
+
     /**
      * Write this storage.
      *
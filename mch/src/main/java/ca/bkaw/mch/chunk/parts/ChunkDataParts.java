@@ -12,6 +12,7 @@ import java.util.Set;
  */
 public class ChunkDataParts {
     private static final Map<Byte, ChunkDataPart> BY_ID = new HashMap<>();
+    private static int idLimit = 0;
 
     /**
      * The {@link ChunkDataPart} that stores the remaining chunk data that was not
@@ -23,7 +24,8 @@ public class ChunkDataParts {
      */
     public static final ChunkDataPart FREQUENT_UPDATERS = register(new SimpleChunkDataPart(2, Set.of("LastUpdate", "InhabitedTime")));
     /**
-     * The "sections" tag.
+     * The "sections" tag. Replaced by {@link #SPLIT_SECTIONS}, but still used to
+     * restore chunks stored before mch version 24.
      */
     public static final ChunkDataPart SECTIONS = register(new SectionChunkDataPart(3));
     /**
@@ -34,6 +36,19 @@ public class ChunkDataParts {
      * Heightmaps.
      */
     public static final ChunkDataPart HEIGHTMAPS = register(new SimpleChunkDataPart(5, Set.of("Heightmaps")));
+    /**
+     * The entities in an entity chunk.
+     */
+    public static final ChunkDataPart ENTITIES = register(new SimpleChunkDataPart(6, Set.of("Entities")));
+    /**
+     * The sections of a point of interest chunk.
+     */
+    public static final ChunkDataPart POI_SECTIONS = register(new SimpleChunkDataPart(7, Set.of("Sections")));
+    /**
+     * The "sections" tag, with each section split into separately versioned sub
+     * parts.
+     */
+    public static final ChunkDataPart SPLIT_SECTIONS = register(new SplitSectionChunkDataPart(8));
 
     // TODO maybe data version should be separate? When the world updates and no
     //  changes have been made to the chunk format we will need to save REMAINING
@@ -47,19 +62,51 @@ public class ChunkDataParts {
      */
     public static final List<ChunkDataPart> CHUNK_DATA_PARTS = List.of(
         FREQUENT_UPDATERS,
-        SECTIONS,
+        SPLIT_SECTIONS,
         BLOCK_ENTITIES,
         HEIGHTMAPS,
         REMAINING
     );
 
+    /**
+     * The sequence of {@link ChunkDataPart}s used for chunks in entity region files.
+     * The remaining data is only the data version and position of the chunk.
+     */
+    public static final List<ChunkDataPart> ENTITY_DATA_PARTS = List.of(
+        ENTITIES,
+        REMAINING
+    );
+
+    /**
+     * The sequence of {@link ChunkDataPart}s used for chunks in point of interest
+     * region files.
+     */
+    public static final List<ChunkDataPart> POI_DATA_PARTS = List.of(
+        POI_SECTIONS,
+        REMAINING
+    );
+
     private ChunkDataParts() {}
 
     private static ChunkDataPart register(ChunkDataPart chunkDataPart) {
+        if (chunkDataPart.getId() < 0 || chunkDataPart.getId() >= Long.SIZE) {
+            throw new IllegalArgumentException("Chunk data part ids must be between 0 and " + (Long.SIZE - 1));
+        }
         BY_ID.put(chunkDataPart.getId(), chunkDataPart);
+        idLimit = Math.max(idLimit, chunkDataPart.getId() + 1);
         return chunkDataPart;
     }
 
+    /**
+     * Get one more than the highest registered chunk data part id. Useful for
+     * creating arrays indexed by chunk data part id.
+     *
+     * @return The id limit.
+     */
+    public static int getIdLimit() {
+        return idLimit;
+    }
+
     public static ChunkDataPart byId(byte id) {
         ChunkDataPart chunkDataPart = BY_ID.get(id);
         if (chunkDataPart == null) {
@@ -82,7 +129,7 @@ public class ChunkDataParts {
         }
 
         @Override
-        public ChunkDataPartStorage readStorage(DataInput dataInput) throws IOException {
+        public ChunkDataPartStorage readStorage(DataInput dataInput, int mchVersion) throws IOException {
             return new RemainingChunkDataPartStorage(dataInput);
         }
     }
@@ -104,13 +151,13 @@ public class ChunkDataParts {
         }
 
         @Override
-        public ChunkDataPartStorage readStorage(DataInput dataInput) throws IOException {
+        public ChunkDataPartStorage readStorage(DataInput dataInput, int mchVersion) throws IOException {
             return new SimpleChunkDataPartStorage(this.keys, dataInput);
         }
     }
 
     /**
-     * @see SimpleChunkDataPartStorage
+     * @see SectionChunkDataPartStorage
      */
     public static class SectionChunkDataPart extends ChunkDataPart {
         public SectionChunkDataPart(int id) {
@@ -123,8 +170,27 @@ public class ChunkDataParts {
         }
 
         @Override
-        public ChunkDataPartStorage readStorage(DataInput dataInput) throws IOException {
-            return new SectionChunkDataPartStorage(dataInput);
+        public ChunkDataPartStorage readStorage(DataInput dataInput, int mchVersion) throws IOException {
+            return new SectionChunkDataPartStorage(dataInput, mchVersion);
+        }
+    }
+
+    /**
+     * @see SplitSectionChunkDataPartStorage
+     */
+    public static class SplitSectionChunkDataPart extends ChunkDataPart {
+        public SplitSectionChunkDataPart(int id) {
+            super((byte) id);
+        }
+
+        @Override
+        public ChunkDataPartStorage createStorage() {
+            return new SplitSectionChunkDataPartStorage();
+        }
+
+        @Override
+        public ChunkDataPartStorage readStorage(DataInput dataInput, int mchVersion) throws IOException {
+            return new SplitSectionChunkDataPartStorage(dataInput);
         }
     }
 }
@@ -6,6 +6,7 @@ import ca.bkaw.mch.nbt.NbtCompound;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Set;
 
 /**
  * A {@link ChunkDataPartStorage} that stores the data part as nbt using an
@@ -37,6 +38,7 @@ public abstract class NbtChunkDataPartStorage implements ChunkDataPartStorage {
     public int storePart(NbtCompound chunk) {
         // Extract the part of the nbt to store
         NbtCompound dataPartNbt = this.extract(chunk);
+        dataPartNbt.freeze();
 
         // Store the data part and return the version number it is stored as
         return this.nbtStorage.store(dataPartNbt);
@@ -51,6 +53,11 @@ public abstract class NbtChunkDataPartStorage implements ChunkDataPartStorage {
         chunk.merge(dataPartNbt);
     }
 
+    @Override
+    public void restorePart(NbtCompound chunk, int versionNumber, Set<String> keys) {
+        chunk.merge(this.nbtStorage.get(versionNumber, keys));
+    }
+
     @Override
     public void write(DataOutput dataOutput) throws IOException {
         this.nbtStorage.write(dataOutput);
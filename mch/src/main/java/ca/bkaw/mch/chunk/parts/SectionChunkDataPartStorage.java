@@ -4,7 +4,7 @@ import ca.bkaw.mch.NbtStorage;
 import ca.bkaw.mch.nbt.NbtCompound;
 import ca.bkaw.mch.nbt.NbtList;
 import ca.bkaw.mch.nbt.NbtTag;
-import ca.bkaw.mch.util.BiMap;
+import ca.bkaw.mch.util.IntBiMap;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -12,7 +12,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 /**
  * A chunk data part that stores the chunk sections.
@@ -30,17 +30,22 @@ public class SectionChunkDataPartStorage implements ChunkDataPartStorage {
      */
     public static final int NO_SECTIONS_TAG = 0;
 
-    private final BiMap<Integer, MchSectionsList> sectionVersions;
+    private final IntBiMap<MchSectionsList> sectionVersions;
     private final List<NbtStorage> sectionNbtStorage;
+    private int nextVersionNumber;
 
-    public SectionChunkDataPartStorage(DataInput dataInput) throws IOException {
+    public SectionChunkDataPartStorage(DataInput dataInput, int mchVersion) throws IOException {
         int sectionVersionsSize = dataInput.readInt();
-        this.sectionVersions = new BiMap<>(sectionVersionsSize);
+        this.sectionVersions = new IntBiMap<>(sectionVersionsSize);
+        int maxVersionNumber = 0;
         for (int i = 0; i < sectionVersionsSize; i++) {
             int sectionVersionNumber = dataInput.readInt();
             MchSectionsList mchSectionsList = new MchSectionsList(dataInput);
             this.sectionVersions.put(sectionVersionNumber, mchSectionsList);
+            maxVersionNumber = Math.max(maxVersionNumber, sectionVersionNumber);
         }
+        // Before mch version 18 the next version number was not stored.
+        this.nextVersionNumber = mchVersion > 17 ? dataInput.readInt() : maxVersionNumber + 1;
         int nbtStorageCount = dataInput.readInt();
         this.sectionNbtStorage = new ArrayList<>(nbtStorageCount);
         for (int i = 0; i < nbtStorageCount; i++) {
@@ -49,18 +54,20 @@ public class SectionChunkDataPartStorage implements ChunkDataPartStorage {
     }
 
     public SectionChunkDataPartStorage() {
-        this.sectionVersions = new BiMap<>();
+        this.sectionVersions = new IntBiMap<>();
         this.sectionNbtStorage = new ArrayList<>(25);
         // 25 is the usual length of the list
+        this.nextVersionNumber = 1;
     }
 
     @Override
     public void write(DataOutput dataOutput) throws IOException {
         dataOutput.writeInt(this.sectionVersions.size());
-        for (Map.Entry<Integer, MchSectionsList> entry : this.sectionVersions.entrySet()) {
-            dataOutput.writeInt(entry.getKey());
-            entry.getValue().write(dataOutput);
+        for (int i = 0; i < this.sectionVersions.size(); i++) {
+            dataOutput.writeInt(this.sectionVersions.keyAt(i));
+            this.sectionVersions.valueAt(i).write(dataOutput);
         }
+        dataOutput.writeInt(this.nextVersionNumber);
         dataOutput.writeInt(this.sectionNbtStorage.size());
         for (NbtStorage nbtStorage : this.sectionNbtStorage) {
             nbtStorage.write(dataOutput);
@@ -88,6 +95,7 @@ public class SectionChunkDataPartStorage implements ChunkDataPartStorage {
         // Store each section
         for (int sectionIndex = 0; sectionIndex < sectionsArray.length; sectionIndex++) {
             NbtCompound section = (NbtCompound) sectionsArray[sectionIndex];
+            section.freeze();
 
             NbtStorage nbtStorage = this.sectionNbtStorage.get(sectionIndex);
             int sectionVersionNumber = nbtStorage.store(section);
@@ -98,16 +106,12 @@ public class SectionChunkDataPartStorage implements ChunkDataPartStorage {
         // Check if the newly created MchSectionsList instance is equal to an already
         // existing list in the storage. In that case we reuse the existing list instead
         // of storing it again and return the version number of the existing list.
-        Integer existingVersionNumber = this.sectionVersions.reverse().get(mchSectionsList);
-        if (existingVersionNumber != null) {
+        int existingVersionNumber = this.sectionVersions.getKey(mchSectionsList, NO_SECTIONS_TAG);
+        if (existingVersionNumber != NO_SECTIONS_TAG) {
             return existingVersionNumber;
         }
 
-        // Find an unoccupied version number.
-        int versionNumber = 1;
-        while (this.sectionVersions.containsKey(versionNumber)) {
-            versionNumber++;
-        }
+        int versionNumber = this.nextVersionNumber++;
 
         this.sectionVersions.put(versionNumber, mchSectionsList);
 
@@ -138,6 +142,13 @@ public class SectionChunkDataPartStorage implements ChunkDataPartStorage {
         chunk.set(SECTIONS_TAG, sectionsNbt);
     }
 
+    @Override
+    public void restorePart(NbtCompound chunk, int versionNumber, Set<String> keys) {
+        if (keys.contains(SECTIONS_TAG)) {
+            this.restorePart(chunk, versionNumber);
+        }
+    }
+
     public static class MchSectionsList {
         private final int[] sectionVersionNumbers;
 
@@ -5,6 +5,9 @@ import ca.bkaw.mch.nbt.NbtTag;
 
 import java.io.DataInput;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -26,13 +29,26 @@ public class SimpleChunkDataPartStorage extends NbtChunkDataPartStorage {
     @Override
     protected NbtCompound extract(NbtCompound chunk) {
         NbtCompound extracted = new NbtCompound();
-        for (String key : this.keys) {
-            NbtTag tag = chunk.get(key);
-            if (tag != null) {
-                chunk.remove(key);
-                extracted.set(key, tag);
+        // Keep the order of the tags in the chunk. The iteration order of the keys
+        // can differ between runs, which would make the same data serialize
+        // differently.
+        Iterator<Map.Entry<String, NbtTag>> iterator = chunk.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, NbtTag> entry = iterator.next();
+            if (this.keys.contains(entry.getKey())) {
+                iterator.remove();
+                extracted.set(entry.getKey(), entry.getValue());
             }
         }
         return extracted;
     }
+
+    @Override
+    public void restorePart(NbtCompound chunk, int versionNumber, Set<String> keys) {
+        if (Collections.disjoint(this.keys, keys)) {
+            // None of the keys are in this data part.
+            return;
+        }
+        super.restorePart(chunk, versionNumber, keys);
+    }
 }
@@ -0,0 +1,303 @@
+package ca.bkaw.mch.chunk.parts;
+
+import ca.bkaw.mch.NbtStorage;
+import ca.bkaw.mch.nbt.NbtCompound;
+import ca.bkaw.mch.nbt.NbtList;
+import ca.bkaw.mch.nbt.NbtTag;
+import ca.bkaw.mch.util.IntBiMap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A chunk data part that stores the chunk sections, with each section split into
+ * sub parts that are versioned separately.
+ * <p>
+ * The sub parts are the block state palette, the packed block state data, the
+ * biomes, the block light, the sky light and the remaining tags of the section.
+ * Placing a block changes the block state data but usually not the palette, and
+ * light updates only change the light arrays, so only the sub parts that changed
+ * need to be saved again.
+ *
+ * @see SectionChunkDataPartStorage
+ */
+public class SplitSectionChunkDataPartStorage implements ChunkDataPartStorage {
+    /**
+     * The version number returned when there was no sections tag in the chunk.
+     */
+    public static final int NO_SECTIONS_TAG = 0;
+    /**
+     * The version number of a sub part that was not present in the section.
+     */
+    private static final int NO_SUB_PART = 0;
+
+    private static final String BLOCK_STATES = "block_states";
+    private static final String DATA = "data";
+
+    /**
+     * The sub part holding the tags of the section that are not in other sub parts.
+     */
+    private static final int REMAINING = 0;
+    /**
+     * The sub part holding the block states without the data, which is the palette.
+     */
+    private static final int PALETTE = 1;
+    /**
+     * The sub part holding the packed block state data.
+     */
+    private static final int BLOCK_STATE_DATA = 2;
+    /**
+     * The amount of sub parts each section is split into.
+     */
+    public static final int SUB_PART_COUNT = 6;
+
+    /**
+     * The keys of the sub parts that are a single tag of the section, indexed by sub
+     * part, or null for sub parts that are not. The last three sub parts are the
+     * biomes, the block light and the sky light.
+     */
+    private static final String[] SUB_PART_KEYS = { null, null, null, "biomes", "BlockLight", "SkyLight" };
+
+    private final IntBiMap<MchSplitSectionsList> sectionVersions;
+    /**
+     * The nbt storages indexed by sub part and then by section index.
+     */
+    private final List<List<NbtStorage>> subPartStorage;
+    private int nextVersionNumber;
+
+    public SplitSectionChunkDataPartStorage(DataInput dataInput) throws IOException {
+        int sectionVersionsSize = dataInput.readInt();
+        this.sectionVersions = new IntBiMap<>(sectionVersionsSize);
+        for (int i = 0; i < sectionVersionsSize; i++) {
+            int sectionVersionNumber = dataInput.readInt();
+            MchSplitSectionsList mchSectionsList = new MchSplitSectionsList(dataInput);
+            this.sectionVersions.put(sectionVersionNumber, mchSectionsList);
+        }
+        this.nextVersionNumber = dataInput.readInt();
+        this.subPartStorage = new ArrayList<>(SUB_PART_COUNT);
+        for (int subPart = 0; subPart < SUB_PART_COUNT; subPart++) {
+            int nbtStorageCount = dataInput.readInt();
+            List<NbtStorage> nbtStorages = new ArrayList<>(nbtStorageCount);
+            for (int i = 0; i < nbtStorageCount; i++) {
+                nbtStorages.add(new NbtStorage(dataInput));
+            }
+            this.subPartStorage.add(nbtStorages);
+        }
+    }
+
+    public SplitSectionChunkDataPartStorage() {
+        this.sectionVersions = new IntBiMap<>();
+        this.subPartStorage = new ArrayList<>(SUB_PART_COUNT);
+        for (int subPart = 0; subPart < SUB_PART_COUNT; subPart++) {
+            // 25 is the usual length of the list
+            this.subPartStorage.add(new ArrayList<>(25));
+        }
+        this.nextVersionNumber = 1;
+    }
+
+    @Override
+    public void write(DataOutput dataOutput) throws IOException {
+        dataOutput.writeInt(this.sectionVersions.size());
+        for (int i = 0; i < this.sectionVersions.size(); i++) {
+            dataOutput.writeInt(this.sectionVersions.keyAt(i));
+            this.sectionVersions.valueAt(i).write(dataOutput);
+        }
+        dataOutput.writeInt(this.nextVersionNumber);
+        for (List<NbtStorage> nbtStorages : this.subPartStorage) {
+            dataOutput.writeInt(nbtStorages.size());
+            for (NbtStorage nbtStorage : nbtStorages) {
+                nbtStorage.write(dataOutput);
+            }
+        }
+    }
+
+    /**
+     * Split a section into its sub parts. Sub parts that are not present are null.
+     *
+     * @param section The section nbt. Will be modified.
+     * @return The sub parts, indexed by sub part.
+     */
+    private static NbtCompound[] split(NbtCompound section) {
+        NbtCompound[] subParts = new NbtCompound[SUB_PART_COUNT];
+        for (int subPart = 0; subPart < SUB_PART_COUNT; subPart++) {
+            String key = SUB_PART_KEYS[subPart];
+            if (key == null) {
+                continue;
+            }
+            NbtTag tag = section.get(key);
+            if (tag != null) {
+                section.remove(key);
+                NbtCompound compound = new NbtCompound();
+                compound.set(key, tag);
+                subParts[subPart] = compound;
+            }
+        }
+        if (section.get(BLOCK_STATES) instanceof NbtCompound blockStates) {
+            section.remove(BLOCK_STATES);
+            // The palette sub part holds everything in the block states except for the data.
+            NbtTag data = blockStates.get(DATA);
+            if (data != null) {
+                blockStates.remove(DATA);
+                NbtCompound compound = new NbtCompound();
+                compound.set(DATA, data);
+                subParts[BLOCK_STATE_DATA] = compound;
+            }
+            subParts[PALETTE] = blockStates;
+        }
+        subParts[REMAINING] = section;
+        return subParts;
+    }
+
+    @Override
+    public int storePart(NbtCompound chunk) {
+        NbtList sections = (NbtList) chunk.get(SectionChunkDataPartStorage.SECTIONS_TAG);
+        if (sections == null) {
+            return NO_SECTIONS_TAG;
+        }
+        chunk.remove(SectionChunkDataPartStorage.SECTIONS_TAG);
+
+        NbtTag[] sectionsArray = sections.getValue();
+        MchSplitSectionsList mchSectionsList = new MchSplitSectionsList(sectionsArray.length);
+
+        // Ensure we have enough nbt storages to store all sections
+        for (List<NbtStorage> nbtStorages : this.subPartStorage) {
+            for (int i = nbtStorages.size(); i < sectionsArray.length; i++) {
+                nbtStorages.add(new NbtStorage());
+            }
+        }
+
+        // Store each sub part of each section
+        for (int sectionIndex = 0; sectionIndex < sectionsArray.length; sectionIndex++) {
+            NbtCompound[] subParts = split((NbtCompound) sectionsArray[sectionIndex]);
+            for (int subPart = 0; subPart < SUB_PART_COUNT; subPart++) {
+                NbtCompound nbt = subParts[subPart];
+                if (nbt == null) {
+                    continue;
+                }
+                nbt.freeze();
+                int versionNumber = this.subPartStorage.get(subPart).get(sectionIndex).store(nbt);
+                mchSectionsList.setVersionNumber(sectionIndex, subPart, versionNumber);
+            }
+        }
+
+        // Reuse an identical existing list instead of storing it again.
+        int existingVersionNumber = this.sectionVersions.getKey(mchSectionsList, NO_SECTIONS_TAG);
+        if (existingVersionNumber != NO_SECTIONS_TAG) {
+            return existingVersionNumber;
+        }
+
+        int versionNumber = this.nextVersionNumber++;
+
+        this.sectionVersions.put(versionNumber, mchSectionsList);
+
+        return versionNumber;
+    }
+
+    @Override
+    public void restorePart(NbtCompound chunk, int versionNumber) {
+        if (versionNumber == NO_SECTIONS_TAG) {
+            // No sections tag was present, there is nothing to add to the chunk nbt.
+            return;
+        }
+
+        MchSplitSectionsList mchSectionsList = this.sectionVersions.get(versionNumber);
+        if (mchSectionsList == null) {
+            throw new RuntimeException("Sections list with version number " + versionNumber + " was not present in storage.");
+        }
+
+        int sectionCount = mchSectionsList.getSectionCount();
+        NbtList sectionsNbt = new NbtList(NbtCompound.ID, sectionCount);
+        for (int sectionIndex = 0; sectionIndex < sectionCount; sectionIndex++) {
+            NbtCompound section = new NbtCompound();
+            NbtCompound blockStates = null;
+            for (int subPart = 0; subPart < SUB_PART_COUNT; subPart++) {
+                int subPartVersionNumber = mchSectionsList.getVersionNumber(sectionIndex, subPart);
+                if (subPartVersionNumber == NO_SUB_PART) {
+                    continue;
+                }
+                NbtCompound nbt = this.subPartStorage.get(subPart).get(sectionIndex).get(subPartVersionNumber);
+                if (subPart == PALETTE || subPart == BLOCK_STATE_DATA) {
+                    if (blockStates == null) {
+                        blockStates = new NbtCompound();
+                        section.set(BLOCK_STATES, blockStates);
+                    }
+                    blockStates.merge(nbt);
+                } else {
+                    section.merge(nbt);
+                }
+            }
+            sectionsNbt.getValue()[sectionIndex] = section;
+        }
+
+        chunk.set(SectionChunkDataPartStorage.SECTIONS_TAG, sectionsNbt);
+    }
+
+    @Override
+    public void restorePart(NbtCompound chunk, int versionNumber, Set<String> keys) {
+        if (keys.contains(SectionChunkDataPartStorage.SECTIONS_TAG)) {
+            this.restorePart(chunk, versionNumber);
+        }
+    }
+
+    /**
+     * The version numbers of the sub parts of every section in a version of the
+     * sections list.
+     */
+    public static class MchSplitSectionsList {
+        /**
+         * The sub part version numbers, {@link #SUB_PART_COUNT} for each section.
+         */
+        private final int[] versionNumbers;
+
+        public MchSplitSectionsList(DataInput dataInput) throws IOException {
+            int size = dataInput.readInt();
+            this.versionNumbers = new int[size * SUB_PART_COUNT];
+            for (int i = 0; i < this.versionNumbers.length; i++) {
+                this.versionNumbers[i] = dataInput.readInt();
+            }
+        }
+
+        public MchSplitSectionsList(int size) {
+            this.versionNumbers = new int[size * SUB_PART_COUNT];
+        }
+
+        public void write(DataOutput dataOutput) throws IOException {
+            dataOutput.writeInt(this.getSectionCount());
+            for (int versionNumber : this.versionNumbers) {
+                dataOutput.writeInt(versionNumber);
+            }
+        }
+
+        public int getSectionCount() {
+            return this.versionNumbers.length / SUB_PART_COUNT;
+        }
+
+        public int getVersionNumber(int sectionIndex, int subPart) {
+            return this.versionNumbers[sectionIndex * SUB_PART_COUNT + subPart];
+        }
+
+        public void setVersionNumber(int sectionIndex, int subPart, int versionNumber) {
+            this.versionNumbers[sectionIndex * SUB_PART_COUNT + subPart] = versionNumber;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            MchSplitSectionsList that = (MchSplitSectionsList) o;
+
+            return Arrays.equals(this.versionNumbers, that.versionNumbers);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.versionNumbers);
+        }
+    }
+}
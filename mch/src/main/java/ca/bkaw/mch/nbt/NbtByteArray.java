@@ -10,6 +10,14 @@ public class NbtByteArray implements NbtTag {
     public static final int ID = 7;
 
     private byte[] value;
+    private boolean frozen;
+    private int cachedHashCode;
+
+    public NbtByteArray() {}
+
+    public NbtByteArray(byte[] value) {
+        this.value = value;
+    }
 
     @Override
     public byte getId() {
@@ -29,10 +37,22 @@ public class NbtByteArray implements NbtTag {
         dataOutput.write(this.value);
     }
 
+    /**
+     * Get the array.
+     * <p>
+     * The array must not be modified if the tag is frozen.
+     *
+     * @return The array.
+     */
     public byte[] getValue() {
         return this.value;
     }
 
+    @Override
+    public void freeze() {
+        this.frozen = true;
+    }
+
     @Override
     public String toString() {
         return "NbtByteArray{" + this.value.length + " bytes}";
@@ -54,7 +74,14 @@ public class NbtByteArray implements NbtTag {
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(this.value);
+        if (this.frozen && this.cachedHashCode != 0) {
+            return this.cachedHashCode;
+        }
+        int hashCode = Arrays.hashCode(this.value);
+        if (this.frozen) {
+            this.cachedHashCode = hashCode;
+        }
+        return hashCode;
     }
 
     @Override
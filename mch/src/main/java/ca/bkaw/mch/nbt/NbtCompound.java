@@ -1,11 +1,15 @@
 package ca.bkaw.mch.nbt;
 
 import ca.bkaw.mch.test.TestMain;
+import ca.bkaw.mch.util.Hashing;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
@@ -17,6 +21,11 @@ public class NbtCompound implements NbtTag {
     public static final byte ID = 10;
 
     private final Map<String, NbtTag> data = new LinkedHashMap<>();
+    private boolean frozen;
+    private int cachedHashCode;
+    private int cachedByteSize = -1;
+    private long cachedFingerprint;
+    private boolean hasCachedFingerprint;
 
     @Override
     public byte getId() {
@@ -54,10 +63,12 @@ public class NbtCompound implements NbtTag {
     }
 
     public void remove(String key) {
+        this.checkNotFrozen();
         this.data.remove(key);
     }
 
     public void set(String key, NbtTag tag) {
+        this.checkNotFrozen();
         this.data.put(key, tag);
     }
 
@@ -67,11 +78,60 @@ public class NbtCompound implements NbtTag {
      * @param other The compound to merge into this one.
      */
     public void merge(NbtCompound other) {
+        this.checkNotFrozen();
         this.data.putAll(other.data);
     }
 
     public Set<Map.Entry<String, NbtTag>> entrySet() {
-        return this.data.entrySet();
+        return this.frozen ? Collections.unmodifiableMap(this.data).entrySet() : this.data.entrySet();
+    }
+
+    private void checkNotFrozen() {
+        if (this.frozen) {
+            throw new IllegalStateException("Cannot modify a frozen nbt compound.");
+        }
+    }
+
+    @Override
+    public void freeze() {
+        if (this.frozen) {
+            return;
+        }
+        this.frozen = true;
+        for (NbtTag tag : this.data.values()) {
+            tag.freeze();
+        }
+    }
+
+    /**
+     * Get a 64-bit fingerprint of this compound that can be used to quickly find
+     * identical compounds.
+     * <p>
+     * The fingerprint is the {@link Hashing#hash64(byte[])} hash of the compound
+     * written as an unnamed tag using {@link NbtTag#writeTag(DataOutput, NbtTag)},
+     * but is computed without creating the bytes. The fingerprint is cached if the
+     * compound is frozen.
+     *
+     * @return The fingerprint.
+     */
+    public long fingerprint() {
+        if (this.hasCachedFingerprint) {
+            return this.cachedFingerprint;
+        }
+        // The id and empty name of the unnamed tag take three bytes.
+        Hashing.Hash64OutputStream hash = new Hashing.Hash64OutputStream(this.byteSize() + 3);
+        try {
+            NbtTag.writeTag(new DataOutputStream(hash), this);
+        } catch (IOException e) {
+            // Hashing does not throw
+            throw new UncheckedIOException(e);
+        }
+        long fingerprint = hash.getHash();
+        if (this.frozen) {
+            this.cachedFingerprint = fingerprint;
+            this.hasCachedFingerprint = true;
+        }
+        return fingerprint;
     }
 
     @Override
@@ -118,11 +178,21 @@ public class NbtCompound implements NbtTag {
 
     @Override
     public int hashCode() {
-        return this.data.hashCode();
+        if (this.frozen && this.cachedHashCode != 0) {
+            return this.cachedHashCode;
+        }
+        int hashCode = this.data.hashCode();
+        if (this.frozen) {
+            this.cachedHashCode = hashCode;
+        }
+        return hashCode;
     }
 
     @Override
     public int byteSize() {
+        if (this.cachedByteSize >= 0) {
+            return this.cachedByteSize;
+        }
         int count = 0;
         for (Map.Entry<String, NbtTag> entry : this.data.entrySet()) {
             count += 1;
@@ -130,6 +200,9 @@ public class NbtCompound implements NbtTag {
             count += entry.getValue().byteSize();
         }
         count += 1; // end tag
+        if (this.frozen) {
+            this.cachedByteSize = count;
+        }
         return count;
     }
 }
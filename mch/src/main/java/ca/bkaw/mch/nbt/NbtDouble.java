@@ -10,6 +10,12 @@ public class NbtDouble implements NbtTag {
 
     private double value;
 
+    public NbtDouble() {}
+
+    public NbtDouble(double value) {
+        this.value = value;
+    }
+
     @Override
     public byte getId() {
         return ID;
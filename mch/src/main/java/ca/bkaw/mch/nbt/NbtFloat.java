@@ -10,6 +10,12 @@ public class NbtFloat implements NbtTag {
 
     private float value;
 
+    public NbtFloat() {}
+
+    public NbtFloat(float value) {
+        this.value = value;
+    }
+
     @Override
     public byte getId() {
         return ID;
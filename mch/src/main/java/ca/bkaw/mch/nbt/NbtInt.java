@@ -10,6 +10,12 @@ public class NbtInt implements NbtTag {
 
     private int value;
 
+    public NbtInt() {}
+
+    public NbtInt(int value) {
+        this.value = value;
+    }
+
     @Override
     public byte getId() {
         return ID;
@@ -10,6 +10,14 @@ public class NbtIntArray implements NbtTag {
     public static final int ID = 11;
 
     private int[] value;
+    private boolean frozen;
+    private int cachedHashCode;
+
+    public NbtIntArray() {}
+
+    public NbtIntArray(int[] value) {
+        this.value = value;
+    }
 
     @Override
     public byte getId() {
@@ -33,10 +41,22 @@ public class NbtIntArray implements NbtTag {
         }
     }
 
+    /**
+     * Get the array.
+     * <p>
+     * The array must not be modified if the tag is frozen.
+     *
+     * @return The array.
+     */
     public int[] getValue() {
         return this.value;
     }
 
+    @Override
+    public void freeze() {
+        this.frozen = true;
+    }
+
     @Override
     public String toString() {
         return "NbtIntArray{" + this.value.length + " ints}";
@@ -58,7 +78,14 @@ public class NbtIntArray implements NbtTag {
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(this.value);
+        if (this.frozen && this.cachedHashCode != 0) {
+            return this.cachedHashCode;
+        }
+        int hashCode = Arrays.hashCode(this.value);
+        if (this.frozen) {
+            this.cachedHashCode = hashCode;
+        }
+        return hashCode;
     }
 
     @Override
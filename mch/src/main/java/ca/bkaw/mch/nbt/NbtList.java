@@ -13,6 +13,9 @@ public class NbtList implements NbtTag {
 
     private byte listTypeId;
     private NbtTag[] value;
+    private boolean frozen;
+    private int cachedHashCode;
+    private int cachedByteSize = -1;
 
     public NbtList() {}
 
@@ -59,10 +62,28 @@ public class NbtList implements NbtTag {
         return this.listTypeId;
     }
 
+    /**
+     * Get the tags in this list.
+     * <p>
+     * The array must not be modified if the list is frozen.
+     *
+     * @return The array of tags.
+     */
     public NbtTag[] getValue() {
         return this.value;
     }
 
+    @Override
+    public void freeze() {
+        if (this.frozen) {
+            return;
+        }
+        this.frozen = true;
+        for (NbtTag tag : this.value) {
+            tag.freeze();
+        }
+    }
+
     @Override
     public String toString() {
         return "NbtList{" +
@@ -104,17 +125,29 @@ public class NbtList implements NbtTag {
 
     @Override
     public int hashCode() {
+        if (this.frozen && this.cachedHashCode != 0) {
+            return this.cachedHashCode;
+        }
         int result = this.listTypeId;
         result = 31 * result + Arrays.hashCode(this.value);
+        if (this.frozen) {
+            this.cachedHashCode = result;
+        }
         return result;
     }
 
     @Override
     public int byteSize() {
+        if (this.cachedByteSize >= 0) {
+            return this.cachedByteSize;
+        }
         int count = 5;
         for (NbtTag tag : this.value) {
             count += tag.byteSize();
         }
+        if (this.frozen) {
+            this.cachedByteSize = count;
+        }
         return count;
     }
 }
@@ -10,6 +10,12 @@ public class NbtLong implements NbtTag {
 
     private long value;
 
+    public NbtLong() {}
+
+    public NbtLong(long value) {
+        this.value = value;
+    }
+
     @Override
     public byte getId() {
         return ID;
@@ -10,6 +10,14 @@ public class NbtLongArray implements NbtTag {
     public static final int ID = 12;
 
     private long[] value;
+    private boolean frozen;
+    private int cachedHashCode;
+
+    public NbtLongArray() {}
+
+    public NbtLongArray(long[] value) {
+        this.value = value;
+    }
 
     @Override
     public byte getId() {
@@ -33,10 +41,22 @@ public class NbtLongArray implements NbtTag {
         }
     }
 
+    /**
+     * Get the array.
+     * <p>
+     * The array must not be modified if the tag is frozen.
+     *
+     * @return The array.
+     */
     public long[] getValue() {
         return this.value;
     }
 
+    @Override
+    public void freeze() {
+        this.frozen = true;
+    }
+
     @Override
     public String toString() {
         return "NbtLongArray{" + this.value.length + " longs}";
@@ -58,7 +78,14 @@ public class NbtLongArray implements NbtTag {
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(this.value);
+        if (this.frozen && this.cachedHashCode != 0) {
+            return this.cachedHashCode;
+        }
+        int hashCode = Arrays.hashCode(this.value);
+        if (this.frozen) {
+            this.cachedHashCode = hashCode;
+        }
+        return hashCode;
     }
 
     @Override
@@ -0,0 +1,504 @@
+package ca.bkaw.mch.nbt;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A reader that decodes nbt from bytes in memory.
+ * <p>
+ * This produces the same tags as {@link NbtTag#readCompound(DataInput)}, but reads
+ * directly from a {@link ByteBuffer} instead of going through a {@link DataInput}
+ * one value at a time. Primitive arrays are decoded in bulk, and keys that are part
+ * of the vanilla chunk format share the same {@link String} instances instead of
+ * being decoded again for every chunk.
+ * <p>
+ * The readers reuse a buffer per thread, so reading many chunks after each other
+ * does not allocate more than the tags that are returned.
+ */
+public final class NbtReader {
+    /**
+     * Keys that appear in most chunks and entities. The set can be extended freely
+     * since it only affects which keys are shared.
+     */
+    private static final String[] KNOWN_KEYS = {
+        // Chunks
+        "DataVersion", "xPos", "yPos", "zPos", "Status", "LastUpdate", "InhabitedTime",
+        "isLightOn", "sections", "block_states", "biomes", "palette", "data", "Y",
+        "BlockLight", "SkyLight", "block_entities", "Heightmaps", "MOTION_BLOCKING",
+        "MOTION_BLOCKING_NO_LEAVES", "OCEAN_FLOOR", "OCEAN_FLOOR_WG", "WORLD_SURFACE",
+        "WORLD_SURFACE_WG", "fluid_ticks", "block_ticks", "PostProcessing", "structures",
+        "References", "starts", "blending_data", "CarvingMasks", "Lights", "Entities",
+        "UpgradeData", "Level", "Sections", "TileEntities", "TileTicks", "LiquidTicks",
+        "Biomes", "BlockStates", "Palette", "LightPopulated", "TerrainPopulated",
+        "min_section", "max_section", "below_zero_retrogen", "target_status", "missing_bedrock",
+        // Block states
+        "Name", "Properties", "axis", "facing", "half", "waterlogged", "snowy", "age",
+        "level", "distance", "persistent", "type", "shape", "north", "south", "east",
+        "west", "up", "down", "powered", "open", "hinge", "lit", "bottom", "stage",
+        "moisture", "layers", "rotation", "part", "occupied", "attachment", "face",
+        "power", "mode", "triggered", "in_wall", "hanging", "berries",
+        // Ticks and block entities
+        "i", "t", "p", "x", "y", "z", "id", "keepPacked", "Items", "Slot", "Count",
+        "count", "tag", "components", "CustomName", "Lock", "LootTable", "LootTableSeed",
+        // Entities
+        "Pos", "Motion", "Rotation", "UUID", "Air", "FallDistance", "Fire", "OnGround",
+        "Invulnerable", "PortalCooldown", "Health", "Brain", "memories", "Attributes",
+        "Base", "Modifiers", "Amount", "Operation", "HurtTime", "DeathTime",
+        "HurtByTimestamp", "AbsorptionAmount", "FallFlying", "LeftHanded", "CanPickUpLoot",
+        "PersistenceRequired", "HandItems", "ArmorItems", "HandDropChances",
+        "ArmorDropChances", "Age", "ForcedAge", "InLove", "Tags", "Passengers", "Position",
+    };
+
+    /**
+     * Hash table of known keys, indexed by {@link String#hashCode()}.
+     */
+    private static final String[] KEY_TABLE = new String[512];
+
+    /**
+     * The largest input buffer that is kept for reuse by a thread.
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    static {
+        for (String key : KNOWN_KEYS) {
+            int mask = KEY_TABLE.length - 1;
+            int slot = key.hashCode() & mask;
+            while (KEY_TABLE[slot] != null && !KEY_TABLE[slot].equals(key)) {
+                slot = (slot + 1) & mask;
+            }
+            KEY_TABLE[slot] = key;
+        }
+    }
+
+    /**
+     * Buffers that are reused by the same thread.
+     */
+    private static class Scratch {
+        private byte[] input = new byte[64 * 1024];
+        private byte[] stringBytes = new byte[256];
+        private char[] chars = new char[256];
+    }
+
+    private final ByteBuffer buffer;
+    private final Scratch scratch;
+
+    private NbtReader(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.BIG_ENDIAN);
+        this.scratch = SCRATCH.get();
+    }
+
+    /**
+     * Read nbt where the root tag must be a compound tag.
+     *
+     * @param bytes The uncompressed nbt bytes.
+     * @return The nbt compound.
+     * @throws IOException If the nbt is malformed.
+     */
+    public static NbtCompound readCompound(byte[] bytes) throws IOException {
+        return readCompound(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Read nbt where the root tag must be a compound tag.
+     * <p>
+     * The nbt is read from the position of the buffer, and the position is moved to
+     * the end of the read nbt.
+     *
+     * @param buffer The buffer holding the uncompressed nbt.
+     * @return The nbt compound.
+     * @throws IOException If the nbt is malformed.
+     */
+    public static NbtCompound readCompound(ByteBuffer buffer) throws IOException {
+        NbtTag tag = readTag(buffer);
+        if (tag instanceof NbtCompound nbtCompound) {
+            return nbtCompound;
+        }
+        throw new RuntimeException("Root tag must be a compound tag.");
+    }
+
+    /**
+     * Read only the specified keys of a compound root tag.
+     * <p>
+     * The payloads of other keys are skipped using their length prefixes without
+     * creating any tags, and reading stops once all keys have been found. This is
+     * much faster than reading the full compound when only a few small tags are
+     * needed, for example a single value in the root of a chunk.
+     *
+     * @param bytes The uncompressed nbt bytes.
+     * @param keys The keys in the root compound to read.
+     * @return A compound with the keys that were present.
+     * @throws IOException If the nbt is malformed.
+     */
+    public static NbtCompound readCompound(byte[] bytes, Set<String> keys) throws IOException {
+        return readCompound(ByteBuffer.wrap(bytes), keys);
+    }
+
+    /**
+     * Read only the specified keys of a compound root tag.
+     *
+     * @param buffer The buffer holding the uncompressed nbt.
+     * @param keys The keys in the root compound to read.
+     * @return A compound with the keys that were present.
+     * @throws IOException If the nbt is malformed.
+     * @see #readCompound(byte[], Set)
+     */
+    public static NbtCompound readCompound(ByteBuffer buffer, Set<String> keys) throws IOException {
+        NbtReader reader = new NbtReader(buffer);
+        try {
+            byte tagId = reader.buffer.get();
+            if (tagId != NbtCompound.ID) {
+                throw new RuntimeException("Root tag must be a compound tag.");
+            }
+            reader.skipString();
+
+            NbtCompound compound = new NbtCompound();
+            int found = 0;
+            while (found < keys.size() && (tagId = reader.buffer.get()) != NbtEnd.ID) {
+                String name = reader.readString(true);
+                if (keys.contains(name)) {
+                    compound.set(name, reader.readPayload(tagId));
+                    found++;
+                } else {
+                    reader.skipPayload(tagId);
+                }
+            }
+            return compound;
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Unexpected end of nbt data.");
+        }
+    }
+
+    /**
+     * Read all bytes of the stream and read nbt where the root tag must be a compound
+     * tag.
+     * <p>
+     * The bytes are read into a buffer that is reused by the current thread, which
+     * avoids allocating a new array for each chunk. The stream is not closed.
+     *
+     * @param inputStream The stream of uncompressed nbt.
+     * @return The nbt compound.
+     * @throws IOException If an I/O error occurs or the nbt is malformed.
+     */
+    public static NbtCompound readCompound(InputStream inputStream) throws IOException {
+        Scratch scratch = SCRATCH.get();
+        byte[] bytes = scratch.input;
+        int length = 0;
+        int read;
+        while ((read = inputStream.read(bytes, length, bytes.length - length)) != -1) {
+            length += read;
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                if (bytes.length <= MAX_RETAINED_BUFFER_SIZE) {
+                    scratch.input = bytes;
+                }
+            }
+        }
+        return readCompound(ByteBuffer.wrap(bytes, 0, length));
+    }
+
+    /**
+     * Read a named tag and discard the name.
+     *
+     * @param buffer The buffer holding the uncompressed nbt.
+     * @return The tag.
+     * @throws IOException If the nbt is malformed.
+     * @see NbtTag#readTag(DataInput)
+     */
+    public static NbtTag readTag(ByteBuffer buffer) throws IOException {
+        NbtReader reader = new NbtReader(buffer);
+        try {
+            byte tagId = reader.buffer.get();
+            reader.skipString();
+            return reader.readPayload(tagId);
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Unexpected end of nbt data.");
+        }
+    }
+
+    private NbtTag readPayload(byte tagId) throws IOException {
+        return switch (tagId) {
+            case NbtByte.ID -> new NbtByte(this.buffer.get());
+            case NbtShort.ID -> new NbtShort(this.buffer.getShort());
+            case NbtInt.ID -> new NbtInt(this.buffer.getInt());
+            case NbtLong.ID -> new NbtLong(this.buffer.getLong());
+            case NbtFloat.ID -> new NbtFloat(this.buffer.getFloat());
+            case NbtDouble.ID -> new NbtDouble(this.buffer.getDouble());
+            case NbtByteArray.ID -> {
+                byte[] value = new byte[this.readLength(1)];
+                this.buffer.get(value);
+                yield new NbtByteArray(value);
+            }
+            case NbtString.ID -> new NbtString(this.readString(false));
+            case NbtList.ID -> this.readList();
+            case NbtCompound.ID -> this.readCompound();
+            case NbtIntArray.ID -> {
+                int[] value = new int[this.readLength(4)];
+                int position = this.buffer.position();
+                this.buffer.asIntBuffer().get(value);
+                this.buffer.position(position + value.length * 4);
+                yield new NbtIntArray(value);
+            }
+            case NbtLongArray.ID -> {
+                long[] value = new long[this.readLength(8)];
+                int position = this.buffer.position();
+                this.buffer.asLongBuffer().get(value);
+                this.buffer.position(position + value.length * 8);
+                yield new NbtLongArray(value);
+            }
+            default -> throw new IllegalArgumentException("Unknown nbt tag type id: " + tagId);
+        };
+    }
+
+    /**
+     * Move past the payload of a tag without reading it.
+     *
+     * @param tagId The id of the tag.
+     * @throws IOException If the nbt is malformed.
+     */
+    private void skipPayload(byte tagId) throws IOException {
+        switch (tagId) {
+            case NbtByteArray.ID -> this.skip(this.readLength(1));
+            case NbtIntArray.ID -> this.skip(this.readLength(4) * 4);
+            case NbtLongArray.ID -> this.skip(this.readLength(8) * 8);
+            case NbtString.ID -> this.skipString();
+            case NbtList.ID -> {
+                byte listTypeId = this.buffer.get();
+                int size = this.buffer.getInt();
+                if (size < 0) {
+                    throw new RuntimeException("Cannot have a list with a negative size.");
+                }
+                int elementSize = fixedPayloadSize(listTypeId);
+                if (elementSize > 0) {
+                    if ((long) size * elementSize > this.buffer.remaining()) {
+                        throw new EOFException("Unexpected end of nbt data.");
+                    }
+                    this.skip(size * elementSize);
+                } else {
+                    for (int i = 0; i < size; i++) {
+                        this.skipPayload(listTypeId);
+                    }
+                }
+            }
+            case NbtCompound.ID -> {
+                byte childId;
+                while ((childId = this.buffer.get()) != NbtEnd.ID) {
+                    this.skipString();
+                    this.skipPayload(childId);
+                }
+            }
+            default -> {
+                int size = fixedPayloadSize(tagId);
+                if (size <= 0) {
+                    throw new IllegalArgumentException("Unknown nbt tag type id: " + tagId);
+                }
+                this.skip(size);
+            }
+        }
+    }
+
+    /**
+     * Get the size of the payload of tags that always have the same size.
+     *
+     * @param tagId The id of the tag.
+     * @return The size in bytes, or -1 if the size varies.
+     */
+    private static int fixedPayloadSize(byte tagId) {
+        return switch (tagId) {
+            case NbtByte.ID -> 1;
+            case NbtShort.ID -> 2;
+            case NbtInt.ID, NbtFloat.ID -> 4;
+            case NbtLong.ID, NbtDouble.ID -> 8;
+            default -> -1;
+        };
+    }
+
+    private void skip(int length) throws IOException {
+        if (length > this.buffer.remaining()) {
+            throw new EOFException("Unexpected end of nbt data.");
+        }
+        this.buffer.position(this.buffer.position() + length);
+    }
+
+    private NbtCompound readCompound() throws IOException {
+        NbtCompound compound = new NbtCompound();
+        byte tagId;
+        while ((tagId = this.buffer.get()) != NbtEnd.ID) {
+            String name = this.readString(true);
+            compound.set(name, this.readPayload(tagId));
+        }
+        return compound;
+    }
+
+    private NbtList readList() throws IOException {
+        byte listTypeId = this.buffer.get();
+        int size = this.buffer.getInt();
+        if (size < 0) {
+            throw new RuntimeException("Cannot have a list with a negative size.");
+        }
+        // End tags are only allowed as a type if the list is empty.
+        if (listTypeId == NbtEnd.ID && size > 0) {
+            throw new RuntimeException("Cannot have a non-empty list of end tags.");
+        }
+        // Every element is at least one byte, except for empty compounds.
+        if (listTypeId != NbtCompound.ID && size > this.buffer.remaining()) {
+            throw new EOFException("Unexpected end of nbt data.");
+        }
+        NbtList list = new NbtList(listTypeId, size);
+        NbtTag[] value = list.getValue();
+        for (int i = 0; i < size; i++) {
+            value[i] = this.readPayload(listTypeId);
+        }
+        return list;
+    }
+
+    /**
+     * Read the length of an array and check that the buffer holds the elements.
+     *
+     * @param elementSize The size of an element in bytes.
+     * @return The length.
+     * @throws IOException If the buffer is too short.
+     */
+    private int readLength(int elementSize) throws IOException {
+        int length = this.buffer.getInt();
+        if (length < 0 || (long) length * elementSize > this.buffer.remaining()) {
+            throw new EOFException("Unexpected end of nbt data.");
+        }
+        return length;
+    }
+
+    private void skipString() throws IOException {
+        this.skip(this.buffer.getShort() & 0xFFFF);
+    }
+
+    /**
+     * Read a string in the modified UTF-8 format used by {@link DataInput#readUTF()}.
+     *
+     * @param key Whether the string is a compound key that may be a known key.
+     * @return The string.
+     * @throws IOException If the string is malformed.
+     */
+    private String readString(boolean key) throws IOException {
+        int length = this.buffer.getShort() & 0xFFFF;
+        if (length > this.buffer.remaining()) {
+            throw new EOFException("Unexpected end of nbt data.");
+        }
+        byte[] bytes;
+        int offset;
+        if (this.buffer.hasArray()) {
+            bytes = this.buffer.array();
+            offset = this.buffer.arrayOffset() + this.buffer.position();
+        } else {
+            if (this.scratch.stringBytes.length < length) {
+                this.scratch.stringBytes = new byte[Math.max(length, this.scratch.stringBytes.length * 2)];
+            }
+            bytes = this.scratch.stringBytes;
+            offset = 0;
+            this.buffer.get(this.buffer.position(), bytes, 0, length);
+        }
+        this.buffer.position(this.buffer.position() + length);
+
+        // Compute String#hashCode at the same time as checking for ASCII.
+        int hash = 0;
+        boolean ascii = true;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = bytes[i];
+            if (b < 0) {
+                ascii = false;
+                break;
+            }
+            hash = 31 * hash + b;
+        }
+        if (ascii) {
+            if (key) {
+                String knownKey = findKnownKey(bytes, offset, length, hash);
+                if (knownKey != null) {
+                    return knownKey;
+                }
+            }
+            // Modified UTF-8 writes the null character as two bytes, so a string
+            // without negative bytes is plain ASCII.
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+        return this.decodeModifiedUtf8(bytes, offset, length);
+    }
+
+    private static String findKnownKey(byte[] bytes, int offset, int length, int hash) {
+        int mask = KEY_TABLE.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            String knownKey = KEY_TABLE[slot];
+            if (knownKey == null) {
+                return null;
+            }
+            if (knownKey.length() == length && knownKey.hashCode() == hash) {
+                boolean equal = true;
+                for (int i = 0; i < length; i++) {
+                    if (knownKey.charAt(i) != bytes[offset + i]) {
+                        equal = false;
+                        break;
+                    }
+                }
+                if (equal) {
+                    return knownKey;
+                }
+            }
+        }
+    }
+
+    private String decodeModifiedUtf8(byte[] bytes, int offset, int length) throws UTFDataFormatException {
+        if (this.scratch.chars.length < length) {
+            this.scratch.chars = new char[Math.max(length, this.scratch.chars.length * 2)];
+        }
+        char[] chars = this.scratch.chars;
+        int charCount = 0;
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            int b = bytes[i] & 0xFF;
+            switch (b >> 4) {
+                case 0, 1, 2, 3, 4, 5, 6, 7 -> {
+                    // 0xxxxxxx
+                    chars[charCount++] = (char) b;
+                    i++;
+                }
+                case 12, 13 -> {
+                    // 110xxxxx 10xxxxxx
+                    if (i + 2 > end) {
+                        throw new UTFDataFormatException("Malformed input: partial character at end");
+                    }
+                    int b2 = bytes[i + 1];
+                    if ((b2 & 0xC0) != 0x80) {
+                        throw new UTFDataFormatException("Malformed input around byte " + (i - offset));
+                    }
+                    chars[charCount++] = (char) (((b & 0x1F) << 6) | (b2 & 0x3F));
+                    i += 2;
+                }
+                case 14 -> {
+                    // 1110xxxx 10xxxxxx 10xxxxxx
+                    if (i + 3 > end) {
+                        throw new UTFDataFormatException("Malformed input: partial character at end");
+                    }
+                    int b2 = bytes[i + 1];
+                    int b3 = bytes[i + 2];
+                    if ((b2 & 0xC0) != 0x80 || (b3 & 0xC0) != 0x80) {
+                        throw new UTFDataFormatException("Malformed input around byte " + (i - offset));
+                    }
+                    chars[charCount++] = (char) (((b & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (b3 & 0x3F));
+                    i += 3;
+                }
+                default -> throw new UTFDataFormatException("Malformed input around byte " + (i - offset));
+            }
+        }
+        return new String(chars, 0, charCount);
+    }
+}
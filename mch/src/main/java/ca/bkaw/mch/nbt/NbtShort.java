@@ -10,6 +10,12 @@ public class NbtShort implements NbtTag {
 
     private short value;
 
+    public NbtShort() {}
+
+    public NbtShort(short value) {
+        this.value = value;
+    }
+
     @Override
     public byte getId() {
         return ID;
@@ -3,7 +3,6 @@ package ca.bkaw.mch.nbt;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
 public class NbtString implements NbtTag {
@@ -11,6 +10,14 @@ public class NbtString implements NbtTag {
     public static final int ID = 8;
 
     private String value;
+    private boolean frozen;
+    private int cachedByteSize = -1;
+
+    public NbtString() {}
+
+    public NbtString(String value) {
+        this.value = value;
+    }
 
     @Override
     public byte getId() {
@@ -32,9 +39,17 @@ public class NbtString implements NbtTag {
     }
 
     public void setValue(String value) {
+        if (this.frozen) {
+            throw new IllegalStateException("Cannot modify a frozen nbt string.");
+        }
         this.value = value;
     }
 
+    @Override
+    public void freeze() {
+        this.frozen = true;
+    }
+
     @Override
     public String toString() {
         return "NbtString{" + this.value + '}';
@@ -61,7 +76,14 @@ public class NbtString implements NbtTag {
 
     @Override
     public int byteSize() {
-        return stringByteSize(this.value);
+        if (this.cachedByteSize >= 0) {
+            return this.cachedByteSize;
+        }
+        int byteSize = stringByteSize(this.value);
+        if (this.frozen) {
+            this.cachedByteSize = byteSize;
+        }
+        return byteSize;
     }
 
     /**
@@ -72,6 +94,17 @@ public class NbtString implements NbtTag {
      * @return The amount of bytes.
      */
     public static int stringByteSize(String str) {
-        return 2 + str.getBytes(StandardCharsets.UTF_8).length;
+        // Count the bytes of the modified UTF-8 encoding without encoding the string.
+        int length = str.length();
+        int count = 2 + length;
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if (c >= 0x800) {
+                count += 2;
+            } else if (c >= 0x80 || c == 0) {
+                count += 1;
+            }
+        }
+        return count;
     }
 }
@@ -68,6 +68,15 @@ public interface NbtTag {
      */
     int byteSize();
 
+    /**
+     * Freeze this tag and all of its children, which means that they will not be
+     * modified anymore.
+     * <p>
+     * Frozen tags may cache their hash code and byte size instead of computing them
+     * every time. Tags that can not be modified do not need to do anything.
+     */
+    default void freeze() {}
+
     /**
      * Create a new empty nbt tag by tag id.
      * <p>
@@ -0,0 +1,139 @@
+package ca.bkaw.mch.object;
+
+import ca.bkaw.mch.Sha1;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A size-bounded cache of storage objects that have been read from a repository.
+ * <p>
+ * Objects are identified by their SHA-1 hash and are therefore never changed once
+ * stored, so a cached object is always up-to-date. The size of an object is
+ * estimated from the length of its uncompressed bytes. When the cache is full the
+ * least recently used objects are removed.
+ * <p>
+ * Objects returned from the cache are shared and are therefore
+ * {@link StorageObject#freeze() frozen}.
+ */
+public class ObjectCache {
+    /**
+     * The estimated size of the objects that are cached by default, in bytes.
+     */
+    public static final long DEFAULT_MAX_SIZE = 32 * 1024 * 1024;
+
+    private final long maxSize;
+    private final LinkedHashMap<Key, Entry> objects = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private long hits;
+    private long misses;
+
+    /**
+     * Create a new object cache.
+     *
+     * @param maxSize The maximum estimated size of the objects to keep, in bytes.
+     *                Zero disables caching.
+     */
+    public ObjectCache(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("The max size must not be negative.");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get a cached object.
+     *
+     * @param type The object storage type of the object.
+     * @param sha1 The SHA-1 hash of the object.
+     * @return The object, or null if the object is not cached.
+     * @param <T> The type of the storage object.
+     */
+    @Nullable
+    public synchronized <T extends StorageObject> T get(ObjectStorageType<T> type, Sha1 sha1) {
+        Entry entry = this.objects.get(new Key(type, sha1));
+        if (entry == null) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        //noinspection unchecked
+        return (T) entry.object();
+    }
+
+    /**
+     * Add an object to the cache and freeze it. Objects that are larger than the
+     * cache are not cached.
+     *
+     * @param type The object storage type of the object.
+     * @param sha1 The SHA-1 hash of the object.
+     * @param object The object.
+     * @param size The estimated size of the object, in bytes.
+     * @param <T> The type of the storage object.
+     */
+    public synchronized <T extends StorageObject> void put(ObjectStorageType<T> type, Sha1 sha1, T object, long size) {
+        if (size > this.maxSize) {
+            return;
+        }
+        object.freeze();
+        Entry previous = this.objects.put(new Key(type, sha1), new Entry(object, size));
+        if (previous != null) {
+            this.size -= previous.size();
+        }
+        this.size += size;
+        Iterator<Entry> iterator = this.objects.values().iterator();
+        while (this.size > this.maxSize) {
+            this.size -= iterator.next().size();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Remove all objects from the cache. The hit and miss counters are kept.
+     */
+    public synchronized void clear() {
+        this.objects.clear();
+        this.size = 0;
+    }
+
+    /**
+     * Get the amount of objects in the cache.
+     *
+     * @return The amount of objects.
+     */
+    public synchronized int size() {
+        return this.objects.size();
+    }
+
+    /**
+     * Get the estimated size of the objects in the cache.
+     *
+     * @return The size, in bytes.
+     */
+    public synchronized long getEstimatedSize() {
+        return this.size;
+    }
+
+    /**
+     * Get the amount of lookups that found a cached object.
+     *
+     * @return The amount of hits.
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Get the amount of lookups that did not find a cached object.
+     *
+     * @return The amount of misses.
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    private record Key(ObjectStorageType<?> type, Sha1 sha1) {}
+
+    private record Entry(StorageObject object, long size) {}
+}
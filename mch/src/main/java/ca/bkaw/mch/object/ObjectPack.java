@@ -0,0 +1,311 @@
+package ca.bkaw.mch.object;
+
+import ca.bkaw.mch.FileMagic;
+import ca.bkaw.mch.MchVersion;
+import ca.bkaw.mch.Sha1;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * A pack of many objects of the same object storage type stored in one file.
+ * <p>
+ * A pack consists of two files. The pack file holds the compressed objects, exactly
+ * as they would be stored as loose object files. The index file holds the sorted
+ * SHA-1 hashes of the objects together with their offset and length in the pack
+ * file. The index starts with a fanout table that holds the amount of objects whose
+ * first byte is less than or equal to each value, which narrows down the range of
+ * hashes that need to be searched.
+ * <p>
+ * The index file is written last, so a pack without an index is not used.
+ *
+ * @see ObjectPacks
+ */
+class ObjectPack {
+    public static final String PACK_EXTENSION = ".pack";
+    public static final String INDEX_EXTENSION = ".idx";
+
+    /**
+     * Orders SHA-1 hashes by their unsigned bytes, the order used in the index.
+     */
+    public static final Comparator<Sha1> ORDER = (a, b) -> Arrays.compareUnsigned(a.getBytes(), b.getBytes());
+
+    private static final int FANOUT_SIZE = 256;
+
+    private final Path packPath;
+    private final int[] fanout;
+    private final byte[] hashes;
+    private final long[] offsets;
+    private final int[] lengths;
+
+    private ObjectPack(Path packPath, int[] fanout, byte[] hashes, long[] offsets, int[] lengths) {
+        this.packPath = packPath;
+        this.fanout = fanout;
+        this.hashes = hashes;
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    /**
+     * Get the path of the pack file that belongs to an index file.
+     *
+     * @param indexPath The path to the index file.
+     * @return The path to the pack file.
+     */
+    public static Path getPackPath(Path indexPath) {
+        String fileName = indexPath.getFileName().toString();
+        String name = fileName.substring(0, fileName.length() - INDEX_EXTENSION.length());
+        return indexPath.resolveSibling(name + PACK_EXTENSION);
+    }
+
+    /**
+     * Read the index of a pack.
+     *
+     * @param indexPath The path to the index file.
+     * @return The pack.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static ObjectPack read(Path indexPath) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+        if (buffer.remaining() < 12 + FANOUT_SIZE * 4) {
+            throw new EOFException("The pack index " + indexPath + " is too short.");
+        }
+        int magic = buffer.getInt();
+        if (magic != FileMagic.PACK_INDEX) {
+            throw new RuntimeException("Expected magic " + Integer.toHexString(FileMagic.PACK_INDEX) + " but found " + Integer.toHexString(magic) + ". Is the file corrupted?");
+        }
+        int mchVersion = buffer.getInt();
+        MchVersion.validate(mchVersion, 19);
+        int count = buffer.getInt();
+
+        int[] fanout = new int[FANOUT_SIZE];
+        for (int i = 0; i < FANOUT_SIZE; i++) {
+            fanout[i] = buffer.getInt();
+        }
+        if (count < 0 || fanout[FANOUT_SIZE - 1] != count || buffer.remaining() != (long) count * (20 + 8 + 4)) {
+            throw new RuntimeException("The pack index " + indexPath + " is corrupted.");
+        }
+        byte[] hashes = new byte[count * 20];
+        buffer.get(hashes);
+        long[] offsets = new long[count];
+        buffer.asLongBuffer().get(offsets);
+        buffer.position(buffer.position() + count * 8);
+        int[] lengths = new int[count];
+        buffer.asIntBuffer().get(lengths);
+
+        return new ObjectPack(getPackPath(indexPath), fanout, hashes, offsets, lengths);
+    }
+
+    /**
+     * Write a pack of loose object files.
+     * <p>
+     * The bytes of each object file are verified to match the hash of the object.
+     *
+     * @param directory The directory to write the pack in.
+     * @param objects The paths to the loose object files, by their hash.
+     * @return The path to the index file of the written pack.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static Path write(Path directory, SortedMap<Sha1, Path> objects) throws IOException {
+        if (objects.comparator() != ORDER) {
+            throw new IllegalArgumentException("The objects must be sorted using ObjectPack.ORDER");
+        }
+        Files.createDirectories(directory);
+        int count = objects.size();
+        long[] offsets = new long[count];
+        int[] lengths = new int[count];
+        int[] fanout = new int[FANOUT_SIZE];
+        MessageDigest packName = Sha1.getMessageDigest();
+
+        Path tempPack = Files.createTempFile(directory, null, null);
+        Path tempIndex = Files.createTempFile(directory, null, null);
+        try {
+            try (FileChannel channel = FileChannel.open(tempPack, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(12);
+                header.putInt(FileMagic.PACK);
+                header.putInt(MchVersion.VERSION_NUMBER);
+                header.putInt(count);
+                header.flip();
+                writeFully(channel, header);
+
+                int i = 0;
+                for (Map.Entry<Sha1, Path> entry : objects.entrySet()) {
+                    Sha1 sha1 = entry.getKey();
+                    byte[] bytes = Files.readAllBytes(entry.getValue());
+                    MessageDigest digest = Sha1.getMessageDigest();
+                    if (!Arrays.equals(digest.digest(bytes), sha1.getBytes())) {
+                        throw new RuntimeException("The object " + sha1.asHex() + " is corrupted. Its content does not match its hash.");
+                    }
+                    offsets[i] = channel.position();
+                    lengths[i] = bytes.length;
+                    writeFully(channel, ByteBuffer.wrap(bytes));
+                    fanout[sha1.getBytes()[0] & 0xFF]++;
+                    packName.update(sha1.getBytes());
+                    i++;
+                }
+                channel.force(false);
+            }
+
+            // Make the fanout cumulative
+            for (int i = 1; i < FANOUT_SIZE; i++) {
+                fanout[i] += fanout[i - 1];
+            }
+
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempIndex)))) {
+                output.writeInt(FileMagic.PACK_INDEX);
+                output.writeInt(MchVersion.VERSION_NUMBER);
+                output.writeInt(count);
+                for (int value : fanout) {
+                    output.writeInt(value);
+                }
+                for (Sha1 sha1 : objects.keySet()) {
+                    output.write(sha1.getBytes());
+                }
+                for (long offset : offsets) {
+                    output.writeLong(offset);
+                }
+                for (int length : lengths) {
+                    output.writeInt(length);
+                }
+            }
+
+            String name = "pack-" + new Sha1(packName.digest()).asHex();
+            Path packPath = directory.resolve(name + PACK_EXTENSION);
+            Path indexPath = directory.resolve(name + INDEX_EXTENSION);
+            Files.move(tempPack, packPath, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempIndex, indexPath, StandardCopyOption.REPLACE_EXISTING);
+            return indexPath;
+        } finally {
+            Files.deleteIfExists(tempPack);
+            Files.deleteIfExists(tempIndex);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Get the amount of objects in this pack.
+     *
+     * @return The amount of objects.
+     */
+    public int size() {
+        return this.lengths.length;
+    }
+
+    /**
+     * Find the position of an object in the index.
+     *
+     * @param sha1 The hash of the object.
+     * @return The position, or -1 if the object is not in this pack.
+     */
+    private int indexOf(Sha1 sha1) {
+        byte[] key = sha1.getBytes();
+        int firstByte = key[0] & 0xFF;
+        int low = firstByte == 0 ? 0 : this.fanout[firstByte - 1];
+        int high = this.fanout[firstByte] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Arrays.compareUnsigned(this.hashes, mid * 20, mid * 20 + 20, key, 0, 20);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check whether an object is in this pack.
+     *
+     * @param sha1 The hash of the object.
+     * @return Whether the object is in this pack.
+     */
+    public boolean contains(Sha1 sha1) {
+        return this.indexOf(sha1) != -1;
+    }
+
+    /**
+     * Open a stream of the compressed bytes of an object.
+     * <p>
+     * The bytes are read from the pack file while the stream is being read.
+     *
+     * @param sha1 The hash of the object.
+     * @return The stream, which must be closed, or null if the object is not in
+     *         this pack.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Nullable
+    public InputStream openObject(Sha1 sha1) throws IOException {
+        int index = this.indexOf(sha1);
+        if (index == -1) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(this.packPath, StandardOpenOption.READ);
+        return new PackedObjectInputStream(channel, this.offsets[index], this.offsets[index] + this.lengths[index]);
+    }
+
+    /**
+     * A stream of the bytes between two offsets of a pack file.
+     */
+    private class PackedObjectInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        private PackedObjectInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (this.position >= this.end) {
+                return -1;
+            }
+            int count = (int) Math.min(len, this.end - this.position);
+            int read = this.channel.read(ByteBuffer.wrap(b, off, count), this.position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of pack file " + ObjectPack.this.packPath);
+            }
+            this.position += read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ca.bkaw.mch.object;
+
+import ca.bkaw.mch.Sha1;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link ObjectPack}s in a directory.
+ * <p>
+ * The indexes of the packs are loaded when needed and kept in memory. When an
+ * object is not found, the directory is checked for new packs.
+ */
+class ObjectPacks {
+    private final Path directory;
+    private volatile Map<Path, ObjectPack> packs = Map.of();
+    @Nullable
+    private FileTime lastModified;
+
+    public ObjectPacks(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Load packs that were added since the last time the directory was checked.
+     *
+     * @param force Whether to check the directory even if its last modified time
+     *              has not changed.
+     * @return Whether any packs were added or removed.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized boolean refresh(boolean force) throws IOException {
+        if (!Files.isDirectory(this.directory)) {
+            return false;
+        }
+        FileTime lastModified = Files.getLastModifiedTime(this.directory);
+        if (!force && lastModified.equals(this.lastModified)) {
+            return false;
+        }
+        this.lastModified = lastModified;
+
+        Map<Path, ObjectPack> packs = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, "*" + ObjectPack.INDEX_EXTENSION)) {
+            for (Path indexPath : stream) {
+                ObjectPack pack = this.packs.get(indexPath);
+                packs.put(indexPath, pack != null ? pack : ObjectPack.read(indexPath));
+            }
+        }
+        boolean changed = !packs.keySet().equals(this.packs.keySet());
+        this.packs = packs;
+        return changed;
+    }
+
+    @Nullable
+    private ObjectPack find(Sha1 sha1) {
+        for (ObjectPack pack : this.packs.values()) {
+            if (pack.contains(sha1)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check whether an object is in any of the packs.
+     *
+     * @param sha1 The hash of the object.
+     * @return Whether the object is packed.
+     * @throws IOException If an I/O error occurs.
+     */
+    public boolean contains(Sha1 sha1) throws IOException {
+        return this.find(sha1) != null || (this.refresh(false) && this.find(sha1) != null);
+    }
+
+    /**
+     * Open a stream of the compressed bytes of an object from the packs.
+     *
+     * @param sha1 The hash of the object.
+     * @return The stream, which must be closed, or null if the object is not in any
+     *         pack.
+     * @throws IOException If an I/O error occurs.
+     * @see ObjectPack#openObject(Sha1)
+     */
+    @Nullable
+    public InputStream openObject(Sha1 sha1) throws IOException {
+        ObjectPack pack = this.find(sha1);
+        if (pack == null && this.refresh(true)) {
+            pack = this.find(sha1);
+        }
+        return pack == null ? null : pack.openObject(sha1);
+    }
+
+    /**
+     * Get the packs in the directory.
+     *
+     * @return The packs.
+     * @throws IOException If an I/O error occurs.
+     */
+    public List<ObjectPack> getPacks() throws IOException {
+        this.refresh(true);
+        return new ArrayList<>(this.packs.values());
+    }
+}
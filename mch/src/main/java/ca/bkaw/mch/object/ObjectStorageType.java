@@ -1,28 +1,61 @@
 package ca.bkaw.mch.object;
 
 import ca.bkaw.mch.Sha1;
+import ca.bkaw.mch.repository.CompressionSettings;
 import ca.bkaw.mch.repository.MchRepository;
+import ca.bkaw.mch.util.SpillingOutputStream;
 import com.github.luben.zstd.ZstdInputStream;
-import com.github.luben.zstd.ZstdOutputStream;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 public class ObjectStorageType<T extends StorageObject> {
     public static final String OBJECT_STORAGE_FOLDER = "objects";
 
+    /**
+     * The largest compressed object size that is kept in memory while saving. Larger
+     * objects are written to a temporary file while being compressed.
+     */
+    private static final int MAX_IN_MEMORY_SIZE = 1024 * 1024;
+
+    public static final String PACK_FOLDER = "packs";
+
     private final String id;
     private final StorageObjectConstructor<T> constructor;
+    private final boolean cacheable;
+    private final Map<Path, ObjectPacks> packs = new ConcurrentHashMap<>();
 
     public ObjectStorageType(String id, StorageObjectConstructor<T> constructor) {
+        this(id, constructor, true);
+    }
+
+    /**
+     * Create a new object storage type.
+     *
+     * @param id The id of the object storage type.
+     * @param constructor The constructor that reads objects.
+     * @param cacheable Whether read objects may be kept in the {@link ObjectCache}.
+     *                  Should be false for objects that are large or mutable.
+     */
+    public ObjectStorageType(String id, StorageObjectConstructor<T> constructor, boolean cacheable) {
         this.id = id;
         this.constructor = constructor;
+        this.cacheable = cacheable;
     }
 
     /**
@@ -40,6 +73,21 @@ public class ObjectStorageType<T extends StorageObject> {
     }
 
 
+    /**
+     * Get the packs of this object storage type in a repository.
+     *
+     * @param repository The repository.
+     * @return The packs.
+     */
+    private ObjectPacks getPacks(MchRepository repository) {
+        Path packsPath = repository.getRoot()
+            .resolve(OBJECT_STORAGE_FOLDER)
+            .resolve(this.id)
+            .resolve(PACK_FOLDER)
+            .toAbsolutePath();
+        return this.packs.computeIfAbsent(packsPath, ObjectPacks::new);
+    }
+
     /**
      * Create the directories in the repository where objects will be stored in this
      * object storage type.
@@ -51,8 +99,25 @@ public class ObjectStorageType<T extends StorageObject> {
         Files.createDirectories(this.getObjectsPath(repository));
     }
 
+    /**
+     * Get the path of the file of a stored object.
+     *
+     * @param repository The repository.
+     * @param sha1 The SHA-1 hash that identifies the object.
+     * @return The path to the object file.
+     */
+    private Path getObjectPath(MchRepository repository, Sha1 sha1) {
+        String hex = sha1.asHex();
+        String group = hex.substring(0, 2);
+        return this.getObjectsPath(repository).resolve(group).resolve(hex + ".zst");
+    }
+
     /**
      * Save a storage object.
+     * <p>
+     * The SHA-1 hash of the compressed object is computed while the object is being
+     * written. If an object with the same hash is already stored, the object is not
+     * written to the object storage again.
      *
      * @param storageObject The object to save.
      * @param repository    The repository to save to.
@@ -60,29 +125,57 @@ public class ObjectStorageType<T extends StorageObject> {
      * @throws IOException If an I/O error occurs.
      */
     public Reference20<T> save(T storageObject, MchRepository repository) throws IOException {
-        Path objectsPath = this.getObjectsPath(repository);
+        return this.save(storageObject::write, repository);
+    }
 
+    /**
+     * Save an object by writing its uncompressed bytes.
+     * <p>
+     * Compressed bytes that exceed {@link #MAX_IN_MEMORY_SIZE} are written to a
+     * temporary file, so the memory used does not depend on the size of the object.
+     *
+     * @param writer The writer that writes the uncompressed bytes of the object.
+     * @param repository The repository to save to.
+     * @return The identifying SHA-1 hash the object was stored as.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected Reference20<T> save(ContentWriter writer, MchRepository repository) throws IOException {
+        Path objectsPath = this.getObjectsPath(repository);
         Files.createDirectories(objectsPath);
-        Path tempFile = Files.createTempFile(objectsPath, null, null);
-        try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new ZstdOutputStream(Files.newOutputStream(tempFile))))) {
-            storageObject.write(stream);
-        }
 
-        Sha1 hash = Sha1.ofFile(tempFile);
-        String hex = hash.asHex();
-        String group = hex.substring(0, 2);
+        MessageDigest digest = Sha1.getMessageDigest();
+        SpillingOutputStream output = new SpillingOutputStream(objectsPath, MAX_IN_MEMORY_SIZE);
+        try {
+            // Objects are named by the hash of their compressed bytes, so they must
+            // always be compressed the same way for unchanged objects to keep their name.
+            try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(CompressionSettings.DEFAULT.createOutputStream(new DigestOutputStream(output, digest))))) {
+                writer.write(stream);
+            }
 
-        Path groupPath = objectsPath.resolve(group);
-        Path objectPath = groupPath.resolve(hex + ".zst");
+            Sha1 hash = new Sha1(digest.digest());
+            Path objectPath = this.getObjectPath(repository, hash);
 
-        Files.createDirectories(groupPath);
-        Files.move(tempFile, objectPath, StandardCopyOption.REPLACE_EXISTING);
+            if (Files.exists(objectPath) || this.getPacks(repository).contains(hash)) {
+                // An object with the same hash has the same content, so there is no
+                // need to store it again.
+                output.discard();
+            } else {
+                Files.createDirectories(objectPath.getParent());
+                output.moveTo(objectPath);
+            }
 
-        return new Reference20<>(this, hash);
+            return new Reference20<>(this, hash);
+        } catch (IOException | RuntimeException e) {
+            output.discard();
+            throw e;
+        }
     }
 
     /**
      * Read a storage object from its identifying SHA-1 hash.
+     * <p>
+     * Objects of cacheable types are kept in the {@link MchRepository#getObjectCache()
+     * object cache} of the repository and are therefore frozen.
      *
      * @param sha1 The SHA-1 hash that identifies the object to read.
      * @param repository The repository to read from.
@@ -91,22 +184,159 @@ public class ObjectStorageType<T extends StorageObject> {
      * @throws IOException If an I/O error occurs.
      */
     public T read(Sha1 sha1, MchRepository repository) throws IOException {
-        String hex = sha1.asHex();
-        String group = hex.substring(0, 2);
+        if (!this.cacheable) {
+            return this.readUncached(sha1, repository);
+        }
+        ObjectCache cache = repository.getObjectCache();
+        T object = cache.get(this, sha1);
+        if (object == null) {
+            try (DataInputStream stream = this.openStream(sha1, repository)) {
+                // Estimate the size of the object from the length of its bytes
+                CountingInputStream countingStream = new CountingInputStream(stream);
+                object = this.constructor.create(new DataInputStream(countingStream));
+                cache.put(this, sha1, object, countingStream.count);
+            }
+        }
+        return object;
+    }
+
+    private T readUncached(Sha1 sha1, MchRepository repository) throws IOException {
+        try (DataInputStream stream = this.openStream(sha1, repository)) {
+            return this.constructor.create(stream);
+        }
+    }
 
-        Path groupPath = this.getObjectsPath(repository).resolve(group);
-        Path objectPath = groupPath.resolve(hex + ".zst");
+    /**
+     * Open a stream of the uncompressed bytes of a stored object.
+     * <p>
+     * The bytes are decompressed while the stream is being read.
+     *
+     * @param sha1 The SHA-1 hash that identifies the object.
+     * @param repository The repository to read from.
+     * @return The stream, which must be closed.
+     * @throws ObjectNotFoundException If the object was not found.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected DataInputStream openStream(Sha1 sha1, MchRepository repository) throws IOException {
+        Path objectPath = this.getObjectPath(repository, sha1);
 
-        if (Files.notExists(objectPath)) {
-            throw new ObjectNotFoundException(hex, this.id);
+        InputStream inputStream;
+        try {
+            inputStream = Files.newInputStream(objectPath);
+        } catch (NoSuchFileException e) {
+            // The object may have been packed
+            InputStream packedStream = this.getPacks(repository).openObject(sha1);
+            if (packedStream == null) {
+                throw new ObjectNotFoundException(sha1.asHex(), this.id);
+            }
+            inputStream = packedStream;
         }
 
-        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(new ZstdInputStream(Files.newInputStream(objectPath))))) {
-            return this.constructor.create(stream);
+        try {
+            return new DataInputStream(new BufferedInputStream(new ZstdInputStream(inputStream)));
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
         }
     }
 
+    /**
+     * Move all loose objects of this object storage type into a new pack.
+     * <p>
+     * The loose object files are deleted once the pack has been written.
+     *
+     * @param repository The repository.
+     * @return The amount of objects that were packed.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int repack(MchRepository repository) throws IOException {
+        Path objectsPath = this.getObjectsPath(repository);
+        SortedMap<Sha1, Path> looseObjects = new TreeMap<>(ObjectPack.ORDER);
+        if (Files.isDirectory(objectsPath)) {
+            try (Stream<Path> groups = Files.list(objectsPath)) {
+                for (Path groupPath : (Iterable<Path>) groups::iterator) {
+                    if (!Files.isDirectory(groupPath)) {
+                        continue;
+                    }
+                    try (Stream<Path> objects = Files.list(groupPath)) {
+                        for (Path objectPath : (Iterable<Path>) objects::iterator) {
+                            String fileName = objectPath.getFileName().toString();
+                            if (fileName.length() == 40 + 4 && fileName.endsWith(".zst")) {
+                                looseObjects.put(Sha1.fromString(fileName.substring(0, 40)), objectPath);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (looseObjects.isEmpty()) {
+            return 0;
+        }
+
+        ObjectPacks packs = this.getPacks(repository);
+        ObjectPack.write(repository.getRoot().resolve(OBJECT_STORAGE_FOLDER).resolve(this.id).resolve(PACK_FOLDER), looseObjects);
+        // The last modified time of the directory may not have changed if an
+        // earlier pack was written recently, so look for the new pack explicitly.
+        packs.refresh(true);
+
+        // Only delete the loose objects once the pack can be found.
+        for (Map.Entry<Sha1, Path> entry : looseObjects.entrySet()) {
+            if (!packs.contains(entry.getKey())) {
+                throw new RuntimeException("The object " + entry.getKey().asHex() + " was not found in the written pack.");
+            }
+            Files.delete(entry.getValue());
+        }
+        return looseObjects.size();
+    }
+
     public String getId() {
         return this.id;
     }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                this.count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                this.count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            this.count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Writes the uncompressed bytes of an object.
+     */
+    @FunctionalInterface
+    protected interface ContentWriter {
+        /**
+         * Write the bytes of the object.
+         *
+         * @param stream The stream to write to.
+         * @throws IOException If an I/O error occurs.
+         */
+        void write(DataOutputStream stream) throws IOException;
+    }
 }
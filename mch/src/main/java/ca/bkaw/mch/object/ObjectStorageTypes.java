@@ -1,6 +1,7 @@
 package ca.bkaw.mch.object;
 
-import ca.bkaw.mch.object.blob.Blob;
+import ca.bkaw.mch.object.blob.BlobStorageType;
+import ca.bkaw.mch.object.chunkedblob.ChunkedBlob;
 import ca.bkaw.mch.object.commit.Commit;
 import ca.bkaw.mch.object.dimension.Dimension;
 import ca.bkaw.mch.object.tree.Tree;
@@ -62,9 +63,19 @@ public class ObjectStorageTypes {
 
     /**
      * Stores a binary large object, usually a file.
+     * <p>
+     * Blobs are not cached since they can be large and their bytes are mutable.
+     */
+    public static final BlobStorageType BLOB
+        = register(new BlobStorageType("blob"));
+
+    /**
+     * Stores a large file that is split into chunks.
+     * <p>
+     * Chunked blobs reference blobs (the chunks).
      */
-    public static final ObjectStorageType<Blob> BLOB
-        = register(new ObjectStorageType<>("blob", Blob::new));
+    public static final ObjectStorageType<ChunkedBlob> CHUNKED_BLOB
+        = register(new ObjectStorageType<>("chunked_blob", ChunkedBlob::new));
 
     /**
      * Get an object storage type by id.
@@ -81,7 +92,7 @@ public class ObjectStorageTypes {
         return BY_ID.values();
     }
 
-    private static <T extends StorageObject> ObjectStorageType<T> register(ObjectStorageType<T> objectStorageType) {
+    private static <S extends ObjectStorageType<?>> S register(S objectStorageType) {
         BY_ID.put(objectStorageType.getId(), objectStorageType);
         return objectStorageType;
     }
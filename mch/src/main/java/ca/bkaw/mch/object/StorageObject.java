@@ -11,6 +11,31 @@ import java.nio.file.Path;
  * An object that is stored by its SHA-1 hash on disk.
  */
 public abstract class StorageObject {
+    private boolean frozen;
+
+    /**
+     * Prevent this object from being modified. Objects are frozen when they are kept
+     * in the {@link ObjectCache}, since they are then shared.
+     */
+    public void freeze() {
+        this.frozen = true;
+    }
+
+    /**
+     * Check whether this object is frozen and can not be modified.
+     *
+     * @return Whether the object is frozen.
+     */
+    public boolean isFrozen() {
+        return this.frozen;
+    }
+
+    protected void checkNotFrozen() {
+        if (this.frozen) {
+            throw new IllegalStateException("Cannot modify a frozen storage object.");
+        }
+    }
+
     /**
      * Save this object to bytes.
      *
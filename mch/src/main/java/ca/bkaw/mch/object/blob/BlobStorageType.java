@@ -0,0 +1,84 @@
+package ca.bkaw.mch.object.blob;
+
+import ca.bkaw.mch.Sha1;
+import ca.bkaw.mch.object.ObjectNotFoundException;
+import ca.bkaw.mch.object.ObjectStorageType;
+import ca.bkaw.mch.object.Reference20;
+import ca.bkaw.mch.repository.MchRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The object storage type of blobs.
+ * <p>
+ * Blobs are stored as their raw bytes, so in addition to reading and writing
+ * {@link Blob} objects, blobs can be saved from a stream and read into a stream or
+ * channel without holding the whole blob in memory.
+ */
+public class BlobStorageType extends ObjectStorageType<Blob> {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public BlobStorageType(String id) {
+        super(id, Blob::new, false);
+    }
+
+    /**
+     * Save a blob with the bytes of a stream.
+     * <p>
+     * The stream is read until its end but is not closed.
+     *
+     * @param inputStream The stream to read the bytes from.
+     * @param repository The repository to save to.
+     * @return The identifying SHA-1 hash the blob was stored as.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Reference20<Blob> save(InputStream inputStream, MchRepository repository) throws IOException {
+        return this.save(inputStream::transferTo, repository);
+    }
+
+    /**
+     * Open a stream of the bytes of a blob. The bytes are decompressed while the
+     * stream is being read.
+     *
+     * @param reference The reference to the blob.
+     * @param repository The repository to read from.
+     * @return The stream, which must be closed.
+     * @throws ObjectNotFoundException If the blob was not found.
+     * @throws IOException If an I/O error occurs.
+     */
+    public InputStream openStream(Reference20<Blob> reference, MchRepository repository) throws IOException {
+        return this.openStream(reference.getSha1(), repository);
+    }
+
+    /**
+     * Write the bytes of a blob to a channel.
+     * <p>
+     * The channel is not closed.
+     *
+     * @param reference The reference to the blob.
+     * @param repository The repository to read from.
+     * @param channel The channel to write to.
+     * @return The amount of bytes that were written.
+     * @throws ObjectNotFoundException If the blob was not found.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long transferTo(Reference20<Blob> reference, MchRepository repository, WritableByteChannel channel) throws IOException {
+        long total = 0;
+        byte[] bytes = new byte[BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try (InputStream inputStream = this.openStream(reference.getSha1(), repository)) {
+            int read;
+            while ((read = inputStream.read(bytes)) != -1) {
+                buffer.clear().limit(read);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                total += read;
+            }
+        }
+        return total;
+    }
+}
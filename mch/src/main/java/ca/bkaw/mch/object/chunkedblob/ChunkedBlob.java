@@ -0,0 +1,208 @@
+package ca.bkaw.mch.object.chunkedblob;
+
+import ca.bkaw.mch.FileMagic;
+import ca.bkaw.mch.MchVersion;
+import ca.bkaw.mch.object.ObjectStorageTypes;
+import ca.bkaw.mch.object.Reference20;
+import ca.bkaw.mch.object.StorageObject;
+import ca.bkaw.mch.object.blob.Blob;
+import ca.bkaw.mch.repository.MchRepository;
+import ca.bkaw.mch.util.ContentDefinedChunker;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A large file that is split into content-defined chunks, each stored as a blob.
+ * <p>
+ * When a large file changes, only the chunks around the changes are different, so
+ * the unchanged chunks are shared with earlier versions of the file.
+ *
+ * @see ContentDefinedChunker
+ */
+public class ChunkedBlob extends StorageObject {
+    public static final int MAGIC = FileMagic.CHUNKED_BLOB;
+
+    private final List<Chunk> chunks;
+    private final long size;
+
+    public ChunkedBlob(List<Chunk> chunks) {
+        this.chunks = List.copyOf(chunks);
+        long size = 0;
+        for (Chunk chunk : chunks) {
+            size += chunk.length();
+        }
+        this.size = size;
+    }
+
+    public ChunkedBlob(DataInput dataInput) throws IOException {
+        FileMagic.validate(dataInput, MAGIC);
+        int mchVersion = dataInput.readInt();
+        MchVersion.validate(mchVersion, 21);
+        int count = dataInput.readInt();
+        List<Chunk> chunks = new ArrayList<>(count);
+        long size = 0;
+        for (int i = 0; i < count; i++) {
+            Reference20<Blob> reference = Reference20.read(dataInput, ObjectStorageTypes.BLOB);
+            int length = dataInput.readInt();
+            chunks.add(new Chunk(reference, length));
+            size += length;
+        }
+        this.chunks = Collections.unmodifiableList(chunks);
+        this.size = size;
+    }
+
+    /**
+     * Split the bytes of a stream into chunks and save the chunks that are not
+     * already stored.
+     *
+     * @param inputStream The stream to read the file from.
+     * @param repository The repository to save the chunks in.
+     * @return The chunked blob.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static ChunkedBlob save(InputStream inputStream, MchRepository repository) throws IOException {
+        ContentDefinedChunker chunker = new ContentDefinedChunker(inputStream);
+        List<Chunk> chunks = new ArrayList<>();
+        byte[] bytes;
+        while ((bytes = chunker.nextChunk()) != null) {
+            Reference20<Blob> reference = ObjectStorageTypes.BLOB.save(new Blob(bytes), repository);
+            chunks.add(new Chunk(reference, bytes.length));
+        }
+        return new ChunkedBlob(chunks);
+    }
+
+    @Override
+    public void write(DataOutput dataOutput) throws IOException {
+        dataOutput.writeInt(MAGIC);
+        dataOutput.writeInt(MchVersion.VERSION_NUMBER);
+        dataOutput.writeInt(this.chunks.size());
+        for (Chunk chunk : this.chunks) {
+            chunk.reference().write(dataOutput);
+            dataOutput.writeInt(chunk.length());
+        }
+    }
+
+    @Override
+    public String cat() {
+        StringBuilder str = new StringBuilder();
+        str.append(this.size).append(" bytes in ").append(this.chunks.size()).append(" chunks:\n");
+        for (Chunk chunk : this.chunks) {
+            str.append(chunk.reference().getSha1().asHex());
+            str.append(" (");
+            str.append(chunk.length());
+            str.append(" bytes)\n");
+        }
+        return str.toString();
+    }
+
+    /**
+     * Write the content of the file to an output stream, streaming one chunk at a
+     * time.
+     *
+     * @param repository The repository to read the chunks from.
+     * @param outputStream The output stream.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void transferTo(MchRepository repository, OutputStream outputStream) throws IOException {
+        for (Chunk chunk : this.chunks) {
+            try (InputStream inputStream = ObjectStorageTypes.BLOB.openStream(chunk.reference(), repository)) {
+                inputStream.transferTo(outputStream);
+            }
+        }
+    }
+
+    /**
+     * Open a stream of the content of the file. The chunks are read when the stream
+     * reaches them.
+     *
+     * @param repository The repository to read the chunks from.
+     * @return The input stream.
+     */
+    public InputStream openStream(MchRepository repository) {
+        return new ChunkInputStream(repository);
+    }
+
+    /**
+     * Get an unmodifiable list of the chunks of this file, in order.
+     *
+     * @return The chunks.
+     */
+    public List<Chunk> getChunks() {
+        return this.chunks;
+    }
+
+    /**
+     * Get the size of the file.
+     *
+     * @return The size in bytes.
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * A chunk of a file.
+     *
+     * @param reference The reference to the blob with the bytes of the chunk.
+     * @param length The amount of bytes in the chunk.
+     */
+    public record Chunk(Reference20<Blob> reference, int length) {}
+
+    private class ChunkInputStream extends InputStream {
+        private final MchRepository repository;
+        private int nextChunk;
+        private byte[] bytes = new byte[0];
+        private int position;
+
+        private ChunkInputStream(MchRepository repository) {
+            this.repository = repository;
+        }
+
+        /**
+         * Read the next chunk if the current chunk has been read.
+         *
+         * @return Whether there are more bytes.
+         * @throws IOException If an I/O error occurs.
+         */
+        private boolean ensureBytes() throws IOException {
+            while (this.position == this.bytes.length) {
+                if (this.nextChunk == ChunkedBlob.this.chunks.size()) {
+                    return false;
+                }
+                Chunk chunk = ChunkedBlob.this.chunks.get(this.nextChunk++);
+                this.bytes = chunk.reference().resolve(this.repository).getBytes();
+                this.position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!this.ensureBytes()) {
+                return -1;
+            }
+            return this.bytes[this.position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!this.ensureBytes()) {
+                return -1;
+            }
+            int count = Math.min(len, this.bytes.length - this.position);
+            System.arraycopy(this.bytes, this.position, b, off, count);
+            this.position += count;
+            return count;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import ca.bkaw.mch.object.ObjectStorageTypes;
 import ca.bkaw.mch.object.Reference20;
 import ca.bkaw.mch.object.StorageObject;
 import ca.bkaw.mch.object.tree.Tree;
+import ca.bkaw.mch.region.RegionFileType;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.DataInput;
@@ -13,7 +14,9 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 public class Dimension extends StorageObject {
     public static final int MAGIC = FileMagic.DIMENSION;
@@ -23,11 +26,14 @@ public class Dimension extends StorageObject {
     public static final String THE_END = "minecraft:the_end";
 
     private final Reference20<Tree> miscellaneousFiles;
-    private final List<RegionFileReference> regionFiles;
+    private final Map<RegionFileType, List<RegionFileReference>> regionFiles;
 
     public Dimension(Reference20<Tree> miscellaneousFiles) {
         this.miscellaneousFiles = miscellaneousFiles;
-        this.regionFiles = new ArrayList<>();
+        this.regionFiles = new EnumMap<>(RegionFileType.class);
+        for (RegionFileType type : RegionFileType.values()) {
+            this.regionFiles.put(type, new ArrayList<>());
+        }
     }
 
     public Dimension(DataInput dataInput) throws IOException {
@@ -35,10 +41,16 @@ public class Dimension extends StorageObject {
         int mchVersion = dataInput.readInt();
         MchVersion.validate(mchVersion, 4);
         this.miscellaneousFiles = Reference20.read(dataInput, ObjectStorageTypes.TREE);
-        int size = dataInput.readInt();
-        this.regionFiles = new ArrayList<>(size);
-        for (int i = 0; i < size; i++) {
-            this.regionFiles.add(new RegionFileReference(dataInput));
+        this.regionFiles = new EnumMap<>(RegionFileType.class);
+        for (RegionFileType type : RegionFileType.values()) {
+            // Before mch version 20 only region files were stored, entity and poi
+            // region files were miscellaneous files.
+            int size = type == RegionFileType.REGION || mchVersion > 19 ? dataInput.readInt() : 0;
+            List<RegionFileReference> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(new RegionFileReference(dataInput));
+            }
+            this.regionFiles.put(type, list);
         }
     }
 
@@ -47,26 +59,37 @@ public class Dimension extends StorageObject {
         dataOutput.writeInt(MAGIC);
         dataOutput.writeInt(MchVersion.VERSION_NUMBER);
         this.miscellaneousFiles.write(dataOutput);
-        dataOutput.writeInt(this.regionFiles.size());
-        for (RegionFileReference regionFile : this.regionFiles) {
-            regionFile.write(dataOutput);
+        for (RegionFileType type : RegionFileType.values()) {
+            List<RegionFileReference> list = this.regionFiles.get(type);
+            dataOutput.writeInt(list.size());
+            for (RegionFileReference regionFile : list) {
+                regionFile.write(dataOutput);
+            }
         }
     }
 
     @Override
     public String cat() {
-        StringBuilder str = new StringBuilder("region files:\n");
-        for (RegionFileReference regionFile : this.regionFiles) {
-            str.append("region ");
-            str.append(regionFile.regionX);
-            str.append(" ");
-            str.append(regionFile.regionZ);
-            str.append(":\tversion number: ");
-            str.append(regionFile.versionNumber);
-            str.append("\n");
-        }
-        if (this.regionFiles.isEmpty()) {
-            str.append("(empty)\n");
+        StringBuilder str = new StringBuilder();
+        for (RegionFileType type : RegionFileType.values()) {
+            List<RegionFileReference> list = this.regionFiles.get(type);
+            if (type != RegionFileType.REGION && list.isEmpty()) {
+                continue;
+            }
+            str.append(type.getFolderName());
+            str.append(" files:\n");
+            for (RegionFileReference regionFile : list) {
+                str.append("region ");
+                str.append(regionFile.regionX);
+                str.append(" ");
+                str.append(regionFile.regionZ);
+                str.append(":\tversion number: ");
+                str.append(regionFile.versionNumber);
+                str.append("\n");
+            }
+            if (list.isEmpty()) {
+                str.append("(empty)\n");
+            }
         }
         str.append("miscellaneous files: ");
         str.append(this.miscellaneousFiles.getSha1().asHex());
@@ -74,12 +97,22 @@ public class Dimension extends StorageObject {
     }
 
     public void addRegionFile(RegionFileReference regionFileReference) {
-        this.regionFiles.add(regionFileReference);
+        this.addRegionFile(RegionFileType.REGION, regionFileReference);
+    }
+
+    public void addRegionFile(RegionFileType type, RegionFileReference regionFileReference) {
+        this.checkNotFrozen();
+        this.regionFiles.get(type).add(regionFileReference);
     }
 
     @Nullable
     public RegionFileReference getRegionFile(int regionX, int regionZ) {
-        for (RegionFileReference regionFile : this.regionFiles) {
+        return this.getRegionFile(RegionFileType.REGION, regionX, regionZ);
+    }
+
+    @Nullable
+    public RegionFileReference getRegionFile(RegionFileType type, int regionX, int regionZ) {
+        for (RegionFileReference regionFile : this.regionFiles.get(type)) {
             if (regionFile.regionX == regionX && regionFile.regionZ == regionZ) {
                 return regionFile;
             }
@@ -97,7 +130,17 @@ public class Dimension extends StorageObject {
      * @return The list of region files.
      */
     public List<RegionFileReference> getRegionFiles() {
-        return Collections.unmodifiableList(this.regionFiles);
+        return this.getRegionFiles(RegionFileType.REGION);
+    }
+
+    /**
+     * Get an unmodifiable view of the region files of a type in this dimension.
+     *
+     * @param type The type of region file.
+     * @return The list of region files.
+     */
+    public List<RegionFileReference> getRegionFiles(RegionFileType type) {
+        return Collections.unmodifiableList(this.regionFiles.get(type));
     }
 
     public static class RegionFileReference {
@@ -6,6 +6,7 @@ import ca.bkaw.mch.object.ObjectStorageTypes;
 import ca.bkaw.mch.object.Reference20;
 import ca.bkaw.mch.object.StorageObject;
 import ca.bkaw.mch.object.blob.Blob;
+import ca.bkaw.mch.object.chunkedblob.ChunkedBlob;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -19,10 +20,12 @@ public class Tree extends StorageObject {
 
     private final Map<String, Reference20<Tree>> trees;
     private final Map<String, BlobReference> blobs;
+    private final Map<String, ChunkedBlobReference> chunkedBlobs;
 
     public Tree() {
         this.trees = new LinkedHashMap<>();
         this.blobs = new LinkedHashMap<>();
+        this.chunkedBlobs = new LinkedHashMap<>();
     }
 
     public Tree(DataInput dataInput) throws IOException {
@@ -52,6 +55,17 @@ public class Tree extends StorageObject {
 
             this.blobs.put(fileName, new BlobReference(blobReference, lastModified));
         }
+
+        // Before mch version 21 all files were stored as blobs.
+        int chunkedBlobsSize = mchVersion > 20 ? dataInput.readInt() : 0;
+        this.chunkedBlobs = new LinkedHashMap<>(chunkedBlobsSize);
+        for (int i = 0; i < chunkedBlobsSize; i++) {
+            String fileName = dataInput.readUTF();
+            long lastModified = dataInput.readLong();
+            Reference20<ChunkedBlob> chunkedBlobReference = Reference20.read(dataInput, ObjectStorageTypes.CHUNKED_BLOB);
+
+            this.chunkedBlobs.put(fileName, new ChunkedBlobReference(chunkedBlobReference, lastModified));
+        }
     }
 
     @Override
@@ -70,6 +84,13 @@ public class Tree extends StorageObject {
             dataOutput.writeLong(blobReference.lastModified);
             blobReference.reference.write(dataOutput);
         }
+        dataOutput.writeInt(this.chunkedBlobs.size());
+        for (Map.Entry<String, ChunkedBlobReference> entry : this.chunkedBlobs.entrySet()) {
+            dataOutput.writeUTF(entry.getKey());
+            ChunkedBlobReference chunkedBlobReference = entry.getValue();
+            dataOutput.writeLong(chunkedBlobReference.lastModified);
+            chunkedBlobReference.reference.write(dataOutput);
+        }
     }
 
     @Override
@@ -96,17 +117,38 @@ public class Tree extends StorageObject {
                 str.append(")\n");
             }
         }
+        if (!this.chunkedBlobs.isEmpty()) {
+            str.append("chunked files:\n");
+            for (Map.Entry<String, ChunkedBlobReference> entry : this.chunkedBlobs.entrySet()) {
+                str.append(entry.getKey());
+                str.append(":\t");
+                ChunkedBlobReference chunkedBlobReference = entry.getValue();
+                str.append(chunkedBlobReference.reference.getSha1().asHex());
+                str.append(" (last modified: ");
+                str.append(chunkedBlobReference.lastModified);
+                str.append(")\n");
+            }
+        }
         return str.toString();
     }
 
     public void addSubTree(String directoryName, Reference20<Tree> subTreeReference) {
+        this.checkNotFrozen();
         this.trees.put(directoryName, subTreeReference);
     }
 
     public void addFile(String fileName, BlobReference blobReference) {
+        this.checkNotFrozen();
+        this.chunkedBlobs.remove(fileName);
         this.blobs.put(fileName, blobReference);
     }
 
+    public void addChunkedFile(String fileName, ChunkedBlobReference chunkedBlobReference) {
+        this.checkNotFrozen();
+        this.blobs.remove(fileName);
+        this.chunkedBlobs.put(fileName, chunkedBlobReference);
+    }
+
     /**
      * Get an unmodifiable view of the map of subtrees.
      *
@@ -125,5 +167,27 @@ public class Tree extends StorageObject {
         return Collections.unmodifiableMap(this.blobs);
     }
 
+    /**
+     * Get an unmodifiable view of the map of large files in this tree that are
+     * stored as chunked blobs.
+     *
+     * @return The map of chunked blobs.
+     */
+    public Map<String, ChunkedBlobReference> getChunkedFiles() {
+        return Collections.unmodifiableMap(this.chunkedBlobs);
+    }
+
+    /**
+     * Check whether a file exists in this tree, either as a blob or a chunked blob.
+     *
+     * @param fileName The name of the file.
+     * @return Whether the file exists.
+     */
+    public boolean hasFile(String fileName) {
+        return this.blobs.containsKey(fileName) || this.chunkedBlobs.containsKey(fileName);
+    }
+
     public record BlobReference(Reference20<Blob> reference, long lastModified) {}
+
+    public record ChunkedBlobReference(Reference20<ChunkedBlob> reference, long lastModified) {}
 }
@@ -64,6 +64,7 @@ public class World extends StorageObject {
     }
 
     public void addDimension(String dimensionKey, Reference20<Dimension> dimensionReference) {
+        this.checkNotFrozen();
         this.dimensions.put(dimensionKey, dimensionReference);
     }
 
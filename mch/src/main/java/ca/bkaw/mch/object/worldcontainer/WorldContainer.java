@@ -12,6 +12,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -61,6 +62,7 @@ public class WorldContainer extends StorageObject {
     }
 
     public void addWorld(Sha1 worldId, Reference20<World> worldReference) {
+        this.checkNotFrozen();
         this.worlds.put(worldId, worldReference);
     }
 
@@ -69,7 +71,12 @@ public class WorldContainer extends StorageObject {
         return this.worlds.get(id);
     }
 
+    /**
+     * Get an unmodifiable view of the map of worlds.
+     *
+     * @return The map.
+     */
     public Map<Sha1, Reference20<World>> getWorlds() {
-        return this.worlds;
+        return Collections.unmodifiableMap(this.worlds);
     }
 }
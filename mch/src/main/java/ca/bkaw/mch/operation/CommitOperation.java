@@ -2,6 +2,7 @@ package ca.bkaw.mch.operation;
 
 import ca.bkaw.mch.nbt.NbtCompound;
 import ca.bkaw.mch.nbt.NbtLong;
+import ca.bkaw.mch.nbt.NbtReader;
 import ca.bkaw.mch.nbt.NbtTag;
 import ca.bkaw.mch.object.ObjectStorageTypes;
 import ca.bkaw.mch.object.Reference20;
@@ -12,12 +13,17 @@ import ca.bkaw.mch.object.tree.Tree;
 import ca.bkaw.mch.object.world.World;
 import ca.bkaw.mch.object.worldcontainer.WorldContainer;
 import ca.bkaw.mch.region.MchRegionFile;
+import ca.bkaw.mch.region.RawChunkCache;
+import ca.bkaw.mch.region.RegionFileType;
 import ca.bkaw.mch.region.RegionStorageVisitor;
+import ca.bkaw.mch.region.RegionTimestampIndex;
 import ca.bkaw.mch.region.mc.McRegionFileReader;
+import ca.bkaw.mch.region.mc.RawChunk;
 import ca.bkaw.mch.repository.MchConfiguration;
 import ca.bkaw.mch.repository.MchRepository;
 import ca.bkaw.mch.repository.TrackedWorld;
 import ca.bkaw.mch.util.RandomAccessReader;
+import ca.bkaw.mch.util.Util;
 import ca.bkaw.mch.world.RegionFileInfo;
 import ca.bkaw.mch.world.WorldAccessor;
 import ca.bkaw.mch.world.WorldProvider;
@@ -25,12 +31,49 @@ import ca.bkaw.mch.world.WorldReader;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Utility class for performing a commit.
  */
 public class CommitOperation {
+    private static final Set<String> INHABITED_TIME = Set.of("InhabitedTime");
+
     public static void run(MchRepository repository, String commitMessage, boolean cache, boolean verbose) throws IOException {
+        run(repository, commitMessage, cache, verbose, 1);
+    }
+
+    /**
+     * Perform a commit.
+     *
+     * @param repository The repository to commit to.
+     * @param commitMessage The commit message, or null.
+     * @param cache Whether to skip unmodified files by looking at the current commit.
+     * @param verbose Whether to print more information while processing the commit.
+     * @param threads The amount of region files and miscellaneous files to process
+     *                concurrently.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void run(MchRepository repository, String commitMessage, boolean cache, boolean verbose, int threads) throws IOException {
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            run(repository, commitMessage, cache, verbose, executor);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static void run(MchRepository repository, String commitMessage, boolean cache, boolean verbose, @Nullable ExecutorService executor) throws IOException {
         long start = System.currentTimeMillis();
 
         // Read configuration and current commit from repository
@@ -75,10 +118,11 @@ public class CommitOperation {
                         dimensionKey,
                         repository,
                         str -> switch (str) {
-                            case "region", "DIM1", "DIM-1", "dimensions", "mch" -> false;
+                            case "region", "entities", "poi", "DIM1", "DIM-1", "dimensions", "mch" -> false;
                             default -> true;
                         },
-                        currentMiscellaneousFiles
+                        currentMiscellaneousFiles,
+                        executor
                     );
 
                     // The dimension object for this version of the dimension.
@@ -88,116 +132,56 @@ public class CommitOperation {
                     int unmodifiedRegionFiles = 0;
                     int emptyRegionFiles = 0;
 
-                    for (RegionFileInfo regionFileInfo : worldReader.getRegionFiles(dimensionKey)) {
-                        if (regionFileInfo.fileSize() == 0) {
-                            // I am not sure how or why these empty region files are created, but since they
-                            // are 0 bytes they do not contain valid data. Skip them to avoid crashing.
-                            if (verbose) {
-                                System.out.println("    Skipping empty file (0 bytes): " + regionFileInfo.fileName());
+                    // The region file references in the order the region files were listed.
+                    // Modified region files may be processed concurrently, but the
+                    // references are added to the dimension in this order so that the
+                    // dimension object is the same regardless of the amount of threads.
+                    Map<RegionFileType, List<Future<Dimension.RegionFileReference>>> regionFileReferences = new EnumMap<>(RegionFileType.class);
+
+                    for (RegionFileType regionFileType : RegionFileType.values()) {
+                        List<Future<Dimension.RegionFileReference>> references = new ArrayList<>();
+                        regionFileReferences.put(regionFileType, references);
+
+                        for (RegionFileInfo regionFileInfo : worldReader.getRegionFiles(dimensionKey, regionFileType)) {
+                            if (regionFileInfo.fileSize() == 0) {
+                                // I am not sure how or why these empty region files are created, but since they
+                                // are 0 bytes they do not contain valid data. Skip them to avoid crashing.
+                                if (verbose) {
+                                    System.out.println("    Skipping empty file (0 bytes): " + regionFileInfo.fileName());
+                                }
+                                emptyRegionFiles++;
+                                continue;
                             }
-                            emptyRegionFiles++;
-                            continue;
-                        }
-
-                        Dimension.RegionFileReference currentRegionFileInfo = currentDimension != null
-                            ? currentDimension.getRegionFile(regionFileInfo.getRegionX(), regionFileInfo.getRegionZ())
-                            : null;
 
-                        if (currentRegionFileInfo != null && currentRegionFileInfo.getLastModifiedTime() == regionFileInfo.lastModified()) {
-                            // The region file has not been modified since the last commit.
-                            // We do not need to read this region file since we know that it has not been
-                            // changed.
-                            // We can simply reference the same version number that the previous commit has.
-                            dimension.addRegionFile(currentRegionFileInfo);
-                            if (verbose) {
-                                System.out.println("    Not modified: " + regionFileInfo.fileName());
+                            Dimension.RegionFileReference currentRegionFileInfo = currentDimension != null
+                                ? currentDimension.getRegionFile(regionFileType, regionFileInfo.getRegionX(), regionFileInfo.getRegionZ())
+                                : null;
+
+                            if (currentRegionFileInfo != null && currentRegionFileInfo.getLastModifiedTime() == regionFileInfo.lastModified()) {
+                                // The region file has not been modified since the last commit.
+                                // We do not need to read this region file since we know that it has not been
+                                // changed.
+                                // We can simply reference the same version number that the previous commit has.
+                                references.add(CompletableFuture.completedFuture(currentRegionFileInfo));
+                                if (verbose) {
+                                    System.out.println("    Not modified: " + regionFileInfo.fileName());
+                                }
+                                unmodifiedRegionFiles++;
+                                continue;
                             }
-                            unmodifiedRegionFiles++;
-                            continue;
-                        }
-
-                        // Store each chunk and record the version numbers of all the chunks.
-
-                        System.out.println("    " + regionFileInfo.fileName());
-
-                        int[] currentChunkVersionNumbers = currentRegionFileInfo != null
-                            ? MchRegionFile.read(
-                                repository, trackedWorld, dimensionKey,
-                                regionFileInfo.getRegionX(), regionFileInfo.getRegionZ(),
-                                currentRegionFileInfo.getVersionNumber()
-                            )
-                            : null;
 
-                        int[] chunkVersionNumbers = new int[1024];
-                        try (
-                            RandomAccessReader reader = worldReader.openRegionFile(dimensionKey, regionFileInfo.fileName(), regionFileInfo.fileSize());
-                            McRegionFileReader mcRegionFile = new McRegionFileReader(reader)
-                        ) {
-                            RegionStorageVisitor.visit(
-                                repository, trackedWorld, dimensionKey,
-                                regionFileInfo.getRegionX(), regionFileInfo.getRegionZ(),
-                                chunk -> {
-                                    if (mcRegionFile.hasChunk(chunk.getChunkX(), chunk.getChunkZ())) {
-                                        // There is a chunk in the region file
-
-                                        // Get when it was last modified
-                                        int chunkLastModified = mcRegionFile.getChunkLastModified(chunk.getChunkX(), chunk.getChunkZ());
-
-                                        if (currentChunkVersionNumbers != null) {
-                                            // We can use the previous chunk version numbers to get the previous last
-                                            // modified time.
-                                            int currentChunkVersionNumber = currentChunkVersionNumbers[chunk.getIndex()];
-
-                                            // If there was no chunk in the last commit the version number is zero.
-                                            // Otherwise, check if it has been changed since last commit.
-                                            if (currentChunkVersionNumber != 0 && chunk.getLastModified(currentChunkVersionNumber) == chunkLastModified) {
-                                                // The chunk has not been modified since the last commit.
-                                                // We do not need to store it again.
-                                                chunkVersionNumbers[chunk.getIndex()] = currentChunkVersionNumber;
-                                                return;
-                                            }
-                                        }
-
-                                        // Read the chunk nbt
-                                        NbtCompound chunkNbt = mcRegionFile.readChunkNbt(chunk.getChunkX(), chunk.getChunkZ());
-
-                                        NbtTag inhabitedTime = chunkNbt.get("InhabitedTime");
-
-                                        // TODO make this configurable per repo.
-                                        //  Default should probably be to be 100% lossless
-                                        if (inhabitedTime instanceof NbtLong nbtLong && nbtLong.getValue() <= 0) {
-                                            // Skipping chunk because it has not been inhabited by players.
-                                            chunkVersionNumbers[chunk.getIndex()] = 0;
-                                        } else {
-                                            // Store the chunk
-                                            int chunkVersionNumber = chunk.store(chunkNbt, chunkLastModified);
-
-                                            // Save the version number of the chunk
-                                            chunkVersionNumbers[chunk.getIndex()] = chunkVersionNumber;
-                                        }
-                                    } else {
-                                        // There is no chunk. The version number is 0.
-                                        chunkVersionNumbers[chunk.getIndex()] = 0;
-                                    }
-                                });
+                            references.add(Util.submit(executor, () -> storeRegionFile(
+                                repository, trackedWorld, dimensionKey, regionFileType, worldReader,
+                                regionFileInfo, currentRegionFileInfo
+                            )));
                         }
+                    }
 
-                        // Use the chunk version numbers to create a region file version number
-
-                        int regionFileVersionNumber = MchRegionFile.store(
-                            repository, trackedWorld, dimensionKey,
-                            regionFileInfo.getRegionX(), regionFileInfo.getRegionZ(),
-                            chunkVersionNumbers
-                        );
-
-                        // Add the region file to the dimension object
-                        Dimension.RegionFileReference regionFileReference = new Dimension.RegionFileReference(
-                            regionFileInfo.getRegionX(),
-                            regionFileInfo.getRegionZ(),
-                            regionFileVersionNumber,
-                            regionFileInfo.lastModified()
-                        );
-                        dimension.addRegionFile(regionFileReference);
+                    // Add the region files to the dimension object
+                    for (Map.Entry<RegionFileType, List<Future<Dimension.RegionFileReference>>> entry : regionFileReferences.entrySet()) {
+                        for (Future<Dimension.RegionFileReference> regionFileReference : entry.getValue()) {
+                            dimension.addRegionFile(entry.getKey(), Util.await(regionFileReference));
+                        }
                     }
 
                     System.out.println("    " + emptyRegionFiles
@@ -247,6 +231,166 @@ public class CommitOperation {
         System.out.println("commit hash: " + commitReference.getSha1().asHex());
     }
 
+    /**
+     * Store the chunks of a modified region file and create the reference to the
+     * stored region file version.
+     * <p>
+     * Each region file has its own region storage and mch region file, so this
+     * method may be called concurrently for different region files.
+     *
+     * @param repository The repository.
+     * @param trackedWorld The tracked world.
+     * @param dimensionKey The dimension the region file is in.
+     * @param regionFileType The type of region file.
+     * @param worldReader The world reader to read the region file from.
+     * @param regionFileInfo Information about the region file.
+     * @param currentRegionFileInfo The region file in the previous commit, or null.
+     * @return The reference to add to the dimension.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static Dimension.RegionFileReference storeRegionFile(
+        MchRepository repository,
+        TrackedWorld trackedWorld,
+        String dimensionKey,
+        RegionFileType regionFileType,
+        WorldReader worldReader,
+        RegionFileInfo regionFileInfo,
+        @Nullable Dimension.RegionFileReference currentRegionFileInfo
+    ) throws IOException {
+        // Store each chunk and record the version numbers of all the chunks.
+
+        System.out.println("    " + regionFileType.getFolderName() + "/" + regionFileInfo.fileName());
+
+        int[] chunkVersionNumbers = new int[1024];
+        int[] timestamps;
+        RawChunkCache rawChunkCache = repository.getRawChunkCache();
+        try (
+            RandomAccessReader reader = worldReader.openRegionFile(dimensionKey, regionFileType, regionFileInfo.fileName(), regionFileInfo.fileSize());
+            McRegionFileReader mcRegionFile = new McRegionFileReader(reader, (chunkX, chunkZ) ->
+                worldReader.openExternalChunkFile(dimensionKey, regionFileType, McRegionFileReader.getExternalChunkFileName(
+                    regionFileInfo.getRegionX(), regionFileInfo.getRegionZ(), chunkX, chunkZ
+                ))
+            )
+        ) {
+            // Compare the last modified times in the region file header to the times
+            // when the region file version of the last commit was stored.
+            timestamps = RegionTimestampIndex.getTimestamps(mcRegionFile);
+            if (currentRegionFileInfo != null && timestamps != null && RegionTimestampIndex.matches(
+                repository, trackedWorld, dimensionKey, regionFileType,
+                regionFileInfo.getRegionX(), regionFileInfo.getRegionZ(),
+                currentRegionFileInfo.getVersionNumber(), timestamps
+            )) {
+                // No chunk has been modified since the last commit, even though the
+                // region file has. The region storage does not need to be visited.
+                return new Dimension.RegionFileReference(
+                    regionFileInfo.getRegionX(),
+                    regionFileInfo.getRegionZ(),
+                    currentRegionFileInfo.getVersionNumber(),
+                    regionFileInfo.lastModified()
+                );
+            }
+
+            int[] currentChunkVersionNumbers = currentRegionFileInfo != null
+                ? MchRegionFile.read(
+                    repository, trackedWorld, dimensionKey, regionFileType,
+                    regionFileInfo.getRegionX(), regionFileInfo.getRegionZ(),
+                    currentRegionFileInfo.getVersionNumber()
+                )
+                : null;
+
+            RegionStorageVisitor.visit(
+                repository, trackedWorld, dimensionKey, regionFileType,
+                regionFileInfo.getRegionX(), regionFileInfo.getRegionZ(),
+                chunk -> {
+                    if (mcRegionFile.hasChunk(chunk.getChunkX(), chunk.getChunkZ())) {
+                        // There is a chunk in the region file
+
+                        // Get when it was last modified
+                        int chunkLastModified = mcRegionFile.getChunkLastModified(chunk.getChunkX(), chunk.getChunkZ());
+
+                        if (currentChunkVersionNumbers != null) {
+                            // We can use the previous chunk version numbers to get the previous last
+                            // modified time.
+                            int currentChunkVersionNumber = currentChunkVersionNumbers[chunk.getIndex()];
+
+                            // If there was no chunk in the last commit the version number is zero.
+                            // Otherwise, check if it has been changed since last commit.
+                            if (currentChunkVersionNumber != 0 && chunk.getLastModified(currentChunkVersionNumber) == chunkLastModified) {
+                                // The chunk has not been modified since the last commit.
+                                // We do not need to store it again.
+                                chunkVersionNumbers[chunk.getIndex()] = currentChunkVersionNumber;
+                                return;
+                            }
+                        }
+
+                        // Read the chunk bytes and check the inhabited time before reading
+                        // the full chunk nbt. Only chunks in region files have an
+                        // inhabited time. When the raw chunk cache is enabled, the compressed
+                        // bytes are kept so that they can be added to the cache.
+                        RawChunk rawChunk = rawChunkCache != null
+                            ? mcRegionFile.readRawChunk(chunk.getChunkX(), chunk.getChunkZ())
+                            : null;
+                        byte[] chunkBytes = rawChunk != null
+                            ? rawChunk.decompress()
+                            : mcRegionFile.readChunkBytes(chunk.getChunkX(), chunk.getChunkZ());
+
+                        NbtTag inhabitedTime = regionFileType == RegionFileType.REGION
+                            ? NbtReader.readCompound(chunkBytes, INHABITED_TIME).get("InhabitedTime")
+                            : null;
+
+                        // TODO make this configurable per repo.
+                        //  Default should probably be to be 100% lossless
+                        if (inhabitedTime instanceof NbtLong nbtLong && nbtLong.getValue() <= 0) {
+                            // Skipping chunk because it has not been inhabited by players.
+                            chunkVersionNumbers[chunk.getIndex()] = 0;
+                        } else {
+                            // Store the chunk
+                            NbtCompound chunkNbt = NbtReader.readCompound(chunkBytes);
+                            int chunkVersionNumber = chunk.store(chunkNbt, chunkLastModified, regionFileType.getChunkDataParts());
+
+                            // Save the version number of the chunk
+                            chunkVersionNumbers[chunk.getIndex()] = chunkVersionNumber;
+
+                            if (rawChunk != null) {
+                                rawChunkCache.put(
+                                    trackedWorld, dimensionKey, regionFileType,
+                                    regionFileInfo.getRegionX(), regionFileInfo.getRegionZ(),
+                                    chunk.getIndex(), chunkVersionNumber, rawChunk, chunkLastModified
+                                );
+                            }
+                        }
+                    } else {
+                        // There is no chunk. The version number is 0.
+                        chunkVersionNumbers[chunk.getIndex()] = 0;
+                    }
+                });
+        }
+
+        // Use the chunk version numbers to create a region file version number
+
+        int regionFileVersionNumber = MchRegionFile.store(
+            repository, trackedWorld, dimensionKey, regionFileType,
+            regionFileInfo.getRegionX(), regionFileInfo.getRegionZ(),
+            chunkVersionNumbers
+        );
+
+        if (timestamps != null) {
+            RegionTimestampIndex.write(
+                repository, trackedWorld, dimensionKey, regionFileType,
+                regionFileInfo.getRegionX(), regionFileInfo.getRegionZ(),
+                regionFileVersionNumber, timestamps
+            );
+        }
+
+        // Create the reference to the region file for the dimension object
+        return new Dimension.RegionFileReference(
+            regionFileInfo.getRegionX(),
+            regionFileInfo.getRegionZ(),
+            regionFileVersionNumber,
+            regionFileInfo.lastModified()
+        );
+    }
+
     private static <T extends StorageObject> T resolve(MchRepository repository, @Nullable Reference20<T> reference) throws IOException {
         if (reference == null) {
             return null;
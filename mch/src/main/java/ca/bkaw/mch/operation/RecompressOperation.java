@@ -0,0 +1,26 @@
+package ca.bkaw.mch.operation;
+
+import ca.bkaw.mch.region.RegionFileRecompressor;
+import ca.bkaw.mch.repository.MchRepository;
+
+import java.io.IOException;
+
+/**
+ * Utility class for compressing stored data again with new compression settings.
+ */
+public class RecompressOperation {
+    /**
+     * Rewrite the region files stored in the repository with the current
+     * {@link MchRepository#getCompressionSettings() compression settings}.
+     * <p>
+     * Objects are not recompressed since they are identified by the hash of their
+     * compressed bytes, and are always compressed with the default settings.
+     *
+     * @param repository The repository.
+     * @return The amount of files that were rewritten.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static int run(MchRepository repository) throws IOException {
+        return RegionFileRecompressor.recompress(repository);
+    }
+}
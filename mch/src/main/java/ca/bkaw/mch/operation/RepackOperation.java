@@ -0,0 +1,29 @@
+package ca.bkaw.mch.operation;
+
+import ca.bkaw.mch.object.ObjectStorageType;
+import ca.bkaw.mch.object.ObjectStorageTypes;
+import ca.bkaw.mch.repository.MchRepository;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Utility class for moving loose objects into packs.
+ */
+public class RepackOperation {
+    /**
+     * Move the loose objects of every object storage type into packs.
+     *
+     * @param repository The repository.
+     * @return The amount of objects that were packed, by object storage type id.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static Map<String, Integer> run(MchRepository repository) throws IOException {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (ObjectStorageType<?> type : ObjectStorageTypes.values()) {
+            counts.put(type.getId(), type.repack(repository));
+        }
+        return counts;
+    }
+}
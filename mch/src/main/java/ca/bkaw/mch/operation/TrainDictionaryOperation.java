@@ -0,0 +1,29 @@
+package ca.bkaw.mch.operation;
+
+import ca.bkaw.mch.region.RegionStorageDictionaryTrainer;
+import ca.bkaw.mch.repository.MchRepository;
+import ca.bkaw.mch.repository.ZstdDictionaries;
+
+import java.io.IOException;
+
+/**
+ * Utility class for training the zstd dictionary that chunks are compressed with.
+ */
+public class TrainDictionaryOperation {
+    /**
+     * Train a dictionary from the chunks in the repository and use it to compress
+     * chunks that are stored from now on.
+     * <p>
+     * Chunks that are already stored are not compressed again.
+     *
+     * @param repository The repository.
+     * @param dictionarySize The maximum size of the dictionary in bytes.
+     * @return The trained dictionary.
+     * @throws IOException If an I/O error occurs.
+     * @throws IllegalStateException If the repository has no chunks to train from.
+     */
+    public static ZstdDictionaries.Dictionary run(MchRepository repository, int dictionarySize) throws IOException {
+        byte[] bytes = RegionStorageDictionaryTrainer.train(repository, dictionarySize);
+        return repository.getDictionaries().add(bytes);
+    }
+}
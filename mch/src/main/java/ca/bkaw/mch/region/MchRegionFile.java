@@ -3,28 +3,50 @@ package ca.bkaw.mch.region;
 import ca.bkaw.mch.FileMagic;
 import ca.bkaw.mch.MchVersion;
 import ca.bkaw.mch.region.mc.McRegionFileReader;
+import ca.bkaw.mch.repository.CompressionSettings;
 import ca.bkaw.mch.repository.MchRepository;
 import ca.bkaw.mch.repository.TrackedWorld;
+import ca.bkaw.mch.util.Hashing;
 import ca.bkaw.mch.util.Util;
+import com.github.luben.zstd.Zstd;
 import com.github.luben.zstd.ZstdInputStream;
-import com.github.luben.zstd.ZstdOutputStream;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.VisibleForTesting;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 
 /**
  * The file that stores the chunk version numbers to use for a specific region file
  * version number.
  * <p>
- * Random access is not implemented for performance reasons. Therefore, this class
- * offers streaming methods for reading and writing mch region files.
+ * The file is an append-only log of records, each containing a region file version
+ * number and its compressed array of chunk version numbers, followed by an index
+ * and a footer. The index stores a hash of each array so that an identical array
+ * can be found without reading all records, and the offset of each record so that
+ * a version can be read without reading the records before it.
+ * <p>
+ * Since only a few chunks usually change between two versions, most records only
+ * store the chunks that changed since the previous record, and a record with all
+ * chunk version numbers is stored every {@value #KEYFRAME_INTERVAL} records or
+ * when many chunks changed. This limits how many records need to be read to get
+ * the chunk version numbers of a version.
+ * <p>
+ * When a record is appended it overwrites the old index, and a new index and footer
+ * are written after it. If the process is terminated before the footer has been
+ * written, the index is rebuilt by scanning the records.
  *
  * @see RegionStorageVisitor
  */
@@ -32,6 +54,68 @@ public class MchRegionFile {
     public static final int MAGIC = FileMagic.REGION_FILE;
     public static final int CHUNK_COUNT = McRegionFileReader.CHUNK_COUNT;
 
+    /**
+     * magic (int), mch version (int)
+     */
+    private static final int HEADER_SIZE = 4 + 4;
+
+    /**
+     * region file version number (int), hash (long), record type (byte), length of
+     * data (int)
+     */
+    private static final int RECORD_HEADER_SIZE = 4 + 8 + 1 + 4;
+
+    /**
+     * Before mch version 16 records did not have a record type and all records
+     * were full records.
+     */
+    private static final int RECORD_HEADER_SIZE_V15 = 4 + 8 + 4;
+
+    /**
+     * A record with all chunk version numbers, zstd compressed.
+     */
+    private static final byte RECORD_TYPE_FULL = 0;
+
+    /**
+     * A record with the chunk version numbers that changed since a parent record.
+     * <p>
+     * parent region file version number (int), depth (int), amount of changes
+     * (int), then for each change: chunk index (short), chunk version number (int)
+     */
+    private static final byte RECORD_TYPE_DELTA = 1;
+
+    /**
+     * The maximum amount of delta records between two full records.
+     */
+    private static final int KEYFRAME_INTERVAL = 32;
+
+    /**
+     * The maximum amount of changed chunks to store as a delta record.
+     */
+    private static final int MAX_DELTA_CHANGES = CHUNK_COUNT / 8;
+
+    /**
+     * region file version number (int), hash (long), record offset (long)
+     */
+    private static final int INDEX_ENTRY_SIZE = 4 + 8 + 8;
+
+    /**
+     * hash (long), region file version number (int)
+     */
+    private static final int HASH_INDEX_ENTRY_SIZE = 8 + 4;
+
+    /**
+     * Before mch version 27 the index was in the order the records were written and
+     * there was no hash index, so the whole index had to be read to find an entry.
+     */
+    private static final int SORTED_INDEX_MCH_VERSION = 27;
+
+    /**
+     * index offset (long), index size (int), next region file version number (int),
+     * magic (int)
+     */
+    private static final int FOOTER_SIZE = 8 + 4 + 4 + 4;
+
     /**
      * Get the path to where an mch region file will be stored in the repository.
      * <p>
@@ -41,20 +125,32 @@ public class MchRegionFile {
      * @param repository The mch repository.
      * @param trackedWorld The tracked world.
      * @param dimensionKey The dimension of the world.
+     * @param regionFileType The type of region file.
      * @param regionX The region x coordinate.
      * @param regionZ The region z coordinate.
      * @return The mch region file path.
      */
-    private static Path getPath(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, int regionX, int regionZ) {
+    private static Path getPath(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, RegionFileType regionFileType, int regionX, int regionZ) {
         Path mchRegionFolderPath = Util.getMchRegionFolderPath(
-            repository, trackedWorld, dimensionKey
+            repository, trackedWorld, dimensionKey, regionFileType
         );
         String fileName = Util.formatRegionFileName(
-            regionX, regionZ, ".mchrv.zst"
+            regionX, regionZ, ".mchrv"
         );
         return mchRegionFolderPath.resolve(fileName);
     }
 
+    /**
+     * Get the path to the mch region file in the streaming format used before mch
+     * version 15, where the entire file is compressed as one stream.
+     *
+     * @param path The path of the mch region file.
+     * @return The path of the legacy mch region file.
+     */
+    private static Path getLegacyPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".zst");
+    }
+
     /**
      * Store a new array of chunk version numbers in the specified mch region file.
      * <p>
@@ -72,91 +168,89 @@ public class MchRegionFile {
      * @throws IOException If an I/O error occurs.
      */
     public static int store(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, int regionX, int regionZ, int[] newChunkVersionNumbers) throws IOException {
-        Path path = getPath(repository, trackedWorld, dimensionKey, regionX, regionZ);
-        return store(path, newChunkVersionNumbers);
+        return store(repository, trackedWorld, dimensionKey, RegionFileType.REGION, regionX, regionZ, newChunkVersionNumbers);
+    }
+
+    /**
+     * Store a new array of chunk version numbers in the mch region file for a type
+     * of region file.
+     *
+     * @param repository The mch repository.
+     * @param trackedWorld The tracked world.
+     * @param dimensionKey The dimension of the world.
+     * @param regionFileType The type of region file.
+     * @param regionX The region x coordinate.
+     * @param regionZ The region z coordinate.
+     * @param newChunkVersionNumbers The array of 1024 chunk version numbers.
+     * @return The region file version number of the stored chunk version numbers.
+     * @throws IOException If an I/O error occurs.
+     * @see #store(MchRepository, TrackedWorld, String, int, int, int[])
+     */
+    public static int store(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, RegionFileType regionFileType, int regionX, int regionZ, int[] newChunkVersionNumbers) throws IOException {
+        Path path = getPath(repository, trackedWorld, dimensionKey, regionFileType, regionX, regionZ);
+        return store(path, newChunkVersionNumbers, repository.getCompressionSettings());
     }
 
     @VisibleForTesting
     static int store(Path path, int[] newChunkVersionNumbers) throws IOException {
+        return store(path, newChunkVersionNumbers, CompressionSettings.DEFAULT);
+    }
+
+    private static int store(Path path, int[] newChunkVersionNumbers, CompressionSettings compressionSettings) throws IOException {
         if (newChunkVersionNumbers.length != CHUNK_COUNT) {
             throw new IllegalArgumentException("Expected " + CHUNK_COUNT + " chunk version numbers");
         }
-        Path tempOutputFile = Files.createTempFile(
-            path.getParent(),
-            path.getFileName().toString(),
-            ".mchrv-temp"
-        );
-
-        int newRegionFileVersionNumber;
-        try (
-            DataInputStream input = Files.exists(path)
-                ? new DataInputStream(new BufferedInputStream(new ZstdInputStream(Files.newInputStream(path))))
-                : null;
-            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new ZstdOutputStream(Files.newOutputStream(tempOutputFile))))
-        ) {
-            if (input != null) {
-                FileMagic.validate(input, MAGIC);
-                int mchVersion = input.readInt();
-                MchVersion.validate(mchVersion, 3);
-            }
-            output.writeInt(MAGIC);
-            output.writeInt(MchVersion.VERSION_NUMBER);
-            int nextRegionFileVersionNumber = 1;
-            if (input != null) {
-                // While there are more chunk version numbers to read
-                while (input.readBoolean()) {
-                    // Write a true to signal that there is more chunk version numbers to read
-                    output.writeBoolean(true);
-
-                    int regionFileVersionNumber = input.readInt();
-                    output.writeInt(regionFileVersionNumber);
-
-                    int[] chunkVersionNumbers = new int[CHUNK_COUNT];
-                    for (int j = 0; j < CHUNK_COUNT; j++) {
-                        int chunkVersionNumber = input.readInt();
-                        chunkVersionNumbers[j] = chunkVersionNumber;
-                        output.writeInt(chunkVersionNumber);
-                    }
-
-                    if (Arrays.equals(chunkVersionNumbers, newChunkVersionNumbers)) {
-                        // There is already a region file version number with these exact chunk version
-                        // numbers. We can use the existing region file version number.
-
-                        // Delete the temporary output file since no changes were made to the file.
-                        output.close();
-                        Files.delete(tempOutputFile);
-
-                        // Return the existing version number
-                        return regionFileVersionNumber;
-                    }
+        try (Log log = openForAppend(path, compressionSettings)) {
+            log.compressionLevel = compressionSettings.level();
+            long hash = Hashing.hash64(newChunkVersionNumbers);
+            for (IndexEntry entry : log.getEntriesWithHash(hash)) {
+                if (Arrays.equals(log.readChunkVersionNumbers(entry), newChunkVersionNumbers)) {
+                    // There is already a region file version number with these exact chunk version
+                    // numbers. We can use the existing region file version number.
+                    return entry.regionFileVersionNumber();
                 }
-                // False was read which means there are no more chunk version numbers. The only
-                // thing left in the file is the next region file version number.
-                nextRegionFileVersionNumber = input.readInt();
             }
             // The new chunk version numbers did not already exist in the file.
             // We need to add a new region file version number to the file
-            newRegionFileVersionNumber = nextRegionFileVersionNumber;
+            return log.append(newChunkVersionNumbers, hash);
+        }
+    }
 
-            // True to signal that there is one more chunk version numbers array to read,
-            // the one that is being added.
-            output.writeBoolean(true);
-            output.writeInt(newRegionFileVersionNumber);
-            for (int i = 0; i < CHUNK_COUNT; i++) {
-                output.writeInt(newChunkVersionNumbers[i]);
+    /**
+     * Open an mch region file to append records to it. The file is created if it does
+     * not exist, and converted if it was saved in a format that can not be appended
+     * to.
+     *
+     * @param path The path of the mch region file.
+     * @param compressionSettings The settings to compress created records with.
+     * @return The opened file.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static Log openForAppend(Path path, CompressionSettings compressionSettings) throws IOException {
+        if (Files.exists(path)) {
+            Log log = Log.open(path, false);
+            if (log.mchVersion >= SORTED_INDEX_MCH_VERSION) {
+                return log;
             }
-
-            // False to signal that there are no more chunk version numbers and that the
-            // following data is the next region file version number.
-            output.writeBoolean(false);
-
-            nextRegionFileVersionNumber++;
-            output.writeInt(nextRegionFileVersionNumber);
+            log.close();
         }
+        create(path, compressionSettings);
+        return Log.open(path, false);
+    }
 
-        Util.safeReplace(tempOutputFile, path);
-
-        return newRegionFileVersionNumber;
+    /**
+     * Append a region file version without writing the index, as if the process was
+     * terminated before the index was written.
+     *
+     * @param path The path of the mch region file.
+     * @param newChunkVersionNumbers The chunk version numbers.
+     * @throws IOException If an I/O error occurs.
+     */
+    @VisibleForTesting
+    static void appendWithoutIndex(Path path, int[] newChunkVersionNumbers) throws IOException {
+        try (Log log = Log.open(path, false)) {
+            log.appendRecord(log.nextRegionFileVersionNumber, newChunkVersionNumbers, Hashing.hash64(newChunkVersionNumbers));
+        }
     }
 
     /**
@@ -173,12 +267,101 @@ public class MchRegionFile {
      * @throws IOException If an I/O error occurs.
      */
     public static int[] read(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, int regionX, int regionZ, int regionFileVersionNumber) throws IOException {
-        Path path = getPath(repository, trackedWorld, dimensionKey, regionX, regionZ);
+        return read(repository, trackedWorld, dimensionKey, RegionFileType.REGION, regionX, regionZ, regionFileVersionNumber);
+    }
+
+    /**
+     * Read an array of chunk version numbers from the mch region file for a type of
+     * region file.
+     *
+     * @param repository The mch repository.
+     * @param trackedWorld The tracked world.
+     * @param dimensionKey The dimension of the world.
+     * @param regionFileType The type of region file.
+     * @param regionX The region x coordinate.
+     * @param regionZ The region z coordinate.
+     * @param regionFileVersionNumber The region file version number.
+     * @return The chunk version numbers for the specified region file version number.
+     * @throws IOException If an I/O error occurs.
+     * @see #read(MchRepository, TrackedWorld, String, int, int, int)
+     */
+    public static int[] read(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, RegionFileType regionFileType, int regionX, int regionZ, int regionFileVersionNumber) throws IOException {
+        Path path = getPath(repository, trackedWorld, dimensionKey, regionFileType, regionX, regionZ);
         return read(path, regionFileVersionNumber);
     }
 
     @VisibleForTesting
     static int[] read(Path path, int regionFileVersionNumber) throws IOException {
+        if (!Files.exists(path)) {
+            Path legacyPath = getLegacyPath(path);
+            if (Files.exists(legacyPath)) {
+                return readLegacy(legacyPath, regionFileVersionNumber);
+            }
+        }
+        try (Log log = Log.open(path, true)) {
+            IndexEntry entry = log.getEntry(regionFileVersionNumber);
+            if (entry == null) {
+                throw new RuntimeException("Region file version number " + regionFileVersionNumber + " was not present in the mch region file.");
+            }
+            return log.readChunkVersionNumbers(entry);
+        }
+    }
+
+    /**
+     * Create a new mch region file. If there is a legacy mch region file, or an mch
+     * region file saved in an older version of mch, its versions are copied to the
+     * new file and the old file is deleted.
+     *
+     * @param path The path of the mch region file.
+     * @param compressionSettings The settings to compress the records with.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void create(Path path, CompressionSettings compressionSettings) throws IOException {
+        Path legacyPath = getLegacyPath(path);
+        Path tempOutputFile = Files.createTempFile(
+            path.getParent(),
+            path.getFileName().toString(),
+            ".mchrv-temp"
+        );
+        try (FileChannel channel = FileChannel.open(tempOutputFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(MchVersion.VERSION_NUMBER);
+            header.flip();
+            writeFully(channel, header, 0);
+            Log log = new Log(channel, MchVersion.VERSION_NUMBER);
+            log.indexOffset = HEADER_SIZE;
+            log.compressionLevel = compressionSettings.level();
+            if (Files.exists(path)) {
+                try (Log oldLog = Log.open(path, true)) {
+                    for (int i = 0; i < oldLog.size; i++) {
+                        IndexEntry entry = oldLog.readEntry(i);
+                        log.appendRecord(entry.regionFileVersionNumber(), oldLog.readChunkVersionNumbers(entry), entry.hash());
+                    }
+                    log.nextRegionFileVersionNumber = oldLog.nextRegionFileVersionNumber;
+                }
+            } else if (Files.exists(legacyPath)) {
+                readLegacy(legacyPath, log);
+            }
+            log.writeIndex();
+        }
+        Util.safeReplace(tempOutputFile, path);
+        Files.deleteIfExists(legacyPath);
+    }
+
+    /**
+     * Rewrite an mch region file, compressing its records again with the specified
+     * compression settings.
+     *
+     * @param path The path of the mch region file.
+     * @param compressionSettings The compression settings.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void recompress(Path path, CompressionSettings compressionSettings) throws IOException {
+        create(path, compressionSettings);
+    }
+
+    private static int[] readLegacy(Path path, int regionFileVersionNumber) throws IOException {
         try (DataInputStream input = new DataInputStream(new BufferedInputStream(new ZstdInputStream(Files.newInputStream(path))))) {
             FileMagic.validate(input, MAGIC);
             int mchVersion = input.readInt();
@@ -198,4 +381,536 @@ public class MchRegionFile {
             throw new RuntimeException("Region file version number " + regionFileVersionNumber + " was not present in the mch region file.");
         }
     }
+
+    private static void readLegacy(Path path, Log log) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new ZstdInputStream(Files.newInputStream(path))))) {
+            FileMagic.validate(input, MAGIC);
+            int mchVersion = input.readInt();
+            MchVersion.validate(mchVersion, 3);
+            while (input.readBoolean()) {
+                int regionFileVersionNumber = input.readInt();
+                int[] chunkVersionNumbers = new int[CHUNK_COUNT];
+                for (int i = 0; i < CHUNK_COUNT; i++) {
+                    chunkVersionNumbers[i] = input.readInt();
+                }
+                log.appendRecord(regionFileVersionNumber, chunkVersionNumbers, Hashing.hash64(chunkVersionNumbers));
+            }
+            log.nextRegionFileVersionNumber = input.readInt();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of mch region file.");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private record IndexEntry(int regionFileVersionNumber, long hash, long offset) {}
+
+    private record Record(byte type, ByteBuffer data) {}
+
+    /**
+     * An opened mch region file.
+     * <p>
+     * The index is stored sorted by region file version number, followed by a hash
+     * index sorted by hash. Entries are found by searching the index in the file, so
+     * only a few entries are read. The index is only read completely when a record
+     * is appended, since the record overwrites it.
+     */
+    private static class Log implements Closeable {
+        private final FileChannel channel;
+        private final int mchVersion;
+        /**
+         * The amount of index entries.
+         */
+        private int size;
+        /**
+         * The index entries sorted by region file version number and the hash index
+         * entries sorted by hash, or null if they are read from the file when needed.
+         * The buffers may have room for more entries than {@link #size}.
+         */
+        @Nullable
+        private ByteBuffer versionIndex;
+        @Nullable
+        private ByteBuffer hashIndex;
+        private long indexOffset;
+        /**
+         * Whether the file ends with a valid index and footer that would be
+         * overwritten by the next record.
+         */
+        private boolean hasIndex;
+        private int nextRegionFileVersionNumber = 1;
+        private int compressionLevel = CompressionSettings.DEFAULT.level();
+
+        /**
+         * The chunk version numbers of the last record and the amount of delta
+         * records since the last full record, or null if not yet read.
+         */
+        @Nullable
+        private int[] lastChunkVersionNumbers;
+        private int lastDepth;
+
+        private Log(FileChannel channel, int mchVersion) {
+            this.channel = channel;
+            this.mchVersion = mchVersion;
+        }
+
+        public static Log open(Path path, boolean readOnly) throws IOException {
+            FileChannel channel = readOnly
+                ? FileChannel.open(path, StandardOpenOption.READ)
+                : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                readFully(channel, header, 0);
+                int magic = header.getInt();
+                if (magic != MAGIC) {
+                    throw new RuntimeException("Expected magic " + Integer.toHexString(MAGIC) + " but found " + Integer.toHexString(magic) + ". Is the file corrupted?");
+                }
+                int mchVersion = header.getInt();
+                MchVersion.validate(mchVersion, 15);
+                Log log = new Log(channel, mchVersion);
+                if (!log.readIndex()) {
+                    // The index was not completely written. The records are still
+                    // intact, so the index can be recreated from them.
+                    log.scanRecords();
+                }
+                return log;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private int getRecordHeaderSize() {
+            return this.mchVersion > 15 ? RECORD_HEADER_SIZE : RECORD_HEADER_SIZE_V15;
+        }
+
+        private boolean readIndex() throws IOException {
+            long size = this.channel.size();
+            if (size < HEADER_SIZE + FOOTER_SIZE) {
+                return false;
+            }
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+            readFully(this.channel, footer, size - FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            int indexSize = footer.getInt();
+            int nextRegionFileVersionNumber = footer.getInt();
+            int magic = footer.getInt();
+            boolean sorted = this.mchVersion >= SORTED_INDEX_MCH_VERSION;
+            int entrySize = sorted ? INDEX_ENTRY_SIZE + HASH_INDEX_ENTRY_SIZE : INDEX_ENTRY_SIZE;
+            if (magic != MAGIC || indexSize < 0 || indexOffset < HEADER_SIZE
+                || indexOffset + (long) indexSize * entrySize + FOOTER_SIZE != size) {
+                return false;
+            }
+            this.indexOffset = indexOffset;
+            this.size = indexSize;
+            if (!sorted) {
+                ByteBuffer index = ByteBuffer.allocate(indexSize * INDEX_ENTRY_SIZE);
+                readFully(this.channel, index, indexOffset);
+                List<IndexEntry> entries = new ArrayList<>(indexSize);
+                for (int i = 0; i < indexSize; i++) {
+                    entries.add(new IndexEntry(index.getInt(), index.getLong(), index.getLong()));
+                }
+                this.buildIndex(entries);
+            }
+            this.hasIndex = true;
+            this.nextRegionFileVersionNumber = nextRegionFileVersionNumber;
+            return true;
+        }
+
+        private void scanRecords() throws IOException {
+            long size = this.channel.size();
+            long position = HEADER_SIZE;
+            int recordHeaderSize = this.getRecordHeaderSize();
+            // Delta records are read using the entries found so far
+            this.buildIndex(List.of());
+            while (position + recordHeaderSize <= size) {
+                ByteBuffer recordHeader = ByteBuffer.allocate(recordHeaderSize);
+                readFully(this.channel, recordHeader, position);
+                int regionFileVersionNumber = recordHeader.getInt();
+                long hash = recordHeader.getLong();
+                int length = recordHeader.getInt(recordHeaderSize - 4);
+                if (length <= 0 || position + recordHeaderSize + length > size) {
+                    break;
+                }
+                IndexEntry entry = new IndexEntry(regionFileVersionNumber, hash, position);
+                try {
+                    if (Hashing.hash64(this.readChunkVersionNumbers(entry)) != hash) {
+                        break;
+                    }
+                } catch (RuntimeException e) {
+                    // Not a complete record, this is where the index used to be.
+                    break;
+                }
+                this.addEntry(entry);
+                this.nextRegionFileVersionNumber = Math.max(this.nextRegionFileVersionNumber, regionFileVersionNumber + 1);
+                position += recordHeaderSize + length;
+            }
+            this.indexOffset = position;
+        }
+
+        /**
+         * Keep an index in memory with the specified entries.
+         */
+        private void buildIndex(List<IndexEntry> entries) {
+            this.size = 0;
+            this.versionIndex = ByteBuffer.allocate(Math.max(entries.size(), 16) * INDEX_ENTRY_SIZE);
+            this.hashIndex = ByteBuffer.allocate(Math.max(entries.size(), 16) * HASH_INDEX_ENTRY_SIZE);
+            List<IndexEntry> byVersion = new ArrayList<>(entries);
+            byVersion.sort(Comparator.comparingInt(IndexEntry::regionFileVersionNumber));
+            List<IndexEntry> byHash = new ArrayList<>(entries);
+            byHash.sort(Comparator.comparingLong(IndexEntry::hash).thenComparingInt(IndexEntry::regionFileVersionNumber));
+            for (int i = 0; i < entries.size(); i++) {
+                IndexEntry entry = byVersion.get(i);
+                this.versionIndex.putInt(entry.regionFileVersionNumber());
+                this.versionIndex.putLong(entry.hash());
+                this.versionIndex.putLong(entry.offset());
+                this.hashIndex.putLong(byHash.get(i).hash());
+                this.hashIndex.putInt(byHash.get(i).regionFileVersionNumber());
+            }
+            this.size = entries.size();
+        }
+
+        /**
+         * Read the whole index into memory so that the file can be written over it.
+         */
+        private void loadIndex() throws IOException {
+            if (this.versionIndex != null) {
+                return;
+            }
+            ByteBuffer versionIndex = ByteBuffer.allocate(Math.max(this.size, 16) * INDEX_ENTRY_SIZE);
+            versionIndex.limit(this.size * INDEX_ENTRY_SIZE);
+            readFully(this.channel, versionIndex, this.indexOffset);
+            ByteBuffer hashIndex = ByteBuffer.allocate(Math.max(this.size, 16) * HASH_INDEX_ENTRY_SIZE);
+            hashIndex.limit(this.size * HASH_INDEX_ENTRY_SIZE);
+            readFully(this.channel, hashIndex, this.indexOffset + (long) this.size * INDEX_ENTRY_SIZE);
+            this.versionIndex = versionIndex.clear();
+            this.hashIndex = hashIndex.clear();
+        }
+
+        /**
+         * Make room for an entry at a position of an index buffer, growing the buffer
+         * if it is full.
+         */
+        private ByteBuffer insert(@Nullable ByteBuffer buffer, int entrySize, int position) {
+            if (buffer == null) {
+                buffer = ByteBuffer.allocate(16 * entrySize);
+            } else if (buffer.capacity() < (this.size + 1) * entrySize) {
+                ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+                System.arraycopy(buffer.array(), 0, grown.array(), 0, this.size * entrySize);
+                buffer = grown;
+            }
+            byte[] array = buffer.array();
+            System.arraycopy(array, position * entrySize, array, (position + 1) * entrySize, (this.size - position) * entrySize);
+            return buffer;
+        }
+
+        private void addEntry(IndexEntry entry) throws IOException {
+            this.loadIndex();
+
+            int versionPosition = this.size;
+            while (versionPosition > 0 && this.readEntry(versionPosition - 1).regionFileVersionNumber() > entry.regionFileVersionNumber()) {
+                versionPosition--;
+            }
+            this.versionIndex = this.insert(this.versionIndex, INDEX_ENTRY_SIZE, versionPosition);
+            int offset = versionPosition * INDEX_ENTRY_SIZE;
+            this.versionIndex.putInt(offset, entry.regionFileVersionNumber());
+            this.versionIndex.putLong(offset + 4, entry.hash());
+            this.versionIndex.putLong(offset + 4 + 8, entry.offset());
+
+            int hashPosition = this.findHash(entry.hash(), entry.regionFileVersionNumber());
+            this.hashIndex = this.insert(this.hashIndex, HASH_INDEX_ENTRY_SIZE, hashPosition);
+            offset = hashPosition * HASH_INDEX_ENTRY_SIZE;
+            this.hashIndex.putLong(offset, entry.hash());
+            this.hashIndex.putInt(offset + 8, entry.regionFileVersionNumber());
+
+            this.size++;
+        }
+
+        /**
+         * Read an entry of the index.
+         *
+         * @param position The position in the index, sorted by region file version number.
+         * @return The entry.
+         */
+        public IndexEntry readEntry(int position) throws IOException {
+            ByteBuffer entry;
+            if (this.versionIndex != null) {
+                entry = this.versionIndex.slice(position * INDEX_ENTRY_SIZE, INDEX_ENTRY_SIZE);
+            } else {
+                entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+                readFully(this.channel, entry, this.indexOffset + (long) position * INDEX_ENTRY_SIZE);
+            }
+            return new IndexEntry(entry.getInt(), entry.getLong(), entry.getLong());
+        }
+
+        private ByteBuffer readHashEntry(int position) throws IOException {
+            if (this.hashIndex != null) {
+                return this.hashIndex.slice(position * HASH_INDEX_ENTRY_SIZE, HASH_INDEX_ENTRY_SIZE);
+            }
+            ByteBuffer entry = ByteBuffer.allocate(HASH_INDEX_ENTRY_SIZE);
+            readFully(this.channel, entry, this.indexOffset + (long) this.size * INDEX_ENTRY_SIZE + (long) position * HASH_INDEX_ENTRY_SIZE);
+            return entry;
+        }
+
+        /**
+         * Find the position of the first hash index entry that is not less than the
+         * specified hash and region file version number.
+         */
+        private int findHash(long hash, int regionFileVersionNumber) throws IOException {
+            int low = 0;
+            int high = this.size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                ByteBuffer entry = this.readHashEntry(middle);
+                int compare = Long.compare(entry.getLong(0), hash);
+                if (compare == 0) {
+                    compare = Integer.compare(entry.getInt(8), regionFileVersionNumber);
+                }
+                if (compare < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        public List<IndexEntry> getEntriesWithHash(long hash) throws IOException {
+            List<IndexEntry> entries = new ArrayList<>(1);
+            for (int i = this.findHash(hash, Integer.MIN_VALUE); i < this.size; i++) {
+                ByteBuffer hashEntry = this.readHashEntry(i);
+                if (hashEntry.getLong(0) != hash) {
+                    break;
+                }
+                IndexEntry entry = this.getEntry(hashEntry.getInt(8));
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+            return entries;
+        }
+
+        @Nullable
+        public IndexEntry getEntry(int regionFileVersionNumber) throws IOException {
+            // Region file version numbers are usually consecutive starting from 1, in
+            // which case the entry is at this position.
+            int guess = regionFileVersionNumber - 1;
+            if (guess >= 0 && guess < this.size) {
+                IndexEntry entry = this.readEntry(guess);
+                if (entry.regionFileVersionNumber() == regionFileVersionNumber) {
+                    return entry;
+                }
+            }
+            int low = 0;
+            int high = this.size - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                IndexEntry entry = this.readEntry(middle);
+                int compare = Integer.compare(entry.regionFileVersionNumber(), regionFileVersionNumber);
+                if (compare < 0) {
+                    low = middle + 1;
+                } else if (compare > 0) {
+                    high = middle - 1;
+                } else {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        private Record readRecord(IndexEntry entry) throws IOException {
+            int recordHeaderSize = this.getRecordHeaderSize();
+            ByteBuffer recordHeader = ByteBuffer.allocate(recordHeaderSize);
+            readFully(this.channel, recordHeader, entry.offset());
+            byte type = recordHeaderSize == RECORD_HEADER_SIZE ? recordHeader.get(4 + 8) : RECORD_TYPE_FULL;
+            int length = recordHeader.getInt(recordHeaderSize - 4);
+            ByteBuffer data = ByteBuffer.allocate(length);
+            readFully(this.channel, data, entry.offset() + recordHeaderSize);
+            return new Record(type, data);
+        }
+
+        public int[] readChunkVersionNumbers(IndexEntry entry) throws IOException {
+            Record record = this.readRecord(entry);
+            ByteBuffer data = record.data();
+            byte type = record.type();
+            return switch (type) {
+                case RECORD_TYPE_FULL -> {
+                    byte[] compressed = new byte[data.remaining()];
+                    data.get(compressed);
+                    byte[] bytes = Zstd.decompress(compressed, CHUNK_COUNT * Integer.BYTES);
+                    if (bytes.length != CHUNK_COUNT * Integer.BYTES) {
+                        throw new RuntimeException("Expected " + CHUNK_COUNT + " chunk version numbers in region file version " + entry.regionFileVersionNumber() + ". Is the file corrupted?");
+                    }
+                    int[] chunkVersionNumbers = new int[CHUNK_COUNT];
+                    ByteBuffer.wrap(bytes).asIntBuffer().get(chunkVersionNumbers);
+                    yield chunkVersionNumbers;
+                }
+                case RECORD_TYPE_DELTA -> {
+                    int parentVersionNumber = data.getInt();
+                    data.getInt(); // depth
+                    IndexEntry parentEntry = this.getEntry(parentVersionNumber);
+                    if (parentEntry == null || parentEntry.offset() >= entry.offset()) {
+                        throw new RuntimeException("Region file version " + entry.regionFileVersionNumber() + " references missing region file version " + parentVersionNumber + ". Is the file corrupted?");
+                    }
+                    int[] chunkVersionNumbers = this.readChunkVersionNumbers(parentEntry);
+                    int changes = data.getInt();
+                    for (int i = 0; i < changes; i++) {
+                        int index = data.getShort();
+                        chunkVersionNumbers[index] = data.getInt();
+                    }
+                    yield chunkVersionNumbers;
+                }
+                default -> throw new RuntimeException("Unknown record type " + type + " in region file version " + entry.regionFileVersionNumber() + ". Is the file corrupted?");
+            };
+        }
+
+        /**
+         * Read the amount of delta records between a record and the closest full
+         * record before it.
+         */
+        private int readDepth(IndexEntry entry) throws IOException {
+            Record record = this.readRecord(entry);
+            if (record.type() != RECORD_TYPE_DELTA) {
+                return 0;
+            }
+            ByteBuffer data = record.data();
+            data.getInt(); // parent
+            return data.getInt();
+        }
+
+        /**
+         * Make the current footer invalid before the index is overwritten.
+         * <p>
+         * A record may be shorter than the index and footer it overwrites, in which
+         * case the old footer would still be at the end of the file and point at the
+         * record bytes as if they were index entries. Clearing the magic of the
+         * footer first makes the index be recreated from the records if the process
+         * is terminated before the new index has been written.
+         */
+        private void invalidateIndex() throws IOException {
+            if (!this.hasIndex) {
+                return;
+            }
+            long size = this.channel.size();
+            writeFully(this.channel, ByteBuffer.allocate(4), size - 4);
+            this.channel.force(false);
+            this.hasIndex = false;
+        }
+
+        /**
+         * Write a record where the index currently is, without writing a new index.
+         * The record is stored as a delta from the previous record when possible.
+         */
+        private void appendRecord(int regionFileVersionNumber, int[] chunkVersionNumbers, long hash) throws IOException {
+            // The record overwrites the index, so it must be read first
+            this.loadIndex();
+            if (this.lastChunkVersionNumbers == null && this.size > 0) {
+                IndexEntry lastEntry = this.readEntry(this.size - 1);
+                this.lastChunkVersionNumbers = this.readChunkVersionNumbers(lastEntry);
+                this.lastDepth = this.readDepth(lastEntry);
+            }
+
+            ByteBuffer data = null;
+            int depth = 0;
+            if (this.lastChunkVersionNumbers != null && this.lastDepth + 1 < KEYFRAME_INTERVAL) {
+                int changes = 0;
+                for (int i = 0; i < CHUNK_COUNT; i++) {
+                    if (chunkVersionNumbers[i] != this.lastChunkVersionNumbers[i]) {
+                        changes++;
+                    }
+                }
+                if (changes <= MAX_DELTA_CHANGES) {
+                    IndexEntry parentEntry = this.readEntry(this.size - 1);
+                    depth = this.lastDepth + 1;
+                    data = ByteBuffer.allocate(1 + 4 + 4 + 4 + changes * (2 + 4));
+                    data.put(RECORD_TYPE_DELTA);
+                    data.putInt(parentEntry.regionFileVersionNumber());
+                    data.putInt(depth);
+                    data.putInt(changes);
+                    for (int i = 0; i < CHUNK_COUNT; i++) {
+                        if (chunkVersionNumbers[i] != this.lastChunkVersionNumbers[i]) {
+                            data.putShort((short) i);
+                            data.putInt(chunkVersionNumbers[i]);
+                        }
+                    }
+                    data.flip();
+                }
+            }
+            if (data == null) {
+                ByteBuffer bytes = ByteBuffer.allocate(CHUNK_COUNT * Integer.BYTES);
+                bytes.asIntBuffer().put(chunkVersionNumbers);
+                byte[] compressed = Zstd.compress(bytes.array(), this.compressionLevel);
+                data = ByteBuffer.allocate(1 + compressed.length);
+                data.put(RECORD_TYPE_FULL);
+                data.put(compressed);
+                data.flip();
+            }
+
+            // The type is the first byte of the data
+            int length = data.remaining() - 1;
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+            record.putInt(regionFileVersionNumber);
+            record.putLong(hash);
+            record.put(data.get());
+            record.putInt(length);
+            record.put(data);
+            record.flip();
+            this.invalidateIndex();
+            writeFully(this.channel, record, this.indexOffset);
+
+            this.addEntry(new IndexEntry(regionFileVersionNumber, hash, this.indexOffset));
+            this.indexOffset += RECORD_HEADER_SIZE + length;
+            this.lastChunkVersionNumbers = chunkVersionNumbers.clone();
+            this.lastDepth = depth;
+        }
+
+        private void writeIndex() throws IOException {
+            this.loadIndex();
+            ByteBuffer index = ByteBuffer.allocate(this.size * (INDEX_ENTRY_SIZE + HASH_INDEX_ENTRY_SIZE) + FOOTER_SIZE);
+            if (this.size > 0) {
+                index.put(this.versionIndex.array(), 0, this.size * INDEX_ENTRY_SIZE);
+                index.put(this.hashIndex.array(), 0, this.size * HASH_INDEX_ENTRY_SIZE);
+            }
+            index.putLong(this.indexOffset);
+            index.putInt(this.size);
+            index.putInt(this.nextRegionFileVersionNumber);
+            index.putInt(MAGIC);
+            index.flip();
+            writeFully(this.channel, index, this.indexOffset);
+            this.channel.truncate(this.indexOffset + index.limit());
+            this.channel.force(false);
+            this.hasIndex = true;
+        }
+
+        /**
+         * Append a new region file version.
+         *
+         * @param chunkVersionNumbers The chunk version numbers.
+         * @param hash The hash of the chunk version numbers.
+         * @return The new region file version number.
+         */
+        public int append(int[] chunkVersionNumbers, long hash) throws IOException {
+            int regionFileVersionNumber = this.nextRegionFileVersionNumber;
+            this.appendRecord(regionFileVersionNumber, chunkVersionNumbers, hash);
+            this.nextRegionFileVersionNumber++;
+            this.writeIndex();
+            return regionFileVersionNumber;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+        }
+    }
 }
@@ -0,0 +1,271 @@
+package ca.bkaw.mch.region;
+
+import ca.bkaw.mch.FileMagic;
+import ca.bkaw.mch.MchVersion;
+import ca.bkaw.mch.region.mc.ChunkCompression;
+import ca.bkaw.mch.region.mc.RawChunk;
+import ca.bkaw.mch.repository.TrackedWorld;
+import ca.bkaw.mch.util.Util;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A cache of the compressed bytes of chunks as they were in the region file when
+ * the chunk version was committed.
+ * <p>
+ * Restoring a chunk from the repository requires merging the nbt of its data parts
+ * and compressing the chunk again, where the compression takes most of the time.
+ * A chunk version that is in the cache can instead be written to the restored
+ * region file as it is.
+ * <p>
+ * Each chunk version is stored in its own file. When the cache grows larger than
+ * its maximum size, the chunks that were least recently used are removed. The cache
+ * can be deleted at any time, chunks that are not cached are restored as usual.
+ */
+public class RawChunkCache {
+    public static final int MAGIC = FileMagic.RAW_CHUNK;
+    public static final String FOLDER = "cache/raw-chunks";
+
+    /**
+     * The size of the header of a cache file: the magic, the mch version, the last
+     * modified time and the compression type.
+     */
+    private static final int HEADER_SIZE = 3 * 4 + 1;
+    /**
+     * The fraction of the maximum size that the cache is trimmed to when it grows
+     * too large, so that it is not trimmed again for every chunk that is added.
+     */
+    private static final double TRIM_TO = 0.9;
+
+    private final Path root;
+    private final long maxSize;
+    /**
+     * The total size of the cache files, or -1 if it has not been calculated yet.
+     */
+    private long size = -1;
+
+    /**
+     * Create a raw chunk cache.
+     *
+     * @param root The folder the cache files are stored in.
+     * @param maxSize The maximum size of the cache, in bytes.
+     */
+    public RawChunkCache(Path root, long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The maximum size of the raw chunk cache must be positive, got " + maxSize);
+        }
+        this.root = root;
+        this.maxSize = maxSize;
+    }
+
+    private Path getPath(TrackedWorld trackedWorld, String dimensionKey, RegionFileType regionFileType, int regionX, int regionZ, int chunkIndex, int chunkVersionNumber) {
+        return this.root
+            .resolve(trackedWorld.getId().asHex())
+            .resolve(dimensionKey.replace(':', '_'))
+            .resolve(regionFileType.getFolderName())
+            .resolve(Util.formatRegionFileName(regionX, regionZ, ""))
+            .resolve(chunkIndex + "." + chunkVersionNumber);
+    }
+
+    /**
+     * Get a chunk version from the cache.
+     *
+     * @param trackedWorld The tracked world.
+     * @param dimensionKey The dimension of the world.
+     * @param regionFileType The type of region file.
+     * @param regionX The region x coordinate.
+     * @param regionZ The region z coordinate.
+     * @param chunkIndex The index of the chunk in the region file.
+     * @param chunkVersionNumber The chunk version number.
+     * @return The cached chunk, or null if the chunk version is not cached.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Nullable
+    public CachedChunk get(TrackedWorld trackedWorld, String dimensionKey, RegionFileType regionFileType, int regionX, int regionZ, int chunkIndex, int chunkVersionNumber) throws IOException {
+        Path path = this.getPath(trackedWorld, dimensionKey, regionFileType, regionX, regionZ, chunkIndex, chunkVersionNumber);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(path);
+            // Mark the chunk as recently used
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (bytes.length < HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt() != MAGIC) {
+            return null;
+        }
+        int mchVersion = buffer.getInt();
+        MchVersion.validate(mchVersion, 26);
+        int lastModified = buffer.getInt();
+        ChunkCompression compression = ChunkCompression.byId(buffer.get());
+        byte[] chunkBytes = new byte[buffer.remaining()];
+        buffer.get(chunkBytes);
+        return new CachedChunk(new RawChunk(compression, chunkBytes), lastModified);
+    }
+
+    /**
+     * Add a chunk version to the cache, and remove the least recently used chunks if
+     * the cache becomes too large.
+     * <p>
+     * This method may be called concurrently for different chunks.
+     *
+     * @param trackedWorld The tracked world.
+     * @param dimensionKey The dimension of the world.
+     * @param regionFileType The type of region file.
+     * @param regionX The region x coordinate.
+     * @param regionZ The region z coordinate.
+     * @param chunkIndex The index of the chunk in the region file.
+     * @param chunkVersionNumber The chunk version number the chunk was stored as.
+     * @param rawChunk The compressed chunk, as read from the region file.
+     * @param lastModified The last modified time of the chunk, in epoch seconds.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void put(TrackedWorld trackedWorld, String dimensionKey, RegionFileType regionFileType, int regionX, int regionZ, int chunkIndex, int chunkVersionNumber, RawChunk rawChunk, int lastModified) throws IOException {
+        byte[] chunkBytes = rawChunk.bytes();
+        int fileSize = HEADER_SIZE + chunkBytes.length;
+        if (fileSize > this.maxSize) {
+            return;
+        }
+        Path path = this.getPath(trackedWorld, dimensionKey, regionFileType, regionX, regionZ, chunkIndex, chunkVersionNumber);
+        if (Files.exists(path)) {
+            // Chunk versions never change, the cached bytes are still correct.
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(fileSize);
+        buffer.putInt(MAGIC);
+        buffer.putInt(MchVersion.VERSION_NUMBER);
+        buffer.putInt(lastModified);
+        buffer.put((byte) rawChunk.compression().getId());
+        buffer.put(chunkBytes);
+
+        // Write to a temporary file first so that a partially written chunk is never read
+        Files.createDirectories(path.getParent());
+        Path tempFile = Files.createTempFile(path.getParent(), null, null);
+        try {
+            Files.write(tempFile, buffer.array());
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+
+        this.added(fileSize);
+    }
+
+    private synchronized void added(long fileSize) throws IOException {
+        if (this.size < 0) {
+            // The walk already includes the file that was added
+            this.size = this.calculateSize();
+        } else {
+            this.size += fileSize;
+        }
+        if (this.size > this.maxSize) {
+            this.trim();
+        }
+    }
+
+    /**
+     * Get the maximum size of the cache.
+     *
+     * @return The size, in bytes.
+     */
+    public long getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Get the total size of the cache files.
+     *
+     * @return The size, in bytes.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized long getSize() throws IOException {
+        if (this.size < 0) {
+            this.size = this.calculateSize();
+        }
+        return this.size;
+    }
+
+    private long calculateSize() throws IOException {
+        long size = 0;
+        for (CacheFile cacheFile : this.listFiles()) {
+            size += cacheFile.size();
+        }
+        return size;
+    }
+
+    private List<CacheFile> listFiles() throws IOException {
+        if (Files.notExists(this.root)) {
+            return List.of();
+        }
+        List<CacheFile> cacheFiles = new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(this.root)) {
+            stream.forEach(path -> {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    // Temporary files are chunks that are being added
+                    if (attributes.isRegularFile() && !path.getFileName().toString().endsWith(".tmp")) {
+                        cacheFiles.add(new CacheFile(path, attributes.size(), attributes.lastModifiedTime()));
+                    }
+                } catch (NoSuchFileException ignored) {
+                    // Removed while walking
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return cacheFiles;
+    }
+
+    /**
+     * Remove the least recently used chunks until the cache is smaller than
+     * {@link #TRIM_TO} of its maximum size.
+     */
+    private void trim() throws IOException {
+        List<CacheFile> cacheFiles = this.listFiles();
+        cacheFiles.sort(Comparator.comparing(CacheFile::lastModified));
+
+        long size = 0;
+        for (CacheFile cacheFile : cacheFiles) {
+            size += cacheFile.size();
+        }
+        long targetSize = (long) (this.maxSize * TRIM_TO);
+        for (CacheFile cacheFile : cacheFiles) {
+            if (size <= targetSize) {
+                break;
+            }
+            Files.deleteIfExists(cacheFile.path());
+            size -= cacheFile.size();
+        }
+        this.size = size;
+    }
+
+    /**
+     * A chunk version that was found in the cache.
+     *
+     * @param rawChunk The compressed chunk.
+     * @param lastModified The last modified time of the chunk, in epoch seconds.
+     */
+    public record CachedChunk(RawChunk rawChunk, int lastModified) {}
+
+    private record CacheFile(Path path, long size, FileTime lastModified) {}
+}
@@ -0,0 +1,84 @@
+package ca.bkaw.mch.region;
+
+import ca.bkaw.mch.repository.CompressionSettings;
+import ca.bkaw.mch.repository.MchRepository;
+import ca.bkaw.mch.util.Util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Rewrites the region storage files and mch region files of a repository with the
+ * current compression settings of the repository.
+ */
+public class RegionFileRecompressor {
+    /**
+     * Compress every region storage file and mch region file in a repository again.
+     * <p>
+     * Region storage files are also compressed with the current dictionary of the
+     * repository, if there is one. Each file is written to a temporary file first
+     * and then replaces the old file. The {@link CompressionSettings#workers() workers}
+     * of the compression settings is the amount of files rewritten concurrently.
+     *
+     * @param repository The repository.
+     * @return The amount of files that were rewritten.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static int recompress(MchRepository repository) throws IOException {
+        Path worldsPath = repository.getRoot().resolve("world");
+        if (Files.notExists(worldsPath)) {
+            return 0;
+        }
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(worldsPath)) {
+            paths = stream.filter(Files::isRegularFile).sorted().toList();
+        }
+
+        CompressionSettings compressionSettings = repository.getCompressionSettings();
+        int workers = compressionSettings.workers();
+        ExecutorService executor = workers > 1 ? Executors.newFixedThreadPool(workers) : null;
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>(paths.size());
+            for (Path path : paths) {
+                futures.add(Util.submit(executor, () -> recompress(repository, compressionSettings, path)));
+            }
+            int count = 0;
+            for (Future<Boolean> future : futures) {
+                if (Util.await(future)) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static boolean recompress(MchRepository repository, CompressionSettings compressionSettings, Path path) throws IOException {
+        String fileName = path.getFileName().toString();
+        if (fileName.endsWith(".mchrs")) {
+            Path tempOutputFile = Files.createTempFile(path.getParent(), fileName, ".mchrs-temp");
+            try (RegionStorageFile file = RegionStorageFile.open(path, true, repository.getDictionaries(), compressionSettings)) {
+                file.recompressTo(tempOutputFile);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tempOutputFile);
+                throw e;
+            }
+            Util.safeReplace(tempOutputFile, path);
+            return true;
+        } else if (fileName.endsWith(".mchrv")) {
+            MchRegionFile.recompress(path, compressionSettings);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,74 @@
+package ca.bkaw.mch.region;
+
+import ca.bkaw.mch.chunk.parts.ChunkDataPart;
+import ca.bkaw.mch.chunk.parts.ChunkDataParts;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * The folders of a dimension that contain Minecraft region files.
+ * <p>
+ * Each type is stored in its own folder in the repository and splits its chunks
+ * into data parts that suit the nbt of the chunks in that type of region file.
+ * <p>
+ * The order of the constants is used when writing dimensions and must not change.
+ */
+public enum RegionFileType {
+    /**
+     * Region files with block data.
+     */
+    REGION("region", ChunkDataParts.CHUNK_DATA_PARTS),
+    /**
+     * Region files with entities.
+     */
+    ENTITIES("entities", ChunkDataParts.ENTITY_DATA_PARTS),
+    /**
+     * Region files with points of interest.
+     */
+    POI("poi", ChunkDataParts.POI_DATA_PARTS);
+
+    private final String folderName;
+    private final List<ChunkDataPart> chunkDataParts;
+
+    RegionFileType(String folderName, List<ChunkDataPart> chunkDataParts) {
+        this.folderName = folderName;
+        this.chunkDataParts = chunkDataParts;
+    }
+
+    /**
+     * Get the name of the folder that the region files are stored in, both in the
+     * world and in the repository.
+     *
+     * @return The folder name.
+     */
+    public String getFolderName() {
+        return this.folderName;
+    }
+
+    /**
+     * Get the sequence of {@link ChunkDataPart}s that the chunks in this type of
+     * region file are split into.
+     *
+     * @return The chunk data parts.
+     */
+    public List<ChunkDataPart> getChunkDataParts() {
+        return this.chunkDataParts;
+    }
+
+    /**
+     * Get a region file type by the name of its folder.
+     *
+     * @param folderName The folder name.
+     * @return The region file type, or null.
+     */
+    @Nullable
+    public static RegionFileType byFolderName(String folderName) {
+        for (RegionFileType type : values()) {
+            if (type.folderName.equals(folderName)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
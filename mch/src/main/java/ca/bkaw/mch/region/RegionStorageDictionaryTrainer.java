@@ -0,0 +1,98 @@
+package ca.bkaw.mch.region;
+
+import ca.bkaw.mch.repository.MchRepository;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Trains zstd dictionaries for the records of region storage files.
+ * <p>
+ * The records are the chunk storages of single chunks, which are small and share
+ * most of their content with each other, like the names of nbt tags and the block
+ * states in the palettes of sections. A dictionary trained on these records lets
+ * zstd reference this shared content instead of storing it in every record.
+ */
+public class RegionStorageDictionaryTrainer {
+    /**
+     * The default dictionary size, the same as the default of the zstd command line.
+     */
+    public static final int DEFAULT_DICTIONARY_SIZE = 112640;
+
+    /**
+     * The maximum amount of records to sample from each region storage file, so that
+     * the samples come from many regions.
+     */
+    private static final int RECORDS_PER_FILE = 32;
+
+    /**
+     * Train a dictionary from a sample of the records of the region storage files in
+     * a repository.
+     *
+     * @param repository The repository.
+     * @param dictionarySize The maximum size of the dictionary in bytes.
+     * @return The bytes of the trained dictionary.
+     * @throws IOException If an I/O error occurs.
+     * @throws IllegalStateException If the repository has no chunks to sample.
+     */
+    public static byte[] train(MchRepository repository, int dictionarySize) throws IOException {
+        // zstd recommends around 100 times more samples than the dictionary size.
+        int sampleSize = dictionarySize * 100;
+        ZstdDictTrainer trainer = new ZstdDictTrainer(sampleSize, dictionarySize);
+
+        Path worldsPath = repository.getRoot().resolve("world");
+        if (Files.notExists(worldsPath)) {
+            throw new IllegalStateException("The repository does not have any chunks to train a dictionary from.");
+        }
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(worldsPath)) {
+            paths = stream.filter(path -> path.getFileName().toString().endsWith(".mchrs")).sorted().toList();
+        }
+
+        int samples = 0;
+        long totalSize = 0;
+        for (Path path : paths) {
+            try (RegionStorageFile file = RegionStorageFile.open(path, true, repository.getDictionaries(), repository.getCompressionSettings())) {
+                int recordCount = 0;
+                for (int i = 0; i < RegionStorageFile.CHUNK_COUNT; i++) {
+                    if (file.hasChunkStorage(i)) {
+                        recordCount++;
+                    }
+                }
+                // Take evenly spaced records so the samples are spread over the region.
+                int step = Math.max(1, recordCount / RECORDS_PER_FILE);
+                int recordIndex = 0;
+                for (int i = 0; i < RegionStorageFile.CHUNK_COUNT; i++) {
+                    if (!file.hasChunkStorage(i)) {
+                        continue;
+                    }
+                    if (recordIndex++ % step != 0) {
+                        continue;
+                    }
+                    byte[] sample;
+                    try (ZstdInputStream input = file.decompress(file.readRecord(i))) {
+                        sample = input.readAllBytes();
+                    }
+                    if (totalSize + sample.length > sampleSize || !trainer.addSample(sample)) {
+                        return finish(trainer, samples);
+                    }
+                    samples++;
+                    totalSize += sample.length;
+                }
+            }
+        }
+        return finish(trainer, samples);
+    }
+
+    private static byte[] finish(ZstdDictTrainer trainer, int samples) {
+        if (samples == 0) {
+            throw new IllegalStateException("The repository does not have any chunks to train a dictionary from.");
+        }
+        return trainer.trainSamples();
+    }
+}
@@ -0,0 +1,371 @@
+package ca.bkaw.mch.region;
+
+import ca.bkaw.mch.FileMagic;
+import ca.bkaw.mch.MchVersion;
+import ca.bkaw.mch.chunk.ChunkStorage;
+import ca.bkaw.mch.repository.CompressionSettings;
+import ca.bkaw.mch.repository.ZstdDictionaries;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An indexed mch region storage file.
+ * <p>
+ * The file starts with a header that points to a table with the offset and length
+ * of the record of each of the 1024 chunks. Each record is a {@link ChunkStorage}
+ * compressed on its own, which allows a single chunk to be read without reading
+ * the rest of the file.
+ * <p>
+ * Records may be compressed with a zstd dictionary of the repository. The id of
+ * the dictionary is stored in the zstd frame of the record, so records compressed
+ * with different dictionaries, or without one, can be mixed in the same file.
+ * <p>
+ * Changed records are appended to the end of the file followed by a new table.
+ * The header is updated last, so if the process is terminated while writing, the
+ * header still points to the previous table. Records and tables that are no longer
+ * referenced are removed when the file is compacted.
+ *
+ * @see RegionStorageVisitor
+ */
+class RegionStorageFile implements Closeable {
+    public static final int MAGIC = FileMagic.REGION_STORAGE;
+    public static final int CHUNK_COUNT = MchRegionFile.CHUNK_COUNT;
+
+    /**
+     * magic (int), mch version (int), table offset (long)
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+
+    /**
+     * For each chunk: record offset (long), record length (int)
+     */
+    private static final int TABLE_SIZE = CHUNK_COUNT * (8 + 4);
+
+    /**
+     * The amount of unreferenced bytes that are allowed before the file is compacted,
+     * unless the unreferenced bytes are more than the referenced bytes.
+     */
+    private static final long MIN_GARBAGE_TO_COMPACT = 64 * 1024;
+
+    private final FileChannel channel;
+    @Nullable
+    private final ZstdDictionaries dictionaries;
+    private final CompressionSettings compressionSettings;
+    private final long[] offsets = new long[CHUNK_COUNT];
+    private final int[] lengths = new int[CHUNK_COUNT];
+    private long appendPosition;
+    private boolean modified;
+
+    private RegionStorageFile(FileChannel channel, @Nullable ZstdDictionaries dictionaries, CompressionSettings compressionSettings) {
+        this.channel = channel;
+        this.dictionaries = dictionaries;
+        this.compressionSettings = compressionSettings;
+    }
+
+    /**
+     * Open an existing region storage file.
+     *
+     * @param path The path to the file.
+     * @param readOnly Whether the file will only be read from.
+     * @param dictionaries The dictionaries to compress and decompress records with,
+     *                     or null to not use dictionaries.
+     * @param compressionSettings The settings to compress written records with.
+     * @return The opened file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static RegionStorageFile open(Path path, boolean readOnly, @Nullable ZstdDictionaries dictionaries, CompressionSettings compressionSettings) throws IOException {
+        FileChannel channel = readOnly
+            ? FileChannel.open(path, StandardOpenOption.READ)
+            : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        RegionStorageFile file = new RegionStorageFile(channel, dictionaries, compressionSettings);
+        try {
+            file.readTable();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * Create a new empty region storage file. If the file exists it is overwritten.
+     *
+     * @param path The path to the file.
+     * @param dictionaries The dictionaries to compress and decompress records with,
+     *                     or null to not use dictionaries.
+     * @param compressionSettings The settings to compress written records with.
+     * @return The created file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static RegionStorageFile create(Path path, @Nullable ZstdDictionaries dictionaries, CompressionSettings compressionSettings) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.READ, StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING
+        );
+        RegionStorageFile file = new RegionStorageFile(channel, dictionaries, compressionSettings);
+        try {
+            file.writeHeader(0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        file.appendPosition = HEADER_SIZE;
+        file.modified = true;
+        return file;
+    }
+
+    private void readTable() throws IOException {
+        ByteBuffer header = this.readBytes(0, HEADER_SIZE);
+        int magic = header.getInt();
+        if (magic != MAGIC) {
+            throw new RuntimeException("Expected magic " + Integer.toHexString(MAGIC) + " but found " + Integer.toHexString(magic) + ". Is the file corrupted?");
+        }
+        int mchVersion = header.getInt();
+        MchVersion.validate(mchVersion, 14);
+        long tableOffset = header.getLong();
+
+        // Anything after the table was not completely written and can be overwritten.
+        if (tableOffset == 0) {
+            this.appendPosition = HEADER_SIZE;
+            return;
+        }
+        this.appendPosition = tableOffset + TABLE_SIZE;
+
+        ByteBuffer table = this.readBytes(tableOffset, TABLE_SIZE);
+        for (int i = 0; i < CHUNK_COUNT; i++) {
+            this.offsets[i] = table.getLong();
+            this.lengths[i] = table.getInt();
+        }
+    }
+
+    private void writeHeader(long tableOffset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(MchVersion.VERSION_NUMBER);
+        header.putLong(tableOffset);
+        header.flip();
+        this.writeBytes(0, header);
+    }
+
+    private ByteBuffer readBytes(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = this.channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of region storage file.");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void writeBytes(long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Check whether there is a chunk storage for the chunk at the specified index.
+     *
+     * @param index The index of the chunk.
+     * @return Whether there is a record for the chunk.
+     */
+    public boolean hasChunkStorage(int index) {
+        return this.lengths[index] != 0;
+    }
+
+    /**
+     * Read the compressed record for the chunk at the specified index.
+     *
+     * @param index The index of the chunk.
+     * @return The record, or null if there is no chunk storage for the chunk.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Nullable
+    public byte[] readRecord(int index) throws IOException {
+        if (this.lengths[index] == 0) {
+            return null;
+        }
+        return this.readBytes(this.offsets[index], this.lengths[index]).array();
+    }
+
+    /**
+     * Read the chunk storage for the chunk at the specified index.
+     *
+     * @param index The index of the chunk.
+     * @return The chunk storage. An empty chunk storage if there is no record.
+     * @throws IOException If an I/O error occurs.
+     */
+    public ChunkStorage readChunkStorage(int index) throws IOException {
+        byte[] record = this.readRecord(index);
+        if (record == null) {
+            return new ChunkStorage();
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(this.decompress(record)))) {
+            return new ChunkStorage(input);
+        }
+    }
+
+    /**
+     * Open a stream that decompresses a record, using the dictionary the record was
+     * compressed with, if any.
+     *
+     * @param record The compressed record.
+     * @return The decompressing stream.
+     * @throws IOException If an I/O error occurs.
+     */
+    public ZstdInputStream decompress(byte[] record) throws IOException {
+        ZstdInputStream input = new ZstdInputStream(new ByteArrayInputStream(record));
+        long dictionaryId = Zstd.getDictIdFromFrame(record);
+        if (dictionaryId != 0) {
+            if (this.dictionaries == null) {
+                throw new IOException("The record of the chunk was compressed with a dictionary, but no dictionaries are available.");
+            }
+            input.setDict(this.dictionaries.get(dictionaryId).getDecompressor());
+        }
+        return input;
+    }
+
+    /**
+     * Write the chunk storage for the chunk at the specified index. The record is
+     * appended to the file and referenced once {@link #commit()} is called.
+     * <p>
+     * Records are small, so they are always compressed on the calling thread.
+     *
+     * @param index The index of the chunk.
+     * @param chunkStorage The chunk storage.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeChunkStorage(int index, ChunkStorage chunkStorage) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int level = this.compressionSettings.level();
+        ZstdOutputStream zstdOutput = new ZstdOutputStream(bytes, level);
+        ZstdDictionaries.Dictionary dictionary = this.dictionaries != null ? this.dictionaries.getCurrent() : null;
+        if (dictionary != null) {
+            zstdOutput.setDict(dictionary.getCompressor(level));
+        }
+        try (DataOutputStream output = new DataOutputStream(zstdOutput)) {
+            chunkStorage.write(output);
+        }
+        this.writeRecord(index, bytes.toByteArray());
+    }
+
+    /**
+     * Write an already compressed record for the chunk at the specified index.
+     *
+     * @param index The index of the chunk.
+     * @param record The compressed record.
+     * @throws IOException If an I/O error occurs.
+     * @see #writeChunkStorage(int, ChunkStorage)
+     */
+    public void writeRecord(int index, byte[] record) throws IOException {
+        this.writeBytes(this.appendPosition, ByteBuffer.wrap(record));
+        this.offsets[index] = this.appendPosition;
+        this.lengths[index] = record.length;
+        this.appendPosition += record.length;
+        this.modified = true;
+    }
+
+    /**
+     * Write the table and point the header to it, making the written records
+     * visible to readers. Does nothing if no records were written.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void commit() throws IOException {
+        if (!this.modified) {
+            return;
+        }
+        long tableOffset = this.appendPosition;
+        ByteBuffer table = ByteBuffer.allocate(TABLE_SIZE);
+        for (int i = 0; i < CHUNK_COUNT; i++) {
+            table.putLong(this.offsets[i]);
+            table.putInt(this.lengths[i]);
+        }
+        table.flip();
+        this.writeBytes(tableOffset, table);
+        this.channel.truncate(tableOffset + TABLE_SIZE);
+
+        // Make sure the records and the table are written before the header
+        // references them.
+        this.channel.force(false);
+        this.writeHeader(tableOffset);
+        this.channel.force(false);
+
+        this.appendPosition = tableOffset + TABLE_SIZE;
+        this.modified = false;
+    }
+
+    /**
+     * Check whether enough of the file consists of unreferenced records and tables
+     * for the file to be worth compacting.
+     *
+     * @return Whether the file should be compacted.
+     * @throws IOException If an I/O error occurs.
+     */
+    public boolean shouldCompact() throws IOException {
+        long referencedSize = HEADER_SIZE + TABLE_SIZE;
+        for (int length : this.lengths) {
+            referencedSize += length;
+        }
+        long garbage = this.channel.size() - referencedSize;
+        return garbage > MIN_GARBAGE_TO_COMPACT && garbage > referencedSize;
+    }
+
+    /**
+     * Write a copy of this file without unreferenced records to a new file.
+     *
+     * @param path The path of the new file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void compactTo(Path path) throws IOException {
+        try (RegionStorageFile compacted = RegionStorageFile.create(path, this.dictionaries, this.compressionSettings)) {
+            for (int i = 0; i < CHUNK_COUNT; i++) {
+                byte[] record = this.readRecord(i);
+                if (record != null) {
+                    compacted.writeRecord(i, record);
+                }
+            }
+            compacted.commit();
+        }
+    }
+
+    /**
+     * Write a copy of this file to a new file where every record is decompressed and
+     * compressed again with the current compression settings and dictionary.
+     *
+     * @param path The path of the new file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void recompressTo(Path path) throws IOException {
+        try (RegionStorageFile recompressed = RegionStorageFile.create(path, this.dictionaries, this.compressionSettings)) {
+            for (int i = 0; i < CHUNK_COUNT; i++) {
+                if (this.hasChunkStorage(i)) {
+                    recompressed.writeChunkStorage(i, this.readChunkStorage(i));
+                }
+            }
+            recompressed.commit();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
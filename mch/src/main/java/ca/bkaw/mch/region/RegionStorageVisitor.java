@@ -4,29 +4,35 @@ import ca.bkaw.mch.FileMagic;
 import ca.bkaw.mch.MchVersion;
 import ca.bkaw.mch.chunk.ChunkStorage;
 import ca.bkaw.mch.chunk.RegionFileChunk;
+import ca.bkaw.mch.chunk.parts.ChunkDataPart;
 import ca.bkaw.mch.nbt.NbtCompound;
+import ca.bkaw.mch.region.mc.McRegionFileReader;
 import ca.bkaw.mch.repository.MchRepository;
+import ca.bkaw.mch.repository.CompressionSettings;
 import ca.bkaw.mch.repository.TrackedWorld;
+import ca.bkaw.mch.repository.ZstdDictionaries;
 import ca.bkaw.mch.util.Util;
 import com.github.luben.zstd.ZstdInputStream;
-import com.github.luben.zstd.ZstdOutputStream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.VisibleForTesting;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
 
 /**
- * A visitor that can read and write chunks from an mch region storage file in a
- * streaming way, preventing the need to load the entire mch region storage into
+ * A visitor that can read and write chunks from an mch region storage file one
+ * chunk at a time, preventing the need to load the entire mch region storage into
  * memory at once.
  * <p>
+ * Chunk storages are only read when the visitor uses them, and only the chunks
+ * that the visitor stores a new version of are written to the file.
+ * <p>
  * The region storage contains the {@link ChunkStorage}s that store the different
  * version numbers of chunks. For the files that store the chunk version numbers
  * to use for a specific region file version number, see {@link MchRegionFile}.
@@ -62,20 +68,32 @@ public interface RegionStorageVisitor {
      * @param repository The mch repository.
      * @param trackedWorld The tracked world.
      * @param dimensionKey The dimension of the world.
+     * @param regionFileType The type of region file.
      * @param regionX The region x coordinate.
      * @param regionZ The region z coordinate.
      * @return The region storage file path.
      */
-    private static Path getPath(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, int regionX, int regionZ) {
+    private static Path getPath(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, RegionFileType regionFileType, int regionX, int regionZ) {
         Path mchRegionFolderPath = Util.getMchRegionFolderPath(
-            repository, trackedWorld, dimensionKey
+            repository, trackedWorld, dimensionKey, regionFileType
         );
         String fileName = Util.formatRegionFileName(
-            regionX, regionZ, ".mchrs.zst"
+            regionX, regionZ, ".mchrs"
         );
         return mchRegionFolderPath.resolve(fileName);
     }
 
+    /**
+     * Get the path to the region storage file in the streaming format used before
+     * mch version 14, where the entire file is compressed as one stream.
+     *
+     * @param path The path of the region storage file.
+     * @return The path of the legacy region storage file.
+     */
+    private static Path getLegacyPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".zst");
+    }
+
     /**
      * Visit an mch region storage file for reading and writing.
      *
@@ -83,54 +101,195 @@ public interface RegionStorageVisitor {
      * @param trackedWorld The tracked world.
      * @param dimensionKey The dimension of the world.
      * @param regionX The region x coordinate.
-     * @param regionZ The region z coordinate.     * @param visitor The visitor.
+     * @param regionZ The region z coordinate.
+     * @param visitor The visitor.
      * @throws IOException If an I/O error occurs.
      */
     static void visit(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, int regionX, int regionZ, RegionStorageVisitor visitor) throws IOException {
-        Path regionStoragePath = getPath(repository, trackedWorld, dimensionKey, regionX, regionZ);
+        visit(repository, trackedWorld, dimensionKey, RegionFileType.REGION, regionX, regionZ, visitor);
+    }
+
+    /**
+     * Visit the region storage file of a type of region file for reading and writing.
+     *
+     * @param repository The mch repository.
+     * @param trackedWorld The tracked world.
+     * @param dimensionKey The dimension of the world.
+     * @param regionFileType The type of region file.
+     * @param regionX The region x coordinate.
+     * @param regionZ The region z coordinate.
+     * @param visitor The visitor.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void visit(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, RegionFileType regionFileType, int regionX, int regionZ, RegionStorageVisitor visitor) throws IOException {
+        Path regionStoragePath = getPath(repository, trackedWorld, dimensionKey, regionFileType, regionX, regionZ);
         Files.createDirectories(regionStoragePath.getParent());
-        performVisit(regionStoragePath, false, visitor);
+        performVisit(regionStoragePath, false, repository.getDictionaries(), repository.getCompressionSettings(), visitor);
     }
 
     /**
      * Visit an mch region file for reading.
+     * <p>
+     * Only the chunks that the visitor reads from are read from the file.
      *
      * @param repository The mch repository.
      * @param trackedWorld The tracked world.
      * @param dimensionKey The dimension of the world.
      * @param regionX The region x coordinate.
-     * @param regionZ The region z coordinate.     * @param visitor The visitor.
+     * @param regionZ The region z coordinate.
+     * @param visitor The visitor.
      * @throws IOException If an I/O error occurs.
      */
     static void visitReadOnly(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, int regionX, int regionZ, RegionStorageVisitor visitor) throws IOException {
-        Path regionStoragePath = getPath(repository, trackedWorld, dimensionKey, regionX, regionZ);
-        performVisit(regionStoragePath, true, visitor);
+        visitReadOnly(repository, trackedWorld, dimensionKey, RegionFileType.REGION, regionX, regionZ, visitor);
+    }
+
+    /**
+     * Visit the region storage file of a type of region file for reading.
+     *
+     * @param repository The mch repository.
+     * @param trackedWorld The tracked world.
+     * @param dimensionKey The dimension of the world.
+     * @param regionFileType The type of region file.
+     * @param regionX The region x coordinate.
+     * @param regionZ The region z coordinate.
+     * @param visitor The visitor.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void visitReadOnly(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, RegionFileType regionFileType, int regionX, int regionZ, RegionStorageVisitor visitor) throws IOException {
+        Path regionStoragePath = getPath(repository, trackedWorld, dimensionKey, regionFileType, regionX, regionZ);
+        performVisit(regionStoragePath, true, repository.getDictionaries(), repository.getCompressionSettings(), visitor);
+    }
+
+    /**
+     * Restore a single chunk without visiting the rest of the region storage.
+     *
+     * @param repository The mch repository.
+     * @param trackedWorld The tracked world.
+     * @param dimensionKey The dimension of the world.
+     * @param regionX The region x coordinate.
+     * @param regionZ The region z coordinate.
+     * @param chunkX The chunk x coordinate, relative to the region file [0-31].
+     * @param chunkZ The chunk z coordinate, relative to the region file [0-31].
+     * @param chunkVersionNumber The chunk version number.
+     * @return The chunk nbt at that snapshot.
+     * @throws IOException If an I/O error occurs.
+     */
+    static RegionFileChunk restoreChunk(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, int regionX, int regionZ, int chunkX, int chunkZ, int chunkVersionNumber) throws IOException {
+        return restoreChunk(repository, trackedWorld, dimensionKey, RegionFileType.REGION, regionX, regionZ, chunkX, chunkZ, chunkVersionNumber);
+    }
+
+    /**
+     * Restore a single chunk without visiting the rest of the region storage.
+     *
+     * @param repository The mch repository.
+     * @param trackedWorld The tracked world.
+     * @param dimensionKey The dimension of the world.
+     * @param regionFileType The type of region file.
+     * @param regionX The region x coordinate.
+     * @param regionZ The region z coordinate.
+     * @param chunkX The chunk x coordinate, relative to the region file [0-31].
+     * @param chunkZ The chunk z coordinate, relative to the region file [0-31].
+     * @param chunkVersionNumber The chunk version number.
+     * @return The chunk nbt at that snapshot.
+     * @throws IOException If an I/O error occurs.
+     */
+    static RegionFileChunk restoreChunk(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, RegionFileType regionFileType, int regionX, int regionZ, int chunkX, int chunkZ, int chunkVersionNumber) throws IOException {
+        Path regionStoragePath = getPath(repository, trackedWorld, dimensionKey, regionFileType, regionX, regionZ);
+        int index = McRegionFileReader.getIndex(chunkX, chunkZ);
+        if (Files.exists(regionStoragePath)) {
+            try (RegionStorageFile file = RegionStorageFile.open(regionStoragePath, true, repository.getDictionaries(), repository.getCompressionSettings())) {
+                return file.readChunkStorage(index).restore(chunkVersionNumber);
+            }
+        }
+        RegionFileChunk[] result = new RegionFileChunk[1];
+        performVisit(regionStoragePath, true, repository.getDictionaries(), repository.getCompressionSettings(), chunk -> {
+            if (chunk.getIndex() == index) {
+                result[0] = chunk.restore(chunkVersionNumber);
+            }
+        });
+        return result[0];
     }
 
     @VisibleForTesting
     static void performVisit(Path path, boolean readOnly, RegionStorageVisitor visitor) throws IOException {
+        performVisit(path, readOnly, null, CompressionSettings.DEFAULT, visitor);
+    }
+
+    private static void performVisit(Path path, boolean readOnly, @Nullable ZstdDictionaries dictionaries, CompressionSettings compressionSettings, RegionStorageVisitor visitor) throws IOException {
+        if (Files.exists(path)) {
+            try (RegionStorageFile file = RegionStorageFile.open(path, readOnly, dictionaries, compressionSettings)) {
+                performVisit(file, readOnly, visitor);
+                if (readOnly) {
+                    return;
+                }
+                file.commit();
+                if (!file.shouldCompact()) {
+                    return;
+                }
+            }
+            // Too much of the file consists of old records, write a compacted copy.
+            Path tempOutputFile = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".mchrs-temp");
+            try (RegionStorageFile file = RegionStorageFile.open(path, true, dictionaries, compressionSettings)) {
+                file.compactTo(tempOutputFile);
+            }
+            Util.safeReplace(tempOutputFile, path);
+            return;
+        }
+
+        // There is no region storage file in the indexed format. Read from the
+        // legacy streaming format if it exists, and write all chunks to a new file.
+        Path legacyPath = getLegacyPath(path);
         Path tempOutputFile = readOnly ? null
             : Files.createTempFile(path.getParent(), path.getFileName().toString(), ".mchrs-temp");
 
         try (
-            DataInputStream input = Files.exists(path)
-                ? new DataInputStream(new BufferedInputStream(new ZstdInputStream(Files.newInputStream(path))))
+            DataInputStream input = Files.exists(legacyPath)
+                ? new DataInputStream(new BufferedInputStream(new ZstdInputStream(Files.newInputStream(legacyPath))))
                 : null;
-            DataOutputStream output = !readOnly
-                ? new DataOutputStream(new BufferedOutputStream(new ZstdOutputStream(Files.newOutputStream(tempOutputFile))))
-                : null
+            RegionStorageFile output = !readOnly ? RegionStorageFile.create(tempOutputFile, dictionaries, compressionSettings) : null
         ) {
-            performVisit(input, output, visitor);
+            performLegacyVisit(input, output, visitor);
+            if (output != null) {
+                output.commit();
+            }
         }
 
         if (tempOutputFile != null) {
             Util.safeReplace(tempOutputFile, path);
+            Files.deleteIfExists(legacyPath);
         }
     }
 
     private static void performVisit(
+        @NotNull RegionStorageFile file,
+        boolean readOnly,
+        @NotNull RegionStorageVisitor visitor
+    ) throws IOException {
+        int index = 0;
+        for (int chunkZ = 0; chunkZ < 32; chunkZ++) {
+            for (int chunkX = 0; chunkX < 32; chunkX++) {
+                // The iteration order is important here.
+
+                // The chunk storage is only read if the visitor uses it.
+                Chunk chunk = new Chunk(index, chunkX, chunkZ, file, readOnly);
+                visitor.visit(chunk);
+                // Propagate IOException from visit to method
+
+                // Only chunks that the visitor stored a new version of are written,
+                // storing an existing version again does not modify the chunk.
+                if (chunk.modified) {
+                    file.writeChunkStorage(index, chunk.chunkStorage);
+                }
+
+                index++;
+            }
+        }
+    }
+
+    private static void performLegacyVisit(
         @Nullable DataInputStream input,
-        @Nullable DataOutputStream output,
+        @Nullable RegionStorageFile output,
         @NotNull RegionStorageVisitor visitor
     ) throws IOException {
         if (input != null) {
@@ -138,10 +297,6 @@ public interface RegionStorageVisitor {
             int mchVersion = input.readInt();
             MchVersion.validate(mchVersion, 9);
         }
-        if (output != null) {
-            output.writeInt(MAGIC);
-            output.writeInt(MchVersion.VERSION_NUMBER);
-        }
         int index = 0;
         for (int chunkZ = 0; chunkZ < 32; chunkZ++) {
             for (int chunkX = 0; chunkX < 32; chunkX++) {
@@ -155,8 +310,8 @@ public interface RegionStorageVisitor {
 
                 // The visitor may now have modified the chunk storage by mutating the chunk.
 
-                if (output != null) {
-                    chunk.chunkStorage.write(output);
+                if (output != null && !chunk.chunkStorage.isEmpty()) {
+                    output.writeChunkStorage(index, chunk.chunkStorage);
                 }
 
                 index++;
@@ -173,8 +328,11 @@ public interface RegionStorageVisitor {
      */
     class Chunk {
         private final int index, chunkX, chunkZ;
-        private final ChunkStorage chunkStorage;
         private final boolean readOnly;
+        @Nullable
+        private final RegionStorageFile file;
+        private ChunkStorage chunkStorage;
+        private boolean modified;
 
         public Chunk(int index, int chunkX, int chunkZ, ChunkStorage chunkStorage, boolean readOnly) {
             this.index = index;
@@ -182,6 +340,23 @@ public interface RegionStorageVisitor {
             this.chunkZ = chunkZ;
             this.chunkStorage = chunkStorage;
             this.readOnly = readOnly;
+            this.file = null;
+        }
+
+        Chunk(int index, int chunkX, int chunkZ, @NotNull RegionStorageFile file, boolean readOnly) {
+            this.index = index;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.file = file;
+            this.readOnly = readOnly;
+        }
+
+        @NotNull
+        private ChunkStorage getChunkStorage() throws IOException {
+            if (this.chunkStorage == null) {
+                this.chunkStorage = this.file.readChunkStorage(this.index);
+            }
+            return this.chunkStorage;
         }
 
         /**
@@ -191,12 +366,41 @@ public interface RegionStorageVisitor {
          * region file.
          *
          * @param chunk The chunk nbt.
+         * @param lastModified The last modified time of the chunk, in epoch seconds.
+         * @return The chunk version number.
+         * @throws IOException If an I/O error occurs while reading the chunk storage.
          */
-        public int store(NbtCompound chunk, int lastModified) {
+        public int store(NbtCompound chunk, int lastModified) throws IOException {
             if (this.readOnly) {
                 throw new IllegalStateException("Can not store a chunk when using visitReadOnly");
             }
-            return this.chunkStorage.store(chunk, lastModified);
+            ChunkStorage chunkStorage = this.getChunkStorage();
+            int nextVersionNumber = chunkStorage.getNextVersionNumber();
+            int versionNumber = chunkStorage.store(chunk, lastModified);
+            this.modified |= chunkStorage.getNextVersionNumber() != nextVersionNumber;
+            return versionNumber;
+        }
+
+        /**
+         * Store a new version of the chunk, split into the specified data parts.
+         *
+         * @param chunk The chunk nbt.
+         * @param lastModified The last modified time of the chunk, in epoch seconds.
+         * @param chunkDataParts The data parts to split the chunk into.
+         * @return The chunk version number.
+         * @throws IOException If an I/O error occurs while reading the chunk storage.
+         * @see RegionFileType#getChunkDataParts()
+         */
+        public int store(NbtCompound chunk, int lastModified, List<ChunkDataPart> chunkDataParts) throws IOException {
+            if (this.readOnly) {
+                throw new IllegalStateException("Can not store a chunk when using visitReadOnly");
+            }
+            ChunkStorage chunkStorage = this.getChunkStorage();
+            int nextVersionNumber = chunkStorage.getNextVersionNumber();
+            int versionNumber = chunkStorage.store(chunk, lastModified, chunkDataParts);
+            // When the chunk was equal to an existing version nothing needs to be written
+            this.modified |= chunkStorage.getNextVersionNumber() != nextVersionNumber;
+            return versionNumber;
         }
 
         /**
@@ -204,13 +408,28 @@ public interface RegionStorageVisitor {
          *
          * @param versionNumber The chunk version number.
          * @return The chunk nbt at that snapshot.
+         * @throws IOException If an I/O error occurs while reading the chunk storage.
+         */
+        public RegionFileChunk restore(int versionNumber) throws IOException {
+            return this.getChunkStorage().restore(versionNumber);
+        }
+
+        /**
+         * Restore only the specified top-level keys of the chunk nbt at the specified
+         * version number.
+         *
+         * @param versionNumber The chunk version number.
+         * @param keys The keys to restore.
+         * @return The chunk nbt with only the keys that were present.
+         * @throws IOException If an I/O error occurs while reading the chunk storage.
+         * @see ChunkStorage#restore(int, Set)
          */
-        public RegionFileChunk restore(int versionNumber) {
-            return this.chunkStorage.restore(versionNumber);
+        public RegionFileChunk restore(int versionNumber, Set<String> keys) throws IOException {
+            return this.getChunkStorage().restore(versionNumber, keys);
         }
 
-        public int getLastModified(int versionNumber) {
-            return this.chunkStorage.getLastModified(versionNumber);
+        public int getLastModified(int versionNumber) throws IOException {
+            return this.getChunkStorage().getLastModified(versionNumber);
         }
 
         /**
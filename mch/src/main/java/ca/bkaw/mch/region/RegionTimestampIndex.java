@@ -0,0 +1,162 @@
+package ca.bkaw.mch.region;
+
+import ca.bkaw.mch.FileMagic;
+import ca.bkaw.mch.MchVersion;
+import ca.bkaw.mch.region.mc.McRegionFileReader;
+import ca.bkaw.mch.repository.MchRepository;
+import ca.bkaw.mch.repository.TrackedWorld;
+import ca.bkaw.mch.util.Util;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.VisibleForTesting;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * A side index that remembers the chunk last modified times in the header of a
+ * Minecraft region file when a region file version was last stored.
+ * <p>
+ * When a region file has been modified since the last commit, the last modified
+ * times in its header can be compared to the index. If every chunk has the same
+ * last modified time, no chunk has changed and the region file version of the last
+ * commit can be used again without opening the region storage file.
+ * <p>
+ * The index is only a cache. A missing or outdated index only means that the
+ * region storage file is visited as usual.
+ */
+public class RegionTimestampIndex {
+    public static final int MAGIC = FileMagic.REGION_TIMESTAMPS;
+    public static final String EXTENSION = ".mchrt";
+
+    private static final int CHUNK_COUNT = McRegionFileReader.CHUNK_COUNT;
+    /**
+     * The size of the file: the magic, the mch version, the region file version
+     * number and the last modified times.
+     */
+    private static final int FILE_SIZE = 3 * 4 + CHUNK_COUNT * 4;
+
+    private RegionTimestampIndex() {}
+
+    private static Path getPath(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, RegionFileType regionFileType, int regionX, int regionZ) {
+        Path mchRegionFolderPath = Util.getMchRegionFolderPath(
+            repository, trackedWorld, dimensionKey, regionFileType
+        );
+        String fileName = Util.formatRegionFileName(
+            regionX, regionZ, EXTENSION
+        );
+        return mchRegionFolderPath.resolve(fileName);
+    }
+
+    /**
+     * Get the last modified times of the chunks in a region file, with 0 for chunks
+     * that are not present.
+     *
+     * @param mcRegionFile The region file.
+     * @return The last modified times, or null if a chunk is present but has no last
+     * modified time, in which case the times can not be used to detect changes.
+     */
+    @Nullable
+    public static int[] getTimestamps(McRegionFileReader mcRegionFile) {
+        int[] timestamps = mcRegionFile.getLastModifiedTimes();
+        for (int index = 0; index < CHUNK_COUNT; index++) {
+            if (!mcRegionFile.hasChunk(index & 31, index >> 5)) {
+                timestamps[index] = 0;
+            } else if (timestamps[index] == 0) {
+                return null;
+            }
+        }
+        return timestamps;
+    }
+
+    /**
+     * Check whether the index says that a region file version was stored from a
+     * region file with these exact last modified times.
+     *
+     * @param repository The mch repository.
+     * @param trackedWorld The tracked world.
+     * @param dimensionKey The dimension of the world.
+     * @param regionFileType The type of region file.
+     * @param regionX The region x coordinate.
+     * @param regionZ The region z coordinate.
+     * @param regionFileVersionNumber The region file version number of the last commit.
+     * @param timestamps The last modified times, see {@link #getTimestamps(McRegionFileReader)}.
+     * @return Whether the region file version can be used again.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static boolean matches(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, RegionFileType regionFileType, int regionX, int regionZ, int regionFileVersionNumber, int[] timestamps) throws IOException {
+        Path path = getPath(repository, trackedWorld, dimensionKey, regionFileType, regionX, regionZ);
+        return matches(path, regionFileVersionNumber, timestamps);
+    }
+
+    @VisibleForTesting
+    static boolean matches(Path path, int regionFileVersionNumber, int[] timestamps) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (bytes.length != FILE_SIZE) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt() != MAGIC) {
+            return false;
+        }
+        int mchVersion = buffer.getInt();
+        MchVersion.validate(mchVersion, 25);
+        if (buffer.getInt() != regionFileVersionNumber) {
+            // The index is from a different commit.
+            return false;
+        }
+        int[] storedTimestamps = new int[CHUNK_COUNT];
+        buffer.asIntBuffer().get(storedTimestamps);
+        return Arrays.equals(storedTimestamps, timestamps);
+    }
+
+    /**
+     * Remember the last modified times of the region file that a region file version
+     * was stored from.
+     *
+     * @param repository The mch repository.
+     * @param trackedWorld The tracked world.
+     * @param dimensionKey The dimension of the world.
+     * @param regionFileType The type of region file.
+     * @param regionX The region x coordinate.
+     * @param regionZ The region z coordinate.
+     * @param regionFileVersionNumber The region file version number that was stored.
+     * @param timestamps The last modified times, see {@link #getTimestamps(McRegionFileReader)}.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void write(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, RegionFileType regionFileType, int regionX, int regionZ, int regionFileVersionNumber, int[] timestamps) throws IOException {
+        Path path = getPath(repository, trackedWorld, dimensionKey, regionFileType, regionX, regionZ);
+        write(path, regionFileVersionNumber, timestamps);
+    }
+
+    @VisibleForTesting
+    static void write(Path path, int regionFileVersionNumber, int[] timestamps) throws IOException {
+        if (timestamps.length != CHUNK_COUNT) {
+            throw new IllegalArgumentException("Expected " + CHUNK_COUNT + " timestamps");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(FILE_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putInt(MchVersion.VERSION_NUMBER);
+        buffer.putInt(regionFileVersionNumber);
+        buffer.asIntBuffer().put(timestamps);
+
+        // Write to a temporary file first so that a partially written index is never read
+        Files.createDirectories(path.getParent());
+        Path tempFile = Files.createTempFile(path.getParent(), null, null);
+        try {
+            Files.write(tempFile, buffer.array());
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package ca.bkaw.mch.region.mc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Buffers and zlib instances that are reused when reading and writing chunks in
+ * region files.
+ * <p>
+ * Every {@link Inflater} and {@link Deflater} holds native memory that is only
+ * freed when the instance is ended or garbage collected, and the buffers needed
+ * for a chunk are often larger than 100 KB. Each thread therefore has its own
+ * instances that are reset and reused for every chunk. The buffers grow to the
+ * largest chunk the thread has seen and are then reused without allocating.
+ * <p>
+ * The buffers are only valid until the next chunk is read or written on the same
+ * thread, so they must never be returned to callers.
+ */
+final class ChunkBuffers {
+    private static final ThreadLocal<ChunkBuffers> BUFFERS = ThreadLocal.withInitial(ChunkBuffers::new);
+    private static final int INITIAL_SIZE = 64 * 1024;
+
+    final Inflater inflater = new Inflater();
+    final Deflater deflater = new Deflater();
+    /**
+     * The compressed bytes of a chunk.
+     */
+    final ScratchBuffer compressed = new ScratchBuffer();
+    /**
+     * The uncompressed nbt bytes of a chunk.
+     */
+    final ScratchBuffer uncompressed = new ScratchBuffer();
+    /**
+     * A data output that writes to {@link #uncompressed}.
+     */
+    final DataOutputStream uncompressedOutput = new DataOutputStream(this.uncompressed);
+
+    private ChunkBuffers() {}
+
+    /**
+     * Get the buffers of the current thread.
+     *
+     * @return The buffers.
+     */
+    static ChunkBuffers get() {
+        return BUFFERS.get();
+    }
+
+    /**
+     * Decompress the zlib bytes in {@link #compressed} into {@link #uncompressed}.
+     *
+     * @throws ZipException If the data is not valid zlib data.
+     * @throws EOFException If the data ended before the end of the zlib stream.
+     */
+    void inflate() throws ZipException, EOFException {
+        this.inflater.reset();
+        this.inflater.setInput(this.compressed.array(), 0, this.compressed.size());
+        this.uncompressed.reset();
+        try {
+            while (!this.inflater.finished()) {
+                if (this.uncompressed.size() == this.uncompressed.array().length) {
+                    this.uncompressed.ensureCapacity(this.uncompressed.size() * 2);
+                }
+                byte[] buffer = this.uncompressed.array();
+                int size = this.uncompressed.size();
+                int read = this.inflater.inflate(buffer, size, buffer.length - size);
+                if (read == 0 && (this.inflater.needsInput() || this.inflater.needsDictionary())) {
+                    throw new EOFException("Unexpected end of zlib compressed chunk.");
+                }
+                this.uncompressed.setSize(size + read);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+
+    /**
+     * Decompress the bytes in {@link #compressed}.
+     * <p>
+     * The returned buffer may be a view of these buffers, so it is only valid until
+     * the next chunk is read or written on this thread.
+     *
+     * @param compression The compression of the bytes.
+     * @return The buffer of uncompressed bytes.
+     * @throws IOException If the bytes could not be decompressed.
+     */
+    ByteBuffer decompress(ChunkCompression compression) throws IOException {
+        switch (compression) {
+            case ZLIB -> {
+                this.inflate();
+                return ByteBuffer.wrap(this.uncompressed.array(), 0, this.uncompressed.size());
+            }
+            case NONE -> {
+                return ByteBuffer.wrap(this.compressed.array(), 0, this.compressed.size());
+            }
+            default -> {
+                ByteArrayInputStream bytes = new ByteArrayInputStream(this.compressed.array(), 0, this.compressed.size());
+                try (InputStream stream = compression.decompress(bytes)) {
+                    return ByteBuffer.wrap(stream.readAllBytes());
+                }
+            }
+        }
+    }
+
+    /**
+     * Compress the bytes in {@link #uncompressed} with zlib into {@link #compressed}.
+     */
+    void deflate() {
+        this.deflater.reset();
+        this.deflater.setInput(this.uncompressed.array(), 0, this.uncompressed.size());
+        this.deflater.finish();
+        this.compressed.reset();
+        while (!this.deflater.finished()) {
+            if (this.compressed.size() == this.compressed.array().length) {
+                this.compressed.ensureCapacity(this.compressed.size() * 2);
+            }
+            byte[] buffer = this.compressed.array();
+            int size = this.compressed.size();
+            int written = this.deflater.deflate(buffer, size, buffer.length - size);
+            this.compressed.setSize(size + written);
+        }
+    }
+
+    /**
+     * A growable byte buffer that gives access to its array.
+     */
+    static final class ScratchBuffer extends ByteArrayOutputStream {
+        ScratchBuffer() {
+            super(INITIAL_SIZE);
+        }
+
+        /**
+         * Get the array backing this buffer. Only the first {@link #size()} bytes
+         * are valid.
+         *
+         * @return The array.
+         */
+        byte[] array() {
+            return this.buf;
+        }
+
+        @Override
+        public void write(int b) {
+            // Not synchronized, the buffers are only used by one thread.
+            this.ensureCapacity(this.count + 1);
+            this.buf[this.count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            this.ensureCapacity(this.count + length);
+            System.arraycopy(bytes, offset, this.buf, this.count, length);
+            this.count += length;
+        }
+
+        /**
+         * Make sure the array can hold at least the specified amount of bytes.
+         *
+         * @param capacity The minimum capacity.
+         */
+        void ensureCapacity(int capacity) {
+            if (this.buf.length < capacity) {
+                this.buf = Arrays.copyOf(this.buf, Math.max(capacity, this.buf.length * 2));
+            }
+        }
+
+        /**
+         * Set the amount of valid bytes, after bytes have been written to the
+         * {@link #array()} directly.
+         *
+         * @param size The amount of valid bytes.
+         */
+        void setSize(int size) {
+            this.count = size;
+        }
+    }
+}
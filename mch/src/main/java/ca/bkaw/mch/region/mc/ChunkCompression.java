@@ -0,0 +1,94 @@
+package ca.bkaw.mch.region.mc;
+
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The compression types that chunks in Minecraft region files can be stored with.
+ * <p>
+ * The game compresses chunks with zlib by default, but servers can be configured
+ * to use LZ4, which is faster, or to not compress chunks at all.
+ */
+public enum ChunkCompression {
+    GZIP(1),
+    ZLIB(2),
+    NONE(3),
+    LZ4(4);
+
+    /**
+     * The bit set in the compression type when the chunk is stored in a separate
+     * {@code c.<x>.<z>.mcc} file because it was too large for the region file.
+     */
+    public static final int EXTERNAL_FLAG = 0x80;
+
+    private final int id;
+
+    ChunkCompression(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Get the id that is stored in the region file for this compression type.
+     *
+     * @return The id.
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * Get a compression type by its id, without the {@link #EXTERNAL_FLAG}.
+     *
+     * @param id The id.
+     * @return The compression type.
+     * @throws UnsupportedOperationException If the compression type is not supported.
+     */
+    public static ChunkCompression byId(int id) {
+        for (ChunkCompression compression : values()) {
+            if (compression.id == id) {
+                return compression;
+            }
+        }
+        throw new UnsupportedOperationException("Unsupported chunk compression type " + id + ".");
+    }
+
+    /**
+     * Wrap a stream of compressed bytes in a stream that decompresses them.
+     *
+     * @param inputStream The compressed stream.
+     * @return The decompressing stream.
+     * @throws IOException If an I/O error occurs.
+     */
+    public InputStream decompress(InputStream inputStream) throws IOException {
+        return switch (this) {
+            case GZIP -> new GZIPInputStream(inputStream);
+            case ZLIB -> new InflaterInputStream(inputStream);
+            case NONE -> inputStream;
+            case LZ4 -> new LZ4BlockInputStream(inputStream);
+        };
+    }
+
+    /**
+     * Wrap a stream in a stream that compresses the bytes written to it.
+     *
+     * @param outputStream The stream to write the compressed bytes to.
+     * @return The compressing stream.
+     * @throws IOException If an I/O error occurs.
+     */
+    public OutputStream compress(OutputStream outputStream) throws IOException {
+        return switch (this) {
+            case GZIP -> new GZIPOutputStream(outputStream);
+            case ZLIB -> new DeflaterOutputStream(outputStream);
+            case NONE -> outputStream;
+            case LZ4 -> new LZ4BlockOutputStream(outputStream);
+        };
+    }
+}
@@ -1,14 +1,19 @@
 package ca.bkaw.mch.region.mc;
 
 import ca.bkaw.mch.nbt.NbtCompound;
-import ca.bkaw.mch.nbt.NbtTag;
+import ca.bkaw.mch.nbt.NbtReader;
 import ca.bkaw.mch.util.RandomAccessReader;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.zip.InflaterInputStream;
+import java.util.Set;
 
 /**
  * An object that once created opens a region file for reading chunks.
@@ -18,40 +23,104 @@ public class McRegionFileReader implements AutoCloseable {
     public static final int SECTOR_SIZE = 4096;
 
     private final RandomAccessReader file;
+    @Nullable
+    private final ExternalChunkOpener externalChunkOpener;
     private final int[] locations = new int[CHUNK_COUNT];
     private final int[] lastModified = new int[CHUNK_COUNT];
+    /**
+     * The length of the chunk that was last seeked to, including the compression type.
+     */
+    private int chunkLength;
 
     public McRegionFileReader(Path path) throws IOException {
-        this(RandomAccessReader.of(path));
+        this(RandomAccessReader.of(path), createExternalChunkOpener(path));
     }
 
     public McRegionFileReader(RandomAccessReader file) throws IOException {
+        this(file, null);
+    }
+
+    /**
+     * Open a region file for reading chunks.
+     *
+     * @param file The reader to read the region file from.
+     * @param externalChunkOpener The opener for chunks stored in separate files, or
+     *                            null if the region file is not expected to have
+     *                            such chunks.
+     * @throws IOException If an I/O error occurs.
+     */
+    public McRegionFileReader(RandomAccessReader file, @Nullable ExternalChunkOpener externalChunkOpener) throws IOException {
         this.file = file;
-        for (int i = 0; i < CHUNK_COUNT; i++) {
-            this.locations[i] = this.file.readInt();
-        }
-        for (int i = 0; i < CHUNK_COUNT; i++) {
-            this.lastModified[i] = this.file.readInt();
-        }
+        this.externalChunkOpener = externalChunkOpener;
+        this.file.readInts(this.locations);
+        this.file.readInts(this.lastModified);
     }
 
     public static int getIndex(int chunkX, int chunkZ) {
         return (chunkX & 31) + (chunkZ & 31) * 32;
     }
 
+    /**
+     * Get the name of the file that a chunk is stored in when it is too large to fit
+     * in the region file.
+     *
+     * @param regionX The region x coordinate.
+     * @param regionZ The region z coordinate.
+     * @param chunkX The chunk x coordinate, only the position within the region is used.
+     * @param chunkZ The chunk z coordinate, only the position within the region is used.
+     * @return The file name.
+     */
+    public static String getExternalChunkFileName(int regionX, int regionZ, int chunkX, int chunkZ) {
+        return "c." + (regionX * 32 + (chunkX & 31)) + "." + (regionZ * 32 + (chunkZ & 31)) + ".mcc";
+    }
+
+    /**
+     * Get the region coordinates from the name of a region file.
+     *
+     * @param path The path to the region file.
+     * @return The region x and z coordinates, or null if the file is not named like a
+     * region file.
+     */
+    @Nullable
+    static int[] getRegionCoordinates(Path path) {
+        String fileName = path.getFileName().toString();
+        if (!fileName.startsWith("r.") || !fileName.endsWith(".mca")) {
+            return null;
+        }
+        String[] split = fileName.substring("r.".length(), fileName.length() - ".mca".length()).split("\\.");
+        try {
+            return new int[] { Integer.parseInt(split[0]), Integer.parseInt(split[1]) };
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static ExternalChunkOpener createExternalChunkOpener(Path path) {
+        int[] regionCoordinates = getRegionCoordinates(path);
+        if (regionCoordinates == null) {
+            return null;
+        }
+        int regionX = regionCoordinates[0];
+        int regionZ = regionCoordinates[1];
+        return (chunkX, chunkZ) -> Files.newInputStream(
+            path.resolveSibling(getExternalChunkFileName(regionX, regionZ, chunkX, chunkZ))
+        );
+    }
+
     public boolean hasChunk(int chunkX, int chunkZ) {
         return this.locations[getIndex(chunkX, chunkZ)] != 0;
     }
 
     /**
-     * Read a data input stream from chunk coordinates.
+     * Seek to a chunk and read its header.
      *
      * @param chunkX The chunk x coordinate.
      * @param chunkZ The chunk z coordinate.
-     * @return The data input stream.
+     * @return The compression type, including the {@link ChunkCompression#EXTERNAL_FLAG}.
      * @throws IOException If an I/O error occurs.
      */
-    public DataInputStream readChunk(int chunkX, int chunkZ) throws IOException {
+    private int seekChunk(int chunkX, int chunkZ) throws IOException {
         int index = getIndex(chunkX, chunkZ);
 
         int location = this.locations[index];
@@ -67,19 +136,131 @@ public class McRegionFileReader implements AutoCloseable {
 
         int byteOffset = offsetSector * SECTOR_SIZE;
         this.file.seek(byteOffset);
-        int length = this.file.readInt();
-        byte compressionType = this.file.readByte();
-        if (compressionType != 2) {
-            throw new UnsupportedOperationException("Only compression type 2 (Zlib) is supported.");
+        this.chunkLength = this.file.readInt();
+        return this.file.readByte() & 0xFF;
+    }
+
+    /**
+     * Open the stream of a chunk that was too large for the region file and is
+     * stored in a separate file.
+     */
+    private InputStream openExternalChunk(int chunkX, int chunkZ, int compressionType) throws IOException {
+        ChunkCompression compression = ChunkCompression.byId(compressionType & ~ChunkCompression.EXTERNAL_FLAG);
+        InputStream stream = this.openExternalChunkFile(chunkX, chunkZ);
+        return compression.decompress(new BufferedInputStream(stream));
+    }
+
+    private InputStream openExternalChunkFile(int chunkX, int chunkZ) throws IOException {
+        if (this.externalChunkOpener == null) {
+            throw new UnsupportedOperationException("The chunk " + chunkX + " " + chunkZ + " is stored in a separate file, but the region file was not opened with a way to open it.");
+        }
+        return this.externalChunkOpener.open(chunkX & 31, chunkZ & 31);
+    }
+
+    /**
+     * Read a data input stream from chunk coordinates.
+     * <p>
+     * The chunk is decompressed into memory, except for chunks stored in separate
+     * files which are decompressed while reading.
+     *
+     * @param chunkX The chunk x coordinate.
+     * @param chunkZ The chunk z coordinate.
+     * @return The data input stream.
+     * @throws IOException If an I/O error occurs.
+     */
+    public DataInputStream readChunk(int chunkX, int chunkZ) throws IOException {
+        int compressionType = this.seekChunk(chunkX, chunkZ);
+        if ((compressionType & ChunkCompression.EXTERNAL_FLAG) != 0) {
+            return new DataInputStream(this.openExternalChunk(chunkX, chunkZ, compressionType));
+        }
+        return new DataInputStream(new ByteArrayInputStream(this.readChunkBytes(compressionType)));
+    }
+
+    /**
+     * Read and decompress the nbt bytes of a chunk.
+     * <p>
+     * This is useful when the bytes will be read more than once, for example when
+     * first reading a few tags using {@link NbtReader#readCompound(byte[], Set)}.
+     * <p>
+     * Zlib compressed chunks are decompressed with an {@link java.util.zip.Inflater}
+     * and buffers that are reused by the thread, see {@link ChunkBuffers}, so the
+     * only allocation is the returned array.
+     *
+     * @param chunkX The chunk x coordinate.
+     * @param chunkZ The chunk z coordinate.
+     * @return The uncompressed nbt bytes.
+     * @throws IOException If an I/O error occurs.
+     */
+    public byte[] readChunkBytes(int chunkX, int chunkZ) throws IOException {
+        int compressionType = this.seekChunk(chunkX, chunkZ);
+        if ((compressionType & ChunkCompression.EXTERNAL_FLAG) != 0) {
+            try (InputStream stream = this.openExternalChunk(chunkX, chunkZ, compressionType)) {
+                return stream.readAllBytes();
+            }
         }
-        byte[] bytes = new byte[length - 1];
-        this.file.readFully(bytes);
+        return this.readChunkBytes(compressionType);
+    }
+
+    private byte[] readChunkBytes(int compressionType) throws IOException {
+        ByteBuffer buffer = this.readChunkBuffer(compressionType);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Read and decompress the nbt of the chunk that was seeked to.
+     * <p>
+     * The returned buffer may be a view of the buffers of this thread, so it is only
+     * valid until the next chunk is read on this thread.
+     *
+     * @param compressionType The compression type of the chunk.
+     * @return The buffer of uncompressed nbt bytes.
+     * @throws IOException If an I/O error occurs.
+     */
+    private ByteBuffer readChunkBuffer(int compressionType) throws IOException {
+        ChunkCompression compression = ChunkCompression.byId(compressionType);
+
+        // Read the compressed bytes into the buffer of this thread
+        ChunkBuffers buffers = ChunkBuffers.get();
+        int compressedLength = this.chunkLength - 1;
+        buffers.compressed.reset();
+        buffers.compressed.ensureCapacity(compressedLength);
+        this.file.readFully(buffers.compressed.array(), 0, compressedLength);
+        buffers.compressed.setSize(compressedLength);
+
+        return buffers.decompress(compression);
+    }
 
-        return new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)));
+    /**
+     * Read the bytes of a chunk as they are stored, without decompressing them.
+     * <p>
+     * The bytes can be written to another region file using
+     * {@link McRegionFileWriter#writeRawChunk(int, int, RawChunk, int)}.
+     *
+     * @param chunkX The chunk x coordinate.
+     * @param chunkZ The chunk z coordinate.
+     * @return The compressed chunk.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RawChunk readRawChunk(int chunkX, int chunkZ) throws IOException {
+        int compressionType = this.seekChunk(chunkX, chunkZ);
+        if ((compressionType & ChunkCompression.EXTERNAL_FLAG) != 0) {
+            ChunkCompression compression = ChunkCompression.byId(compressionType & ~ChunkCompression.EXTERNAL_FLAG);
+            try (InputStream stream = this.openExternalChunkFile(chunkX, chunkZ)) {
+                return new RawChunk(compression, stream.readAllBytes());
+            }
+        }
+        ChunkCompression compression = ChunkCompression.byId(compressionType);
+        byte[] bytes = new byte[this.chunkLength - 1];
+        this.file.readFully(bytes, 0, bytes.length);
+        return new RawChunk(compression, bytes);
     }
 
     /**
      * Read chunk nbt.
+     * <p>
+     * The chunk is decompressed into memory and decoded using {@link NbtReader}.
      *
      * @param chunkX The chunk x coordinate.
      * @param chunkZ The chunk z coordinate.
@@ -87,9 +268,14 @@ public class McRegionFileReader implements AutoCloseable {
      * @throws IOException If an I/O error occurs.
      */
     public NbtCompound readChunkNbt(int chunkX, int chunkZ) throws IOException {
-        try (DataInputStream stream = this.readChunk(chunkX, chunkZ)) {
-            return NbtTag.readCompound(stream);
+        int compressionType = this.seekChunk(chunkX, chunkZ);
+        if ((compressionType & ChunkCompression.EXTERNAL_FLAG) != 0) {
+            try (InputStream stream = this.openExternalChunk(chunkX, chunkZ, compressionType)) {
+                return NbtReader.readCompound(stream);
+            }
         }
+        // The nbt is decoded directly from the buffers of this thread without copying
+        return NbtReader.readCompound(this.readChunkBuffer(compressionType));
     }
 
     /**
@@ -110,8 +296,36 @@ public class McRegionFileReader implements AutoCloseable {
         return lastModified;
     }
 
+    /**
+     * Get the last modified times of all chunks in the region file header, in epoch
+     * seconds, indexed by {@link #getIndex(int, int)}.
+     *
+     * @return A copy of the last modified times.
+     */
+    public int[] getLastModifiedTimes() {
+        return this.lastModified.clone();
+    }
+
     @Override
     public void close() throws IOException {
         this.file.close();
     }
+
+    /**
+     * Opens the files that chunks are stored in when they are too large to fit in
+     * the region file.
+     */
+    @FunctionalInterface
+    public interface ExternalChunkOpener {
+        /**
+         * Open the file of a chunk.
+         *
+         * @param chunkX The chunk x coordinate, relative to the region file [0-31].
+         * @param chunkZ The chunk z coordinate, relative to the region file [0-31].
+         * @return The stream of the compressed chunk.
+         * @throws IOException If an I/O error occurs.
+         * @see #getExternalChunkFileName(int, int, int, int)
+         */
+        InputStream open(int chunkX, int chunkZ) throws IOException;
+    }
 }
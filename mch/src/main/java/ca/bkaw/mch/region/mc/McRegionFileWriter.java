@@ -3,15 +3,15 @@ package ca.bkaw.mch.region.mc;
 import ca.bkaw.mch.nbt.NbtCompound;
 import ca.bkaw.mch.nbt.NbtInt;
 import ca.bkaw.mch.nbt.NbtTag;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.zip.DeflaterOutputStream;
+import java.util.Arrays;
 
 /**
  * An object that creates a new region file for writing chunks.
@@ -19,17 +19,50 @@ import java.util.zip.DeflaterOutputStream;
 public class McRegionFileWriter implements AutoCloseable {
     private final static int CHUNK_COUNT = McRegionFileReader.CHUNK_COUNT;
     private final static int SECTOR_SIZE = McRegionFileReader.SECTOR_SIZE;
+    /**
+     * The maximum amount of sectors a chunk can use, since the sector count is
+     * stored in one byte. Larger chunks are stored in separate files.
+     */
+    private final static int MAX_SECTOR_COUNT = 255;
 
+    private final Path path;
+    /**
+     * The region coordinates from the file name, or null if the file is not named
+     * like a region file.
+     */
+    @Nullable
+    private final int[] regionCoordinates;
     private final RandomAccessFile file;
+    private final ChunkCompression compression;
     private final int[] locations = new int[CHUNK_COUNT];
     private final int[] lastModified = new int[CHUNK_COUNT];
+    private final ByteBuffer chunkHeader = ByteBuffer.allocate(5);
 
     public McRegionFileWriter(Path path) throws IOException {
+        this(path, ChunkCompression.ZLIB);
+    }
+
+    /**
+     * Create a new region file.
+     * <p>
+     * Chunks that are too large to fit in the region file are stored in separate
+     * {@code c.<x>.<z>.mcc} files next to the region file.
+     *
+     * @param path The path to the region file.
+     * @param compression The compression to write chunks with. {@link ChunkCompression#LZ4}
+     *                    and {@link ChunkCompression#NONE} are faster to write but
+     *                    give larger files.
+     * @throws IOException If an I/O error occurs.
+     */
+    public McRegionFileWriter(Path path, ChunkCompression compression) throws IOException {
         if (Files.exists(path) && Files.size(path) > 0) {
             throw new UnsupportedOperationException(
                 "A McRegionFileWriter can not edit existing region files."
             );
         }
+        this.path = path;
+        this.regionCoordinates = McRegionFileReader.getRegionCoordinates(path);
+        this.compression = compression;
         this.file = new RandomAccessFile(path.toFile(), "rw");
         this.file.seek(2 * SECTOR_SIZE);
     }
@@ -38,22 +71,37 @@ public class McRegionFileWriter implements AutoCloseable {
     public void close() throws IOException {
         try {
             // Write header
+            ByteBuffer header = ByteBuffer.allocate(2 * SECTOR_SIZE);
+            header.asIntBuffer().put(this.locations).put(this.lastModified);
             this.file.seek(0);
-            for (int location : this.locations) {
-                this.file.writeInt(location);
-            }
-            for (int value : this.lastModified) {
-                this.file.writeInt(value);
-            }
+            this.file.write(header.array());
         } finally {
             this.file.close();
         }
     }
 
+    private void writeChunkHeader(int length, int compressionType) throws IOException {
+        // Write the header with one call, RandomAccessFile.writeInt writes byte by byte
+        this.chunkHeader.clear();
+        this.chunkHeader.putInt(length);
+        this.chunkHeader.put((byte) compressionType);
+        this.file.write(this.chunkHeader.array());
+    }
+
     private long getNextSector(long location) {
         return (long) Math.ceil((double) location / SECTOR_SIZE);
     }
 
+    /**
+     * Write a chunk at the coordinates specified by its {@code xPos} and {@code zPos}
+     * tags.
+     *
+     * @param chunkNbt The chunk nbt.
+     * @param lastModified The last modified time of the chunk, in epoch seconds.
+     * @throws IOException If an I/O error occurs.
+     * @throws IllegalArgumentException If the chunk does not specify its coordinates.
+     * @see #writeChunk(int, int, NbtCompound, int)
+     */
     public void writeChunk(NbtCompound chunkNbt, int lastModified) throws IOException {
         NbtInt xPos = (NbtInt) chunkNbt.get("xPos");
         NbtInt zPos = (NbtInt) chunkNbt.get("zPos");
@@ -71,17 +119,105 @@ public class McRegionFileWriter implements AutoCloseable {
         if (xPos == null || zPos == null) {
             throw new IllegalArgumentException("The provided chunk nbt does not specify its coordinates.");
         }
+        this.writeChunk(xPos.getValue(), zPos.getValue(), chunkNbt, lastModified);
+    }
+
+    /**
+     * Write a chunk at the specified coordinates.
+     * <p>
+     * Only chunks in region files store their coordinates as {@code xPos} and
+     * {@code zPos}. Entity chunks store them in {@code Position} and poi chunks do
+     * not store them at all, so they must be written using this method.
+     *
+     * @param chunkX The absolute chunk x coordinate.
+     * @param chunkZ The absolute chunk z coordinate.
+     * @param chunkNbt The chunk nbt.
+     * @param lastModified The last modified time of the chunk, in epoch seconds.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeChunk(int chunkX, int chunkZ, NbtCompound chunkNbt, int lastModified) throws IOException {
+        ChunkBuffers.ScratchBuffer chunkBytes = compress(chunkNbt, this.compression);
+        this.writeChunk(chunkBytes.array(), chunkBytes.size(), this.compression, chunkX, chunkZ, lastModified);
+    }
+
+    /**
+     * Serialize and compress a chunk the same way {@link #writeChunk(int, int, NbtCompound, int)}
+     * does.
+     *
+     * @param chunkNbt The chunk nbt.
+     * @param compression The compression to use.
+     * @return The compressed chunk.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static RawChunk compressChunk(NbtCompound chunkNbt, ChunkCompression compression) throws IOException {
+        ChunkBuffers.ScratchBuffer chunkBytes = compress(chunkNbt, compression);
+        return new RawChunk(compression, Arrays.copyOf(chunkBytes.array(), chunkBytes.size()));
+    }
+
+    private static ChunkBuffers.ScratchBuffer compress(NbtCompound chunkNbt, ChunkCompression compression) throws IOException {
+        // Serialize and compress the chunk using the buffers of this thread
+        ChunkBuffers buffers = ChunkBuffers.get();
+        buffers.uncompressed.reset();
+        NbtTag.writeTag(buffers.uncompressedOutput, chunkNbt);
+
+        switch (compression) {
+            case ZLIB -> {
+                buffers.deflate();
+                return buffers.compressed;
+            }
+            case NONE -> {
+                return buffers.uncompressed;
+            }
+            default -> {
+                buffers.compressed.reset();
+                try (OutputStream stream = compression.compress(buffers.compressed)) {
+                    stream.write(buffers.uncompressed.array(), 0, buffers.uncompressed.size());
+                }
+                return buffers.compressed;
+            }
+        }
+    }
 
-        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-        DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(bytes)));
-        NbtTag.writeTag(stream, chunkNbt);
-        stream.close();
-        byte[] chunkBytes = bytes.toByteArray();
+    /**
+     * Check whether a compressed chunk is too large to fit in a region file and
+     * therefore is stored in a separate {@code c.<x>.<z>.mcc} file.
+     *
+     * @param length The length of the compressed chunk, in bytes.
+     * @return Whether the chunk is stored in a separate file.
+     */
+    public static boolean isExternal(int length) {
+        // The length and compression type take 5 bytes.
+        return length + 5 > MAX_SECTOR_COUNT * SECTOR_SIZE;
+    }
+
+    /**
+     * Write the compressed bytes of a chunk as they are, without decoding them.
+     * <p>
+     * The chunk keeps the compression it has, which may differ from the compression
+     * of this writer.
+     *
+     * @param chunkX The absolute chunk x coordinate.
+     * @param chunkZ The absolute chunk z coordinate.
+     * @param rawChunk The compressed chunk.
+     * @param lastModified The last modified time of the chunk, in epoch seconds.
+     * @throws IOException If an I/O error occurs.
+     * @see McRegionFileReader#readRawChunk(int, int)
+     */
+    public void writeRawChunk(int chunkX, int chunkZ, RawChunk rawChunk, int lastModified) throws IOException {
+        byte[] bytes = rawChunk.bytes();
+        this.writeChunk(bytes, bytes.length, rawChunk.compression(), chunkX, chunkZ, lastModified);
+    }
 
-        this.writeChunk(chunkBytes, xPos.getValue(), zPos.getValue(), lastModified);
+    private String getExternalChunkFileName(int chunkX, int chunkZ) {
+        if (this.regionCoordinates != null) {
+            // Use the region of the file so that the name is right even if the
+            // coordinates are relative to the region.
+            return McRegionFileReader.getExternalChunkFileName(this.regionCoordinates[0], this.regionCoordinates[1], chunkX, chunkZ);
+        }
+        return "c." + chunkX + "." + chunkZ + ".mcc";
     }
 
-    private void writeChunk(byte[] chunkBytes, int chunkX, int chunkZ, int lastModified) throws IOException {
+    private void writeChunk(byte[] chunkBytes, int length, ChunkCompression compression, int chunkX, int chunkZ, int lastModified) throws IOException {
         long offset = this.file.getFilePointer();
         if (offset % SECTOR_SIZE != 0) {
             throw new RuntimeException("File pointer was not at a sector.");
@@ -90,9 +226,17 @@ public class McRegionFileWriter implements AutoCloseable {
         if (offsetSector < 2) {
             throw new RuntimeException("Invalid sector for chunk. File pointer was not offset correctly.");
         }
-        this.file.writeInt(chunkBytes.length + 1);
-        this.file.writeByte(2);
-        this.file.write(chunkBytes);
+        if (isExternal(length)) {
+            // Too large for the region file, store the chunk in a separate file and
+            // only the compression type in the region file.
+            try (OutputStream stream = Files.newOutputStream(this.path.resolveSibling(this.getExternalChunkFileName(chunkX, chunkZ)))) {
+                stream.write(chunkBytes, 0, length);
+            }
+            this.writeChunkHeader(1, compression.getId() | ChunkCompression.EXTERNAL_FLAG);
+        } else {
+            this.writeChunkHeader(length + 1, compression.getId());
+            this.file.write(chunkBytes, 0, length);
+        }
 
         long endOffset = this.file.getFilePointer();
         if (endOffset % SECTOR_SIZE != 0) {
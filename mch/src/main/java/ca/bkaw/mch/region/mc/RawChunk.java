@@ -0,0 +1,31 @@
+package ca.bkaw.mch.region.mc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The bytes of a chunk as they are stored in a region file, before they are
+ * decompressed.
+ *
+ * @param compression The compression of the bytes.
+ * @param bytes The compressed bytes.
+ * @see McRegionFileReader#readRawChunk(int, int)
+ * @see McRegionFileWriter#writeRawChunk(int, int, RawChunk, int)
+ */
+public record RawChunk(ChunkCompression compression, byte[] bytes) {
+    /**
+     * Decompress the chunk into its nbt bytes.
+     *
+     * @return The uncompressed nbt bytes.
+     * @throws IOException If the bytes could not be decompressed.
+     */
+    public byte[] decompress() throws IOException {
+        ChunkBuffers buffers = ChunkBuffers.get();
+        buffers.compressed.reset();
+        buffers.compressed.write(this.bytes, 0, this.bytes.length);
+        ByteBuffer buffer = buffers.decompress(this.compression);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
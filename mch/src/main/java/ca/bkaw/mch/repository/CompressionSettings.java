@@ -0,0 +1,60 @@
+package ca.bkaw.mch.repository;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The settings that mch uses when compressing region files with zstd.
+ * <p>
+ * Objects are always compressed with {@link #DEFAULT}. They are identified by the
+ * hash of their compressed bytes, so compressing them with other settings would
+ * give objects that did not change new names.
+ * <p>
+ * Low levels make commits faster, while high levels make the repository smaller.
+ *
+ * @param level The zstd compression level.
+ * @param workers The amount of files that are recompressed concurrently, or 0 to
+ *                recompress them on the calling thread.
+ */
+public record CompressionSettings(int level, int workers) {
+    public static final CompressionSettings DEFAULT = new CompressionSettings(Zstd.defaultCompressionLevel(), 0);
+
+    public CompressionSettings {
+        if (level < Zstd.minCompressionLevel() || level > Zstd.maxCompressionLevel()) {
+            throw new IllegalArgumentException("The compression level must be between " + Zstd.minCompressionLevel() + " and " + Zstd.maxCompressionLevel() + ", got " + level);
+        }
+        if (workers < 0) {
+            throw new IllegalArgumentException("The amount of workers can not be negative, got " + workers);
+        }
+    }
+
+    public static CompressionSettings read(DataInput dataInput) throws IOException {
+        int level = dataInput.readInt();
+        int workers = dataInput.readInt();
+        // Whether long distance matching was used for objects, no longer used
+        dataInput.readBoolean();
+        return new CompressionSettings(level, workers);
+    }
+
+    public void write(DataOutput dataOutput) throws IOException {
+        dataOutput.writeInt(this.level);
+        dataOutput.writeInt(this.workers);
+        dataOutput.writeBoolean(false);
+    }
+
+    /**
+     * Create a zstd output stream that compresses with these settings.
+     *
+     * @param outputStream The stream to write the compressed bytes to.
+     * @return The compressing stream.
+     * @throws IOException If an I/O error occurs.
+     */
+    public ZstdOutputStream createOutputStream(OutputStream outputStream) throws IOException {
+        return new ZstdOutputStream(outputStream, this.level);
+    }
+}
@@ -25,11 +25,15 @@ public class MchConfiguration {
     private final List<TrackedWorld> trackedWorlds;
     private final Profiles<FtpProfile> ftpProfiles;
     private final Profiles<SftpProfile> sftpProfiles;
+    private CompressionSettings compressionSettings;
+    private long rawChunkCacheSize;
 
     public MchConfiguration() {
         this.trackedWorlds = new ArrayList<>();
         this.ftpProfiles = new Profiles<>();
         this.sftpProfiles = new Profiles<>();
+        this.compressionSettings = CompressionSettings.DEFAULT;
+        this.rawChunkCacheSize = 0;
     }
 
     public MchConfiguration(DataInput dataInput) throws IOException {
@@ -59,6 +63,9 @@ public class MchConfiguration {
             SftpProfile sftpProfile = new SftpProfile(dataInput);
             this.sftpProfiles.setProfile(profileName, sftpProfile);
         }
+
+        this.compressionSettings = mchVersion > 22 ? CompressionSettings.read(dataInput) : CompressionSettings.DEFAULT;
+        this.rawChunkCacheSize = mchVersion > 25 ? dataInput.readLong() : 0;
     }
 
     public void write(DataOutput dataOutput) throws IOException {
@@ -80,6 +87,8 @@ public class MchConfiguration {
             dataOutput.writeUTF(entry.getKey());
             entry.getValue().write(dataOutput);
         }
+        this.compressionSettings.write(dataOutput);
+        dataOutput.writeLong(this.rawChunkCacheSize);
     }
 
     public Collection<TrackedWorld> getTrackedWorlds() {
@@ -166,4 +175,45 @@ public class MchConfiguration {
     public Profiles<SftpProfile> getSftpProfiles() {
         return this.sftpProfiles;
     }
+
+    /**
+     * Get the settings to compress data in the repository with.
+     *
+     * @return The compression settings.
+     */
+    public CompressionSettings getCompressionSettings() {
+        return this.compressionSettings;
+    }
+
+    /**
+     * Set the settings to compress data in the repository with. Data that is
+     * already stored keeps its compression until it is recompressed.
+     *
+     * @param compressionSettings The compression settings.
+     */
+    public void setCompressionSettings(CompressionSettings compressionSettings) {
+        this.compressionSettings = compressionSettings;
+    }
+
+    /**
+     * Get the maximum size of the raw chunk cache.
+     *
+     * @return The size in bytes, or 0 if the cache is disabled.
+     * @see ca.bkaw.mch.region.RawChunkCache
+     */
+    public long getRawChunkCacheSize() {
+        return this.rawChunkCacheSize;
+    }
+
+    /**
+     * Set the maximum size of the raw chunk cache.
+     *
+     * @param rawChunkCacheSize The size in bytes, or 0 to disable the cache.
+     */
+    public void setRawChunkCacheSize(long rawChunkCacheSize) {
+        if (rawChunkCacheSize < 0) {
+            throw new IllegalArgumentException("The raw chunk cache size can not be negative, got " + rawChunkCacheSize);
+        }
+        this.rawChunkCacheSize = rawChunkCacheSize;
+    }
 }
@@ -2,18 +2,23 @@ package ca.bkaw.mch.repository;
 
 import ca.bkaw.mch.Sha1;
 import ca.bkaw.mch.chunk.RegionFileChunk;
+import ca.bkaw.mch.object.ObjectCache;
 import ca.bkaw.mch.object.ObjectStorageType;
 import ca.bkaw.mch.object.ObjectStorageTypes;
 import ca.bkaw.mch.object.Reference20;
-import ca.bkaw.mch.object.blob.Blob;
 import ca.bkaw.mch.object.commit.Commit;
 import ca.bkaw.mch.object.dimension.Dimension;
 import ca.bkaw.mch.object.tree.Tree;
 import ca.bkaw.mch.object.world.World;
 import ca.bkaw.mch.object.worldcontainer.WorldContainer;
 import ca.bkaw.mch.region.MchRegionFile;
+import ca.bkaw.mch.region.RawChunkCache;
+import ca.bkaw.mch.region.RegionFileType;
 import ca.bkaw.mch.region.RegionStorageVisitor;
+import ca.bkaw.mch.region.mc.ChunkCompression;
+import ca.bkaw.mch.region.mc.McRegionFileReader;
 import ca.bkaw.mch.region.mc.McRegionFileWriter;
+import ca.bkaw.mch.region.mc.RawChunk;
 import ca.bkaw.mch.util.StringPath;
 import ca.bkaw.mch.util.Util;
 import org.jetbrains.annotations.NotNull;
@@ -24,22 +29,33 @@ import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 public class MchRepository implements RepositoryAccess {
     /**
      * The root of the repository.
      */
     private final Path root;
+    private final ObjectCache objectCache;
+    private final ZstdDictionaries dictionaries;
     private MchConfiguration configuration;
+    private RawChunkCache rawChunkCache;
 
     public MchRepository(Path root) {
+        this(root, new ObjectCache(ObjectCache.DEFAULT_MAX_SIZE));
+    }
+
+    public MchRepository(Path root, ObjectCache objectCache) {
         this.root = root;
+        this.objectCache = objectCache;
+        this.dictionaries = new ZstdDictionaries(root.resolve(ZstdDictionaries.FOLDER));
     }
 
     /**
@@ -136,6 +152,52 @@ public class MchRepository implements RepositoryAccess {
         return this.root.getParent();
     }
 
+    /**
+     * Get the settings to compress region files with. The default settings are used
+     * if the configuration has not been read.
+     *
+     * @return The compression settings.
+     */
+    public CompressionSettings getCompressionSettings() {
+        return this.configuration != null ? this.configuration.getCompressionSettings() : CompressionSettings.DEFAULT;
+    }
+
+    /**
+     * Get the cache of objects that have been read from this repository.
+     *
+     * @return The object cache.
+     */
+    public ObjectCache getObjectCache() {
+        return this.objectCache;
+    }
+
+    /**
+     * Get the zstd dictionaries of this repository.
+     *
+     * @return The dictionaries.
+     */
+    public ZstdDictionaries getDictionaries() {
+        return this.dictionaries;
+    }
+
+    /**
+     * Get the cache of compressed chunks, or null if the cache is disabled or the
+     * configuration has not been read.
+     *
+     * @return The raw chunk cache, or null.
+     */
+    @Nullable
+    public synchronized RawChunkCache getRawChunkCache() {
+        long size = this.configuration != null ? this.configuration.getRawChunkCacheSize() : 0;
+        if (size <= 0) {
+            return null;
+        }
+        if (this.rawChunkCache == null || this.rawChunkCache.getMaxSize() != size) {
+            this.rawChunkCache = new RawChunkCache(this.root.resolve(RawChunkCache.FOLDER), size);
+        }
+        return this.rawChunkCache;
+    }
+
     /**
      * Get the {@link MchConfiguration configuration}.
      *
@@ -200,8 +262,12 @@ public class MchRepository implements RepositoryAccess {
             @Override
             @Nullable
             public InputStream restoreFile(StringPath path) throws IOException {
-                if (path.toString().startsWith("region/")) {
+                RegionFileType regionFileType = getRegionFileType(dimension, path);
+                if (regionFileType != null) {
                     String fileName = path.getFileName();
+                    if (fileName.startsWith("c.") && fileName.endsWith(".mcc")) {
+                        return this.restoreExternalChunk(regionFileType, fileName);
+                    }
                     if (!fileName.startsWith("r.") || !fileName.endsWith(".mca")) {
                         return null;
                     }
@@ -209,32 +275,73 @@ public class MchRepository implements RepositoryAccess {
                     String[] split = str.split("\\.");
                     int regionX = Integer.parseInt(split[0]);
                     int regionZ = Integer.parseInt(split[1]);
-                    Dimension.RegionFileReference regionFileRef = dimension.getRegionFile(regionX, regionZ);
+                    Dimension.RegionFileReference regionFileRef = dimension.getRegionFile(regionFileType, regionX, regionZ);
 
                     if (regionFileRef == null) {
                         return null;
                     }
 
-                    Path tempFile = Files.createTempFile("restore_" + fileName, ".mca");
-                    try (McRegionFileWriter regionFile = new McRegionFileWriter(tempFile)) {
-                        // temp allow reading corrupted repos
-                        int[] chunkVersionNumbers = MchRegionFile.read(
-                            repository, trackedWorld, dimensionKey, regionX, regionZ,
-                            regionFileRef.getVersionNumber()
-                        );
-
-                        RegionStorageVisitor.visitReadOnly(
-                            repository, trackedWorld, dimensionKey, regionX, regionZ,
-                            chunk -> {
-                                int chunkVersionNumber = chunkVersionNumbers[chunk.getIndex()];
-                                if (chunkVersionNumber != 0) {
-                                    RegionFileChunk restoredChunk = chunk.restore(chunkVersionNumber);
-                                    regionFile.writeChunk(restoredChunk.nbt(), restoredChunk.lastModified());
-                                }
-                            });
+                    // Chunks that are too large for the region file are written next to it,
+                    // so use a folder of its own to not mix them up with other restores.
+                    Path tempFolder = Files.createTempDirectory("restore_");
+                    Path tempFile = tempFolder.resolve(fileName);
+                    try {
+                        RawChunkCache rawChunkCache = repository.getRawChunkCache();
+                        try (McRegionFileWriter regionFile = new McRegionFileWriter(tempFile, ChunkCompression.ZLIB)) {
+                            // temp allow reading corrupted repos
+                            int[] chunkVersionNumbers = MchRegionFile.read(
+                                repository, trackedWorld, dimensionKey, regionFileType, regionX, regionZ,
+                                regionFileRef.getVersionNumber()
+                            );
+
+                            RegionStorageVisitor.visitReadOnly(
+                                repository, trackedWorld, dimensionKey, regionFileType, regionX, regionZ,
+                                chunk -> {
+                                    int chunkVersionNumber = chunkVersionNumbers[chunk.getIndex()];
+                                    if (chunkVersionNumber != 0) {
+                                        RawChunkCache.CachedChunk cachedChunk = rawChunkCache != null
+                                            ? rawChunkCache.get(trackedWorld, dimensionKey, regionFileType, regionX, regionZ, chunk.getIndex(), chunkVersionNumber)
+                                            : null;
+                                        // Chunks that are too large are restored from the nbt so that they
+                                        // are the same as when the external chunk file is restored.
+                                        if (cachedChunk != null && !McRegionFileWriter.isExternal(cachedChunk.rawChunk().bytes().length)) {
+                                            // Write the chunk as it was committed without restoring the nbt
+                                            regionFile.writeRawChunk(
+                                                regionX * 32 + chunk.getChunkX(), regionZ * 32 + chunk.getChunkZ(),
+                                                cachedChunk.rawChunk(), cachedChunk.lastModified()
+                                            );
+                                            return;
+                                        }
+                                        RegionFileChunk restoredChunk = chunk.restore(chunkVersionNumber);
+                                        // Entity and poi chunks do not store xPos and zPos
+                                        regionFile.writeChunk(
+                                            regionX * 32 + chunk.getChunkX(), regionZ * 32 + chunk.getChunkZ(),
+                                            restoredChunk.nbt(), restoredChunk.lastModified()
+                                        );
+                                    }
+                                });
+                        }
+                        // The external chunk files are restored on their own
+                        try (Stream<Path> stream = Files.list(tempFolder)) {
+                            for (Path externalChunkFile : stream.filter(file -> !file.equals(tempFile)).toList()) {
+                                Files.delete(externalChunkFile);
+                            }
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        deleteTempFolder(tempFolder);
+                        throw e;
                     }
-                    // TODO add StandardOpenOption.DELETE_ON_CLOSE when I am less traumatized
-                    return Files.newInputStream(tempFile);
+                    // The temporary files are deleted once the file has been restored
+                    return new FilterInputStream(Files.newInputStream(tempFile)) {
+                        @Override
+                        public void close() throws IOException {
+                            try {
+                                super.close();
+                            } finally {
+                                deleteTempFolder(tempFolder);
+                            }
+                        }
+                    };
                 }
 
                 // Non-region file.
@@ -248,23 +355,71 @@ public class MchRepository implements RepositoryAccess {
                     tree = subTreeRef.resolve(repository);
                 }
                 String fileName = path.getFileName();
+                Tree.ChunkedBlobReference chunkedBlobRef = tree.getChunkedFiles().get(fileName);
+                if (chunkedBlobRef != null) {
+                    return chunkedBlobRef.reference().resolve(repository).openStream(repository);
+                }
                 if (!tree.getFiles().containsKey(fileName)) {
                     return null;
                 }
                 Tree.BlobReference blobRef = tree.getFiles().get(fileName);
-                Blob blob = blobRef.reference().resolve(repository);
-                return new ByteArrayInputStream(blob.getBytes());
+                return ObjectStorageTypes.BLOB.openStream(blobRef.reference(), repository);
+            }
+
+            /**
+             * Restore a {@code c.<x>.<z>.mcc} file that a chunk is stored in when it is
+             * too large to fit in the region file.
+             *
+             * @param regionFileType The type of region file.
+             * @param fileName The name of the file.
+             * @return An input stream of the compressed chunk, or null if the chunk
+             * does not exist or fits in the region file.
+             * @throws IOException If an I/O error occurs.
+             */
+            @Nullable
+            private InputStream restoreExternalChunk(RegionFileType regionFileType, String fileName) throws IOException {
+                String str = fileName.substring("c.".length(), fileName.length() - ".mcc".length());
+                String[] split = str.split("\\.");
+                int chunkX = Integer.parseInt(split[0]);
+                int chunkZ = Integer.parseInt(split[1]);
+                int regionX = chunkX >> 5;
+                int regionZ = chunkZ >> 5;
+                Dimension.RegionFileReference regionFileRef = dimension.getRegionFile(regionFileType, regionX, regionZ);
+
+                if (regionFileRef == null) {
+                    return null;
+                }
+
+                int[] chunkVersionNumbers = MchRegionFile.read(
+                    repository, trackedWorld, dimensionKey, regionFileType, regionX, regionZ,
+                    regionFileRef.getVersionNumber()
+                );
+                int chunkVersionNumber = chunkVersionNumbers[McRegionFileReader.getIndex(chunkX, chunkZ)];
+                if (chunkVersionNumber == 0) {
+                    return null;
+                }
+                RegionFileChunk restoredChunk = RegionStorageVisitor.restoreChunk(
+                    repository, trackedWorld, dimensionKey, regionFileType, regionX, regionZ,
+                    chunkX & 31, chunkZ & 31, chunkVersionNumber
+                );
+                // Compress the chunk the same way as when the region file is restored
+                RawChunk rawChunk = McRegionFileWriter.compressChunk(restoredChunk.nbt(), ChunkCompression.ZLIB);
+                if (!McRegionFileWriter.isExternal(rawChunk.bytes().length)) {
+                    return null;
+                }
+                return new ByteArrayInputStream(rawChunk.bytes());
             }
 
             @Override
             @NotNull
             public List<String> list(StringPath path) throws IOException {
-                if (path.toString().startsWith("region/")) {
+                RegionFileType regionFileType = getRegionFileType(dimension, path);
+                if (regionFileType != null) {
                     if (path.getNameCount() != 1) {
-                        // No files in subdirectories of region.
+                        // No files in subdirectories of region folders.
                         return List.of();
                     }
-                    return dimension.getRegionFiles().stream().map(
+                    return dimension.getRegionFiles(regionFileType).stream().map(
                         (region) -> Util.formatRegionFileName(region.getRegionX(), region.getRegionZ(), ".mca")
                     ).toList();
                 }
@@ -283,11 +438,55 @@ public class MchRepository implements RepositoryAccess {
                     tree = subTreeRef.resolve(repository);
                 }
 
-                List<String> list = new ArrayList<>(tree.getFiles().size() + tree.getSubTrees().size());
+                List<String> list = new ArrayList<>(tree.getFiles().size() + tree.getChunkedFiles().size() + tree.getSubTrees().size());
                 list.addAll(tree.getFiles().keySet());
+                list.addAll(tree.getChunkedFiles().keySet());
                 list.addAll(tree.getSubTrees().keySet());
                 return list;
             }
         };
     }
+
+    /**
+     * Get the type of region file folder that a path is in.
+     * <p>
+     * Commits made before entities and poi region files were tracked as region files
+     * store those folders with the miscellaneous files. When the dimension has no
+     * region files of the type, null is returned so that the miscellaneous files are
+     * used instead.
+     *
+     * @param dimension The dimension.
+     * @param path The path in the dimension.
+     * @return The region file type, or null if the path should be looked up in the
+     * miscellaneous files.
+     */
+    @Nullable
+    private static RegionFileType getRegionFileType(Dimension dimension, StringPath path) {
+        String str = path.toString();
+        for (RegionFileType type : RegionFileType.values()) {
+            if (str.equals(type.getFolderName()) || str.startsWith(type.getFolderName() + "/")) {
+                return dimension.getRegionFiles(type).isEmpty() ? null : type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Delete a temporary folder used while restoring a region file, together with
+     * the files in it.
+     *
+     * @param folder The folder.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void deleteTempFolder(Path folder) throws IOException {
+        if (!Files.exists(folder)) {
+            return;
+        }
+        try (Stream<Path> stream = Files.list(folder)) {
+            for (Path file : stream.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
 }
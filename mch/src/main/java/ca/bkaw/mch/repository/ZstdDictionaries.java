@@ -0,0 +1,183 @@
+package ca.bkaw.mch.repository;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The zstd dictionaries of a repository.
+ * <p>
+ * Dictionaries are stored in the {@code dictionaries} folder as
+ * {@code <id>.zdict}, where the id is the dictionary id that zstd stores in the
+ * trained dictionary. Data compressed with a dictionary stores the id of the
+ * dictionary in the zstd frame header, so the dictionary needed to decompress the
+ * data can always be found, even after a newer dictionary has been trained.
+ * <p>
+ * The {@code current} file holds the id of the dictionary to compress new data with.
+ * Dictionaries are never deleted since old data may still be compressed with them.
+ */
+public class ZstdDictionaries {
+    public static final String FOLDER = "dictionaries";
+    private static final String EXTENSION = ".zdict";
+    private static final String CURRENT_FILE = "current";
+
+    private final Path directory;
+    private final Map<Long, Dictionary> dictionaries = new ConcurrentHashMap<>();
+    /**
+     * The current dictionary, {@link #NONE} if there is no current dictionary, or
+     * null if it has not been read yet.
+     */
+    @Nullable
+    private volatile Dictionary current;
+
+    private static final Dictionary NONE = new Dictionary(0, new byte[0]);
+
+    public ZstdDictionaries(Path directory) {
+        this.directory = directory;
+    }
+
+    private Path getPath(long id) {
+        return this.directory.resolve(Long.toUnsignedString(id) + EXTENSION);
+    }
+
+    /**
+     * Get the dictionary that new data should be compressed with.
+     *
+     * @return The dictionary, or null if no dictionary has been trained.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Nullable
+    public Dictionary getCurrent() throws IOException {
+        Dictionary current = this.current;
+        if (current == null) {
+            Path path = this.directory.resolve(CURRENT_FILE);
+            if (Files.exists(path)) {
+                current = this.get(Long.parseUnsignedLong(Files.readString(path).trim()));
+            } else {
+                current = NONE;
+            }
+            this.current = current;
+        }
+        return current == NONE ? null : current;
+    }
+
+    /**
+     * Get a dictionary by its id.
+     *
+     * @param id The dictionary id.
+     * @return The dictionary.
+     * @throws IOException If the dictionary does not exist or if an I/O error occurs.
+     */
+    public Dictionary get(long id) throws IOException {
+        Dictionary dictionary = this.dictionaries.get(id);
+        if (dictionary != null) {
+            return dictionary;
+        }
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(this.getPath(id));
+        } catch (NoSuchFileException e) {
+            throw new IOException("The zstd dictionary " + Long.toUnsignedString(id) + " does not exist in the repository.", e);
+        }
+        dictionary = new Dictionary(id, bytes);
+        Dictionary existing = this.dictionaries.putIfAbsent(id, dictionary);
+        return existing != null ? existing : dictionary;
+    }
+
+    /**
+     * Store a trained dictionary and use it to compress new data.
+     *
+     * @param bytes The bytes of the dictionary, as returned by the zstd trainer.
+     * @return The dictionary.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Dictionary add(byte[] bytes) throws IOException {
+        long id = Zstd.getDictIdFromDict(bytes);
+        if (id == 0) {
+            throw new IllegalArgumentException("The dictionary does not have a dictionary id.");
+        }
+        Files.createDirectories(this.directory);
+        Path path = this.getPath(id);
+        if (Files.notExists(path)) {
+            Path tempFile = Files.createTempFile(this.directory, null, null);
+            Files.write(tempFile, bytes);
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.writeString(this.directory.resolve(CURRENT_FILE), Long.toUnsignedString(id));
+        Dictionary dictionary = this.get(id);
+        this.current = dictionary;
+        return dictionary;
+    }
+
+    /**
+     * A zstd dictionary.
+     * <p>
+     * The digested dictionaries used by zstd are created when first needed and
+     * reused, since digesting a dictionary is expensive compared to compressing a
+     * small record.
+     */
+    public static class Dictionary {
+        private final long id;
+        private final byte[] bytes;
+        private final Map<Integer, ZstdDictCompress> compressors = new ConcurrentHashMap<>();
+        @Nullable
+        private volatile ZstdDictDecompress decompressor;
+
+        private Dictionary(long id, byte[] bytes) {
+            this.id = id;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Get the dictionary id, the id stored in frames compressed with this
+         * dictionary.
+         *
+         * @return The id.
+         */
+        public long getId() {
+            return this.id;
+        }
+
+        /**
+         * Get the size of the dictionary.
+         *
+         * @return The size in bytes.
+         */
+        public int getSize() {
+            return this.bytes.length;
+        }
+
+        /**
+         * Get the digested dictionary for compressing at a compression level.
+         *
+         * @param level The compression level.
+         * @return The digested dictionary.
+         */
+        public ZstdDictCompress getCompressor(int level) {
+            return this.compressors.computeIfAbsent(level, l -> new ZstdDictCompress(this.bytes, l));
+        }
+
+        /**
+         * Get the digested dictionary for decompressing.
+         *
+         * @return The digested dictionary.
+         */
+        public ZstdDictDecompress getDecompressor() {
+            ZstdDictDecompress decompressor = this.decompressor;
+            if (decompressor == null) {
+                decompressor = new ZstdDictDecompress(this.bytes);
+                this.decompressor = decompressor;
+            }
+            return decompressor;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import ca.bkaw.mch.chunk.RegionFileChunk;
 import ca.bkaw.mch.nbt.NbtCompound;
 import ca.bkaw.mch.nbt.NbtList;
 import ca.bkaw.mch.nbt.NbtLong;
+import ca.bkaw.mch.nbt.NbtReader;
 import ca.bkaw.mch.nbt.NbtTag;
 import ca.bkaw.mch.object.ObjectStorageType;
 import ca.bkaw.mch.object.ObjectStorageTypes;
@@ -19,9 +20,13 @@ import ca.bkaw.mch.object.world.World;
 import ca.bkaw.mch.object.worldcontainer.WorldContainer;
 import ca.bkaw.mch.region.MchRegionFile;
 import ca.bkaw.mch.region.RegionStorageVisitor;
+import ca.bkaw.mch.region.mc.ChunkCompression;
 import ca.bkaw.mch.region.mc.McRegionFileReader;
+import ca.bkaw.mch.region.mc.McRegionFileWriter;
 import ca.bkaw.mch.repository.MchRepository;
 import ca.bkaw.mch.repository.TrackedWorld;
+import ca.bkaw.mch.util.RandomAccessReader;
+import com.sun.management.ThreadMXBean;
 import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
 import org.jetbrains.annotations.NotNull;
@@ -38,8 +43,11 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Field;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
@@ -62,6 +70,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.InflaterInputStream;
 
@@ -82,6 +91,147 @@ public class TestMain {
         }
     }
 
+    public static void main18(String[] args) throws IOException {
+        // Benchmark the allocations of decompressing and compressing chunks with the
+        // reused inflater, deflater and buffers compared to allocating them per chunk.
+        Path path = Path.of(args.length > 0 ? args[0] : "src/test/resources/region/r.0.0.mca");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        byte[] regionBytes = Files.readAllBytes(path);
+
+        // Find the compressed bytes of each chunk so that the per chunk side does not
+        // need the region file reader. The header is only parsed once, outside the
+        // measured work, for both sides.
+        List<byte[]> compressedChunks = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        List<NbtCompound> chunks = new ArrayList<>();
+        try (McRegionFileReader reader = new McRegionFileReader(RandomAccessReader.of(regionBytes))) {
+            ByteBuffer buffer = ByteBuffer.wrap(regionBytes);
+            for (int index = 0; index < McRegionFileReader.CHUNK_COUNT; index++) {
+                int location = buffer.getInt(index * 4);
+                if (location == 0) {
+                    continue;
+                }
+                int offset = (location >> 8 & 0x00ffffff) * McRegionFileReader.SECTOR_SIZE;
+                int length = buffer.getInt(offset);
+                compressedChunks.add(Arrays.copyOfRange(regionBytes, offset + 5, offset + 4 + length));
+                indexes.add(index);
+                chunks.add(reader.readChunkNbt(index & 31, index >> 5));
+            }
+        }
+        System.out.println(chunks.size() + " chunks");
+
+        ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        try (McRegionFileReader reader = new McRegionFileReader(RandomAccessReader.of(regionBytes))) {
+            for (int round = 0; round < rounds; round++) {
+                // Both sides decompress every chunk into a byte array and compress every
+                // chunk into a byte array.
+                long gcCount = gcCount();
+                long allocated = threadBean.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                for (byte[] compressed : compressedChunks) {
+                    byte[] bytes = Arrays.copyOf(compressed, compressed.length);
+                    try (InflaterInputStream stream = new InflaterInputStream(new ByteArrayInputStream(bytes))) {
+                        stream.readAllBytes();
+                    }
+                }
+                for (NbtCompound chunk : chunks) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(bytes)))) {
+                        NbtTag.writeTag(stream, chunk);
+                    }
+                    bytes.toByteArray();
+                }
+                long oldTime = System.nanoTime() - start;
+                long oldAllocated = threadBean.getThreadAllocatedBytes(threadId) - allocated;
+                long oldGcCount = gcCount() - gcCount;
+
+                gcCount = gcCount();
+                allocated = threadBean.getThreadAllocatedBytes(threadId);
+                start = System.nanoTime();
+                for (int index : indexes) {
+                    reader.readChunkBytes(index & 31, index >> 5);
+                }
+                for (NbtCompound chunk : chunks) {
+                    McRegionFileWriter.compressChunk(chunk, ChunkCompression.ZLIB);
+                }
+                long newTime = System.nanoTime() - start;
+                long newAllocated = threadBean.getThreadAllocatedBytes(threadId) - allocated;
+                long newGcCount = gcCount() - gcCount;
+
+                System.out.println("Round " + round
+                    + ": per chunk " + oldTime / 1_000_000 + " ms, " + formatBytes(oldAllocated) + " allocated, " + oldGcCount + " GCs"
+                    + "; reused " + newTime / 1_000_000 + " ms, " + formatBytes(newAllocated) + " allocated, " + newGcCount + " GCs");
+            }
+        }
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    public static void main17(String[] args) throws IOException {
+        // Benchmark reading chunk nbt using DataInputStream compared to NbtReader.
+        Path path = Path.of(args.length > 0 ? args[0] : "src/test/resources/region/r.0.0.mca");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        // Decompress all chunks first so that only the nbt decoding is measured.
+        List<byte[]> chunks = new ArrayList<>();
+        try (McRegionFileReader reader = new McRegionFileReader(path)) {
+            for (int z = 0; z < 32; z++) {
+                for (int x = 0; x < 32; x++) {
+                    if (reader.hasChunk(x, z)) {
+                        try (DataInputStream stream = reader.readChunk(x, z)) {
+                            chunks.add(stream.readAllBytes());
+                        }
+                    }
+                }
+            }
+        }
+        long totalBytes = chunks.stream().mapToLong(bytes -> bytes.length).sum();
+        System.out.println(chunks.size() + " chunks, " + formatBytes(totalBytes) + " of nbt");
+
+        ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        for (int round = 0; round < rounds; round++) {
+            long allocated = threadBean.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            for (byte[] bytes : chunks) {
+                NbtTag.readCompound(new DataInputStream(new ByteArrayInputStream(bytes)));
+            }
+            long dataInputTime = System.nanoTime() - start;
+            long dataInputAllocated = threadBean.getThreadAllocatedBytes(threadId) - allocated;
+
+            allocated = threadBean.getThreadAllocatedBytes(threadId);
+            start = System.nanoTime();
+            for (byte[] bytes : chunks) {
+                NbtReader.readCompound(bytes);
+            }
+            long readerTime = System.nanoTime() - start;
+            long readerAllocated = threadBean.getThreadAllocatedBytes(threadId) - allocated;
+
+            System.out.println("Round " + round
+                + ": DataInputStream " + dataInputTime / 1_000_000 + " ms, " + formatBytes(dataInputAllocated)
+                + " allocated; NbtReader " + readerTime / 1_000_000 + " ms, " + formatBytes(readerAllocated)
+                + " allocated");
+        }
+
+        // Make sure both readers produce equal nbt.
+        for (byte[] bytes : chunks) {
+            NbtCompound expected = NbtTag.readCompound(new DataInputStream(new ByteArrayInputStream(bytes)));
+            if (!expected.equals(NbtReader.readCompound(bytes))) {
+                throw new RuntimeException("NbtReader produced different nbt.");
+            }
+        }
+    }
+
     public static void main16(String[] args) throws IOException {
         // Repair a corrupted repo where mchrv files was accidentally deleted.
         //
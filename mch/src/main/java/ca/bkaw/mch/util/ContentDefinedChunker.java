@@ -0,0 +1,134 @@
+package ca.bkaw.mch.util;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits a stream of bytes into chunks whose boundaries depend on the content,
+ * using the FastCDC algorithm.
+ * <p>
+ * A rolling "gear" hash is computed over the bytes and a boundary is placed where
+ * the hash matches a mask. Since the boundaries only depend on the nearby bytes,
+ * inserting or removing bytes in a file only changes the chunks around the edit
+ * and the rest of the chunks stay the same.
+ * <p>
+ * To keep the chunk sizes close to the average size, a mask with more bits is used
+ * before the average size is reached and a mask with fewer bits after it.
+ * <p>
+ * The chunk boundaries must never change for the same input, otherwise already
+ * stored chunks would no longer be reused. The gear table is therefore generated
+ * from a fixed seed.
+ */
+public class ContentDefinedChunker {
+    public static final int MIN_SIZE = 16 * 1024;
+    public static final int AVERAGE_SIZE = 64 * 1024;
+    public static final int MAX_SIZE = 256 * 1024;
+
+    /**
+     * The mask used before the average size, with two more bits than the average
+     * size, making boundaries less likely.
+     */
+    private static final long MASK_SMALL = -1L << (64 - 18);
+    /**
+     * The mask used after the average size, with two fewer bits than the average
+     * size, making boundaries more likely.
+     */
+    private static final long MASK_LARGE = -1L << (64 - 14);
+
+    private static final long[] GEAR = createGearTable();
+
+    private final InputStream input;
+    private final byte[] buffer = new byte[MAX_SIZE];
+    private int start;
+    private int end;
+    private boolean endOfStream;
+
+    public ContentDefinedChunker(InputStream input) {
+        this.input = input;
+    }
+
+    private static long[] createGearTable() {
+        // SplitMix64 with a fixed seed, so the table is the same in every version.
+        long[] table = new long[256];
+        long state = 0x6D63685F63646300L; // "mch_cdc"
+        for (int i = 0; i < table.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            table[i] = z ^ (z >>> 31);
+        }
+        return table;
+    }
+
+    /**
+     * Find the length of the first chunk in a range of bytes.
+     *
+     * @param bytes The bytes.
+     * @param offset The offset of the range.
+     * @param length The length of the range.
+     * @return The length of the chunk.
+     */
+    public static int findBoundary(byte[] bytes, int offset, int length) {
+        if (length <= MIN_SIZE) {
+            return length;
+        }
+        int limit = Math.min(length, MAX_SIZE);
+        int normal = Math.min(limit, AVERAGE_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[bytes[offset + i] & 0xFF];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i++) {
+            hash = (hash << 1) + GEAR[bytes[offset + i] & 0xFF];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Read the next chunk from the stream.
+     *
+     * @return The bytes of the chunk, or null if the end of the stream was reached.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Nullable
+    public byte[] nextChunk() throws IOException {
+        this.fill();
+        int length = this.end - this.start;
+        if (length == 0) {
+            return null;
+        }
+        int chunkLength = findBoundary(this.buffer, this.start, length);
+        byte[] chunk = Arrays.copyOfRange(this.buffer, this.start, this.start + chunkLength);
+        this.start += chunkLength;
+        return chunk;
+    }
+
+    private void fill() throws IOException {
+        if (this.endOfStream || this.end - this.start == this.buffer.length) {
+            return;
+        }
+        // Move the remaining bytes to the start of the buffer
+        System.arraycopy(this.buffer, this.start, this.buffer, 0, this.end - this.start);
+        this.end -= this.start;
+        this.start = 0;
+        while (this.end < this.buffer.length) {
+            int read = this.input.read(this.buffer, this.end, this.buffer.length - this.end);
+            if (read < 0) {
+                this.endOfStream = true;
+                return;
+            }
+            this.end += read;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ca.bkaw.mch.util;
+
+import java.io.OutputStream;
+
+/**
+ * Non-cryptographic hash functions used to quickly find data that may already be
+ * stored.
+ * <p>
+ * The hashes are persisted in mch files, so the functions must never change.
+ * Equal hashes do not guarantee equal data, so the data must still be compared.
+ */
+public final class Hashing {
+    private static final long SEED = 0x6D6368_6D6368L;
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private Hashing() {}
+
+    /**
+     * Compute a 64-bit hash of an int array.
+     *
+     * @param values The values to hash.
+     * @return The hash.
+     */
+    public static long hash64(int[] values) {
+        long hash = SEED ^ values.length;
+        for (int value : values) {
+            hash = (hash ^ (value & 0xFFFFFFFFL)) * MULTIPLIER;
+            hash ^= hash >>> 29;
+        }
+        return finish(hash);
+    }
+
+    /**
+     * Compute a 64-bit hash of a byte array.
+     *
+     * @param bytes The bytes to hash.
+     * @return The hash.
+     */
+    public static long hash64(byte[] bytes) {
+        long hash = SEED ^ bytes.length;
+        int i = 0;
+        // Mix eight bytes at a time
+        for (; i + 8 <= bytes.length; i += 8) {
+            long value = (bytes[i] & 0xFFL)
+                | (bytes[i + 1] & 0xFFL) << 8
+                | (bytes[i + 2] & 0xFFL) << 16
+                | (bytes[i + 3] & 0xFFL) << 24
+                | (bytes[i + 4] & 0xFFL) << 32
+                | (bytes[i + 5] & 0xFFL) << 40
+                | (bytes[i + 6] & 0xFFL) << 48
+                | (bytes[i + 7] & 0xFFL) << 56;
+            hash = (hash ^ value) * MULTIPLIER;
+            hash ^= hash >>> 29;
+        }
+        for (; i < bytes.length; i++) {
+            hash = (hash ^ (bytes[i] & 0xFFL)) * MULTIPLIER;
+            hash ^= hash >>> 29;
+        }
+        return finish(hash);
+    }
+
+    /**
+     * An output stream that computes the same hash as {@link #hash64(byte[])} of the
+     * written bytes, without keeping the bytes.
+     * <p>
+     * The amount of bytes must be known up front since the length is part of the
+     * hash.
+     */
+    public static class Hash64OutputStream extends OutputStream {
+        private final long length;
+        private long hash;
+        private long written;
+        private long pending;
+        private int pendingCount;
+
+        /**
+         * Create a stream for hashing the specified amount of bytes.
+         *
+         * @param length The amount of bytes that will be written.
+         */
+        public Hash64OutputStream(long length) {
+            this.length = length;
+            this.hash = SEED ^ length;
+        }
+
+        @Override
+        public void write(int b) {
+            this.pending |= (b & 0xFFL) << (this.pendingCount * 8);
+            this.written++;
+            if (++this.pendingCount == 8) {
+                this.hash = (this.hash ^ this.pending) * MULTIPLIER;
+                this.hash ^= this.hash >>> 29;
+                this.pending = 0;
+                this.pendingCount = 0;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                this.write(b[i]);
+            }
+        }
+
+        /**
+         * Get the hash of the written bytes.
+         *
+         * @return The hash.
+         * @throws IllegalStateException If the amount of written bytes is not the
+         * length passed to the constructor.
+         */
+        public long getHash() {
+            if (this.written != this.length) {
+                throw new IllegalStateException("Expected " + this.length + " bytes but " + this.written + " bytes were written.");
+            }
+            long hash = this.hash;
+            for (int i = 0; i < this.pendingCount; i++) {
+                hash = (hash ^ ((this.pending >>> (i * 8)) & 0xFFL)) * MULTIPLIER;
+                hash ^= hash >>> 29;
+            }
+            return finish(hash);
+        }
+    }
+
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
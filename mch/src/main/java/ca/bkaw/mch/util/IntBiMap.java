@@ -0,0 +1,202 @@
+package ca.bkaw.mch.util;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A map from int keys to values that can also look up the key of a value, without
+ * boxing the keys.
+ * <p>
+ * Entries are kept in insertion order and can be iterated using {@link #keyAt(int)}
+ * and {@link #valueAt(int)}. Entries can not be replaced or removed. If a value is
+ * added more than once, {@link #getKey(Object, int)} returns the first key.
+ *
+ * @param <V> The value type.
+ * @see BiMap
+ */
+public class IntBiMap<V> {
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    /**
+     * Hash tables of entry indexes plus one, zero being an empty slot. The length is
+     * a power of two and more than twice the amount of entries.
+     */
+    private int[] keyTable;
+    private int[] valueTable;
+
+    public IntBiMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntBiMap(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        int tableSize = tableSizeFor(capacity);
+        this.keyTable = new int[tableSize];
+        this.valueTable = new int[tableSize];
+    }
+
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) * 2;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Get the amount of entries.
+     *
+     * @return The size.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Get the key of the entry at the specified position in insertion order.
+     *
+     * @param index The position, from 0 to {@link #size()}.
+     * @return The key.
+     */
+    public int keyAt(int index) {
+        return this.keys[index];
+    }
+
+    /**
+     * Get the value of the entry at the specified position in insertion order.
+     *
+     * @param index The position, from 0 to {@link #size()}.
+     * @return The value.
+     */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int index) {
+        return (V) this.values[index];
+    }
+
+    private int indexOfKey(int key) {
+        int mask = this.keyTable.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            int entry = this.keyTable[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (this.keys[entry - 1] == key) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private int indexOfValue(Object value) {
+        int mask = this.valueTable.length - 1;
+        for (int slot = mix(value.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int entry = this.valueTable[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (this.values[entry - 1].equals(value)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return this.indexOfKey(key) != -1;
+    }
+
+    /**
+     * Get the value for a key.
+     *
+     * @param key The key.
+     * @return The value, or null if there is no entry with the key.
+     */
+    @Nullable
+    public V get(int key) {
+        int index = this.indexOfKey(key);
+        return index == -1 ? null : this.valueAt(index);
+    }
+
+    /**
+     * Get the key of a value.
+     *
+     * @param value The value.
+     * @param defaultKey The key to return if the value is not present.
+     * @return The key, or the default key.
+     */
+    public int getKey(V value, int defaultKey) {
+        int index = this.indexOfValue(value);
+        return index == -1 ? defaultKey : this.keys[index];
+    }
+
+    /**
+     * Add an entry.
+     *
+     * @param key The key.
+     * @param value The value.
+     * @throws IllegalArgumentException If the key is already present.
+     */
+    public void put(int key, V value) {
+        if (this.indexOfKey(key) != -1) {
+            throw new IllegalArgumentException("The key " + key + " is already present.");
+        }
+        boolean newValue = this.indexOfValue(value) == -1;
+        if (this.size == this.keys.length) {
+            int capacity = this.keys.length * 2;
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+            if (tableSizeFor(capacity) > this.keyTable.length) {
+                this.rehash(tableSizeFor(capacity));
+            }
+        }
+        this.keys[this.size] = key;
+        this.values[this.size] = value;
+        this.size++;
+        insert(this.keyTable, mix(key), this.size);
+        if (newValue) {
+            insert(this.valueTable, mix(value.hashCode()), this.size);
+        }
+    }
+
+    private static void insert(int[] table, int hash, int entry) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry;
+    }
+
+    private void rehash(int tableSize) {
+        this.keyTable = new int[tableSize];
+        this.valueTable = new int[tableSize];
+        for (int i = 0; i < this.size; i++) {
+            insert(this.keyTable, mix(this.keys[i]), i + 1);
+            if (this.indexOfValue(this.values[i]) == -1) {
+                insert(this.valueTable, mix(this.values[i].hashCode()), i + 1);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder("{");
+        for (int i = 0; i < this.size; i++) {
+            if (i > 0) {
+                str.append(", ");
+            }
+            str.append(this.keys[i]).append('=').append(this.values[i]);
+        }
+        return str.append('}').toString();
+    }
+}
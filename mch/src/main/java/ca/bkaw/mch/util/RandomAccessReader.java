@@ -1,14 +1,17 @@
 package ca.bkaw.mch.util;
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * A reader that can read with random access.
@@ -47,6 +50,37 @@ public interface RandomAccessReader extends Closeable {
      */
     void readFully(byte[] bytes) throws IOException;
 
+    /**
+     * Read {@code length} bytes into the byte array at an offset and increment the
+     * cursor.
+     *
+     * @param bytes The byte array to read into.
+     * @param offset The offset in the array to start writing at.
+     * @param length The amount of bytes to read.
+     * @throws IOException If an I/O error occurs.
+     */
+    default void readFully(byte[] bytes, int offset, int length) throws IOException {
+        byte[] read = new byte[length];
+        this.readFully(read);
+        System.arraycopy(read, 0, bytes, offset, length);
+    }
+
+    /**
+     * Read {@code ints.length} signed 32-bit integers into the array and increment
+     * the cursor.
+     * <p>
+     * Implementations read all integers at once, which is much faster than calling
+     * {@link #readInt()} for each integer.
+     *
+     * @param ints The int array to read into.
+     * @throws IOException If an I/O error occurs.
+     */
+    default void readInts(int[] ints) throws IOException {
+        byte[] bytes = new byte[ints.length * Integer.BYTES];
+        this.readFully(bytes);
+        ByteBuffer.wrap(bytes).asIntBuffer().get(ints);
+    }
+
     /**
      * Open a path for random access.
      * <p>
@@ -65,6 +99,28 @@ public interface RandomAccessReader extends Closeable {
         }
     }
 
+    /**
+     * Open a path for random access using positional reads on a {@link FileChannel}.
+     * <p>
+     * Bulk reads, like {@link #readInts(int[])} and {@link #readFully(byte[])}, are
+     * done with one positional read each, and the file is released as soon as the
+     * reader is closed. In case the path can not be opened as a file channel, the
+     * file content is read in its entirety like {@link #of(Path)}.
+     *
+     * @param path The path.
+     * @return The {@link RandomAccessReader} object.
+     * @throws IOException If an I/O error occurs.
+     */
+    static RandomAccessReader open(Path path) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (UnsupportedOperationException e) {
+            return new ByteBufferImpl(path);
+        }
+        return new FileChannelImpl(channel);
+    }
+
     /**
      * Create a {@link RandomAccessReader} from a byte array.
      *
@@ -106,12 +162,89 @@ public interface RandomAccessReader extends Closeable {
             this.file.readFully(bytes);
         }
 
+        @Override
+        public void readFully(byte[] bytes, int offset, int length) throws IOException {
+            this.file.readFully(bytes, offset, length);
+        }
+
+        @Override
+        public void readInts(int[] ints) throws IOException {
+            byte[] bytes = new byte[ints.length * Integer.BYTES];
+            this.file.readFully(bytes);
+            ByteBuffer.wrap(bytes).asIntBuffer().get(ints);
+        }
+
         @Override
         public void close() throws IOException {
             this.file.close();
         }
     }
 
+    /**
+     * An implementation of {@link RandomAccessReader} that reads from a {@link FileChannel}
+     * using positional reads, so that the cursor is only kept by the reader.
+     */
+    class FileChannelImpl implements RandomAccessReader {
+        private final FileChannel channel;
+        private final ByteBuffer intBuffer = ByteBuffer.allocate(Integer.BYTES);
+        private long position;
+
+        public FileChannelImpl(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void read(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                int read = this.channel.read(buffer, this.position);
+                if (read < 0) {
+                    throw new EOFException();
+                }
+                this.position += read;
+            }
+        }
+
+        @Override
+        public void seek(int pos) {
+            this.position = pos;
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            this.intBuffer.clear();
+            this.read(this.intBuffer);
+            return this.intBuffer.getInt(0);
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            this.intBuffer.clear().limit(1);
+            this.read(this.intBuffer);
+            return this.intBuffer.get(0);
+        }
+
+        @Override
+        public void readFully(byte[] bytes) throws IOException {
+            this.read(ByteBuffer.wrap(bytes));
+        }
+
+        @Override
+        public void readFully(byte[] bytes, int offset, int length) throws IOException {
+            this.read(ByteBuffer.wrap(bytes, offset, length));
+        }
+
+        @Override
+        public void readInts(int[] ints) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(ints.length * Integer.BYTES);
+            this.read(buffer);
+            buffer.flip().asIntBuffer().get(ints);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+        }
+    }
+
     /**
      * An implementation of {@link RandomAccessReader} that reads from a {@link ByteBuffer}.
      */
@@ -149,6 +282,18 @@ public interface RandomAccessReader extends Closeable {
             this.byteBuffer.get(bytes);
         }
 
+        @Override
+        public void readFully(byte[] bytes, int offset, int length) {
+            this.byteBuffer.get(bytes, offset, length);
+        }
+
+        @Override
+        public void readInts(int[] ints) {
+            // Decode all integers at once through an int view of the buffer
+            this.byteBuffer.asIntBuffer().get(ints);
+            this.byteBuffer.position(this.byteBuffer.position() + ints.length * Integer.BYTES);
+        }
+
         @Override
         public void close() {
 
@@ -0,0 +1,126 @@
+package ca.bkaw.mch.util;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * An output stream that keeps the written bytes in memory until they exceed a
+ * threshold, after which the bytes are written to a temporary file instead.
+ * <p>
+ * Once closed, the bytes can be moved to their final location using
+ * {@link #moveTo(Path)}, or thrown away using {@link #discard()}. Small outputs
+ * that are discarded are never written to disk.
+ */
+public class SpillingOutputStream extends OutputStream {
+    private final Path tempDirectory;
+    private final int threshold;
+    @Nullable
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    @Nullable
+    private OutputStream fileOutput;
+    @Nullable
+    private Path tempFile;
+
+    /**
+     * Create a new spilling output stream.
+     *
+     * @param tempDirectory The directory to create temporary files in. Should be on
+     *                      the same file system as the final location.
+     * @param threshold The amount of bytes to keep in memory.
+     */
+    public SpillingOutputStream(Path tempDirectory, int threshold) {
+        this.tempDirectory = tempDirectory;
+        this.threshold = threshold;
+    }
+
+    private OutputStream spill(int additionalBytes) throws IOException {
+        if (this.memory != null && this.memory.size() + additionalBytes > this.threshold) {
+            this.tempFile = Files.createTempFile(this.tempDirectory, null, null);
+            this.fileOutput = new BufferedOutputStream(Files.newOutputStream(this.tempFile));
+            this.memory.writeTo(this.fileOutput);
+            this.memory = null;
+        }
+        return this.memory != null ? this.memory : this.fileOutput;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.spill(1).write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        this.spill(len).write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (this.fileOutput != null) {
+            this.fileOutput.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.fileOutput != null) {
+            this.fileOutput.close();
+        }
+    }
+
+    /**
+     * Check whether the bytes were written to a temporary file.
+     *
+     * @return Whether the bytes were spilled to disk.
+     */
+    public boolean isSpilled() {
+        return this.tempFile != null;
+    }
+
+    /**
+     * Move the written bytes to a file, replacing the file if it exists.
+     * <p>
+     * The bytes are written to a temporary file first, which is then moved, so the
+     * target will never contain partially written bytes.
+     *
+     * @param target The path to move the bytes to.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void moveTo(Path target) throws IOException {
+        this.close();
+        if (this.memory != null) {
+            this.tempFile = Files.createTempFile(this.tempDirectory, null, null);
+            try (OutputStream output = Files.newOutputStream(this.tempFile)) {
+                this.memory.writeTo(output);
+            }
+            this.memory = null;
+        }
+        try {
+            Files.move(this.tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            this.discard();
+            throw e;
+        }
+        this.tempFile = null;
+    }
+
+    /**
+     * Throw away the written bytes and delete the temporary file if one exists.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void discard() throws IOException {
+        this.close();
+        this.memory = null;
+        if (this.tempFile != null) {
+            Files.deleteIfExists(this.tempFile);
+            this.tempFile = null;
+        }
+    }
+}
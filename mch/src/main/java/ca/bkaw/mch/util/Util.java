@@ -1,13 +1,21 @@
 package ca.bkaw.mch.util;
 
 import ca.bkaw.mch.object.dimension.Dimension;
+import ca.bkaw.mch.region.RegionFileType;
 import ca.bkaw.mch.repository.MchRepository;
 import ca.bkaw.mch.repository.TrackedWorld;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public final class Util {
     public static final String NETHER_FOLDER = "DIM-1";
@@ -43,12 +51,26 @@ public final class Util {
      * @return The mch region folder path.
      */
     public static Path getMchRegionFolderPath(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey) {
+        return getMchRegionFolderPath(repository, trackedWorld, dimensionKey, RegionFileType.REGION);
+    }
+
+    /**
+     * Get the path where mch stores the mch region files and region storage files for
+     * a type of region file in the specified dimension of a world.
+     *
+     * @param repository The repository.
+     * @param trackedWorld The world being tracked.
+     * @param dimensionKey The dimension.
+     * @param regionFileType The type of region file.
+     * @return The mch region folder path.
+     */
+    public static Path getMchRegionFolderPath(MchRepository repository, TrackedWorld trackedWorld, String dimensionKey, RegionFileType regionFileType) {
         return repository.getRoot()
             .resolve("world")
             .resolve(trackedWorld.getId().asHex())
             .resolve("dimensions")
             .resolve(dimensionKey.replace(':', '_'))
-            .resolve("region");
+            .resolve(regionFileType.getFolderName());
     }
 
     /**
@@ -121,4 +143,51 @@ public final class Util {
         }
         return str;
     }
+
+    /**
+     * Submit a task to the executor, or run it on the current thread when there is
+     * no executor.
+     *
+     * @param executor The executor, or null to run the task directly.
+     * @param task The task.
+     * @return The future of the task.
+     * @param <T> The result type.
+     */
+    public static <T> Future<T> submit(@Nullable ExecutorService executor, Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        if (executor != null) {
+            executor.execute(future);
+        } else {
+            future.run();
+        }
+        return future;
+    }
+
+    /**
+     * Wait for a task to complete and get the result, rethrowing the exception that
+     * the task failed with.
+     *
+     * @param future The future of the task.
+     * @return The result.
+     * @param <T> The result type.
+     * @throws IOException If the task failed with an I/O error.
+     */
+    public static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a task to complete.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            } else if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            } else if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
+        }
+    }
 }
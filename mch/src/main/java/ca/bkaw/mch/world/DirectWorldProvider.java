@@ -9,6 +9,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
@@ -91,7 +92,7 @@ public class DirectWorldProvider implements WorldAccessor, WorldProvider {
 
     @Override
     public RandomAccessReader openFile(StringPath path, long estimatedSize) throws IOException {
-        return RandomAccessReader.of(this.getPath(path));
+        return RandomAccessReader.open(this.getPath(path));
     }
 
     @Override
@@ -99,6 +100,16 @@ public class DirectWorldProvider implements WorldAccessor, WorldProvider {
         return Files.readAllBytes(this.getPath(path));
     }
 
+    @Override
+    public InputStream openFileStream(StringPath path, long estimatedSize) throws IOException {
+        return Files.newInputStream(this.getPath(path));
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
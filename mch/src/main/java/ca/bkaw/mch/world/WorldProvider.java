@@ -4,7 +4,9 @@ import ca.bkaw.mch.util.RandomAccessReader;
 import ca.bkaw.mch.util.StringPath;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -60,6 +62,37 @@ public interface WorldProvider extends AutoCloseable {
      */
     byte[] readFile(StringPath path, long estimatedSize) throws IOException;
 
+    /**
+     * Open a stream for reading a file from start to end.
+     * <p>
+     * The default implementation reads the entire file. Implementations that can
+     * stream files without reading them into memory should override this method.
+     * Providers that are not {@link #isThreadSafe() thread safe} must not use the
+     * connection once this method returns, since the stream may be read without
+     * synchronizing on the provider.
+     *
+     * @param path The path to the file.
+     * @param estimatedSize The estimated size of the file. Used for performance reasons.
+     * @return The input stream, which the caller must close.
+     * @throws IOException If an I/O error occurs.
+     */
+    default InputStream openFileStream(StringPath path, long estimatedSize) throws IOException {
+        return new ByteArrayInputStream(this.readFile(path, estimatedSize));
+    }
+
+    /**
+     * Check whether files may be opened and read from multiple threads at the same
+     * time.
+     * <p>
+     * Providers that transfer files over a single connection are not thread safe,
+     * and callers reading files concurrently must synchronize on the provider.
+     *
+     * @return Whether the provider is thread safe.
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
+
     /**
      * Close the world provider. Depending on the implementation, this method will
      * disconnect from file servers, etc.
@@ -3,8 +3,11 @@ package ca.bkaw.mch.world;
 import ca.bkaw.mch.object.ObjectStorageTypes;
 import ca.bkaw.mch.object.Reference20;
 import ca.bkaw.mch.object.blob.Blob;
+import ca.bkaw.mch.object.chunkedblob.ChunkedBlob;
 import ca.bkaw.mch.object.dimension.Dimension;
 import ca.bkaw.mch.object.tree.Tree;
+import ca.bkaw.mch.region.RegionFileType;
+import ca.bkaw.mch.region.mc.McRegionFileReader;
 import ca.bkaw.mch.repository.MchRepository;
 import ca.bkaw.mch.util.RandomAccessReader;
 import ca.bkaw.mch.util.StringPath;
@@ -13,9 +16,15 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.Predicate;
 
 /**
@@ -23,6 +32,12 @@ import java.util.function.Predicate;
  * are gotten from a {@link WorldProvider}.
  */
 public class WorldReader {
+    /**
+     * The size of files that are split into chunks and stored as chunked blobs
+     * instead of as one blob.
+     */
+    public static final long CHUNKED_FILE_SIZE = 1024 * 1024;
+
     private final WorldProvider provider;
 
     public WorldReader(WorldProvider provider) {
@@ -85,7 +100,11 @@ public class WorldReader {
     }
 
     public List<RegionFileInfo> getRegionFiles(String dimension) throws IOException {
-        StringPath path = getDimensionPath(dimension).resolve("region");
+        return this.getRegionFiles(dimension, RegionFileType.REGION);
+    }
+
+    public List<RegionFileInfo> getRegionFiles(String dimension, RegionFileType regionFileType) throws IOException {
+        StringPath path = getDimensionPath(dimension).resolve(regionFileType.getFolderName());
         if (this.provider.stat(path) == null) {
             return List.of();
         }
@@ -106,17 +125,70 @@ public class WorldReader {
     }
 
     public RandomAccessReader openRegionFile(String dimension, String regionFileName, long estimatedSize) throws IOException {
-        StringPath path = this.getDimensionPath(dimension).resolve("region").resolve(regionFileName);
-        return this.provider.openFile(path, estimatedSize);
+        return this.openRegionFile(dimension, RegionFileType.REGION, regionFileName, estimatedSize);
+    }
+
+    public RandomAccessReader openRegionFile(String dimension, RegionFileType regionFileType, String regionFileName, long estimatedSize) throws IOException {
+        StringPath path = this.getDimensionPath(dimension).resolve(regionFileType.getFolderName()).resolve(regionFileName);
+        // Region files may be opened from multiple threads during a commit.
+        return this.useProvider(() -> this.provider.openFile(path, estimatedSize));
+    }
+
+    /**
+     * Open a file in a region folder that holds a chunk that was too large to be
+     * stored in its region file.
+     *
+     * @param dimension The dimension.
+     * @param regionFileType The type of region file the chunk belongs to.
+     * @param fileName The name of the file, see
+     *                 {@link McRegionFileReader#getExternalChunkFileName(int, int, int, int)}.
+     * @return The stream of the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public InputStream openExternalChunkFile(String dimension, RegionFileType regionFileType, String fileName) throws IOException {
+        StringPath path = this.getDimensionPath(dimension).resolve(regionFileType.getFolderName()).resolve(fileName);
+        return this.useProvider(() -> this.provider.openFileStream(path, 0));
     }
 
     public Reference20<Tree> trackDirectoryTree(String dimension, MchRepository repository, Predicate<String> predicate, @Nullable Tree currentTree) throws IOException {
-        return this.trackDirectoryTreePath(this.getDimensionPath(dimension), repository, predicate, currentTree);
+        return this.trackDirectoryTree(dimension, repository, predicate, currentTree, null);
+    }
+
+    public Reference20<Tree> trackDirectoryTree(String dimension, MchRepository repository, Predicate<String> predicate, @Nullable Tree currentTree, @Nullable ExecutorService executor) throws IOException {
+        return this.trackDirectoryTreePath(this.getDimensionPath(dimension), repository, predicate, currentTree, executor);
     }
 
     public Reference20<Tree> trackDirectoryTreePath(StringPath path, MchRepository repository, Predicate<String> predicate, @Nullable Tree currentTree) throws IOException {
-        Tree tree = new Tree();
-        for (FileInfo file : this.provider.list(path)) {
+        return this.trackDirectoryTreePath(path, repository, predicate, currentTree, null);
+    }
+
+    /**
+     * Save the files in a directory and its subdirectories and create trees for them.
+     * <p>
+     * The directories are walked on the current thread while changed files are read
+     * and saved on the executor. The trees are then created in the order the files
+     * were listed, so the trees are the same regardless of the executor.
+     *
+     * @param path The path to the directory.
+     * @param repository The repository to save the objects in.
+     * @param predicate Which file names in the directory to track. Subdirectories
+     *                  are tracked entirely.
+     * @param currentTree The tree of the directory in the current commit, used to
+     *                    skip files that have not been modified, or null.
+     * @param executor The executor to read and save changed files on, or null to
+     *                 save them on the current thread.
+     * @return The reference to the saved tree.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Reference20<Tree> trackDirectoryTreePath(StringPath path, MchRepository repository, Predicate<String> predicate, @Nullable Tree currentTree, @Nullable ExecutorService executor) throws IOException {
+        PendingTree pendingTree = this.walkDirectoryTree(path, repository, predicate, currentTree, executor);
+        return pendingTree.save(repository);
+    }
+
+    private PendingTree walkDirectoryTree(StringPath path, MchRepository repository, Predicate<String> predicate, @Nullable Tree currentTree, @Nullable ExecutorService executor) throws IOException {
+        PendingTree tree = new PendingTree(new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashMap<>());
+        List<FileInfo> files = this.useProvider(() -> this.provider.list(path));
+        for (FileInfo file : files) {
             String name = file.name();
             if (!predicate.test(name)) {
                 continue;
@@ -125,32 +197,101 @@ public class WorldReader {
             if (name.contains(".sqlite")) {
                 continue;
             }
-            FileInfo.Metadata metadata = metadata(file);
+            FileInfo.Metadata metadata = this.useProvider(() -> metadata(file));
             if (metadata.isDirectory()) {
                 // Track subdirectories
                 Reference20<Tree> currentSubTreeReference = currentTree != null ? currentTree.getSubTrees().get(name) : null;
                 Tree currentSubTree = currentSubTreeReference != null ? currentSubTreeReference.resolve(repository) : null;
-                Reference20<Tree> subDirectoryReference = trackDirectoryTreePath(file.path(), repository, str -> true, currentSubTree);
-                tree.addSubTree(name, subDirectoryReference);
+                tree.subTrees().put(name, this.walkDirectoryTree(file.path(), repository, str -> true, currentSubTree, executor));
             } else if (metadata.isFile()) {
                 // Track files
-                Tree.BlobReference currentBlobReference = currentTree != null ? currentTree.getFiles().get(name) : null;
                 long lastModified = metadata.lastModified();
+                if (metadata.fileSize() >= CHUNKED_FILE_SIZE) {
+                    // Large files are split into chunks so that unchanged parts are shared
+                    Tree.ChunkedBlobReference currentChunkedBlobReference = currentTree != null ? currentTree.getChunkedFiles().get(name) : null;
+                    if (currentChunkedBlobReference == null || currentChunkedBlobReference.lastModified() != lastModified) {
+                        tree.chunkedFiles().put(name, Util.submit(executor, () -> {
+                            InputStream inputStream = this.useProvider(() -> this.provider.openFileStream(file.path(), metadata.fileSize()));
+                            ChunkedBlob chunkedBlob;
+                            try (inputStream) {
+                                chunkedBlob = ChunkedBlob.save(inputStream, repository);
+                            }
+                            Reference20<ChunkedBlob> reference = ObjectStorageTypes.CHUNKED_BLOB.save(chunkedBlob, repository);
+                            return new Tree.ChunkedBlobReference(reference, lastModified);
+                        }));
+                    } else {
+                        tree.chunkedFiles().put(name, CompletableFuture.completedFuture(currentChunkedBlobReference));
+                    }
+                    continue;
+                }
+                Tree.BlobReference currentBlobReference = currentTree != null ? currentTree.getFiles().get(name) : null;
                 if (currentBlobReference == null || currentBlobReference.lastModified() != lastModified) {
                     // The file has changed since last commit. Save it anew.
-                    byte[] bytes = this.provider.readFile(file.path(), metadata.fileSize());
-                    Blob blob = new Blob(bytes);
-                    Reference20<Blob> blobReference = ObjectStorageTypes.BLOB.save(blob, repository);
-                    tree.addFile(name, new Tree.BlobReference(blobReference, lastModified));
+                    tree.files().put(name, Util.submit(executor, () -> {
+                        InputStream inputStream = this.useProvider(() -> this.provider.openFileStream(file.path(), metadata.fileSize()));
+                        Reference20<Blob> blobReference;
+                        try (inputStream) {
+                            blobReference = ObjectStorageTypes.BLOB.save(inputStream, repository);
+                        }
+                        return new Tree.BlobReference(blobReference, lastModified);
+                    }));
                 } else {
                     // The file has not changed since last commit. Reuse the reference.
-                    tree.addFile(name, currentBlobReference);
+                    tree.files().put(name, CompletableFuture.completedFuture(currentBlobReference));
                 }
             }
         }
+        return tree;
+    }
+
+    /**
+     * Perform an action that uses the provider. Providers that are not thread safe
+     * are locked while the action is performed, other providers are used
+     * concurrently.
+     *
+     * @param action The action.
+     * @return The result of the action.
+     * @param <T> The type of the result.
+     * @throws IOException If an I/O error occurs.
+     */
+    private <T> T useProvider(ProviderAction<T> action) throws IOException {
+        if (!this.provider.isThreadSafe()) {
+            synchronized (this.provider) {
+                return action.run();
+            }
+        }
+        return action.run();
+    }
 
-        // Save the tree
-        return ObjectStorageTypes.TREE.save(tree, repository);
+    @FunctionalInterface
+    private interface ProviderAction<T> {
+        T run() throws IOException;
     }
 
+    /**
+     * A tree whose files may still be being saved.
+     *
+     * @param subTrees The subdirectories, in the order they were listed.
+     * @param files The files, in the order they were listed.
+     * @param chunkedFiles The large files, in the order they were listed.
+     */
+    private record PendingTree(
+        Map<String, PendingTree> subTrees,
+        Map<String, Future<Tree.BlobReference>> files,
+        Map<String, Future<Tree.ChunkedBlobReference>> chunkedFiles
+    ) {
+        public Reference20<Tree> save(MchRepository repository) throws IOException {
+            Tree tree = new Tree();
+            for (Map.Entry<String, PendingTree> entry : this.subTrees.entrySet()) {
+                tree.addSubTree(entry.getKey(), entry.getValue().save(repository));
+            }
+            for (Map.Entry<String, Future<Tree.BlobReference>> entry : this.files.entrySet()) {
+                tree.addFile(entry.getKey(), Util.await(entry.getValue()));
+            }
+            for (Map.Entry<String, Future<Tree.ChunkedBlobReference>> entry : this.chunkedFiles.entrySet()) {
+                tree.addChunkedFile(entry.getKey(), Util.await(entry.getValue()));
+            }
+            return ObjectStorageTypes.TREE.save(tree, repository);
+        }
+    }
 }
@@ -3,6 +3,11 @@ package ca.bkaw.mch;
 import ca.bkaw.mch.chunk.ChunkStorage;
 import ca.bkaw.mch.chunk.RegionFileChunk;
 import ca.bkaw.mch.nbt.NbtCompound;
+import ca.bkaw.mch.nbt.NbtInt;
+import ca.bkaw.mch.nbt.NbtIntArray;
+import ca.bkaw.mch.nbt.NbtList;
+import ca.bkaw.mch.nbt.NbtString;
+import ca.bkaw.mch.region.RegionFileType;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
@@ -10,8 +15,11 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 public class ChunkStorageTests {
     @Test
@@ -47,4 +55,53 @@ public class ChunkStorageTests {
         assertEquals(chunkNbt2, restoredChunk2.nbt());
         assertEquals(123, restoredChunk2.lastModified());
     }
+
+    @Test
+    public void restoreKeys() throws IOException {
+        NbtCompound chunkNbt = TestUtils.getChunkNbt("r.0.0.mca");
+
+        ChunkStorage chunkStorage = new ChunkStorage();
+        int versionNumber = chunkStorage.store(TestUtils.copyNbt(chunkNbt), 123);
+
+        NbtCompound restored = chunkStorage.restore(versionNumber, Set.of("InhabitedTime", "xPos", "sections", "missing")).nbt();
+        NbtCompound expected = new NbtCompound();
+        for (String key : List.of("InhabitedTime", "xPos", "sections")) {
+            assertNotNull(chunkNbt.get(key));
+            expected.set(key, chunkNbt.get(key));
+        }
+        assertEquals(expected, restored);
+    }
+
+    @Test
+    public void entityChunk() throws IOException {
+        NbtCompound entity1 = new NbtCompound();
+        entity1.set("id", new NbtString("minecraft:cow"));
+        NbtCompound entity2 = new NbtCompound();
+        entity2.set("id", new NbtString("minecraft:pig"));
+
+        NbtCompound chunkNbt = new NbtCompound();
+        chunkNbt.set("DataVersion", new NbtInt(3700));
+        chunkNbt.set("Position", new NbtIntArray(new int[] { 1, 2 }));
+        NbtList entities = new NbtList(NbtCompound.ID, 1);
+        entities.getValue()[0] = entity1;
+        chunkNbt.set("Entities", entities);
+
+        NbtCompound chunkNbt2 = TestUtils.copyNbt(chunkNbt);
+        NbtList entities2 = new NbtList(NbtCompound.ID, 2);
+        entities2.getValue()[0] = entity1;
+        entities2.getValue()[1] = entity2;
+        chunkNbt2.set("Entities", entities2);
+
+        ChunkStorage chunkStorage = new ChunkStorage();
+        int versionNumber = chunkStorage.store(TestUtils.copyNbt(chunkNbt), 10, RegionFileType.ENTITIES.getChunkDataParts());
+        int versionNumber2 = chunkStorage.store(TestUtils.copyNbt(chunkNbt2), 20, RegionFileType.ENTITIES.getChunkDataParts());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        chunkStorage.write(new DataOutputStream(outputStream));
+        chunkStorage = new ChunkStorage(new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray())));
+
+        assertEquals(chunkNbt, chunkStorage.restore(versionNumber).nbt());
+        assertEquals(chunkNbt2, chunkStorage.restore(versionNumber2).nbt());
+        assertEquals(20, chunkStorage.getLastModified(versionNumber2));
+    }
 }
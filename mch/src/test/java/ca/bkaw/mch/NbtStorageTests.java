@@ -21,6 +21,26 @@ public class NbtStorageTests {
         this.read(bytes);
     }
 
+    @Test
+    public void readParsedFormat() throws IOException {
+        NbtCompound nbt = new NbtCompound();
+        NbtString str = new NbtString();
+        str.setValue("test");
+        nbt.set("test", str);
+
+        // Before mch version 17 the nbt was stored parsed, without a fingerprint
+        ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(outBytes);
+        output.writeInt(16);
+        output.writeInt(1);
+        output.writeInt(1);
+        NbtTag.writeTag(output, nbt);
+
+        NbtStorage storage = new NbtStorage(new DataInputStream(new ByteArrayInputStream(outBytes.toByteArray())));
+        assertEquals(nbt, storage.get(1));
+        assertEquals(1, storage.store(this.copyNbt(nbt)), "An existing nbt was not reused.");
+    }
+
     private byte[] write() throws IOException {
         NbtStorage storage = new NbtStorage();
 
@@ -1,7 +1,10 @@
 package ca.bkaw.mch.chunk.parts;
 
+import ca.bkaw.mch.region.RegionFileType;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 
@@ -13,6 +16,14 @@ public class ChunkDataPartsTests {
         assertEquals(1, last.getId());
     }
 
+    @Test
+    public void ensureRemainingIsLastForEveryRegionFileType() {
+        for (RegionFileType type : RegionFileType.values()) {
+            List<ChunkDataPart> chunkDataParts = type.getChunkDataParts();
+            assertEquals(ChunkDataParts.REMAINING, chunkDataParts.get(chunkDataParts.size() - 1));
+        }
+    }
+
     @Test
     public void ensureGettingPartsByIdWorks() {
         assertEquals(ChunkDataParts.byId((byte) 1), ChunkDataParts.REMAINING);
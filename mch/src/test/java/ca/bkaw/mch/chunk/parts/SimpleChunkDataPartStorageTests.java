@@ -0,0 +1,30 @@
+package ca.bkaw.mch.chunk.parts;
+
+import ca.bkaw.mch.nbt.NbtCompound;
+import ca.bkaw.mch.nbt.NbtInt;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SimpleChunkDataPartStorageTests {
+    private static List<String> keys(NbtCompound compound) {
+        return compound.entrySet().stream().map(Map.Entry::getKey).toList();
+    }
+
+    @Test
+    void extractInChunkOrder() {
+        NbtCompound chunk = new NbtCompound();
+        for (String key : List.of("a", "b", "c", "d", "e")) {
+            chunk.set(key, new NbtInt(key.charAt(0)));
+        }
+        SimpleChunkDataPartStorage storage = new SimpleChunkDataPartStorage(Set.of("e", "b", "d", "a"));
+
+        NbtCompound extracted = storage.extract(chunk);
+        assertEquals(List.of("a", "b", "d", "e"), keys(extracted));
+        assertEquals(List.of("c"), keys(chunk));
+    }
+}
@@ -0,0 +1,123 @@
+package ca.bkaw.mch.chunk.parts;
+
+import ca.bkaw.mch.nbt.NbtByte;
+import ca.bkaw.mch.nbt.NbtByteArray;
+import ca.bkaw.mch.nbt.NbtCompound;
+import ca.bkaw.mch.nbt.NbtList;
+import ca.bkaw.mch.nbt.NbtLongArray;
+import ca.bkaw.mch.nbt.NbtString;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SplitSectionChunkDataPartStorageTests {
+    private static final int DATA_LENGTH = 256;
+    private static final int LIGHT_LENGTH = 2048;
+
+    private static NbtCompound createSection(int y, long blockData, byte skyLight) {
+        NbtCompound palette = new NbtCompound();
+        palette.set("Name", new NbtString("minecraft:stone"));
+        NbtList paletteList = new NbtList(NbtCompound.ID, 1);
+        paletteList.getValue()[0] = palette;
+
+        long[] data = new long[DATA_LENGTH];
+        Arrays.fill(data, blockData);
+        NbtCompound blockStates = new NbtCompound();
+        blockStates.set("palette", paletteList);
+        blockStates.set("data", new NbtLongArray(data));
+
+        NbtCompound biomes = new NbtCompound();
+        NbtList biomePalette = new NbtList((byte) NbtString.ID, 1);
+        biomePalette.getValue()[0] = new NbtString("minecraft:plains");
+        biomes.set("palette", biomePalette);
+
+        byte[] light = new byte[LIGHT_LENGTH];
+        Arrays.fill(light, skyLight);
+
+        NbtCompound section = new NbtCompound();
+        section.set("Y", new NbtByte((byte) y));
+        section.set("block_states", blockStates);
+        section.set("biomes", biomes);
+        section.set("BlockLight", new NbtByteArray(new byte[LIGHT_LENGTH]));
+        section.set("SkyLight", new NbtByteArray(light));
+        return section;
+    }
+
+    private static NbtCompound createChunk(long blockData, byte skyLight) {
+        NbtList sections = new NbtList(NbtCompound.ID, 2);
+        sections.getValue()[0] = createSection(0, blockData, skyLight);
+        // A section without light or block state data
+        NbtCompound emptySection = new NbtCompound();
+        emptySection.set("Y", new NbtByte((byte) 1));
+        sections.getValue()[1] = emptySection;
+
+        NbtCompound chunk = new NbtCompound();
+        chunk.set(SectionChunkDataPartStorage.SECTIONS_TAG, sections);
+        return chunk;
+    }
+
+    private static int writtenSize(ChunkDataPartStorage storage) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        storage.write(new DataOutputStream(out));
+        return out.size();
+    }
+
+    @Test
+    public void restoreEqualChunk() throws IOException {
+        SplitSectionChunkDataPartStorage storage = new SplitSectionChunkDataPartStorage();
+        int versionNumber = storage.storePart(createChunk(1, (byte) 15));
+
+        // Read the storage back to also test the serialization
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        storage.write(new DataOutputStream(out));
+        storage = new SplitSectionChunkDataPartStorage(new DataInputStream(new ByteArrayInputStream(out.toByteArray())));
+
+        NbtCompound restored = new NbtCompound();
+        storage.restorePart(restored, versionNumber);
+        assertEquals(createChunk(1, (byte) 15), restored);
+    }
+
+    @Test
+    public void noSectionsTag() {
+        SplitSectionChunkDataPartStorage storage = new SplitSectionChunkDataPartStorage();
+        assertEquals(SplitSectionChunkDataPartStorage.NO_SECTIONS_TAG, storage.storePart(new NbtCompound()));
+    }
+
+    @Test
+    public void identicalChunkReusesVersion() {
+        SplitSectionChunkDataPartStorage storage = new SplitSectionChunkDataPartStorage();
+        int first = storage.storePart(createChunk(1, (byte) 15));
+        int second = storage.storePart(createChunk(1, (byte) 15));
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void lightChangeDoesNotStoreBlockData() throws IOException {
+        SplitSectionChunkDataPartStorage storage = new SplitSectionChunkDataPartStorage();
+        int first = storage.storePart(createChunk(1, (byte) 15));
+        int sizeBefore = writtenSize(storage);
+
+        int second = storage.storePart(createChunk(1, (byte) 14));
+        assertNotEquals(first, second);
+        int growth = writtenSize(storage) - sizeBefore;
+        // Only the new sky light should have been stored, not the block state data
+        assertTrue(growth >= LIGHT_LENGTH, "growth was " + growth);
+        assertTrue(growth < LIGHT_LENGTH + DATA_LENGTH * Long.BYTES, "growth was " + growth);
+
+        NbtCompound restored = new NbtCompound();
+        storage.restorePart(restored, first);
+        assertEquals(createChunk(1, (byte) 15), restored);
+        restored = new NbtCompound();
+        storage.restorePart(restored, second);
+        assertEquals(createChunk(1, (byte) 14), restored);
+    }
+}
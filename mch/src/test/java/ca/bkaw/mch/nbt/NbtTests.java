@@ -1,13 +1,22 @@
 package ca.bkaw.mch.nbt;
 
 import ca.bkaw.mch.TestUtils;
+import ca.bkaw.mch.region.mc.McRegionFileReader;
+import ca.bkaw.mch.util.Hashing;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -83,4 +92,123 @@ public class NbtTests {
             assertEquals(bytes.toByteArray().length, nbt.byteSize());
         }
     }
+
+    @Test
+    public void nbtReaderSameResult() throws IOException {
+        InputStream inputStream = NbtTests.class.getClassLoader().getResourceAsStream("nbt/uncompressed1.nbt");
+        assertNotNull(inputStream);
+        byte[] bytes = inputStream.readAllBytes();
+
+        NbtCompound expected = NbtTag.readCompound(new DataInputStream(new ByteArrayInputStream(bytes)));
+        assertEquals(expected, NbtReader.readCompound(bytes));
+        assertEquals(expected, NbtReader.readCompound(new ByteArrayInputStream(bytes)));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        assertEquals(expected, NbtReader.readCompound(direct));
+    }
+
+    @Test
+    public void nbtReaderChunk() throws IOException {
+        NbtCompound expected = TestUtils.getChunkNbt("r.0.0.mca");
+        NbtCompound chunkNbt;
+        try (McRegionFileReader regionFile = new McRegionFileReader(Path.of("src/test/resources/region/r.0.0.mca"))) {
+            chunkNbt = regionFile.readChunkNbt(0, 0);
+        }
+        assertEquals(expected, chunkNbt);
+
+        // Writing the nbt must give the same bytes
+        ByteArrayOutputStream expectedBytes = new ByteArrayOutputStream();
+        NbtTag.writeTag(new DataOutputStream(expectedBytes), expected);
+        ByteArrayOutputStream foundBytes = new ByteArrayOutputStream();
+        NbtTag.writeTag(new DataOutputStream(foundBytes), chunkNbt);
+        assertArrayEquals(expectedBytes.toByteArray(), foundBytes.toByteArray());
+    }
+
+    @Test
+    public void nbtReaderStrings() throws IOException {
+        NbtCompound nbt = new NbtCompound();
+        nbt.set("Name", new NbtString("ascii"));
+        nbt.set("unknown key", new NbtString("\u0000 null"));
+        nbt.set("non-ascii \u00e5\u00e4\u00f6", new NbtString("\u20ac \uD83D\uDE00"));
+        nbt.set("empty", new NbtString(""));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NbtTag.writeTag(new DataOutputStream(bytes), nbt);
+        assertEquals(nbt, NbtReader.readCompound(bytes.toByteArray()));
+    }
+
+    @Test
+    public void nbtReaderTruncated() throws IOException {
+        InputStream inputStream = NbtTests.class.getClassLoader().getResourceAsStream("nbt/uncompressed1.nbt");
+        assertNotNull(inputStream);
+        byte[] bytes = inputStream.readAllBytes();
+
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            assertThrows(EOFException.class, () -> NbtReader.readCompound(truncated));
+        }
+    }
+
+    @Test
+    public void nbtReaderSelectedKeys() throws IOException {
+        InputStream inputStream = NbtTests.class.getClassLoader().getResourceAsStream("nbt/uncompressed1.nbt");
+        assertNotNull(inputStream);
+        byte[] bytes = inputStream.readAllBytes();
+        NbtCompound nbt = NbtReader.readCompound(bytes);
+
+        NbtCompound selected = NbtReader.readCompound(bytes, Set.of("int", "string", "missing"));
+        NbtCompound expected = new NbtCompound();
+        expected.set("int", nbt.get("int"));
+        expected.set("string", nbt.get("string"));
+        assertEquals(expected, selected);
+
+        // Every key can be read on its own, which requires skipping the others.
+        for (Map.Entry<String, NbtTag> entry : nbt.entrySet()) {
+            NbtCompound single = NbtReader.readCompound(bytes, Set.of(entry.getKey()));
+            assertEquals(entry.getValue(), single.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void nbtReaderSelectedKeysChunk() throws IOException {
+        byte[] bytes;
+        try (McRegionFileReader regionFile = new McRegionFileReader(Path.of("src/test/resources/region/r.0.0.mca"))) {
+            bytes = regionFile.readChunkBytes(0, 0);
+        }
+        NbtCompound chunkNbt = NbtReader.readCompound(bytes);
+        for (Map.Entry<String, NbtTag> entry : chunkNbt.entrySet()) {
+            NbtCompound single = NbtReader.readCompound(bytes, Set.of(entry.getKey()));
+            assertEquals(entry.getValue(), single.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void fingerprintMatchesSerializedBytes() throws IOException {
+        NbtCompound nbt = TestUtils.readUncompressed1();
+        nbt.set("non-ascii", new NbtString("\u0000 \u00e5 \u20ac \uD83D\uDE00"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NbtTag.writeTag(new DataOutputStream(bytes), nbt);
+        assertEquals(bytes.size(), nbt.byteSize() + 3);
+        assertEquals(Hashing.hash64(bytes.toByteArray()), nbt.fingerprint());
+
+        nbt.freeze();
+        assertEquals(Hashing.hash64(bytes.toByteArray()), nbt.fingerprint());
+    }
+
+    @Test
+    public void frozenCompound() throws IOException {
+        NbtCompound nbt = TestUtils.readUncompressed1();
+        int hashCode = nbt.hashCode();
+        int byteSize = nbt.byteSize();
+        nbt.freeze();
+
+        assertEquals(hashCode, nbt.hashCode());
+        assertEquals(byteSize, nbt.byteSize());
+        assertEquals(TestUtils.readUncompressed1(), nbt);
+        assertThrows(IllegalStateException.class, () -> nbt.set("test", new NbtInt(1)));
+        assertThrows(IllegalStateException.class, () -> nbt.remove("int"));
+        assertThrows(IllegalStateException.class, () -> ((NbtString) nbt.get("string")).setValue("test"));
+    }
 }
@@ -0,0 +1,114 @@
+package ca.bkaw.mch.object;
+
+import ca.bkaw.mch.Sha1;
+import ca.bkaw.mch.object.blob.Blob;
+import ca.bkaw.mch.object.tree.Tree;
+import ca.bkaw.mch.repository.MchRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ObjectCacheTests {
+    static MchRepository repository = new MchRepository(Path.of("run/test-run/object-cache"), new ObjectCache(1024));
+
+    @BeforeAll
+    static void setup() throws IOException {
+        Path root = repository.getRoot();
+        if (Files.exists(root)) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        Files.createDirectories(root);
+    }
+
+    private static Sha1 sha1(int value) {
+        byte[] bytes = new byte[20];
+        bytes[0] = (byte) value;
+        return new Sha1(bytes);
+    }
+
+    @Test
+    public void leastRecentlyUsed() {
+        ObjectCache cache = new ObjectCache(200);
+        Tree a = new Tree();
+        Tree b = new Tree();
+        Tree c = new Tree();
+        cache.put(ObjectStorageTypes.TREE, sha1(1), a, 100);
+        cache.put(ObjectStorageTypes.TREE, sha1(2), b, 100);
+        assertSame(a, cache.get(ObjectStorageTypes.TREE, sha1(1)));
+
+        // b is the least recently used and is removed
+        cache.put(ObjectStorageTypes.TREE, sha1(3), c, 100);
+        assertEquals(2, cache.size());
+        assertEquals(200, cache.getEstimatedSize());
+        assertSame(a, cache.get(ObjectStorageTypes.TREE, sha1(1)));
+        assertNull(cache.get(ObjectStorageTypes.TREE, sha1(2)));
+        assertSame(c, cache.get(ObjectStorageTypes.TREE, sha1(3)));
+
+        // The type is part of the key
+        assertNull(cache.get(ObjectStorageTypes.DIMENSION, sha1(1)));
+
+        assertEquals(3, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void boundedBySize() {
+        ObjectCache cache = new ObjectCache(1000);
+        for (int i = 0; i < 10; i++) {
+            cache.put(ObjectStorageTypes.TREE, sha1(i), new Tree(), 100);
+        }
+        assertEquals(10, cache.size());
+
+        // A large object removes as many objects as needed
+        cache.put(ObjectStorageTypes.TREE, sha1(10), new Tree(), 350);
+        assertEquals(7, cache.size());
+        assertEquals(950, cache.getEstimatedSize());
+        assertNull(cache.get(ObjectStorageTypes.TREE, sha1(3)));
+        assertNotNull(cache.get(ObjectStorageTypes.TREE, sha1(4)));
+
+        // Objects larger than the cache are not cached
+        cache.put(ObjectStorageTypes.TREE, sha1(11), new Tree(), 1001);
+        assertNull(cache.get(ObjectStorageTypes.TREE, sha1(11)));
+        assertEquals(7, cache.size());
+    }
+
+    @Test
+    public void disabled() {
+        ObjectCache cache = new ObjectCache(0);
+        cache.put(ObjectStorageTypes.TREE, sha1(1), new Tree(), 10);
+        assertEquals(0, cache.size());
+        assertNull(cache.get(ObjectStorageTypes.TREE, sha1(1)));
+    }
+
+    @Test
+    public void resolve() throws IOException {
+        Reference20<Tree> treeReference = ObjectStorageTypes.TREE.save(new Tree(), repository);
+        Tree tree = treeReference.resolve(repository);
+        assertSame(tree, treeReference.resolve(repository));
+
+        // Cached objects are shared and can not be modified
+        assertTrue(tree.isFrozen());
+        assertThrows(IllegalStateException.class, () -> tree.addSubTree("a", treeReference));
+
+        // Blobs are not cached
+        Reference20<Blob> blobReference = ObjectStorageTypes.BLOB.save(new Blob(new byte[] { 1, 2, 3 }), repository);
+        assertNotSame(blobReference.resolve(repository), blobReference.resolve(repository));
+    }
+}
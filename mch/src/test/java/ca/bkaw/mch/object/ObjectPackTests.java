@@ -0,0 +1,89 @@
+package ca.bkaw.mch.object;
+
+import ca.bkaw.mch.Sha1;
+import ca.bkaw.mch.object.blob.Blob;
+import ca.bkaw.mch.repository.MchRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ObjectPackTests {
+    static MchRepository repository = new MchRepository(Path.of("run/test-run/object-pack"));
+
+    @BeforeAll
+    static void setup() throws IOException {
+        Path root = repository.getRoot();
+        if (Files.exists(root)) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        Files.createDirectories(root);
+    }
+
+    private static Path getObjectPath(Reference20<?> reference) {
+        String hex = reference.getSha1().asHex();
+        return repository.getRoot().resolve("objects/blob/objects")
+            .resolve(hex.substring(0, 2))
+            .resolve(hex + ".zst");
+    }
+
+    @Test
+    public void repack() throws IOException {
+        List<byte[]> contents = new ArrayList<>();
+        List<Reference20<Blob>> references = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            byte[] bytes = ("Object number " + i).getBytes();
+            contents.add(bytes);
+            references.add(ObjectStorageTypes.BLOB.save(new Blob(bytes), repository));
+        }
+
+        assertEquals(100, ObjectStorageTypes.BLOB.repack(repository));
+        assertEquals(0, ObjectStorageTypes.BLOB.repack(repository));
+
+        for (int i = 0; i < references.size(); i++) {
+            Reference20<Blob> reference = references.get(i);
+            // The loose object was removed and is read from the pack
+            assertFalse(Files.exists(getObjectPath(reference)));
+            assertArrayEquals(contents.get(i), reference.resolve(repository).getBytes());
+            try (InputStream stream = ObjectStorageTypes.BLOB.openStream(reference, repository)) {
+                assertArrayEquals(contents.get(i), stream.readAllBytes());
+            }
+
+            // Saving a packed object does not create a loose object
+            Reference20<Blob> reference2 = ObjectStorageTypes.BLOB.save(new Blob(contents.get(i)), repository);
+            assertEquals(reference.getSha1(), reference2.getSha1());
+            assertFalse(Files.exists(getObjectPath(reference)));
+        }
+
+        // New objects are stored as loose objects and can be packed into a second pack
+        Reference20<Blob> newReference = ObjectStorageTypes.BLOB.save(new Blob("A new object".getBytes()), repository);
+        assertEquals(1, ObjectStorageTypes.BLOB.repack(repository));
+        assertArrayEquals("A new object".getBytes(), newReference.resolve(repository).getBytes());
+        assertArrayEquals(contents.get(0), references.get(0).resolve(repository).getBytes());
+        try (Stream<Path> files = Files.list(repository.getRoot().resolve("objects/blob/packs"))) {
+            assertEquals(4, files.count());
+        }
+    }
+
+    @Test
+    public void missingObject() {
+        Reference20<Blob> reference = new Reference20<>(ObjectStorageTypes.BLOB, new Sha1(new byte[20]));
+        assertThrows(ObjectNotFoundException.class, () -> reference.resolve(repository));
+    }
+}
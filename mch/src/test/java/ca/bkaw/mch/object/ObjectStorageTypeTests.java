@@ -0,0 +1,90 @@
+package ca.bkaw.mch.object;
+
+import ca.bkaw.mch.Sha1;
+import ca.bkaw.mch.object.blob.Blob;
+import ca.bkaw.mch.repository.MchRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ObjectStorageTypeTests {
+    static MchRepository repository = new MchRepository(Path.of("run/test-run/object-storage"));
+
+    @BeforeAll
+    static void setup() throws IOException {
+        Path root = repository.getRoot();
+        if (Files.exists(root)) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        Files.createDirectories(root);
+    }
+
+    private void saveAndRead(byte[] bytes) throws IOException {
+        Reference20<Blob> reference = ObjectStorageTypes.BLOB.save(new Blob(bytes), repository);
+
+        // The hash is the hash of the stored file
+        Path objectPath = repository.getRoot().resolve("objects/blob/objects")
+            .resolve(reference.getSha1().asHex().substring(0, 2))
+            .resolve(reference.getSha1().asHex() + ".zst");
+        assertEquals(Sha1.ofFile(objectPath), reference.getSha1());
+        assertArrayEquals(bytes, reference.resolve(repository).getBytes());
+
+        // Saving again gives the same hash and does not leave temporary files
+        Reference20<Blob> reference2 = ObjectStorageTypes.BLOB.save(new Blob(bytes), repository);
+        assertEquals(reference.getSha1(), reference2.getSha1());
+        try (Stream<Path> files = Files.list(repository.getRoot().resolve("objects/blob/objects"))) {
+            List<Path> regularFiles = files.filter(Files::isRegularFile).toList();
+            assertEquals(List.of(), regularFiles);
+        }
+    }
+
+    @Test
+    public void smallObject() throws IOException {
+        this.saveAndRead("Hello, World!".getBytes());
+    }
+
+    @Test
+    public void largeObject() throws IOException {
+        // Random bytes do not compress, so the object is written to a temporary file.
+        byte[] bytes = new byte[3 * 1024 * 1024];
+        new Random(1).nextBytes(bytes);
+        this.saveAndRead(bytes);
+    }
+
+    @Test
+    public void streamBlob() throws IOException {
+        byte[] bytes = new byte[3 * 1024 * 1024];
+        new Random(2).nextBytes(bytes);
+
+        // Saving from a stream stores the same object as saving a blob
+        Reference20<Blob> reference = ObjectStorageTypes.BLOB.save(new ByteArrayInputStream(bytes), repository);
+        assertEquals(ObjectStorageTypes.BLOB.save(new Blob(bytes), repository).getSha1(), reference.getSha1());
+
+        try (InputStream stream = ObjectStorageTypes.BLOB.openStream(reference, repository)) {
+            assertArrayEquals(bytes, stream.readAllBytes());
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long written = ObjectStorageTypes.BLOB.transferTo(reference, repository, Channels.newChannel(output));
+        assertEquals(bytes.length, written);
+        assertArrayEquals(bytes, output.toByteArray());
+    }
+}
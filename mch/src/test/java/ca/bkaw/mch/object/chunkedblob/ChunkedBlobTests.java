@@ -0,0 +1,65 @@
+package ca.bkaw.mch.object.chunkedblob;
+
+import ca.bkaw.mch.object.ObjectStorageTypes;
+import ca.bkaw.mch.object.Reference20;
+import ca.bkaw.mch.repository.MchRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ChunkedBlobTests {
+    static MchRepository repository = new MchRepository(Path.of("run/test-run/chunked-blob"));
+
+    @BeforeAll
+    static void setup() throws IOException {
+        Path root = repository.getRoot();
+        if (Files.exists(root)) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        Files.createDirectories(root);
+    }
+
+    @Test
+    public void saveAndRead() throws IOException {
+        byte[] bytes = new byte[2 * 1024 * 1024 + 5];
+        new Random(2).nextBytes(bytes);
+
+        ChunkedBlob chunkedBlob = ChunkedBlob.save(new ByteArrayInputStream(bytes), repository);
+        assertEquals(bytes.length, chunkedBlob.getSize());
+        Reference20<ChunkedBlob> reference = ObjectStorageTypes.CHUNKED_BLOB.save(chunkedBlob, repository);
+
+        repository.getObjectCache().clear();
+        ChunkedBlob read = reference.resolve(repository);
+        assertEquals(chunkedBlob.getChunks().size(), read.getChunks().size());
+        for (int i = 0; i < read.getChunks().size(); i++) {
+            ChunkedBlob.Chunk expected = chunkedBlob.getChunks().get(i);
+            ChunkedBlob.Chunk actual = read.getChunks().get(i);
+            assertEquals(expected.reference().getSha1(), actual.reference().getSha1());
+            assertEquals(expected.length(), actual.length());
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        read.transferTo(repository, output);
+        assertArrayEquals(bytes, output.toByteArray());
+
+        try (InputStream stream = read.openStream(repository)) {
+            assertArrayEquals(bytes, stream.readAllBytes());
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package ca.bkaw.mch.region;
 
+import ca.bkaw.mch.MchVersion;
+import ca.bkaw.mch.util.Hashing;
+import com.github.luben.zstd.Zstd;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
@@ -13,7 +19,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 public class MchRegionFileTests {
     @Test
     void test() throws IOException {
-        Path path = Path.of("run/r.0.0.mchrv.zst");
+        Path path = Path.of("run/r.0.0.mchrv");
         Files.deleteIfExists(path);
         Files.createDirectories(path.getParent());
 
@@ -38,4 +44,157 @@ public class MchRegionFileTests {
 
         Files.delete(path);
     }
+
+    @Test
+    void recoverIncompleteIndex() throws IOException {
+        Path path = Path.of("run/r.1.0.mchrv");
+        Files.deleteIfExists(path);
+        Files.createDirectories(path.getParent());
+
+        int[] chunkVersionNumbers1 = new int[1024];
+        Arrays.fill(chunkVersionNumbers1, 1);
+        int[] chunkVersionNumbers2 = new int[1024];
+        Arrays.fill(chunkVersionNumbers2, 2);
+
+        MchRegionFile.store(path, chunkVersionNumbers1);
+        MchRegionFile.store(path, chunkVersionNumbers2);
+
+        // Simulate the process being terminated while writing the index
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+
+        assertArrayEquals(chunkVersionNumbers1, MchRegionFile.read(path, 1));
+        assertArrayEquals(chunkVersionNumbers2, MchRegionFile.read(path, 2));
+        assertEquals(2, MchRegionFile.store(path, chunkVersionNumbers2));
+
+        int[] chunkVersionNumbers3 = new int[1024];
+        Arrays.fill(chunkVersionNumbers3, 3);
+        assertEquals(3, MchRegionFile.store(path, chunkVersionNumbers3));
+        assertArrayEquals(chunkVersionNumbers3, MchRegionFile.read(path, 3));
+
+        Files.delete(path);
+    }
+
+    @Test
+    void recoverOverwrittenIndex() throws IOException {
+        Path path = Path.of("run/r.3.0.mchrv");
+        Files.deleteIfExists(path);
+        Files.createDirectories(path.getParent());
+
+        int[] chunkVersionNumbers1 = new int[1024];
+        Arrays.fill(chunkVersionNumbers1, 1);
+        int[] chunkVersionNumbers2 = chunkVersionNumbers1.clone();
+        chunkVersionNumbers2[5] = 2;
+        int[] chunkVersionNumbers3 = chunkVersionNumbers2.clone();
+        chunkVersionNumbers3[6] = 3;
+
+        MchRegionFile.store(path, chunkVersionNumbers1);
+        MchRegionFile.store(path, chunkVersionNumbers2);
+        long size = Files.size(path);
+
+        // Simulate the process being terminated after a delta record, which is shorter
+        // than the index, was written over the index.
+        MchRegionFile.appendWithoutIndex(path, chunkVersionNumbers3);
+        assertEquals(size, Files.size(path));
+
+        assertArrayEquals(chunkVersionNumbers1, MchRegionFile.read(path, 1));
+        assertArrayEquals(chunkVersionNumbers2, MchRegionFile.read(path, 2));
+        assertArrayEquals(chunkVersionNumbers3, MchRegionFile.read(path, 3));
+        assertEquals(3, MchRegionFile.store(path, chunkVersionNumbers3));
+
+        int[] chunkVersionNumbers4 = chunkVersionNumbers3.clone();
+        chunkVersionNumbers4[7] = 4;
+        assertEquals(4, MchRegionFile.store(path, chunkVersionNumbers4));
+        assertArrayEquals(chunkVersionNumbers4, MchRegionFile.read(path, 4));
+
+        Files.delete(path);
+    }
+
+    @Test
+    void manyVersionsWithFewChanges() throws IOException {
+        Path path = Path.of("run/r.2.0.mchrv");
+        Files.deleteIfExists(path);
+        Files.createDirectories(path.getParent());
+
+        // Change a few chunks in each version, and sometimes many chunks
+        int[][] versions = new int[100][];
+        int[] chunkVersionNumbers = new int[1024];
+        for (int i = 0; i < versions.length; i++) {
+            int changes = i % 40 == 39 ? 500 : 3;
+            for (int j = 0; j < changes; j++) {
+                chunkVersionNumbers[(i * 7 + j * 13) % 1024] = i + 1;
+            }
+            versions[i] = chunkVersionNumbers.clone();
+            assertEquals(i + 1, MchRegionFile.store(path, chunkVersionNumbers));
+        }
+
+        for (int i = 0; i < versions.length; i++) {
+            assertArrayEquals(versions[i], MchRegionFile.read(path, i + 1));
+        }
+        assertEquals(50, MchRegionFile.store(path, versions[49]));
+
+        Files.delete(path);
+    }
+
+    @Test
+    void convertUnsortedIndex() throws IOException {
+        Path path = Path.of("run/r.4.0.mchrv");
+        Files.deleteIfExists(path);
+        Files.createDirectories(path.getParent());
+
+        int[] chunkVersionNumbers1 = new int[1024];
+        Arrays.fill(chunkVersionNumbers1, 1);
+        int[] chunkVersionNumbers2 = new int[1024];
+        Arrays.fill(chunkVersionNumbers2, 2);
+
+        // A file from mch version 26, where the index is in the order of the records,
+        // with region file version 2 stored before version 1.
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        buffer.putInt(MchRegionFile.MAGIC);
+        buffer.putInt(26);
+        long offset2 = buffer.position();
+        putFullRecord(buffer, 2, chunkVersionNumbers2);
+        long offset1 = buffer.position();
+        putFullRecord(buffer, 1, chunkVersionNumbers1);
+        long indexOffset = buffer.position();
+        buffer.putInt(2).putLong(Hashing.hash64(chunkVersionNumbers2)).putLong(offset2);
+        buffer.putInt(1).putLong(Hashing.hash64(chunkVersionNumbers1)).putLong(offset1);
+        buffer.putLong(indexOffset).putInt(2).putInt(3).putInt(MchRegionFile.MAGIC);
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(buffer);
+        }
+
+        assertArrayEquals(chunkVersionNumbers1, MchRegionFile.read(path, 1));
+        assertArrayEquals(chunkVersionNumbers2, MchRegionFile.read(path, 2));
+
+        // Storing converts the file
+        assertEquals(2, MchRegionFile.store(path, chunkVersionNumbers2));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            channel.read(header, 0);
+            assertEquals(MchVersion.VERSION_NUMBER, header.getInt(4));
+        }
+        int[] chunkVersionNumbers3 = new int[1024];
+        Arrays.fill(chunkVersionNumbers3, 3);
+        assertEquals(3, MchRegionFile.store(path, chunkVersionNumbers3));
+        assertEquals(1, MchRegionFile.store(path, chunkVersionNumbers1));
+        assertArrayEquals(chunkVersionNumbers1, MchRegionFile.read(path, 1));
+        assertArrayEquals(chunkVersionNumbers2, MchRegionFile.read(path, 2));
+        assertArrayEquals(chunkVersionNumbers3, MchRegionFile.read(path, 3));
+
+        Files.delete(path);
+    }
+
+    private static void putFullRecord(ByteBuffer buffer, int regionFileVersionNumber, int[] chunkVersionNumbers) {
+        ByteBuffer bytes = ByteBuffer.allocate(1024 * Integer.BYTES);
+        bytes.asIntBuffer().put(chunkVersionNumbers);
+        byte[] compressed = Zstd.compress(bytes.array());
+        buffer.putInt(regionFileVersionNumber);
+        buffer.putLong(Hashing.hash64(chunkVersionNumbers));
+        buffer.put((byte) 0);
+        buffer.putInt(compressed.length);
+        buffer.put(compressed);
+    }
 }
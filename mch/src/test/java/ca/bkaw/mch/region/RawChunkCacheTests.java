@@ -0,0 +1,92 @@
+package ca.bkaw.mch.region;
+
+import ca.bkaw.mch.Sha1;
+import ca.bkaw.mch.region.mc.ChunkCompression;
+import ca.bkaw.mch.region.mc.RawChunk;
+import ca.bkaw.mch.repository.TrackedWorld;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RawChunkCacheTests {
+    private final Path root = Path.of("run/test-run/raw-chunk-cache");
+    private final TrackedWorld trackedWorld = new TrackedWorld(Sha1.randomSha1(), "world", null);
+
+    @BeforeEach
+    void deleteCache() throws IOException {
+        if (Files.exists(this.root)) {
+            try (Stream<Path> stream = Files.walk(this.root)) {
+                for (Path path : stream.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    private void put(RawChunkCache cache, int chunkIndex, int chunkVersionNumber, RawChunk rawChunk, int lastModified) throws IOException {
+        cache.put(this.trackedWorld, "minecraft:overworld", RegionFileType.REGION, 0, -1, chunkIndex, chunkVersionNumber, rawChunk, lastModified);
+    }
+
+    private RawChunkCache.CachedChunk get(RawChunkCache cache, int chunkIndex, int chunkVersionNumber) throws IOException {
+        return cache.get(this.trackedWorld, "minecraft:overworld", RegionFileType.REGION, 0, -1, chunkIndex, chunkVersionNumber);
+    }
+
+    @Test
+    void putAndGet() throws IOException {
+        RawChunkCache cache = new RawChunkCache(this.root, 1024 * 1024);
+        RawChunk rawChunk = new RawChunk(ChunkCompression.LZ4, new byte[] { 1, 2, 3, 4 });
+        this.put(cache, 5, 1, rawChunk, 1234);
+
+        RawChunkCache.CachedChunk cachedChunk = this.get(cache, 5, 1);
+        assertNotNull(cachedChunk);
+        assertEquals(1234, cachedChunk.lastModified());
+        assertEquals(ChunkCompression.LZ4, cachedChunk.rawChunk().compression());
+        assertArrayEquals(rawChunk.bytes(), cachedChunk.rawChunk().bytes());
+
+        // Other versions and chunks are not cached
+        assertNull(this.get(cache, 5, 2));
+        assertNull(this.get(cache, 6, 1));
+    }
+
+    @Test
+    void removeLeastRecentlyUsed() throws IOException {
+        // Room for three chunks of 1000 bytes, including the headers
+        RawChunkCache cache = new RawChunkCache(this.root, 3100);
+        for (int i = 1; i <= 3; i++) {
+            this.put(cache, i, 1, new RawChunk(ChunkCompression.ZLIB, new byte[1000]), i);
+        }
+        assertTrue(cache.getSize() <= 3100);
+
+        // Make the first chunk the oldest and then use it, so that the second is the
+        // least recently used.
+        Path chunkFolder = this.root.resolve(this.trackedWorld.getId().asHex())
+            .resolve("minecraft_overworld").resolve("region").resolve("r.0.-1");
+        long time = System.currentTimeMillis() - 60_000;
+        for (int i = 1; i <= 3; i++) {
+            Files.setLastModifiedTime(chunkFolder.resolve(i + ".1"), FileTime.fromMillis(time + i * 1000));
+        }
+        assertNotNull(this.get(cache, 1, 1));
+
+        this.put(cache, 4, 1, new RawChunk(ChunkCompression.ZLIB, new byte[1000]), 4);
+
+        assertTrue(cache.getSize() <= 3100 * 0.9);
+        assertNull(this.get(cache, 2, 1));
+        assertNotNull(this.get(cache, 4, 1));
+
+        // Chunks larger than the cache are not cached
+        this.put(cache, 5, 1, new RawChunk(ChunkCompression.ZLIB, new byte[4000]), 5);
+        assertNull(this.get(cache, 5, 1));
+    }
+}
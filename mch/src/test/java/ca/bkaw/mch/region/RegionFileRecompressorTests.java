@@ -0,0 +1,76 @@
+package ca.bkaw.mch.region;
+
+import ca.bkaw.mch.chunk.ChunkStorage;
+import ca.bkaw.mch.nbt.NbtCompound;
+import ca.bkaw.mch.nbt.NbtInt;
+import ca.bkaw.mch.repository.CompressionSettings;
+import ca.bkaw.mch.repository.MchConfiguration;
+import ca.bkaw.mch.repository.MchRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RegionFileRecompressorTests {
+    static MchRepository repository = new MchRepository(Path.of("run/test-run/recompress"));
+    static Path regionFolder = repository.getRoot().resolve("world/0000/dimensions/minecraft_overworld/region");
+
+    @BeforeAll
+    static void setup() throws IOException {
+        Path root = repository.getRoot();
+        if (Files.exists(root)) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        Files.createDirectories(regionFolder);
+        repository.readConfiguration();
+    }
+
+    private static NbtCompound createChunkNbt(int index) {
+        NbtCompound chunkNbt = new NbtCompound();
+        chunkNbt.set("DataVersion", new NbtInt(3700));
+        chunkNbt.set("xPos", new NbtInt(index % 32));
+        chunkNbt.set("zPos", new NbtInt(index / 32));
+        return chunkNbt;
+    }
+
+    @Test
+    public void recompress() throws IOException {
+        Path regionStoragePath = regionFolder.resolve("r.0.0.mchrs");
+        Path mchRegionFilePath = regionFolder.resolve("r.0.0.mchrv");
+        try (RegionStorageFile file = RegionStorageFile.create(regionStoragePath, null, CompressionSettings.DEFAULT)) {
+            for (int i = 0; i < 16; i++) {
+                ChunkStorage chunkStorage = new ChunkStorage();
+                chunkStorage.store(createChunkNbt(i), i);
+                file.writeChunkStorage(i, chunkStorage);
+            }
+            file.commit();
+        }
+        int[] chunkVersionNumbers = new int[MchRegionFile.CHUNK_COUNT];
+        for (int i = 0; i < 16; i++) {
+            chunkVersionNumbers[i] = 1;
+        }
+        int regionFileVersionNumber = MchRegionFile.store(mchRegionFilePath, chunkVersionNumbers);
+
+        MchConfiguration configuration = repository.getConfiguration();
+        configuration.setCompressionSettings(new CompressionSettings(19, 2));
+        assertEquals(2, RegionFileRecompressor.recompress(repository));
+
+        try (RegionStorageFile file = RegionStorageFile.open(regionStoragePath, true, null, CompressionSettings.DEFAULT)) {
+            for (int i = 0; i < 16; i++) {
+                assertEquals(createChunkNbt(i), file.readChunkStorage(i).restore(1).nbt());
+            }
+        }
+        assertArrayEquals(chunkVersionNumbers, MchRegionFile.read(mchRegionFilePath, regionFileVersionNumber));
+    }
+}
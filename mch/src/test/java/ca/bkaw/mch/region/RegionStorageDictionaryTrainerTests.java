@@ -0,0 +1,101 @@
+package ca.bkaw.mch.region;
+
+import ca.bkaw.mch.chunk.ChunkStorage;
+import ca.bkaw.mch.nbt.NbtCompound;
+import ca.bkaw.mch.nbt.NbtInt;
+import ca.bkaw.mch.nbt.NbtIntArray;
+import ca.bkaw.mch.nbt.NbtList;
+import ca.bkaw.mch.nbt.NbtString;
+import ca.bkaw.mch.repository.CompressionSettings;
+import ca.bkaw.mch.repository.MchRepository;
+import ca.bkaw.mch.repository.ZstdDictionaries;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RegionStorageDictionaryTrainerTests {
+    static MchRepository repository = new MchRepository(Path.of("run/test-run/dictionary"));
+    static Path regionStoragePath = repository.getRoot().resolve("world/0000/dimensions/minecraft_overworld/entities/r.0.0.mchrs");
+
+    @BeforeAll
+    static void setup() throws IOException {
+        Path root = repository.getRoot();
+        if (Files.exists(root)) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        Files.createDirectories(regionStoragePath.getParent());
+    }
+
+    private static NbtCompound createChunkNbt(int index) {
+        NbtList entities = new NbtList(NbtCompound.ID, 3);
+        for (int i = 0; i < 3; i++) {
+            NbtCompound entity = new NbtCompound();
+            entity.set("id", new NbtString(i % 2 == 0 ? "minecraft:cow" : "minecraft:pig"));
+            entity.set("Health", new NbtInt(index + i));
+            entities.getValue()[i] = entity;
+        }
+        NbtCompound chunkNbt = new NbtCompound();
+        chunkNbt.set("DataVersion", new NbtInt(3700));
+        chunkNbt.set("Position", new NbtIntArray(new int[] { index % 32, index / 32 }));
+        chunkNbt.set("Entities", entities);
+        return chunkNbt;
+    }
+
+    private static ChunkStorage createChunkStorage(int index) {
+        ChunkStorage chunkStorage = new ChunkStorage();
+        chunkStorage.store(createChunkNbt(index), index, RegionFileType.ENTITIES.getChunkDataParts());
+        return chunkStorage;
+    }
+
+    @Test
+    public void trainAndUse() throws IOException {
+        assertNull(repository.getDictionaries().getCurrent());
+        try (RegionStorageFile file = RegionStorageFile.create(regionStoragePath, repository.getDictionaries(), CompressionSettings.DEFAULT)) {
+            for (int i = 0; i < 512; i++) {
+                file.writeChunkStorage(i, createChunkStorage(i));
+            }
+            file.commit();
+        }
+
+        byte[] bytes = RegionStorageDictionaryTrainer.train(repository, 4096);
+        ZstdDictionaries.Dictionary dictionary = repository.getDictionaries().add(bytes);
+        assertEquals(dictionary, repository.getDictionaries().getCurrent());
+
+        // The current dictionary is remembered by the repository
+        ZstdDictionaries dictionaries = new ZstdDictionaries(repository.getRoot().resolve(ZstdDictionaries.FOLDER));
+        ZstdDictionaries.Dictionary current = dictionaries.getCurrent();
+        assertNotNull(current);
+        assertEquals(dictionary.getId(), current.getId());
+        assertThrows(IOException.class, () -> dictionaries.get(dictionary.getId() + 1));
+
+        // Records written with and without the dictionary can both be read
+        try (RegionStorageFile file = RegionStorageFile.open(regionStoragePath, false, repository.getDictionaries(), CompressionSettings.DEFAULT)) {
+            file.writeChunkStorage(512, createChunkStorage(512));
+            file.commit();
+        }
+        try (RegionStorageFile file = RegionStorageFile.open(regionStoragePath, true, repository.getDictionaries(), CompressionSettings.DEFAULT)) {
+            assertEquals(createChunkNbt(0), file.readChunkStorage(0).restore(1).nbt());
+            assertEquals(createChunkNbt(512), file.readChunkStorage(512).restore(1).nbt());
+        }
+    }
+
+    @Test
+    public void noChunks() {
+        MchRepository emptyRepository = new MchRepository(Path.of("run/test-run/dictionary-empty"));
+        assertThrows(IllegalStateException.class, () -> RegionStorageDictionaryTrainer.train(emptyRepository, 4096));
+    }
+}
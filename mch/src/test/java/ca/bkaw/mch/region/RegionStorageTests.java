@@ -1,7 +1,9 @@
 package ca.bkaw.mch.region;
 
 import ca.bkaw.mch.Sha1;
+import ca.bkaw.mch.TestUtils;
 import ca.bkaw.mch.nbt.NbtCompound;
+import ca.bkaw.mch.nbt.NbtInt;
 import ca.bkaw.mch.region.mc.McRegionFileReader;
 import org.junit.jupiter.api.Test;
 
@@ -10,9 +12,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class RegionStorageTests {
-    Path path = Path.of("run/test-run/r.0.0.mchrs.zst");
+    Path path = Path.of("run/test-run/r.0.0.mchrs");
 
     @Test
     void test() throws IOException {
@@ -32,6 +36,68 @@ public class RegionStorageTests {
         assertEquals(sha1Before, sha1After);
     }
 
+    @Test
+    void storingOneChunkOnlyAppendsThatChunk() throws IOException {
+        Files.deleteIfExists(this.path);
+        Files.createDirectories(this.path.getParent());
+
+        saveRegionFile(this.path, "r.0.0.mca");
+        long sizeBefore = Files.size(this.path);
+
+        NbtCompound chunkNbt = TestUtils.getChunkNbt("r.0.0.mca");
+        int[] versionNumbers = new int[2];
+        RegionStorageVisitor.performVisit(this.path, false, chunk -> {
+            if (chunk.getIndex() == 0) {
+                // Store the same chunk with another last modified time
+                versionNumbers[0] = chunk.store(chunkNbt, 123);
+            }
+        });
+        assertEquals(2, versionNumbers[0]);
+
+        // Only the changed chunk and a new table should have been written
+        long sizeAfter = Files.size(this.path);
+        assertTrue(sizeAfter - sizeBefore < sizeBefore / 2);
+
+        RegionStorageVisitor.performVisit(this.path, true, chunk -> {
+            if (chunk.getIndex() == 0) {
+                assertEquals(123, chunk.getLastModified(2));
+                versionNumbers[1] = chunk.restore(1).lastModified();
+            }
+        });
+        assertNotEquals(0, versionNumbers[1]);
+    }
+
+    @Test
+    void storingExistingVersionDoesNotWrite() throws IOException {
+        Path path = Path.of("run/test-run/r.1.0.mchrs");
+        Files.deleteIfExists(path);
+        Files.createDirectories(path.getParent());
+
+        NbtCompound chunkNbt = new NbtCompound();
+        chunkNbt.set("DataVersion", new NbtInt(3700));
+        chunkNbt.set("xPos", new NbtInt(0));
+        chunkNbt.set("zPos", new NbtInt(0));
+        int[] versionNumbers = new int[2];
+        RegionStorageVisitor.performVisit(path, false, chunk -> {
+            if (chunk.getIndex() == 0) {
+                versionNumbers[0] = chunk.store(chunkNbt, 100);
+            }
+        });
+        Sha1 sha1Before = Sha1.ofFile(path);
+
+        RegionStorageVisitor.performVisit(path, false, chunk -> {
+            if (chunk.getIndex() == 0) {
+                versionNumbers[1] = chunk.store(chunkNbt, 100);
+            }
+        });
+        assertEquals(versionNumbers[0], versionNumbers[1]);
+
+        // The chunk storage was not modified, so the file should be identical
+        assertEquals(sha1Before, Sha1.ofFile(path));
+
+        Files.delete(path);
+    }
+
     private void saveRegionFile(Path regionStoragePath, String regionFileName) throws IOException {
         Path regionFilePath = Path.of("src/test/resources/region/" + regionFileName);
         // Path regionFilePath = Path.of("../run/region/" + regionFileName);
@@ -0,0 +1,67 @@
+package ca.bkaw.mch.region;
+
+import ca.bkaw.mch.nbt.NbtCompound;
+import ca.bkaw.mch.nbt.NbtInt;
+import ca.bkaw.mch.region.mc.McRegionFileReader;
+import ca.bkaw.mch.region.mc.McRegionFileWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RegionTimestampIndexTests {
+    @Test
+    void matches() throws IOException {
+        Path path = Path.of("run/test-run/r.0.0.mchrt");
+        Files.deleteIfExists(path);
+
+        int[] timestamps = new int[McRegionFileReader.CHUNK_COUNT];
+        timestamps[0] = 100;
+        timestamps[5] = 200;
+
+        // There is no index yet
+        assertFalse(RegionTimestampIndex.matches(path, 1, timestamps));
+
+        RegionTimestampIndex.write(path, 1, timestamps);
+        assertTrue(RegionTimestampIndex.matches(path, 1, timestamps));
+
+        // A different region file version number
+        assertFalse(RegionTimestampIndex.matches(path, 2, timestamps));
+
+        // A chunk was modified
+        int[] modified = timestamps.clone();
+        modified[5] = 201;
+        assertFalse(RegionTimestampIndex.matches(path, 1, modified));
+
+        // A chunk was added
+        int[] added = timestamps.clone();
+        added[6] = 200;
+        assertFalse(RegionTimestampIndex.matches(path, 1, added));
+    }
+
+    @Test
+    void getTimestamps() throws IOException {
+        Path path = Path.of("run/test-run/timestamp-index/r.0.0.mca");
+        Files.createDirectories(path.getParent());
+        Files.deleteIfExists(path);
+        try (McRegionFileWriter writer = new McRegionFileWriter(path)) {
+            NbtCompound chunk = new NbtCompound();
+            chunk.set("xPos", new NbtInt(3));
+            chunk.set("zPos", new NbtInt(1));
+            writer.writeChunk(chunk, 1234);
+        }
+        try (McRegionFileReader reader = new McRegionFileReader(path)) {
+            int[] timestamps = RegionTimestampIndex.getTimestamps(reader);
+            assertNotNull(timestamps);
+            int[] expected = new int[McRegionFileReader.CHUNK_COUNT];
+            expected[McRegionFileReader.getIndex(3, 1)] = 1234;
+            assertArrayEquals(expected, timestamps);
+        }
+    }
+}
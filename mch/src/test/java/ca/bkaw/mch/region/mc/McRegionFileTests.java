@@ -1,6 +1,9 @@
 package ca.bkaw.mch.region.mc;
 
+import ca.bkaw.mch.nbt.NbtByteArray;
 import ca.bkaw.mch.nbt.NbtCompound;
+import ca.bkaw.mch.nbt.NbtInt;
+import ca.bkaw.mch.nbt.NbtReader;
 import ca.bkaw.mch.nbt.NbtTag;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -13,18 +16,47 @@ import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class McRegionFileTests {
     static Path writeRegionFilePath = Path.of("run/test-run/r.0.0.mca");
+    static Path compressionTestPath = Path.of("run/test-run/mc-region-compression");
     private final Path readRegionFilePath = Path.of("src/test/resources/region/r.0.0.mca");
 
     @BeforeAll
     static void setup() throws IOException {
         Files.createDirectories(writeRegionFilePath.getParent());
         Files.deleteIfExists(writeRegionFilePath);
+        if (Files.exists(compressionTestPath)) {
+            try (Stream<Path> stream = Files.walk(compressionTestPath)) {
+                stream.sorted(Comparator.reverseOrder()).forEach(path -> {
+                    try {
+                        Files.delete(path);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+        }
+        Files.createDirectories(compressionTestPath);
+    }
+
+    private static NbtCompound createChunk(int chunkX, int chunkZ, int dataLength) {
+        byte[] data = new byte[dataLength];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + (i >> 8));
+        }
+        NbtCompound chunkNbt = new NbtCompound();
+        chunkNbt.set("xPos", new NbtInt(chunkX));
+        chunkNbt.set("zPos", new NbtInt(chunkZ));
+        chunkNbt.set("Data", new NbtByteArray(data));
+        return chunkNbt;
     }
 
     private void readRegionFile(Path regionFilePath) throws Exception {
@@ -73,6 +105,93 @@ public class McRegionFileTests {
         this.readRegionFile(writeRegionFilePath);
     }
 
+    @Test
+    void writeAndReadEveryCompression() throws IOException {
+        for (ChunkCompression compression : ChunkCompression.values()) {
+            Path path = compressionTestPath.resolve(compression.name()).resolve("r.1.-1.mca");
+            Files.createDirectories(path.getParent());
+            try (McRegionFileWriter writer = new McRegionFileWriter(path, compression)) {
+                writer.writeChunk(createChunk(35, -27, 1000), 100);
+            }
+            try (McRegionFileReader reader = new McRegionFileReader(path)) {
+                assertTrue(reader.hasChunk(3, 5));
+                assertEquals(100, reader.getChunkLastModified(3, 5));
+                assertEquals(createChunk(35, -27, 1000), reader.readChunkNbt(3, 5));
+            }
+        }
+    }
+
+    @Test
+    void readChunksOfDifferentSizes() throws IOException {
+        // The buffers are reused between chunks, so reading a small chunk after a
+        // large chunk must not return bytes from the large chunk.
+        Path path = compressionTestPath.resolve("sizes").resolve("r.0.0.mca");
+        Files.createDirectories(path.getParent());
+        int[] sizes = { 10, 300_000, 20, 150_000, 0 };
+        try (McRegionFileWriter writer = new McRegionFileWriter(path)) {
+            for (int i = 0; i < sizes.length; i++) {
+                writer.writeChunk(createChunk(i, 0, sizes[i]), 100);
+            }
+        }
+        try (McRegionFileReader reader = new McRegionFileReader(path)) {
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < sizes.length; i++) {
+                    assertEquals(createChunk(i, 0, sizes[i]), reader.readChunkNbt(i, 0));
+                    assertEquals(createChunk(i, 0, sizes[i]), NbtTag.readCompound(reader.readChunk(i, 0)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void externalChunk() throws IOException {
+        Path path = compressionTestPath.resolve("external").resolve("r.1.-1.mca");
+        Files.createDirectories(path.getParent());
+        // Uncompressed data larger than 255 sectors must be stored in a separate file
+        NbtCompound chunkNbt = createChunk(35, -27, 256 * McRegionFileReader.SECTOR_SIZE);
+        try (McRegionFileWriter writer = new McRegionFileWriter(path, ChunkCompression.NONE)) {
+            writer.writeChunk(chunkNbt, 100);
+        }
+        assertTrue(Files.exists(path.resolveSibling(McRegionFileReader.getExternalChunkFileName(1, -1, 3, 5))));
+        try (McRegionFileReader reader = new McRegionFileReader(path)) {
+            assertEquals(createChunk(35, -27, 256 * McRegionFileReader.SECTOR_SIZE), reader.readChunkNbt(3, 5));
+        }
+    }
+
+    @Test
+    void copyRawChunks() throws IOException {
+        Path from = compressionTestPath.resolve("raw-from").resolve("r.1.-1.mca");
+        Path to = compressionTestPath.resolve("raw-to").resolve("r.1.-1.mca");
+        Files.createDirectories(from.getParent());
+        Files.createDirectories(to.getParent());
+        try (McRegionFileWriter writer = new McRegionFileWriter(from, ChunkCompression.NONE)) {
+            writer.writeChunk(createChunk(35, -27, 1000), 100);
+            writer.writeChunk(createChunk(36, -27, 256 * McRegionFileReader.SECTOR_SIZE), 200);
+        }
+        try (
+            McRegionFileReader reader = new McRegionFileReader(from);
+            McRegionFileWriter writer = new McRegionFileWriter(to, ChunkCompression.ZLIB)
+        ) {
+            RawChunk rawChunk = reader.readRawChunk(3, 5);
+            assertEquals(ChunkCompression.NONE, rawChunk.compression());
+            assertEquals(createChunk(35, -27, 1000), NbtReader.readCompound(rawChunk.decompress()));
+            // Region storage visitors give coordinates relative to the region
+            writer.writeRawChunk(3, 5, rawChunk, 100);
+            writer.writeRawChunk(4, 5, reader.readRawChunk(4, 5), 200);
+        }
+        // The external chunk is named after its absolute coordinates
+        assertTrue(Files.exists(to.resolveSibling(McRegionFileReader.getExternalChunkFileName(1, -1, 4, 5))));
+        assertTrue(Files.exists(to.resolveSibling("c.36.-27.mcc")));
+        // The chunks keep their compression even though the writer uses zlib
+        try (McRegionFileReader reader = new McRegionFileReader(to)) {
+            assertEquals(ChunkCompression.NONE, reader.readRawChunk(3, 5).compression());
+            assertEquals(100, reader.getChunkLastModified(3, 5));
+            assertEquals(createChunk(35, -27, 1000), reader.readChunkNbt(3, 5));
+            assertEquals(200, reader.getChunkLastModified(4, 5));
+            assertEquals(createChunk(36, -27, 256 * McRegionFileReader.SECTOR_SIZE), reader.readChunkNbt(4, 5));
+        }
+    }
+
     @AfterAll
     static void cleanup() throws IOException {
         Files.deleteIfExists(writeRegionFilePath);
@@ -0,0 +1,34 @@
+package ca.bkaw.mch.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MchConfigurationTests {
+    @Test
+    public void compressionSettingsArePersisted() throws IOException {
+        MchConfiguration configuration = new MchConfiguration();
+        assertEquals(CompressionSettings.DEFAULT, configuration.getCompressionSettings());
+
+        CompressionSettings settings = new CompressionSettings(19, 4);
+        configuration.setCompressionSettings(settings);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        configuration.write(new DataOutputStream(bytes));
+        MchConfiguration read = new MchConfiguration(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(settings, read.getCompressionSettings());
+    }
+
+    @Test
+    public void invalidCompressionSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new CompressionSettings(1000, 0));
+        assertThrows(IllegalArgumentException.class, () -> new CompressionSettings(3, -1));
+    }
+}
@@ -0,0 +1,183 @@
+package ca.bkaw.mch.repository;
+
+import ca.bkaw.mch.Sha1;
+import ca.bkaw.mch.nbt.NbtByteArray;
+import ca.bkaw.mch.nbt.NbtCompound;
+import ca.bkaw.mch.nbt.NbtInt;
+import ca.bkaw.mch.nbt.NbtIntArray;
+import ca.bkaw.mch.nbt.NbtLong;
+import ca.bkaw.mch.object.Reference20;
+import ca.bkaw.mch.object.commit.Commit;
+import ca.bkaw.mch.object.dimension.Dimension;
+import ca.bkaw.mch.operation.CommitOperation;
+import ca.bkaw.mch.region.RegionFileType;
+import ca.bkaw.mch.region.mc.McRegionFileReader;
+import ca.bkaw.mch.region.mc.McRegionFileWriter;
+import ca.bkaw.mch.util.StringPath;
+import ca.bkaw.mch.world.DirectWorldProvider;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MchRepositoryTests {
+    static Path root = Path.of("run/test-run/repository-restore");
+    static Path world = root.resolve("world");
+    static MchRepository repository = new MchRepository(root.resolve("mch"));
+    static Sha1 worldId = Sha1.randomSha1();
+
+    // A chunk in a region that is not r.0.0, so that the region coordinates matter
+    static final int REGION_X = -1;
+    static final int REGION_Z = 2;
+    static final int CHUNK_X = REGION_X * 32 + 3;
+    static final int CHUNK_Z = REGION_Z * 32 + 5;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        if (Files.exists(root)) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        Files.createDirectories(world);
+        Files.writeString(world.resolve("level.dat"), "level");
+        for (RegionFileType regionFileType : RegionFileType.values()) {
+            Path folder = world.resolve(regionFileType.getFolderName());
+            Files.createDirectories(folder);
+            try (McRegionFileWriter writer = new McRegionFileWriter(folder.resolve("r." + REGION_X + "." + REGION_Z + ".mca"))) {
+                writer.writeChunk(CHUNK_X, CHUNK_Z, createChunk(regionFileType), 1000);
+                if (regionFileType == RegionFileType.REGION) {
+                    writer.writeChunk(createLargeChunk(), 2000);
+                }
+            }
+        }
+
+        Files.createDirectories(repository.getRoot());
+        repository.createDirectories();
+        repository.readConfiguration();
+        repository.getConfiguration().trackWorld(new TrackedWorld(worldId, "world", new DirectWorldProvider(world)));
+        repository.saveConfiguration();
+        CommitOperation.run(repository, "test", true, false);
+    }
+
+    /**
+     * Create a chunk the way the game stores it in a type of region file. Only chunks
+     * in region files store xPos and zPos.
+     */
+    private static NbtCompound createChunk(RegionFileType regionFileType) {
+        NbtCompound chunk = new NbtCompound();
+        chunk.set("DataVersion", new NbtInt(3700));
+        switch (regionFileType) {
+            case REGION -> {
+                chunk.set("xPos", new NbtInt(CHUNK_X));
+                chunk.set("zPos", new NbtInt(CHUNK_Z));
+                chunk.set("InhabitedTime", new NbtLong(100));
+            }
+            case ENTITIES -> chunk.set("Position", new NbtIntArray(new int[] { CHUNK_X, CHUNK_Z }));
+            case POI -> chunk.set("Sections", new NbtCompound());
+        }
+        return chunk;
+    }
+
+    /**
+     * Create a chunk that is too large to fit in the region file, even when compressed.
+     */
+    private static NbtCompound createLargeChunk() {
+        byte[] data = new byte[256 * McRegionFileReader.SECTOR_SIZE];
+        new Random(1).nextBytes(data);
+        NbtCompound chunk = new NbtCompound();
+        chunk.set("DataVersion", new NbtInt(3700));
+        chunk.set("xPos", new NbtInt(CHUNK_X + 1));
+        chunk.set("zPos", new NbtInt(CHUNK_Z));
+        chunk.set("Data", new NbtByteArray(data));
+        return chunk;
+    }
+
+    private static DimensionAccess accessOverworld() throws IOException {
+        Reference20<Commit> head = repository.getHeadCommit();
+        assertNotNull(head);
+        DimensionAccess dimensionAccess = repository.accessDimension(head.getSha1(), worldId, Dimension.OVERWORLD);
+        assertNotNull(dimensionAccess);
+        return dimensionAccess;
+    }
+
+    @Test
+    void restoreEveryRegionFileType() throws IOException {
+        DimensionAccess dimensionAccess = accessOverworld();
+        String fileName = "r." + REGION_X + "." + REGION_Z + ".mca";
+        for (RegionFileType regionFileType : RegionFileType.values()) {
+            String folder = regionFileType.getFolderName();
+            assertEquals(List.of(fileName), dimensionAccess.list(StringPath.of(folder + "/")));
+
+            Path restored = root.resolve("restored").resolve(folder).resolve(fileName);
+            Files.createDirectories(restored.getParent());
+            try (InputStream stream = dimensionAccess.restoreFile(StringPath.of(folder + "/" + fileName))) {
+                assertNotNull(stream, folder);
+                Files.copy(stream, restored, StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (McRegionFileReader reader = new McRegionFileReader(restored)) {
+                assertTrue(reader.hasChunk(CHUNK_X, CHUNK_Z), folder);
+                assertEquals(1000, reader.getChunkLastModified(CHUNK_X, CHUNK_Z));
+                assertEquals(createChunk(regionFileType), reader.readChunkNbt(CHUNK_X, CHUNK_Z), folder);
+            }
+        }
+    }
+
+    private static List<Path> listRestoreTempFolders() throws IOException {
+        try (Stream<Path> stream = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return stream.filter(path -> path.getFileName().toString().startsWith("restore_")).sorted().toList();
+        }
+    }
+
+    @Test
+    void restoreDeletesTemporaryFiles() throws IOException {
+        DimensionAccess dimensionAccess = accessOverworld();
+        List<Path> before = listRestoreTempFolders();
+        try (InputStream stream = dimensionAccess.restoreFile(StringPath.of("region/r." + REGION_X + "." + REGION_Z + ".mca"))) {
+            assertNotNull(stream);
+            assertEquals(before.size() + 1, listRestoreTempFolders().size());
+            stream.readAllBytes();
+        }
+        assertEquals(before, listRestoreTempFolders());
+    }
+
+    @Test
+    void restoreExternalChunk() throws IOException {
+        DimensionAccess dimensionAccess = accessOverworld();
+        String fileName = "r." + REGION_X + "." + REGION_Z + ".mca";
+        String externalChunkFileName = McRegionFileReader.getExternalChunkFileName(REGION_X, REGION_Z, CHUNK_X + 1, CHUNK_Z);
+
+        // Chunks that fit in the region file are not external chunks
+        assertNull(dimensionAccess.restoreFile(StringPath.of("region/" + McRegionFileReader.getExternalChunkFileName(REGION_X, REGION_Z, CHUNK_X, CHUNK_Z))));
+        assertNull(dimensionAccess.restoreFile(StringPath.of("region/" + McRegionFileReader.getExternalChunkFileName(REGION_X, REGION_Z, CHUNK_X + 2, CHUNK_Z))));
+
+        Path restored = root.resolve("restored-external").resolve(fileName);
+        Files.createDirectories(restored.getParent());
+        for (String name : List.of(fileName, externalChunkFileName)) {
+            try (InputStream stream = dimensionAccess.restoreFile(StringPath.of("region/" + name))) {
+                assertNotNull(stream, name);
+                Files.copy(stream, restored.resolveSibling(name), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        try (McRegionFileReader reader = new McRegionFileReader(restored)) {
+            assertEquals(2000, reader.getChunkLastModified(CHUNK_X + 1, CHUNK_Z));
+            assertEquals(createLargeChunk(), reader.readChunkNbt(CHUNK_X + 1, CHUNK_Z));
+            assertEquals(createChunk(RegionFileType.REGION), reader.readChunkNbt(CHUNK_X, CHUNK_Z));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ca.bkaw.mch.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContentDefinedChunkerTest {
+    private static List<byte[]> chunk(byte[] bytes) throws IOException {
+        ContentDefinedChunker chunker = new ContentDefinedChunker(new ByteArrayInputStream(bytes));
+        List<byte[]> chunks = new ArrayList<>();
+        byte[] chunk;
+        while ((chunk = chunker.nextChunk()) != null) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(1).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void chunksMatchInput() throws IOException {
+        byte[] bytes = randomBytes(3 * 1024 * 1024 + 123);
+        List<byte[]> chunks = chunk(bytes);
+
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (int i = 0; i < chunks.size(); i++) {
+            byte[] chunk = chunks.get(i);
+            assertTrue(chunk.length <= ContentDefinedChunker.MAX_SIZE);
+            if (i < chunks.size() - 1) {
+                assertTrue(chunk.length >= ContentDefinedChunker.MIN_SIZE);
+            }
+            joined.write(chunk);
+        }
+        assertArrayEquals(bytes, joined.toByteArray());
+    }
+
+    @Test
+    public void emptyInput() throws IOException {
+        assertEquals(0, chunk(new byte[0]).size());
+    }
+
+    @Test
+    public void insertionKeepsMostChunks() throws IOException {
+        byte[] bytes = randomBytes(4 * 1024 * 1024);
+        byte[] edited = new byte[bytes.length + 10];
+        int middle = bytes.length / 2;
+        System.arraycopy(bytes, 0, edited, 0, middle);
+        System.arraycopy(bytes, middle, edited, middle + 10, bytes.length - middle);
+
+        Set<String> original = new HashSet<>();
+        for (byte[] chunk : chunk(bytes)) {
+            original.add(Arrays.toString(chunk));
+        }
+        List<byte[]> editedChunks = chunk(edited);
+        int changed = 0;
+        for (byte[] chunk : editedChunks) {
+            if (!original.contains(Arrays.toString(chunk))) {
+                changed++;
+            }
+        }
+        assertTrue(changed <= 2, "Expected at most 2 changed chunks but found " + changed);
+    }
+}
@@ -0,0 +1,37 @@
+package ca.bkaw.mch.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HashingTest {
+    @Test
+    public void streamMatchesArray() {
+        Random random = new Random(1);
+        for (int length = 0; length < 40; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+
+            Hashing.Hash64OutputStream byteByByte = new Hashing.Hash64OutputStream(length);
+            for (byte b : bytes) {
+                byteByByte.write(b);
+            }
+            assertEquals(Hashing.hash64(bytes), byteByByte.getHash());
+
+            Hashing.Hash64OutputStream split = new Hashing.Hash64OutputStream(length);
+            split.write(bytes, 0, length / 3);
+            split.write(bytes, length / 3, length - length / 3);
+            assertEquals(Hashing.hash64(bytes), split.getHash());
+        }
+    }
+
+    @Test
+    public void wrongLength() {
+        Hashing.Hash64OutputStream stream = new Hashing.Hash64OutputStream(2);
+        stream.write(1);
+        assertThrows(IllegalStateException.class, stream::getHash);
+    }
+}
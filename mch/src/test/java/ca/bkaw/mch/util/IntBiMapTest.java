@@ -0,0 +1,42 @@
+package ca.bkaw.mch.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class IntBiMapTest {
+    @Test
+    public void test() {
+        IntBiMap<String> biMap = new IntBiMap<>();
+        biMap.put(1, "test1");
+        biMap.put(2, "test2");
+
+        assertEquals("test1", biMap.get(1));
+        assertEquals("test2", biMap.get(2));
+        assertNull(biMap.get(3));
+
+        assertEquals(1, biMap.getKey("test1", 0));
+        assertEquals(2, biMap.getKey("test2", 0));
+        assertEquals(0, biMap.getKey("test3", 0));
+    }
+
+    @Test
+    public void growKeepsInsertionOrder() {
+        IntBiMap<String> biMap = new IntBiMap<>(1);
+        for (int i = 1000; i > 0; i--) {
+            biMap.put(i, "test" + i);
+        }
+        assertEquals(1000, biMap.size());
+        for (int i = 0; i < biMap.size(); i++) {
+            assertEquals(1000 - i, biMap.keyAt(i));
+            assertEquals("test" + (1000 - i), biMap.valueAt(i));
+        }
+        for (int i = 1; i <= 1000; i++) {
+            assertEquals("test" + i, biMap.get(i));
+            assertEquals(i, biMap.getKey("test" + i, 0));
+        }
+        assertFalse(biMap.containsKey(0));
+    }
+}
@@ -0,0 +1,63 @@
+package ca.bkaw.mch.util;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RandomAccessReaderTest {
+    static Path path = Path.of("run/test-run/random-access-reader.bin");
+    static byte[] bytes;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * Integer.BYTES + 5);
+        for (int i = 0; i < 1024; i++) {
+            buffer.putInt(i * 0x01020304);
+        }
+        buffer.putInt(-1);
+        buffer.put((byte) 42);
+        bytes = buffer.array();
+        Files.createDirectories(path.getParent());
+        Files.write(path, bytes);
+    }
+
+    private static void check(RandomAccessReader reader) throws IOException {
+        try (reader) {
+            int[] ints = new int[1024];
+            reader.readInts(ints);
+            for (int i = 0; i < ints.length; i++) {
+                assertEquals(i * 0x01020304, ints[i]);
+            }
+            // The cursor should be after the integers
+            assertEquals(-1, reader.readInt());
+            assertEquals(42, reader.readByte());
+
+            reader.seek(8);
+            int[] two = new int[2];
+            reader.readInts(two);
+            assertArrayEquals(new int[] { 2 * 0x01020304, 3 * 0x01020304 }, two);
+        }
+    }
+
+    @Test
+    public void randomAccessFile() throws IOException {
+        check(RandomAccessReader.of(path));
+    }
+
+    @Test
+    public void fileChannel() throws IOException {
+        check(RandomAccessReader.open(path));
+    }
+
+    @Test
+    public void byteArray() throws IOException {
+        check(RandomAccessReader.of(bytes));
+    }
+}
@@ -0,0 +1,85 @@
+package ca.bkaw.mch.world;
+
+import ca.bkaw.mch.object.Reference20;
+import ca.bkaw.mch.object.tree.Tree;
+import ca.bkaw.mch.repository.MchRepository;
+import ca.bkaw.mch.util.StringPath;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class WorldReaderTests {
+    static Path root = Path.of("run/test-run/world-reader");
+    static Path world = root.resolve("world");
+    static MchRepository repository = new MchRepository(root.resolve("mch"));
+
+    @BeforeAll
+    static void setup() throws IOException {
+        if (Files.exists(root)) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        Files.createDirectories(repository.getRoot());
+        for (String directory : List.of("playerdata", "stats", "data/sub")) {
+            Path path = world.resolve(directory);
+            Files.createDirectories(path);
+            for (int i = 0; i < 50; i++) {
+                Files.writeString(path.resolve("file" + i + ".dat"), directory + " " + i);
+            }
+        }
+        Files.writeString(world.resolve("level.dat"), "level");
+    }
+
+    @Test
+    public void parallelTrackingGivesSameTree() throws IOException {
+        WorldReader worldReader = new WorldReader(new DirectWorldProvider(world));
+        Reference20<Tree> serial = worldReader.trackDirectoryTreePath(StringPath.root(), repository, str -> true, null);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Reference20<Tree> parallel = worldReader.trackDirectoryTreePath(StringPath.root(), repository, str -> true, null, executor);
+            assertEquals(serial.getSha1(), parallel.getSha1());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Tree tree = serial.resolve(repository);
+        assertEquals(List.of("level.dat"), List.copyOf(tree.getFiles().keySet()));
+        assertEquals(3, tree.getSubTrees().size());
+    }
+
+    @Test
+    public void largeFileIsChunked() throws IOException {
+        byte[] bytes = new byte[(int) WorldReader.CHUNKED_FILE_SIZE * 2];
+        new Random(3).nextBytes(bytes);
+        Path dir = root.resolve("large");
+        Files.createDirectories(dir);
+        Files.write(dir.resolve("large.bin"), bytes);
+        Files.writeString(dir.resolve("small.txt"), "small");
+
+        WorldReader worldReader = new WorldReader(new DirectWorldProvider(dir));
+        Tree tree = worldReader.trackDirectoryTreePath(StringPath.root(), repository, str -> true, null).resolve(repository);
+        assertEquals(List.of("small.txt"), List.copyOf(tree.getFiles().keySet()));
+        assertEquals(List.of("large.bin"), List.copyOf(tree.getChunkedFiles().keySet()));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        tree.getChunkedFiles().get("large.bin").reference().resolve(repository).transferTo(repository, output);
+        assertArrayEquals(bytes, output.toByteArray());
+    }
+}